@@ -293,12 +293,13 @@ public class App
 	public void completePointEdit(FieldEditList inEditList, FieldEditList inUndoList)
 	{
 		DataPoint currentPoint = _trackInfo.getCurrentPoint();
+		final int pointIndex = _trackInfo.getSelection().getCurrentPointIndex();
 		if (inEditList != null && inEditList.getNumEdits() > 0 && currentPoint != null)
 		{
 			// add information to undo stack
-			UndoOperation undo = new UndoEditPoint(currentPoint, inUndoList);
+			UndoOperation undo = new UndoEditPoint(currentPoint, pointIndex, inUndoList);
 			// pass to track for completion
-			if (_track.editPoint(currentPoint, inEditList, false))
+			if (_track.editPoint(pointIndex, inEditList, false))
 			{
 				_undoStack.add(undo);
 				// Confirm point edit
@@ -581,6 +582,7 @@ public class App
 				if (firstTrackPoint != null) {firstTrackPoint.setSegmentStart(true);}
 				if (nextTrackPoint != null) {nextTrackPoint.setSegmentStart(true);}
 				if (moveToTrackPoint != null) {moveToTrackPoint.setSegmentStart(true);}
+				_track.segmentStartsChanged(Math.min(startIndex, pointIndex));
 
 				// Add undo object to stack, set confirm message
 				_undoStack.add(undo);
@@ -647,7 +649,20 @@ public class App
 		// Check whether loaded array can be properly parsed into a Track
 		Track loadedTrack = new Track();
 		loadedTrack.load(inFieldArray, inDataArray, inOptions);
-		if (loadedTrack.getNumPoints() <= 0)
+		informDataLoaded(loadedTrack, inSourceInfo, inTrackNameList, inLinkInfo);
+	}
+
+	/**
+	 * Receive loaded track and determine whether to filter on tracks or not
+	 * @param inLoadedTrack track containing the loaded points
+	 * @param inSourceInfo information about the source of the data
+	 * @param inTrackNameList information about the track names
+	 * @param inLinkInfo links to photo/audio clips
+	 */
+	public void informDataLoaded(Track inLoadedTrack, SourceInfo inSourceInfo,
+		TrackNameList inTrackNameList, MediaLinkInfo inLinkInfo)
+	{
+		if (inLoadedTrack.getNumPoints() <= 0)
 		{
 			showErrorMessage("error.load.dialogtitle", "error.load.nopoints");
 			// load next file if there's a queue
@@ -655,7 +670,7 @@ public class App
 			return;
 		}
 		// Check for doubled track
-		if (Checker.isDoubledTrack(loadedTrack)) {
+		if (Checker.isDoubledTrack(inLoadedTrack)) {
 			JOptionPane.showMessageDialog(_frame, I18nManager.getText("dialog.open.contentsdoubled"),
 				I18nManager.getText("function.open"), JOptionPane.WARNING_MESSAGE);
 		}
@@ -666,18 +681,18 @@ public class App
 		{
 			String[] linkArray = inLinkInfo.getLinkArray();
 			if (linkArray != null) {
-				new AsyncMediaLoader(this, inLinkInfo.getZipFile(), linkArray, loadedTrack, inSourceInfo.getFile()).begin();
+				new AsyncMediaLoader(this, inLinkInfo.getZipFile(), linkArray, inLoadedTrack, inSourceInfo.getFile()).begin();
 			}
 		}
 		// Look at TrackNameList, decide whether to filter or not
 		if (inTrackNameList != null && inTrackNameList.getNumTracks() > 1)
 		{
 			// Launch a dialog to let the user choose which tracks to load, then continue
-			new SelectTracksFunction(this, loadedTrack, inSourceInfo, inTrackNameList).begin();
+			new SelectTracksFunction(this, inLoadedTrack, inSourceInfo, inTrackNameList).begin();
 		}
 		else {
 			// go directly to load
-			informDataLoaded(loadedTrack, inSourceInfo);
+			informDataLoaded(inLoadedTrack, inSourceInfo);
 		}
 		setCurrentMode(AppMode.NORMAL);
 	}
@@ -105,6 +105,8 @@ public abstract class Config
 	public static final String KEY_WAYPOINT_ICON_SIZE = "prune.waypointiconsize";
 	/** Id of selected timezone */
 	public static final String KEY_TIMEZONE_ID = "prune.timezoneid";
+	/** Size of memory cache for map tiles in megabytes */
+	public static final String KEY_TILE_CACHE_SIZE = "prune.tilecachesize";
 
 
 	/** Initialise the default properties */
@@ -201,6 +203,7 @@ public abstract class Config
 		props.put(KEY_TERRAIN_GRID_SIZE, "50");
 		props.put(KEY_ALTITUDE_TOLERANCE, "0"); // 0, all exact as before
 		props.put(KEY_WAYPOINT_ICON_SIZE, "1"); // medium size
+		props.put(KEY_TILE_CACHE_SIZE, "64"); // 64 MB, about 250 tiles
 		return props;
 	}
 
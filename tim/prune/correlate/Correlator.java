@@ -28,7 +28,6 @@ import tim.prune.App;
 import tim.prune.GenericFunction;
 import tim.prune.I18nManager;
 import tim.prune.config.TimezoneHelper;
-import tim.prune.data.DataPoint;
 import tim.prune.data.Distance;
 import tim.prune.data.Field;
 import tim.prune.data.MediaObject;
@@ -52,6 +51,9 @@ public abstract class Correlator extends GenericFunction
 	private boolean _previewEnabled = false; // flag required to enable preview function on final panel
 	private boolean[] _cardEnabled = null; // flag for each card
 	private TimeZone _timezone = null;
+	/** Index of track points by time, and the track it was built for */
+	private PointTimeIndex _timeIndex = null;
+	private Track _timeIndexTrack = null;
 	private JTextField _offsetHourBox = null, _offsetMinBox = null, _offsetSecBox = null;
 	private JRadioButton _mediaLaterOption = null, _pointLaterOption = null;
 	private JRadioButton _timeLimitRadio = null, _distLimitRadio = null;
@@ -116,6 +118,7 @@ public abstract class Correlator extends GenericFunction
 		_okButton.setEnabled(false);
 		// Init timezone to the currently selected one
 		_timezone = TimezoneHelper.getSelectedTimezone();
+		_timeIndex = null;
 		// Go to first available card
 		int card = 0;
 		_cardEnabled = null;
@@ -651,21 +654,11 @@ public abstract class Correlator extends GenericFunction
 		{
 			// Add/subtract offset to media timestamp
 			Timestamp mediaStamp = getMediaTimestamp(inMedia);
-			int numPoints = inTrack.getNumPoints();
-			for (int i=0; i<numPoints; i++)
-			{
-				DataPoint point = inTrack.getPoint(i);
-				if (point.getPhoto() == null && point.getAudio() == null)
-				{
-					Timestamp pointStamp = point.getTimestamp();
-					if (pointStamp != null && pointStamp.isValid())
-					{
-						long numSeconds = pointStamp.getSecondsSince(mediaStamp, _timezone)
-							+ inOffset.getTotalSeconds();
-						pair.addPoint(point, numSeconds);
-					}
-				}
+			if (_timeIndex == null || _timeIndexTrack != inTrack) {
+				_timeIndex = new PointTimeIndex(inTrack, _timezone);
+				_timeIndexTrack = inTrack;
 			}
+			_timeIndex.addNearestPoints(pair, mediaStamp.getMilliseconds(_timezone), inOffset.getTotalSeconds());
 		}
 		return pair;
 	}
@@ -0,0 +1,167 @@
+package tim.prune.correlate;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TimeZone;
+
+import tim.prune.data.DataPoint;
+import tim.prune.data.Timestamp;
+import tim.prune.data.Track;
+
+/**
+ * Index of the track points with timestamps, sorted by time,
+ * so that the points nearest to a media timestamp can be found
+ * by binary search instead of looping over the whole track.
+ * The track timestamps don't need to be in order.
+ */
+public class PointTimeIndex
+{
+	/** Timestamps of the points in milliseconds, in ascending order */
+	private long[] _times = null;
+	/** Points in the same order */
+	private DataPoint[] _points = null;
+	/** Index of each point within the track, to choose between points with the same time */
+	private int[] _trackIndices = null;
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track object
+	 * @param inTimezone timezone to use for local timestamps
+	 */
+	public PointTimeIndex(Track inTrack, TimeZone inTimezone)
+	{
+		final int numPoints = inTrack.getNumPoints();
+		final long[] times = new long[numPoints];
+		int[] trackIndices = new int[numPoints];
+		int numIndexed = 0;
+		boolean sorted = true;
+		for (int i=0; i<numPoints; i++)
+		{
+			DataPoint point = inTrack.getPoint(i);
+			// Only use points without media
+			if (point.getPhoto() == null && point.getAudio() == null)
+			{
+				Timestamp pointStamp = point.getTimestamp();
+				if (pointStamp != null && pointStamp.isValid())
+				{
+					times[numIndexed] = pointStamp.getMilliseconds(inTimezone);
+					trackIndices[numIndexed] = i;
+					if (numIndexed > 0 && times[numIndexed] < times[numIndexed-1]) {
+						sorted = false;
+					}
+					numIndexed++;
+				}
+			}
+		}
+		_times = new long[numIndexed];
+		_points = new DataPoint[numIndexed];
+		_trackIndices = new int[numIndexed];
+		if (sorted)
+		{
+			System.arraycopy(times, 0, _times, 0, numIndexed);
+			System.arraycopy(trackIndices, 0, _trackIndices, 0, numIndexed);
+		}
+		else
+		{
+			// Sort by time, keeping points with equal times in track order
+			Integer[] order = new Integer[numIndexed];
+			for (int i=0; i<numIndexed; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer inFirst, Integer inSecond) {
+					final long first = times[inFirst], second = times[inSecond];
+					return (first < second ? -1 : (first > second ? 1 : 0));
+				}
+			});
+			for (int i=0; i<numIndexed; i++)
+			{
+				_times[i] = times[order[i]];
+				_trackIndices[i] = trackIndices[order[i]];
+			}
+		}
+		for (int i=0; i<numIndexed; i++) {
+			_points[i] = inTrack.getPoint(_trackIndices[i]);
+		}
+	}
+
+	/**
+	 * Find the nearest points before and after the given media time and add them to the pair.
+	 * Gives the same result as adding every point of the track to the pair in order.
+	 * @param inPair pair to add points to
+	 * @param inMediaMillis timestamp of media in milliseconds
+	 * @param inOffsetSeconds time offset to add, in seconds
+	 */
+	public void addNearestPoints(PointMediaPair inPair, long inMediaMillis, long inOffsetSeconds)
+	{
+		// Nearest point after is the first with a non-negative time difference
+		final int afterIndex = findFirstIndex(inMediaMillis, inOffsetSeconds, 0L);
+		// Nearest point before is the last with a time difference which isn't positive
+		final int beforeIndex = findFirstIndex(inMediaMillis, inOffsetSeconds, 1L) - 1;
+		if (beforeIndex >= 0) {
+			addEarliestInTrack(inPair, beforeIndex, -1, inMediaMillis, inOffsetSeconds);
+		}
+		if (afterIndex < _times.length) {
+			addEarliestInTrack(inPair, afterIndex, 1, inMediaMillis, inOffsetSeconds);
+		}
+	}
+
+	/**
+	 * @param inIndex index within sorted arrays
+	 * @param inMediaMillis timestamp of media in milliseconds
+	 * @param inOffsetSeconds time offset to add, in seconds
+	 * @return time difference in whole seconds, as used by the correlation
+	 */
+	private long getSecondsDifference(int inIndex, long inMediaMillis, long inOffsetSeconds)
+	{
+		return (_times[inIndex] - inMediaMillis) / 1000L + inOffsetSeconds;
+	}
+
+	/**
+	 * Binary search for the first point whose time difference is at least the given value
+	 * @param inMediaMillis timestamp of media in milliseconds
+	 * @param inOffsetSeconds time offset to add, in seconds
+	 * @param inMinSeconds minimum time difference in seconds
+	 * @return index of first point, or the number of points if there isn't one
+	 */
+	private int findFirstIndex(long inMediaMillis, long inOffsetSeconds, long inMinSeconds)
+	{
+		int low = 0, high = _times.length;
+		while (low < high)
+		{
+			final int mid = (low + high) >>> 1;
+			if (getSecondsDifference(mid, inMediaMillis, inOffsetSeconds) < inMinSeconds) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Of all the points with the same time difference as the given one,
+	 * add the one which comes first in the track to the pair
+	 * @param inPair pair to add point to
+	 * @param inIndex index of point within sorted arrays
+	 * @param inStep direction in which to look for more points, 1 or -1
+	 * @param inMediaMillis timestamp of media in milliseconds
+	 * @param inOffsetSeconds time offset to add, in seconds
+	 */
+	private void addEarliestInTrack(PointMediaPair inPair, int inIndex, int inStep,
+		long inMediaMillis, long inOffsetSeconds)
+	{
+		final long seconds = getSecondsDifference(inIndex, inMediaMillis, inOffsetSeconds);
+		int bestIndex = inIndex;
+		for (int i=inIndex+inStep; i>=0 && i<_times.length
+			&& getSecondsDifference(i, inMediaMillis, inOffsetSeconds) == seconds; i+=inStep)
+		{
+			if (_trackIndices[i] < _trackIndices[bestIndex]) {
+				bestIndex = i;
+			}
+		}
+		inPair.addPoint(_points[bestIndex], seconds);
+	}
+}
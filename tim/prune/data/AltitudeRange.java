@@ -50,12 +50,23 @@ public class AltitudeRange
 	 * @param inAltitude value to add, only positive values considered
 	 */
 	public void addValue(Altitude inAltitude)
+	{
+		if (inAltitude != null && inAltitude.isValid()) {
+			addMetricValue(inAltitude.getMetricValue());
+		}
+	}
+
+	/**
+	 * Add a metric value to the range
+	 * @param inMetres altitude in metres, or NaN if not present
+	 */
+	public void addMetricValue(double inMetres)
 	{
 		final int wiggleLimit = Config.getConfigInt(Config.KEY_ALTITUDE_TOLERANCE) / 100;
 
-		if (inAltitude != null && inAltitude.isValid())
+		if (!Double.isNaN(inMetres))
 		{
-			int altValue = (int) inAltitude.getMetricValue();
+			int altValue = (int) inMetres;
 			_range.addValue(altValue);
 			// Compare with previous value if any
 			if (_gotPreviousValue)
@@ -134,6 +145,15 @@ public class AltitudeRange
 	 * @param inAltitude altitude value
 	 */
 	public void ignoreValue(Altitude inAltitude)
+	{
+		ignoreMetricValue(inAltitude != null && inAltitude.isValid() ? inAltitude.getMetricValue() : Double.NaN);
+	}
+
+	/**
+	 * Reset the climb/descent calculations starting from the given metric value
+	 * @param inMetres altitude in metres, or NaN if not present
+	 */
+	public void ignoreMetricValue(double inMetres)
 	{
 		// Process the previous value, if any, to update climb/descent as that's the end of the previous segment
 		if (_gotPreviousValue && _gotPreviousMinimum && _previousValue > _previousExtreme) {
@@ -146,9 +166,9 @@ public class AltitudeRange
 		_gotPreviousMinimum = _gotPreviousMaximum = false;
 		_gotPreviousValue = false;
 		// Now process this value if there is one
-		if (inAltitude != null && inAltitude.isValid())
+		if (!Double.isNaN(inMetres))
 		{
-			final int altValue = (int) inAltitude.getMetricValue();
+			final int altValue = (int) inMetres;
 			_range.addValue(altValue);
 			_previousValue = altValue;
 			_gotPreviousValue = true;
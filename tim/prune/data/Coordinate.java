@@ -65,6 +65,11 @@ public abstract class Coordinate
 			inString = inString.trim();
 			strLen = inString.length();
 		}
+		if (strLen > 0 && parseDecimalDegrees(inString))
+		{
+			// Plain decimal degrees like -12.345 already parsed without the general loop
+			return;
+		}
 		if (strLen > 0)
 		{
 			// Check for cardinal character either at beginning or end
@@ -195,6 +200,74 @@ public abstract class Coordinate
 	}
 
 
+	/**
+	 * Fast path for the most common case of plain decimal degrees with an optional minus sign,
+	 * giving exactly the same result as the general parser but without creating any objects.
+	 * Also safe to call from several threads at once
+	 * @param inText trimmed text to parse
+	 * @return true if text was plain decimal degrees and has been parsed,
+	 *         false if the general parser is needed
+	 */
+	private boolean parseDecimalDegrees(CharSequence inText)
+	{
+		final int textLen = inText.length();
+		final boolean negative = (inText.charAt(0) == '-');
+		int pos = (negative ? 1 : 0);
+		// Whole degrees
+		int degrees = 0;
+		final int degStart = pos;
+		char currChar;
+		while (pos < textLen && (currChar = inText.charAt(pos)) >= '0' && currChar <= '9')
+		{
+			degrees = degrees * 10 + (currChar - '0');
+			pos++;
+			if (degrees >= 180) {return false;} // leave range checks to the general parser
+		}
+		if (pos == degStart) {return false;}
+		// Decimal fraction, if any
+		long fraction = 0L, denom = 1L;
+		if (pos < textLen)
+		{
+			if (inText.charAt(pos) != '.' || pos == textLen - 1) {return false;}
+			pos++;
+			for (; pos<textLen; pos++)
+			{
+				currChar = inText.charAt(pos);
+				if (currChar < '0' || currChar > '9') {return false;}
+				if (denom < 1E18) // ignore trailing characters if too big for long
+				{
+					fraction = fraction * 10 + (currChar - '0');
+					denom *= 10;
+				}
+			}
+		}
+		// Minus sign gives the cardinal but still counts as guessed, as in the general parser
+		_cardinal = (negative ? getCardinal('-') : NO_CARDINAL);
+		if (_cardinal == NO_CARDINAL) {
+			_cardinal = getDefaultCardinal();
+		}
+		_cardinalGuessed = true;
+		_originalFormat = FORMAT_DEG_WITHOUT_CARDINAL;
+		_degrees = degrees;
+		_asDouble = degrees;
+		_fracDenom = 10;
+		if (denom > 1L)
+		{
+			double numMins = fraction * 60.0 / denom;
+			_minutes = (int) numMins;
+			double numSecs = (numMins - _minutes) * 60.0;
+			_seconds = (int) numSecs;
+			_fracs = (int) ((numSecs - _seconds) * 10);
+			_asDouble = _degrees + 1.0 * fraction / denom;
+		}
+		if (negative || _cardinal == WEST || _cardinal == SOUTH) {
+			_asDouble = -_asDouble;
+		}
+		_valid = (_degrees <= getMaxDegrees() && _minutes < 60 && _seconds < 60 && _fracs < _fracDenom)
+			&& Math.abs(_asDouble) <= getMaxDegrees();
+		return true;
+	}
+
 	/**
 	 * Get the cardinal from the given character
 	 * @param inFirstChar first character from string
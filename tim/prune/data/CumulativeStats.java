@@ -0,0 +1,354 @@
+package tim.prune.data;
+
+import java.util.Arrays;
+
+/**
+ * Class to hold cumulative sums of distances, durations and counts over a track,
+ * so that the statistics of any range can be found by subtracting two entries
+ * instead of looping over all the points in the range.
+ * After an edit, the sums are only recalculated from the first changed index onwards.
+ */
+public class CumulativeStats
+{
+	/** Track for which the sums are calculated */
+	private Track _track = null;
+	/** Number of points at the start of the track whose sums are up to date */
+	private int _numValid = 0;
+	/** Number of points in the sums */
+	private int _numPoints = 0;
+	/** Cumulative distance in radians between track points, including and excluding segment gaps */
+	private double[] _totalRadians = null, _movingRadians = null;
+	/** Cumulative milliseconds between consecutive timestamps of any points, ignoring segment gaps */
+	private long[] _movingMillis = null;
+	/** Cumulative milliseconds between consecutive track points, ignoring segment gaps */
+	private long[] _trackMovingMillis = null;
+	/** Cumulative counts of segment starts, track points without timestamps and timestamps out of sequence */
+	private int[] _numSegments = null, _numUntimed = null, _numOutOfSequence = null;
+	/** Segment trees holding the indices of the earliest and latest track point timestamps */
+	private int[] _earliestTree = null, _latestTree = null;
+	/** Number of leaves in the segment trees */
+	private int _treeSize = 0;
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track object
+	 */
+	public CumulativeStats(Track inTrack)
+	{
+		_track = inTrack;
+	}
+
+	/**
+	 * Mark the sums as invalid from the given point index onwards
+	 * @param inIndex index of first changed point
+	 */
+	public void invalidateFrom(int inIndex)
+	{
+		_numValid = Math.max(0, Math.min(_numValid, inIndex));
+	}
+
+	/**
+	 * Recalculate any invalid sums
+	 * @param inColumns point columns of the track
+	 */
+	public void update(PointColumns inColumns)
+	{
+		final int numPoints = _track.getNumPoints();
+		if (_numValid >= numPoints && _numPoints == numPoints) {return;}
+		final int firstIndex = Math.min(_numValid, numPoints);
+		resizeArrays(numPoints, firstIndex);
+		// Find the previous track point and previous timestamped point before the first index
+		int prevTrackIndex = -1, prevTimedIndex = -1;
+		for (int i=firstIndex-1; i>=0 && (prevTrackIndex < 0 || prevTimedIndex < 0); i--)
+		{
+			if (prevTrackIndex < 0 && !inColumns.isWaypoint(i)) {prevTrackIndex = i;}
+			if (prevTimedIndex < 0 && inColumns.hasTimestamp(i)) {prevTimedIndex = i;}
+		}
+
+		for (int i=firstIndex; i<numPoints; i++)
+		{
+			// Start with the previous sums
+			double totalRadians = 0.0, movingRadians = 0.0;
+			long movingMillis = 0L, trackMovingMillis = 0L;
+			int numSegments = 0, numUntimed = 0, numOutOfSequence = 0;
+			if (i > 0)
+			{
+				totalRadians = _totalRadians[i-1];
+				movingRadians = _movingRadians[i-1];
+				movingMillis = _movingMillis[i-1];
+				trackMovingMillis = _trackMovingMillis[i-1];
+				numSegments = _numSegments[i-1];
+				numUntimed = _numUntimed[i-1];
+				numOutOfSequence = _numOutOfSequence[i-1];
+			}
+			final boolean segmentStart = inColumns.isSegmentStart(i);
+			final boolean hasTimestamp = inColumns.hasTimestamp(i);
+			// Timestamps of all points
+			if (hasTimestamp)
+			{
+				if (!segmentStart && prevTimedIndex >= 0
+					&& inColumns.getTimestamp(i) > inColumns.getTimestamp(prevTimedIndex))
+				{
+					movingMillis += inColumns.getTimestamp(i) - inColumns.getTimestamp(prevTimedIndex);
+				}
+				prevTimedIndex = i;
+			}
+			// Distances and timestamps between track points
+			if (!inColumns.isWaypoint(i))
+			{
+				if (segmentStart) {numSegments++;}
+				if (!hasTimestamp) {numUntimed++;}
+				if (prevTrackIndex >= 0)
+				{
+					final double radians = DataPoint.calculateRadiansBetween(
+						inColumns.getLatitude(prevTrackIndex), inColumns.getLongitude(prevTrackIndex),
+						inColumns.getLatitude(i), inColumns.getLongitude(i));
+					totalRadians += radians;
+					if (!segmentStart)
+					{
+						movingRadians += radians;
+						if (hasTimestamp && inColumns.hasTimestamp(prevTrackIndex))
+						{
+							final long millisLater = inColumns.getTimestamp(i) - inColumns.getTimestamp(prevTrackIndex);
+							if (millisLater < 0) {numOutOfSequence++;}
+							else {trackMovingMillis += millisLater;}
+						}
+					}
+				}
+				prevTrackIndex = i;
+			}
+			_totalRadians[i] = totalRadians;
+			_movingRadians[i] = movingRadians;
+			_movingMillis[i] = movingMillis;
+			_trackMovingMillis[i] = trackMovingMillis;
+			_numSegments[i] = numSegments;
+			_numUntimed[i] = numUntimed;
+			_numOutOfSequence[i] = numOutOfSequence;
+		}
+		updateTrees(inColumns, firstIndex, Math.max(numPoints, _numPoints));
+		_numPoints = _numValid = numPoints;
+	}
+
+	/**
+	 * Make sure the arrays are big enough for the given number of points
+	 * @param inNumPoints number of points
+	 * @param inNumToKeep number of valid entries to keep
+	 */
+	private void resizeArrays(int inNumPoints, int inNumToKeep)
+	{
+		if (_totalRadians != null && _totalRadians.length >= inNumPoints) {return;}
+		// Leave some headroom for appended points
+		final int capacity = inNumPoints + inNumPoints / 8 + 16;
+		double[] totalRadians = new double[capacity], movingRadians = new double[capacity];
+		long[] movingMillis = new long[capacity], trackMovingMillis = new long[capacity];
+		int[] numSegments = new int[capacity], numUntimed = new int[capacity], numOutOfSequence = new int[capacity];
+		if (_totalRadians != null && inNumToKeep > 0)
+		{
+			System.arraycopy(_totalRadians, 0, totalRadians, 0, inNumToKeep);
+			System.arraycopy(_movingRadians, 0, movingRadians, 0, inNumToKeep);
+			System.arraycopy(_movingMillis, 0, movingMillis, 0, inNumToKeep);
+			System.arraycopy(_trackMovingMillis, 0, trackMovingMillis, 0, inNumToKeep);
+			System.arraycopy(_numSegments, 0, numSegments, 0, inNumToKeep);
+			System.arraycopy(_numUntimed, 0, numUntimed, 0, inNumToKeep);
+			System.arraycopy(_numOutOfSequence, 0, numOutOfSequence, 0, inNumToKeep);
+		}
+		_totalRadians = totalRadians;
+		_movingRadians = movingRadians;
+		_movingMillis = movingMillis;
+		_trackMovingMillis = trackMovingMillis;
+		_numSegments = numSegments;
+		_numUntimed = numUntimed;
+		_numOutOfSequence = numOutOfSequence;
+	}
+
+	/**
+	 * Update the leaves of the timestamp trees in the given range, and their parents
+	 * @param inColumns point columns of the track
+	 * @param inFirstIndex first index to update
+	 * @param inEndIndex index after the last one to update
+	 */
+	private void updateTrees(PointColumns inColumns, int inFirstIndex, int inEndIndex)
+	{
+		final int numPoints = _track.getNumPoints();
+		int firstIndex = inFirstIndex;
+		if (_earliestTree == null || numPoints > _treeSize)
+		{
+			// Need a bigger tree, so rebuild the whole thing
+			_treeSize = Math.max(16, Integer.highestOneBit(Math.max(1, numPoints + numPoints / 8)) * 2);
+			_earliestTree = new int[2 * _treeSize];
+			_latestTree = new int[2 * _treeSize];
+			Arrays.fill(_earliestTree, -1);
+			Arrays.fill(_latestTree, -1);
+			firstIndex = 0;
+		}
+		final int endIndex = Math.min(Math.max(inEndIndex, numPoints), _treeSize);
+		if (firstIndex >= endIndex) {return;}
+		for (int i=firstIndex; i<endIndex; i++)
+		{
+			final boolean timedTrackPoint = i < numPoints && !inColumns.isWaypoint(i) && inColumns.hasTimestamp(i);
+			_earliestTree[_treeSize + i] = _latestTree[_treeSize + i] = (timedTrackPoint ? i : -1);
+		}
+		// Recalculate the parents of the changed leaves, level by level
+		int lo = (_treeSize + firstIndex) / 2, hi = (_treeSize + endIndex - 1) / 2;
+		while (lo >= 1)
+		{
+			for (int node=lo; node<=hi; node++)
+			{
+				_earliestTree[node] = pickTimestamp(inColumns, _earliestTree[2*node], _earliestTree[2*node+1], true);
+				_latestTree[node] = pickTimestamp(inColumns, _latestTree[2*node], _latestTree[2*node+1], false);
+			}
+			lo /= 2; hi /= 2;
+		}
+	}
+
+	/**
+	 * Choose between two point indices according to their timestamps
+	 * @param inColumns point columns of the track
+	 * @param inIndex1 first index, or -1
+	 * @param inIndex2 second index, or -1
+	 * @param inEarliest true to pick the earliest timestamp, false for the latest
+	 * @return chosen index, the lower one if the timestamps are equal
+	 */
+	private static int pickTimestamp(PointColumns inColumns, int inIndex1, int inIndex2, boolean inEarliest)
+	{
+		if (inIndex1 < 0) {return inIndex2;}
+		if (inIndex2 < 0) {return inIndex1;}
+		final long time1 = inColumns.getTimestamp(inIndex1), time2 = inColumns.getTimestamp(inIndex2);
+		final boolean pickSecond = inEarliest ? (time2 < time1) : (time2 > time1);
+		if (pickSecond || (time1 == time2 && inIndex2 < inIndex1)) {
+			return inIndex2;
+		}
+		return inIndex1;
+	}
+
+	/**
+	 * Query one of the timestamp trees
+	 * @param inTree tree to query
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @param inEarliest true for the earliest timestamp, false for the latest
+	 * @return index of the earliest or latest timestamped track point, or -1 if none
+	 */
+	private int queryTree(int[] inTree, int inStartIndex, int inEndIndex, boolean inEarliest)
+	{
+		final PointColumns columns = _track.getColumns();
+		int result = -1;
+		for (int lo=inStartIndex + _treeSize, hi=inEndIndex + _treeSize + 1; lo < hi; lo /= 2, hi /= 2)
+		{
+			if ((lo & 1) == 1) {
+				result = pickTimestamp(columns, result, inTree[lo++], inEarliest);
+			}
+			if ((hi & 1) == 1) {
+				result = pickTimestamp(columns, result, inTree[--hi], inEarliest);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return index of the first track point in the range, or -1 if none
+	 */
+	private int getFirstTrackPoint(int inStartIndex, int inEndIndex)
+	{
+		final int index = _track.getColumns().getNextTrackPointIndex(inStartIndex);
+		return (index <= inEndIndex ? index : -1);
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return total distance between the track points in the range, in radians
+	 */
+	public double getTotalRadians(int inStartIndex, int inEndIndex)
+	{
+		final int first = getFirstTrackPoint(inStartIndex, inEndIndex);
+		return first < 0 ? 0.0 : _totalRadians[inEndIndex] - _totalRadians[first];
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return distance between the track points in the range ignoring segment gaps, in radians
+	 */
+	public double getMovingRadians(int inStartIndex, int inEndIndex)
+	{
+		final int first = getFirstTrackPoint(inStartIndex, inEndIndex);
+		return first < 0 ? 0.0 : _movingRadians[inEndIndex] - _movingRadians[first];
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return milliseconds between increasing timestamps of all points in the range, ignoring segment gaps
+	 */
+	public long getMovingMilliseconds(int inStartIndex, int inEndIndex)
+	{
+		final int first = _track.getColumns().getNextTimestampIndex(inStartIndex);
+		return (first < 0 || first > inEndIndex) ? 0L : _movingMillis[inEndIndex] - _movingMillis[first];
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return milliseconds between consecutive track points in the range, ignoring segment gaps
+	 */
+	public long getTrackMovingMilliseconds(int inStartIndex, int inEndIndex)
+	{
+		final int first = getFirstTrackPoint(inStartIndex, inEndIndex);
+		return first < 0 ? 0L : _trackMovingMillis[inEndIndex] - _trackMovingMillis[first];
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return true if any consecutive track points in the range have decreasing timestamps
+	 */
+	public boolean hasTimestampsOutOfSequence(int inStartIndex, int inEndIndex)
+	{
+		final int first = getFirstTrackPoint(inStartIndex, inEndIndex);
+		return first >= 0 && _numOutOfSequence[inEndIndex] > _numOutOfSequence[first];
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return number of track points starting a segment
+	 */
+	public int getNumSegments(int inStartIndex, int inEndIndex)
+	{
+		return _numSegments[inEndIndex] - (inStartIndex > 0 ? _numSegments[inStartIndex-1] : 0);
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return true if any track points in the range don't have timestamps
+	 */
+	public boolean hasTimestampsMissing(int inStartIndex, int inEndIndex)
+	{
+		return _numUntimed[inEndIndex] > (inStartIndex > 0 ? _numUntimed[inStartIndex-1] : 0);
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return index of the first track point with the earliest timestamp, or -1 if none
+	 */
+	public int getEarliestTimestampIndex(int inStartIndex, int inEndIndex)
+	{
+		return queryTree(_earliestTree, inStartIndex, inEndIndex, true);
+	}
+
+	/**
+	 * @param inStartIndex start of range
+	 * @param inEndIndex end of range (inclusive)
+	 * @return index of the first track point with the latest timestamp, or -1 if none
+	 */
+	public int getLatestTimestampIndex(int inStartIndex, int inEndIndex)
+	{
+		return queryTree(_latestTree, inStartIndex, inEndIndex, false);
+	}
+}
@@ -27,6 +27,10 @@ public class DataPoint
 	private boolean _markedForDeletion = false;
 	private int _modifyCount = 0;
 
+	/** Shared objects for points without speeds or timestamps, to save memory for large tracks */
+	private static final Speed NO_SPEED = new Speed(0.0, null);
+	private static final Timestamp NO_TIMESTAMP = new TimestampUtc(null);
+
 
 	/**
 	 * Constructor
@@ -71,17 +75,19 @@ public class DataPoint
 		}
 		if (inField == null || inField == Field.SPEED)
 		{
-			_hSpeed = new Speed(getFieldValue(Field.SPEED), inOptions.getSpeedUnits());
+			_hSpeed = makeSpeed(getFieldValue(Field.SPEED), inOptions.getSpeedUnits());
 		}
 		if (inField == null || inField == Field.VERTICAL_SPEED)
 		{
-			_vSpeed = new Speed(getFieldValue(Field.VERTICAL_SPEED), inOptions.getVerticalSpeedUnits());
+			_vSpeed = makeSpeed(getFieldValue(Field.VERTICAL_SPEED), inOptions.getVerticalSpeedUnits());
 			if (!inOptions.getVerticalSpeedsUpwards()) {
 				_vSpeed.invert();
 			}
 		}
-		if (inField == null || inField == Field.TIMESTAMP) {
-			_timestamp = new TimestampUtc(getFieldValue(Field.TIMESTAMP));
+		if (inField == null || inField == Field.TIMESTAMP)
+		{
+			String timeStr = getFieldValue(Field.TIMESTAMP);
+			_timestamp = (timeStr == null || timeStr.equals("")) ? NO_TIMESTAMP : new TimestampUtc(timeStr);
 		}
 		if (inField == null || inField == Field.WAYPT_NAME) {
 			_waypointName = getFieldValue(Field.WAYPT_NAME);
@@ -118,7 +124,22 @@ public class DataPoint
 			_altitude = inAltitude;
 			_fieldValues[2] = "" + inAltitude.getValue();
 		}
-		_timestamp = new TimestampUtc(null);
+		_timestamp = NO_TIMESTAMP;
+	}
+
+	/**
+	 * Make a Speed object from the given value, sharing an invalid one if there's no value
+	 * @param inValue value as string, or null
+	 * @param inUnit speed unit
+	 * @return Speed object
+	 */
+	private static Speed makeSpeed(String inValue, Unit inUnit)
+	{
+		if (inValue == null || inValue.equals("")) {
+			return NO_SPEED;
+		}
+		Speed speed = new Speed(inValue, inUnit);
+		return speed.isValid() ? speed : NO_SPEED;
 	}
 
 
@@ -510,12 +531,26 @@ public class DataPoint
 	{
 		if (inPoint1 == null || inPoint2 == null)
 			return 0.0;
+		return calculateRadiansBetween(inPoint1.getLatitude().getDouble(), inPoint1.getLongitude().getDouble(),
+			inPoint2.getLatitude().getDouble(), inPoint2.getLongitude().getDouble());
+	}
+
+	/**
+	 * Calculate the number of radians between two positions
+	 * @param inLatitude1 latitude of first position in degrees
+	 * @param inLongitude1 longitude of first position in degrees
+	 * @param inLatitude2 latitude of second position in degrees
+	 * @param inLongitude2 longitude of second position in degrees
+	 * @return angular distance between positions in radians
+	 */
+	public static double calculateRadiansBetween(double inLatitude1, double inLongitude1,
+		double inLatitude2, double inLongitude2)
+	{
 		final double TO_RADIANS = Math.PI / 180.0;
-		// Get lat and long from points
-		double lat1 = inPoint1.getLatitude().getDouble() * TO_RADIANS;
-		double lat2 = inPoint2.getLatitude().getDouble() * TO_RADIANS;
-		double lon1 = inPoint1.getLongitude().getDouble() * TO_RADIANS;
-		double lon2 = inPoint2.getLongitude().getDouble() * TO_RADIANS;
+		double lat1 = inLatitude1 * TO_RADIANS;
+		double lat2 = inLatitude2 * TO_RADIANS;
+		double lon1 = inLongitude1 * TO_RADIANS;
+		double lon2 = inLongitude2 * TO_RADIANS;
 		// Formula given by Wikipedia:Great-circle_distance as follows:
 		// angle = 2 arcsin( sqrt( (sin ((lat2-lat1)/2))^^2 + cos(lat1)cos(lat2)(sin((lon2-lon1)/2))^^2))
 		double firstSine = Math.sin((lat2-lat1) / 2.0);
@@ -558,12 +593,12 @@ public class DataPoint
 		}
 		// Make new object to hold cloned data
 		DataPoint point = new DataPoint(valuesCopy, _fieldList, options);
-		// Copy the speed information
+		// Copy the speed information (using new objects, as the clone's may be shared)
 		if (hasHSpeed()) {
-			point.getHSpeed().copyFrom(_hSpeed);
+			point._hSpeed = new Speed(_hSpeed.getValue(), _hSpeed.getUnit());
 		}
 		if (hasVSpeed()) {
-			point.getVSpeed().copyFrom(_vSpeed);
+			point._vSpeed = new Speed(_vSpeed.getValue(), _vSpeed.getUnit());
 		}
 		return point;
 	}
@@ -0,0 +1,491 @@
+package tim.prune.data;
+
+import tim.prune.config.Config;
+
+/**
+ * Class to hold the speed, vertical speed and gradient of every point in a track,
+ * calculated together in a single pass instead of searching around each point separately.
+ * The speed windows never extend past a segment start, so after an edit only
+ * the segments around the changed points are calculated again.
+ * Segments with missing or unsorted timestamps are left to the SpeedCalculator.
+ */
+public class DerivedSeries
+{
+	/** Track for which the values are calculated */
+	private Track _track = null;
+	/** Number of points in the arrays */
+	private int _numPoints = 0;
+	/** Values for each point, in the current units */
+	private double[] _speeds = null, _vertSpeeds = null, _gradients = null;
+	/** Flags for whether each value is valid */
+	private boolean[] _hasSpeed = null, _hasVertSpeed = null, _hasGradient = null;
+	/** Unit set used to calculate the speeds */
+	private UnitSet _unitSet = null;
+	/** Range of points which have changed, or -1 if none */
+	private int _dirtyStart = -1, _dirtyEnd = -1;
+
+	/** Minimum time range for speed calculations, as used by the SpeedCalculator */
+	private static final long MIN_TIME_DIFFERENCE_MS = 1000L;
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track object
+	 */
+	public DerivedSeries(Track inTrack)
+	{
+		_track = inTrack;
+	}
+
+	/**
+	 * Mark the values of the given range of points as invalid
+	 * @param inStart index of first changed point
+	 * @param inEnd index of last changed point
+	 */
+	public void pointsChanged(int inStart, int inEnd)
+	{
+		if (_dirtyStart < 0)
+		{
+			_dirtyStart = inStart;
+			_dirtyEnd = inEnd;
+		}
+		else
+		{
+			_dirtyStart = Math.min(_dirtyStart, inStart);
+			_dirtyEnd = Math.max(_dirtyEnd, inEnd);
+		}
+	}
+
+	/**
+	 * Make space for inserted points, and mark them as changed
+	 * @param inIndex index of first inserted point
+	 * @param inNumInserted number of points inserted
+	 */
+	public void pointsInserted(int inIndex, int inNumInserted)
+	{
+		if (_speeds == null) {return;}
+		final int newNumPoints = _numPoints + inNumInserted;
+		if (newNumPoints > _speeds.length) {
+			resizeArrays(newNumPoints + newNumPoints / 8 + 16);
+		}
+		final int numToMove = _numPoints - inIndex;
+		final int newIndex = inIndex + inNumInserted;
+		System.arraycopy(_speeds, inIndex, _speeds, newIndex, numToMove);
+		System.arraycopy(_vertSpeeds, inIndex, _vertSpeeds, newIndex, numToMove);
+		System.arraycopy(_gradients, inIndex, _gradients, newIndex, numToMove);
+		System.arraycopy(_hasSpeed, inIndex, _hasSpeed, newIndex, numToMove);
+		System.arraycopy(_hasVertSpeed, inIndex, _hasVertSpeed, newIndex, numToMove);
+		System.arraycopy(_hasGradient, inIndex, _hasGradient, newIndex, numToMove);
+		_numPoints = newNumPoints;
+		if (_dirtyStart >= inIndex) {_dirtyStart += inNumInserted;}
+		if (_dirtyEnd >= inIndex) {_dirtyEnd += inNumInserted;}
+		pointsChanged(inIndex, newIndex - 1);
+	}
+
+	/**
+	 * Remove the values of deleted points, and mark their neighbours as changed
+	 * @param inStart index of first deleted point
+	 * @param inNumDeleted number of points deleted
+	 */
+	public void pointsDeleted(int inStart, int inNumDeleted)
+	{
+		if (_speeds == null) {return;}
+		final int numToMove = _numPoints - inStart - inNumDeleted;
+		final int oldIndex = inStart + inNumDeleted;
+		System.arraycopy(_speeds, oldIndex, _speeds, inStart, numToMove);
+		System.arraycopy(_vertSpeeds, oldIndex, _vertSpeeds, inStart, numToMove);
+		System.arraycopy(_gradients, oldIndex, _gradients, inStart, numToMove);
+		System.arraycopy(_hasSpeed, oldIndex, _hasSpeed, inStart, numToMove);
+		System.arraycopy(_hasVertSpeed, oldIndex, _hasVertSpeed, inStart, numToMove);
+		System.arraycopy(_hasGradient, oldIndex, _hasGradient, inStart, numToMove);
+		_numPoints -= inNumDeleted;
+		if (_dirtyStart >= 0)
+		{
+			_dirtyStart = getIndexAfterDelete(_dirtyStart, inStart, inNumDeleted);
+			_dirtyEnd = getIndexAfterDelete(_dirtyEnd, inStart, inNumDeleted);
+		}
+		pointsChanged(inStart, inStart);
+	}
+
+	/**
+	 * @return new index of the given point after a range has been deleted
+	 */
+	private static int getIndexAfterDelete(int inIndex, int inStart, int inNumDeleted)
+	{
+		if (inIndex < inStart) {return inIndex;}
+		return Math.max(inStart, inIndex - inNumDeleted);
+	}
+
+	/**
+	 * Recalculate any invalid values
+	 * @param inColumns point columns of the track
+	 */
+	public void update(PointColumns inColumns)
+	{
+		final int numPoints = _track.getNumPoints();
+		final UnitSet unitSet = Config.getUnitSet();
+		if (_speeds == null || _numPoints != numPoints || unitSet != _unitSet)
+		{
+			// Calculate everything again
+			if (_speeds == null || _speeds.length < numPoints) {
+				resizeArrays(numPoints);
+			}
+			_numPoints = numPoints;
+			_unitSet = unitSet;
+			_dirtyStart = 0;
+			_dirtyEnd = numPoints - 1;
+		}
+		if (_dirtyStart >= 0 && numPoints > 0)
+		{
+			final int start = getSegmentStartBefore(inColumns, Math.min(_dirtyStart, numPoints - 1));
+			final int end = getSegmentEndAfter(inColumns, Math.min(_dirtyEnd, numPoints - 1));
+			final double[] radians = calculateGradients(inColumns, start, end);
+			int segStart = start;
+			while (segStart <= end)
+			{
+				int segEnd = segStart + 1;
+				while (segEnd <= end && !inColumns.isSegmentStart(segEnd)) {
+					segEnd++;
+				}
+				calculateSpeeds(inColumns, segStart, segEnd - 1, radians, start);
+				segStart = segEnd;
+			}
+		}
+		_dirtyStart = _dirtyEnd = -1;
+	}
+
+	/**
+	 * Allocate new arrays, keeping the existing values
+	 * @param inCapacity new size of arrays
+	 */
+	private void resizeArrays(int inCapacity)
+	{
+		double[] speeds = new double[inCapacity], vertSpeeds = new double[inCapacity], gradients = new double[inCapacity];
+		boolean[] hasSpeed = new boolean[inCapacity], hasVertSpeed = new boolean[inCapacity],
+			hasGradient = new boolean[inCapacity];
+		if (_speeds != null)
+		{
+			System.arraycopy(_speeds, 0, speeds, 0, _numPoints);
+			System.arraycopy(_vertSpeeds, 0, vertSpeeds, 0, _numPoints);
+			System.arraycopy(_gradients, 0, gradients, 0, _numPoints);
+			System.arraycopy(_hasSpeed, 0, hasSpeed, 0, _numPoints);
+			System.arraycopy(_hasVertSpeed, 0, hasVertSpeed, 0, _numPoints);
+			System.arraycopy(_hasGradient, 0, hasGradient, 0, _numPoints);
+		}
+		_speeds = speeds;
+		_vertSpeeds = vertSpeeds;
+		_gradients = gradients;
+		_hasSpeed = hasSpeed;
+		_hasVertSpeed = hasVertSpeed;
+		_hasGradient = hasGradient;
+	}
+
+	/**
+	 * Find the start of the segment containing the track point before the given index,
+	 * as the values from there onwards may depend on the given point
+	 * @param inColumns point columns
+	 * @param inIndex index of changed point
+	 * @return index of segment start, or 0
+	 */
+	private int getSegmentStartBefore(PointColumns inColumns, int inIndex)
+	{
+		int i = inIndex - 1;
+		while (i >= 0 && !inColumns.isTrackPoint(i)) {
+			i--;
+		}
+		while (i > 0 && !inColumns.isSegmentStart(i)) {
+			i--;
+		}
+		return Math.max(i, 0);
+	}
+
+	/**
+	 * Find the end of the segment containing the track point after the given index,
+	 * as the values up to there may depend on the given point
+	 * @param inColumns point columns
+	 * @param inIndex index of changed point
+	 * @return index of last point before the next segment start, or of the last point
+	 */
+	private int getSegmentEndAfter(PointColumns inColumns, int inIndex)
+	{
+		int i = inIndex + 1;
+		while (i < _numPoints && !inColumns.isTrackPoint(i)) {
+			i++;
+		}
+		i++;
+		while (i < _numPoints && !inColumns.isSegmentStart(i)) {
+			i++;
+		}
+		return Math.min(i, _numPoints) - 1;
+	}
+
+	/**
+	 * Calculate the gradients of the given range of points, using the same rules as the GradientCalculator
+	 * @param inColumns point columns
+	 * @param inStart index of first point
+	 * @param inEnd index of last point
+	 * @return distance in radians of each track point in the range from the previous one
+	 */
+	private double[] calculateGradients(PointColumns inColumns, int inStart, int inEnd)
+	{
+		double[] result = new double[inEnd - inStart + 1];
+		SpeedValue value = new SpeedValue();
+		// Find the previous track point before the range, and the distance to the one before that
+		int prevIndex = inStart - 1;
+		while (prevIndex >= 0 && !inColumns.isTrackPoint(prevIndex)) {
+			prevIndex--;
+		}
+		int currIndex = -1;
+		double currRadians = 0.0;
+		for (int i=inStart; i<_numPoints; i++)
+		{
+			if (!inColumns.isTrackPoint(i))
+			{
+				if (i <= inEnd)
+				{
+					// Waypoints have no gradient, but other points may have speeds
+					GradientCalculator.calculateGradient(_track, i, value);
+					_hasGradient[i] = value.isValid();
+					_gradients[i] = value.getValue();
+				}
+				continue;
+			}
+			final double radians = (currIndex >= 0 || prevIndex >= 0) ?
+				DataPoint.calculateRadiansBetween(
+					inColumns.getLatitude(currIndex >= 0 ? currIndex : prevIndex),
+					inColumns.getLongitude(currIndex >= 0 ? currIndex : prevIndex),
+					inColumns.getLatitude(i), inColumns.getLongitude(i)) : 0.0;
+			// Now that the next track point is known, the current one can be calculated
+			if (currIndex >= 0) {
+				setGradient(inColumns, prevIndex, currIndex, i, currRadians, radians);
+			}
+			if (i > inEnd) {
+				return result;
+			}
+			result[i - inStart] = radians;
+			prevIndex = (currIndex >= 0 ? currIndex : prevIndex);
+			currIndex = i;
+			currRadians = radians;
+		}
+		// Last track point has no next point
+		if (currIndex >= 0) {
+			setGradient(inColumns, prevIndex, currIndex, -1, currRadians, 0.0);
+		}
+		return result;
+	}
+
+	/**
+	 * Set the gradient of a single track point
+	 * @param inColumns point columns
+	 * @param inPrevIndex index of previous track point, or -1
+	 * @param inIndex index of track point
+	 * @param inNextIndex index of next track point, or -1
+	 * @param inPrevRadians distance from previous track point
+	 * @param inNextRadians distance to next track point
+	 */
+	private void setGradient(PointColumns inColumns, int inPrevIndex, int inIndex, int inNextIndex,
+		double inPrevRadians, double inNextRadians)
+	{
+		_hasGradient[inIndex] = false;
+		_gradients[inIndex] = 0.0;
+		DataPoint point = _track.getPoint(inIndex);
+		if (!inColumns.hasAltitude(inIndex)) {return;}
+		if (point.hasHSpeed() && point.hasVSpeed())
+		{
+			_hasGradient[inIndex] = true;
+			_gradients[inIndex] = point.getVSpeed().getValueInMetresPerSec() / point.getHSpeed().getValueInMetresPerSec();
+		}
+		else if (!inColumns.isSegmentStart(inIndex) && inPrevIndex >= 0 && inNextIndex >= 0
+			&& !inColumns.isSegmentStart(inNextIndex)
+			&& inColumns.hasAltitude(inPrevIndex) && inColumns.hasAltitude(inNextIndex))
+		{
+			final double horizDist = Distance.convertRadiansToDistance(inPrevRadians + inNextRadians,
+				UnitSetLibrary.UNITS_METRES);
+			final double heightDiff = inColumns.getAltitude(inNextIndex) - inColumns.getAltitude(inPrevIndex);
+			_hasGradient[inIndex] = true;
+			_gradients[inIndex] = Math.atan2(heightDiff, horizDist);
+		}
+	}
+
+	/**
+	 * Calculate the speeds and vertical speeds of a single segment
+	 * @param inColumns point columns
+	 * @param inStart index of first point, either a segment start or the first point
+	 * @param inEnd index of last point before the next segment start
+	 * @param inRadians distance of each track point from the previous one
+	 * @param inRadiansStart index of the point corresponding to the start of the distance array
+	 */
+	private void calculateSpeeds(PointColumns inColumns, int inStart, int inEnd,
+		double[] inRadians, int inRadiansStart)
+	{
+		// Collect the track points, checking that their timestamps are in order
+		final int maxNumPoints = inEnd - inStart + 1;
+		int[] indices = new int[maxNumPoints];
+		long[] times = new long[maxNumPoints];
+		int numTrackPoints = 0;
+		boolean inOrder = true;
+		for (int i=inStart; i<=inEnd && inOrder; i++)
+		{
+			if (!inColumns.isValid(i)) {
+				inOrder = false;
+			}
+			else if (inColumns.isWaypoint(i))
+			{
+				// Waypoints with timestamps would stop the search for the time window
+				inOrder = (i == inStart || !inColumns.hasTimestamp(i));
+			}
+			else if (!inColumns.hasTimestamp(i)
+				|| (numTrackPoints > 0 && inColumns.getTimestamp(i) < times[numTrackPoints-1]))
+			{
+				inOrder = false;
+			}
+			else
+			{
+				indices[numTrackPoints] = i;
+				times[numTrackPoints] = inColumns.getTimestamp(i);
+				numTrackPoints++;
+			}
+		}
+		SpeedValue value = new SpeedValue();
+		if (!inOrder)
+		{
+			// Search around each point separately
+			for (int i=inStart; i<=inEnd; i++)
+			{
+				SpeedCalculator.calculateSpeed(_track, i, value);
+				_hasSpeed[i] = value.isValid();
+				_speeds[i] = value.getValue();
+				SpeedCalculator.calculateVerticalSpeed(_track, i, value);
+				_hasVertSpeed[i] = value.isValid();
+				_vertSpeeds[i] = value.getValue();
+			}
+			return;
+		}
+		// Waypoints and points with their own speeds don't need the time windows
+		for (int i=inStart; i<=inEnd; i++)
+		{
+			_hasSpeed[i] = _hasVertSpeed[i] = false;
+			DataPoint point = _track.getPoint(i);
+			if (inColumns.isWaypoint(i) || point.hasHSpeed())
+			{
+				SpeedCalculator.calculateSpeed(_track, i, value);
+				_hasSpeed[i] = value.isValid();
+				_speeds[i] = value.getValue();
+			}
+			if (inColumns.isWaypoint(i) || point.hasVSpeed())
+			{
+				SpeedCalculator.calculateVerticalSpeed(_track, i, value);
+				_hasVertSpeed[i] = value.isValid();
+				_vertSpeeds[i] = value.getValue();
+			}
+		}
+		if (numTrackPoints == 0) {return;}
+		// Cumulative distances, and the nearest track points with altitudes
+		double[] cumulativeRadians = new double[numTrackPoints];
+		int[] nextWithAltitude = new int[numTrackPoints], prevWithAltitude = new int[numTrackPoints];
+		for (int p=0; p<numTrackPoints; p++)
+		{
+			if (p > 0)
+			{
+				// all the points are valid, so the previous track point is the previous one in the segment
+				cumulativeRadians[p] = cumulativeRadians[p-1] + inRadians[indices[p] - inRadiansStart];
+			}
+			prevWithAltitude[p] = inColumns.hasAltitude(indices[p]) ? p : (p > 0 ? prevWithAltitude[p-1] : -1);
+		}
+		for (int p=numTrackPoints-1; p>=0; p--) {
+			nextWithAltitude[p] = inColumns.hasAltitude(indices[p]) ? p : (p < numTrackPoints-1 ? nextWithAltitude[p+1] : numTrackPoints);
+		}
+		final double vertSpeedFactor = _unitSet.getVerticalSpeedUnit().getMultFactorFromStd();
+
+		// Move the window edges along with the current point
+		int earlyPos = -1, equalPos = 0, latePos = 1;
+		for (int p=0; p<numTrackPoints; p++)
+		{
+			final long time = times[p];
+			// Last point at least a second earlier, or the first point if there isn't one
+			while (earlyPos + 1 < p && time - times[earlyPos + 1] >= MIN_TIME_DIFFERENCE_MS) {
+				earlyPos++;
+			}
+			final int firstPos = Math.max(earlyPos, 0);
+			// First point with the same time, as earlier points must be strictly before
+			while (times[equalPos] < time) {
+				equalPos++;
+			}
+			// First point at least a second later, or the last point if there isn't one
+			latePos = Math.max(latePos, p + 1);
+			while (latePos < numTrackPoints && times[latePos] - time < MIN_TIME_DIFFERENCE_MS) {
+				latePos++;
+			}
+			final int lastPos = Math.min(latePos, numTrackPoints - 1);
+
+			final boolean hasEarlier = firstPos < equalPos;
+			final long milliseconds = (lastPos > p ? times[lastPos] : time) - (hasEarlier ? times[firstPos] : time);
+			if (milliseconds < MIN_TIME_DIFFERENCE_MS) {
+				continue;
+			}
+			final int index = indices[p];
+			DataPoint point = _track.getPoint(index);
+			if (!point.hasHSpeed())
+			{
+				double totalRadians = cumulativeRadians[lastPos] - cumulativeRadians[p];
+				if (hasEarlier) {
+					totalRadians += cumulativeRadians[equalPos] - cumulativeRadians[firstPos];
+				}
+				final double dist = Distance.convertRadiansToDistance(totalRadians);
+				_hasSpeed[index] = true;
+				_speeds[index] = dist / milliseconds * 1000.0 * 60.0 * 60.0; // convert from per millisec to per hour
+			}
+			if (!point.hasVSpeed() && inColumns.hasAltitude(index))
+			{
+				final int firstAltPos = (hasEarlier && nextWithAltitude[firstPos] < equalPos) ? nextWithAltitude[firstPos] : p;
+				final int lastAltPos = (prevWithAltitude[lastPos] > p) ? prevWithAltitude[lastPos] : p;
+				final double altDiff = (inColumns.getAltitude(indices[lastAltPos]) - inColumns.getAltitude(indices[firstAltPos]))
+					* vertSpeedFactor;
+				_hasVertSpeed[index] = true;
+				_vertSpeeds[index] = altDiff / milliseconds * 1000.0; // units are feet/sec or metres/sec
+			}
+		}
+	}
+
+	/**
+	 * @param inIndex point index
+	 * @param inValue object in which to place the horizontal speed
+	 */
+	public void getSpeed(int inIndex, SpeedValue inValue)
+	{
+		if (_hasSpeed[inIndex]) {
+			inValue.setValue(_speeds[inIndex]);
+		}
+		else {
+			inValue.setInvalid();
+		}
+	}
+
+	/**
+	 * @param inIndex point index
+	 * @param inValue object in which to place the vertical speed
+	 */
+	public void getVerticalSpeed(int inIndex, SpeedValue inValue)
+	{
+		if (_hasVertSpeed[inIndex]) {
+			inValue.setValue(_vertSpeeds[inIndex]);
+		}
+		else {
+			inValue.setInvalid();
+		}
+	}
+
+	/**
+	 * @param inIndex point index
+	 * @param inValue object in which to place the gradient
+	 */
+	public void getGradient(int inIndex, SpeedValue inValue)
+	{
+		if (_hasGradient[inIndex]) {
+			inValue.setValue(_gradients[inIndex]);
+		}
+		else {
+			inValue.setInvalid();
+		}
+	}
+}
@@ -38,13 +38,33 @@ public class LatLonRectangle
 	 */
 	public boolean containsPoint(DataPoint inPoint)
 	{
-		if (inPoint != null && !isEmpty())
+		if (inPoint != null)
 		{
-			double pointLat = inPoint.getLatitude().getDouble();
-			double pointLon = inPoint.getLongitude().getDouble();
-			return (pointLat >= _latRange.getMinimum() && pointLat <= _latRange.getMaximum()
-				&& pointLon >= _lonRange.getMinimum() && pointLon <= _lonRange.getMaximum());
+			return containsPoint(inPoint.getLatitude().getDouble(), inPoint.getLongitude().getDouble());
 		}
 		return false;
 	}
+
+	/**
+	 * Check if a position is within the rectangle
+	 * @param inLatitude latitude in degrees
+	 * @param inLongitude longitude in degrees
+	 * @return true if position within rectangle
+	 */
+	public boolean containsPoint(double inLatitude, double inLongitude)
+	{
+		return !isEmpty()
+			&& inLatitude >= _latRange.getMinimum() && inLatitude <= _latRange.getMaximum()
+			&& inLongitude >= _lonRange.getMinimum() && inLongitude <= _lonRange.getMaximum();
+	}
+
+	/** @return latitude range */
+	public DoubleRange getLatRange() {
+		return _latRange;
+	}
+
+	/** @return longitude range */
+	public DoubleRange getLonRange() {
+		return _lonRange;
+	}
 }
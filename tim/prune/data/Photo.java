@@ -1,8 +1,14 @@
 package tim.prune.data;
 
 import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.ImageIcon;
 
 /**
@@ -41,10 +47,13 @@ public class Photo extends MediaObject
 	}
 
 	/**
-	 * Calculate the size of the image (slow)
+	 * Calculate the size of the image, from the image header if possible
 	 */
 	private void calculateSize()
 	{
+		_size = readSizeFromHeader();
+		if (_size != null) {return;}
+		// Couldn't read header, so need to load the whole image (slow)
 		ImageIcon icon = null;
 		if (_file != null)
 			icon = new ImageIcon(_file.getAbsolutePath());
@@ -58,6 +67,42 @@ public class Photo extends MediaObject
 		}
 	}
 
+	/**
+	 * @return size of image read from the image header without decoding it, or null if not possible
+	 */
+	private Dimension readSizeFromHeader()
+	{
+		ImageInputStream stream = null;
+		ImageReader reader = null;
+		try
+		{
+			if (_file != null)
+				stream = ImageIO.createImageInputStream(_file);
+			else
+				stream = ImageIO.createImageInputStream(new ByteArrayInputStream(_data));
+			Iterator<ImageReader> readers = (stream == null ? null : ImageIO.getImageReaders(stream));
+			if (readers != null && readers.hasNext())
+			{
+				reader = readers.next();
+				reader.setInput(stream, true, true);
+				final int width = reader.getWidth(0), height = reader.getHeight(0);
+				if (width > 0 && height > 0) {
+					return new Dimension(width, height);
+				}
+			}
+		}
+		catch (Exception e) {} // ignore, size stays unknown
+		finally
+		{
+			if (reader != null) {reader.dispose();}
+			try {
+				if (stream != null) stream.close();
+			}
+			catch (IOException e) {} // ignore
+		}
+		return null;
+	}
+
 	/**
 	 * @return size of image as Dimension object
 	 */
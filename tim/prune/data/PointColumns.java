@@ -0,0 +1,281 @@
+package tim.prune.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class to hold the numeric values of all the points in a track
+ * in parallel primitive arrays, so that bulk calculations over large
+ * tracks don't have to dereference every DataPoint and its value objects.
+ * Segment flags are changed directly on the points, so the Track refreshes them here
+ * whenever it's told about such a change.
+ * The altitude and timestamp columns are only allocated once a point has a value,
+ * so tracks without them don't pay for the extra copies.
+ */
+public class PointColumns
+{
+	/** Number of points held */
+	private int _numPoints = 0;
+	/** Latitudes and longitudes in degrees */
+	private double[] _latitudes = null, _longitudes = null;
+	/** Altitudes in metres, NaN if not present, or null if no point has an altitude */
+	private double[] _altitudes = null;
+	/** Timestamps in milliseconds, only meaningful if flag is set, or null if no point has a timestamp */
+	private long[] _timestamps = null;
+	/** Flags for each point */
+	private BitSet _validFlags = null, _waypointFlags = null, _timestampFlags = null, _segmentFlags = null;
+
+
+	/**
+	 * Constructor
+	 * @param inPoints array of points
+	 * @param inNumPoints number of points to use from the array
+	 */
+	public PointColumns(DataPoint[] inPoints, int inNumPoints)
+	{
+		_numPoints = inNumPoints;
+		_latitudes = new double[inNumPoints];
+		_longitudes = new double[inNumPoints];
+		_validFlags = new BitSet(inNumPoints);
+		_waypointFlags = new BitSet(inNumPoints);
+		_timestampFlags = new BitSet(inNumPoints);
+		_segmentFlags = new BitSet(inNumPoints);
+		for (int i=0; i<inNumPoints; i++) {
+			setPoint(i, inPoints[i]);
+		}
+	}
+
+	/**
+	 * Copy the values from the given point into the columns
+	 * @param inIndex point index
+	 * @param inPoint point to copy, may be null
+	 */
+	public void setPoint(int inIndex, DataPoint inPoint)
+	{
+		final boolean valid = (inPoint != null && inPoint.isValid());
+		_validFlags.set(inIndex, valid);
+		if (!valid)
+		{
+			_latitudes[inIndex] = _longitudes[inIndex] = 0.0;
+			if (_altitudes != null) {_altitudes[inIndex] = Double.NaN;}
+			_waypointFlags.clear(inIndex);
+			_timestampFlags.clear(inIndex);
+			_segmentFlags.set(inIndex, inPoint != null && inPoint.getSegmentStart());
+			return;
+		}
+		_latitudes[inIndex] = inPoint.getLatitude().getDouble();
+		_longitudes[inIndex] = inPoint.getLongitude().getDouble();
+		if (inPoint.hasAltitude())
+		{
+			if (_altitudes == null)
+			{
+				_altitudes = new double[_latitudes.length];
+				Arrays.fill(_altitudes, Double.NaN);
+			}
+			_altitudes[inIndex] = inPoint.getAltitude().getMetricValue();
+		}
+		else if (_altitudes != null) {
+			_altitudes[inIndex] = Double.NaN;
+		}
+		final boolean hasTime = inPoint.hasTimestamp();
+		if (hasTime)
+		{
+			if (_timestamps == null) {
+				_timestamps = new long[_latitudes.length];
+			}
+			_timestamps[inIndex] = inPoint.getTimestamp().getMilliseconds(null);
+		}
+		_timestampFlags.set(inIndex, hasTime);
+		_waypointFlags.set(inIndex, inPoint.isWaypoint());
+		_segmentFlags.set(inIndex, inPoint.getSegmentStart());
+	}
+
+	/**
+	 * Copy the segment start flags from the given points
+	 * @param inPoints the track's point array
+	 * @param inStart index of first point to copy
+	 * @param inEnd index of last point to copy
+	 */
+	public void setSegmentStarts(DataPoint[] inPoints, int inStart, int inEnd)
+	{
+		for (int i=inStart; i<=inEnd; i++) {
+			_segmentFlags.set(i, inPoints[i] != null && inPoints[i].getSegmentStart());
+		}
+	}
+
+	/**
+	 * Make space for the given number of points at the given index, and fill them
+	 * @param inIndex index of first inserted point
+	 * @param inPoints the track's point array, already containing the inserted points
+	 * @param inNumInserted number of points inserted
+	 */
+	public void insertPoints(int inIndex, DataPoint[] inPoints, int inNumInserted)
+	{
+		final int newNumPoints = _numPoints + inNumInserted;
+		if (newNumPoints > _latitudes.length)
+		{
+			// Grow the arrays with some headroom for further insertions
+			final int capacity = Math.max(newNumPoints, _latitudes.length + _latitudes.length / 2);
+			_latitudes = resize(_latitudes, capacity);
+			_longitudes = resize(_longitudes, capacity);
+			if (_altitudes != null) {
+				_altitudes = resize(_altitudes, capacity);
+			}
+			if (_timestamps != null) {
+				_timestamps = Arrays.copyOf(_timestamps, capacity);
+			}
+		}
+		final int numToMove = _numPoints - inIndex;
+		System.arraycopy(_latitudes, inIndex, _latitudes, inIndex + inNumInserted, numToMove);
+		System.arraycopy(_longitudes, inIndex, _longitudes, inIndex + inNumInserted, numToMove);
+		if (_altitudes != null) {
+			System.arraycopy(_altitudes, inIndex, _altitudes, inIndex + inNumInserted, numToMove);
+		}
+		if (_timestamps != null) {
+			System.arraycopy(_timestamps, inIndex, _timestamps, inIndex + inNumInserted, numToMove);
+		}
+		_validFlags = shiftBits(_validFlags, inIndex, inNumInserted);
+		_waypointFlags = shiftBits(_waypointFlags, inIndex, inNumInserted);
+		_timestampFlags = shiftBits(_timestampFlags, inIndex, inNumInserted);
+		_segmentFlags = shiftBits(_segmentFlags, inIndex, inNumInserted);
+		_numPoints = newNumPoints;
+		for (int i=0; i<inNumInserted; i++) {
+			setPoint(inIndex + i, inPoints[inIndex + i]);
+		}
+	}
+
+	/**
+	 * Remove the given range of points
+	 * @param inStart index of first point to remove
+	 * @param inNumDeleted number of points to remove
+	 */
+	public void deletePoints(int inStart, int inNumDeleted)
+	{
+		final int numToMove = _numPoints - inStart - inNumDeleted;
+		System.arraycopy(_latitudes, inStart + inNumDeleted, _latitudes, inStart, numToMove);
+		System.arraycopy(_longitudes, inStart + inNumDeleted, _longitudes, inStart, numToMove);
+		if (_altitudes != null) {
+			System.arraycopy(_altitudes, inStart + inNumDeleted, _altitudes, inStart, numToMove);
+		}
+		if (_timestamps != null) {
+			System.arraycopy(_timestamps, inStart + inNumDeleted, _timestamps, inStart, numToMove);
+		}
+		_validFlags = shiftBits(_validFlags, inStart, -inNumDeleted);
+		_waypointFlags = shiftBits(_waypointFlags, inStart, -inNumDeleted);
+		_timestampFlags = shiftBits(_timestampFlags, inStart, -inNumDeleted);
+		_segmentFlags = shiftBits(_segmentFlags, inStart, -inNumDeleted);
+		_numPoints -= inNumDeleted;
+	}
+
+	/**
+	 * Copy the given array into a bigger one
+	 * @param inArray array to copy
+	 * @param inCapacity new size
+	 * @return new array
+	 */
+	private double[] resize(double[] inArray, int inCapacity)
+	{
+		double[] result = new double[inCapacity];
+		System.arraycopy(inArray, 0, result, 0, _numPoints);
+		return result;
+	}
+
+	/**
+	 * Shift the bits from the given index onwards
+	 * @param inBits bits to shift
+	 * @param inIndex index of first bit to move (for insertions) or to remove (for deletions)
+	 * @param inShift number of places to shift, negative to remove bits
+	 * @return shifted bits
+	 */
+	private BitSet shiftBits(BitSet inBits, int inIndex, int inShift)
+	{
+		final int fromIndex = (inShift < 0 ? inIndex - inShift : inIndex);
+		BitSet result = inBits.get(0, inIndex);
+		for (int i = inBits.nextSetBit(fromIndex); i >= 0 && i < _numPoints; i = inBits.nextSetBit(i+1)) {
+			result.set(i + inShift);
+		}
+		return result;
+	}
+
+	/** @return number of points */
+	public int getNumPoints() {
+		return _numPoints;
+	}
+
+	/** @return latitude in degrees of the given point */
+	public double getLatitude(int inIndex) {
+		return _latitudes[inIndex];
+	}
+
+	/** @return longitude in degrees of the given point */
+	public double getLongitude(int inIndex) {
+		return _longitudes[inIndex];
+	}
+
+	/** @return true if the given point has an altitude */
+	public boolean hasAltitude(int inIndex) {
+		return _altitudes != null && !Double.isNaN(_altitudes[inIndex]);
+	}
+
+	/** @return altitude in metres of the given point, or NaN */
+	public double getAltitude(int inIndex) {
+		return _altitudes == null ? Double.NaN : _altitudes[inIndex];
+	}
+
+	/** @return true if the given point has a timestamp */
+	public boolean hasTimestamp(int inIndex) {
+		return _timestampFlags.get(inIndex);
+	}
+
+	/** @return timestamp in milliseconds of the given point */
+	public long getTimestamp(int inIndex) {
+		return _timestamps == null ? 0L : _timestamps[inIndex];
+	}
+
+	/** @return true if the given point is valid */
+	public boolean isValid(int inIndex) {
+		return _validFlags.get(inIndex);
+	}
+
+	/** @return true if the given point is a waypoint */
+	public boolean isWaypoint(int inIndex) {
+		return _waypointFlags.get(inIndex);
+	}
+
+	/** @return true if the given point starts a new segment */
+	public boolean isSegmentStart(int inIndex) {
+		return _segmentFlags.get(inIndex);
+	}
+
+	/** @return index of the first point which isn't a waypoint, starting from the given index */
+	public int getNextTrackPointIndex(int inIndex)
+	{
+		final int index = _waypointFlags.nextClearBit(inIndex);
+		return (index < _numPoints ? index : -1);
+	}
+
+	/** @return index of the first point with a timestamp, starting from the given index, or -1 */
+	public int getNextTimestampIndex(int inIndex)
+	{
+		final int index = _timestampFlags.nextSetBit(inIndex);
+		return (index < _numPoints ? index : -1);
+	}
+
+	/** @return true if the given point is a valid track point */
+	public boolean isTrackPoint(int inIndex) {
+		return _validFlags.get(inIndex) && !_waypointFlags.get(inIndex);
+	}
+
+	/** @return true if any of the points is a waypoint */
+	public boolean hasWaypoints() {
+		return !_waypointFlags.isEmpty();
+	}
+
+	/** @return true if any of the points is a valid track point */
+	public boolean hasTrackPoints()
+	{
+		BitSet trackPoints = (BitSet) _validFlags.clone();
+		trackPoints.andNot(_waypointFlags);
+		return !trackPoints.isEmpty();
+	}
+}
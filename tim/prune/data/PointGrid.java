@@ -0,0 +1,460 @@
+package tim.prune.data;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index over the scaled x and y values of a track,
+ * dividing the extent of the points into a regular grid of cells
+ * so that nearest-point and rectangle queries only need to look
+ * at the points in the cells around the query position.
+ * The grid can be updated when points are inserted, deleted or changed,
+ * keeping the cell layout from when it was built
+ */
+public class PointGrid
+{
+	/** Scaled x and y values, shared with the Track */
+	private double[] _xValues = null, _yValues = null;
+	/** Number of points covered by the grid */
+	private int _numPoints = 0;
+	/** Number of points when the grid was built */
+	private int _numPointsBuilt = 0;
+	/** Minimum and maximum x and y values */
+	private double _minX = 0.0, _minY = 0.0, _maxX = 0.0, _maxY = 0.0;
+	/** Size of each cell */
+	private double _cellWidth = 0.0, _cellHeight = 0.0;
+	/** Number of cells in each direction */
+	private int _numCellsX = 1, _numCellsY = 1;
+	/** Start position of each cell in the index array, plus one extra entry for the end */
+	private int[] _cellStarts = null;
+	/** Point indices sorted by cell, ascending within each cell */
+	private int[] _pointIndices = null;
+	/** Indices of points which couldn't be put in the grid (eg at the poles) */
+	private int[] _outsidePoints = null;
+
+	/** Average number of points per cell to aim for */
+	private static final int POINTS_PER_CELL = 4;
+	/** Maximum number of cells in each direction */
+	private static final int MAX_CELLS = 2048;
+	/** Number of points outside the grid which are allowed before it should be rebuilt */
+	private static final int MAX_OUTSIDE_POINTS = 64;
+
+
+	/**
+	 * Constructor
+	 * @param inXValues array of scaled x values
+	 * @param inYValues array of scaled y values
+	 * @param inNumPoints number of points to index
+	 */
+	public PointGrid(double[] inXValues, double[] inYValues, int inNumPoints)
+	{
+		_xValues = inXValues;
+		_yValues = inYValues;
+		_numPoints = inNumPoints;
+		_numPointsBuilt = inNumPoints;
+		// Find the extent of the finite values
+		DoubleRange xRange = new DoubleRange(), yRange = new DoubleRange();
+		int numOutside = 0;
+		for (int i=0; i<inNumPoints; i++)
+		{
+			if (isFinite(i))
+			{
+				xRange.addValue(inXValues[i]);
+				yRange.addValue(inYValues[i]);
+			}
+			else {
+				numOutside++;
+			}
+		}
+		_minX = xRange.getMinimum();
+		_minY = yRange.getMinimum();
+		_maxX = xRange.getMaximum();
+		_maxY = yRange.getMaximum();
+		// Choose the number of cells in each direction according to the shape of the extent
+		final int numCells = Math.max(1, (inNumPoints - numOutside) / POINTS_PER_CELL);
+		final double width = xRange.getRange(), height = yRange.getRange();
+		if (width > 0.0 && height > 0.0)
+		{
+			final double aspect = width / height;
+			_numCellsX = (int) Math.ceil(Math.sqrt(numCells * aspect));
+			_numCellsY = (int) Math.ceil(Math.sqrt(numCells / aspect));
+		}
+		else if (width > 0.0) {
+			_numCellsX = numCells;
+		}
+		else if (height > 0.0) {
+			_numCellsY = numCells;
+		}
+		_numCellsX = Math.max(1, Math.min(_numCellsX, MAX_CELLS));
+		_numCellsY = Math.max(1, Math.min(_numCellsY, MAX_CELLS));
+		_cellWidth = width / _numCellsX;
+		_cellHeight = height / _numCellsY;
+
+		// Count the points in each cell
+		_cellStarts = new int[_numCellsX * _numCellsY + 1];
+		_outsidePoints = new int[numOutside];
+		for (int i=0; i<inNumPoints; i++)
+		{
+			if (isFinite(i)) {
+				_cellStarts[getCellIndex(i) + 1]++;
+			}
+		}
+		for (int c=1; c<_cellStarts.length; c++) {
+			_cellStarts[c] += _cellStarts[c-1];
+		}
+		// Fill the point indices, keeping them in ascending order within each cell
+		_pointIndices = new int[inNumPoints - numOutside];
+		int[] fillPositions = new int[_cellStarts.length - 1];
+		System.arraycopy(_cellStarts, 0, fillPositions, 0, fillPositions.length);
+		numOutside = 0;
+		for (int i=0; i<inNumPoints; i++)
+		{
+			if (isFinite(i)) {
+				_pointIndices[fillPositions[getCellIndex(i)]++] = i;
+			}
+			else {
+				_outsidePoints[numOutside++] = i;
+			}
+		}
+	}
+
+	/**
+	 * @param inIndex point index
+	 * @return true if the point's scaled values are finite
+	 */
+	private boolean isFinite(int inIndex)
+	{
+		final double x = _xValues[inIndex], y = _yValues[inIndex];
+		return !Double.isNaN(x) && !Double.isInfinite(x) && !Double.isNaN(y) && !Double.isInfinite(y);
+	}
+
+	/**
+	 * @param inIndex point index
+	 * @return true if the point lies within the extent of the grid
+	 */
+	private boolean isInGrid(int inIndex)
+	{
+		final double x = _xValues[inIndex], y = _yValues[inIndex];
+		return x >= _minX && x <= _maxX && y >= _minY && y <= _maxY;
+	}
+
+	/**
+	 * @param inValue scaled x value
+	 * @return column of the cell, clamped to the grid
+	 */
+	private int getColumn(double inValue)
+	{
+		if (_cellWidth <= 0.0) {return 0;}
+		return clamp((int) Math.floor((inValue - _minX) / _cellWidth), _numCellsX);
+	}
+
+	/**
+	 * @param inValue scaled y value
+	 * @return row of the cell, clamped to the grid
+	 */
+	private int getRow(double inValue)
+	{
+		if (_cellHeight <= 0.0) {return 0;}
+		return clamp((int) Math.floor((inValue - _minY) / _cellHeight), _numCellsY);
+	}
+
+	/**
+	 * @param inPointIndex point index
+	 * @return index of the cell containing this point
+	 */
+	private int getCellIndex(int inPointIndex)
+	{
+		return getRow(_yValues[inPointIndex]) * _numCellsX + getColumn(_xValues[inPointIndex]);
+	}
+
+	/**
+	 * Clamp the given cell number to the allowed range
+	 * @param inValue cell number
+	 * @param inNumCells number of cells
+	 * @return clamped value between 0 and inNumCells-1
+	 */
+	private static int clamp(int inValue, int inNumCells)
+	{
+		if (inValue < 0) {return 0;}
+		if (inValue >= inNumCells) {return inNumCells - 1;}
+		return inValue;
+	}
+
+	/**
+	 * @return number of points covered by this grid
+	 */
+	public int getNumPoints()
+	{
+		return _numPoints;
+	}
+
+	/**
+	 * Update the grid after points have been inserted
+	 * @param inXValues scaled x values, already containing the inserted points
+	 * @param inYValues scaled y values, already containing the inserted points
+	 * @param inIndex index of first inserted point
+	 * @param inNumInserted number of points inserted
+	 * @return true if the grid is still usable, false if it should be rebuilt
+	 */
+	public boolean pointsInserted(double[] inXValues, double[] inYValues, int inIndex, int inNumInserted)
+	{
+		_xValues = inXValues;
+		_yValues = inYValues;
+		_numPoints += inNumInserted;
+		updateIndices(inIndex, inIndex, inNumInserted, inIndex, inIndex + inNumInserted);
+		return isBalanced();
+	}
+
+	/**
+	 * Update the grid after a range of points has been deleted
+	 * @param inStart index of first deleted point
+	 * @param inNumDeleted number of points deleted
+	 * @return true if the grid is still usable, false if it should be rebuilt
+	 */
+	public boolean pointsDeleted(int inStart, int inNumDeleted)
+	{
+		_numPoints -= inNumDeleted;
+		updateIndices(inStart, inStart + inNumDeleted, -inNumDeleted, 0, 0);
+		return isBalanced();
+	}
+
+	/**
+	 * Update the grid after the scaled values of a range of points have changed
+	 * @param inStart index of first changed point
+	 * @param inEnd index of last changed point
+	 * @return true if the grid is still usable, false if it should be rebuilt
+	 */
+	public boolean pointsChanged(int inStart, int inEnd)
+	{
+		updateIndices(inStart, inEnd + 1, 0, inStart, inEnd + 1);
+		return isBalanced();
+	}
+
+	/**
+	 * @return true if the points are still spread well enough over the cells
+	 */
+	private boolean isBalanced()
+	{
+		return _outsidePoints.length <= MAX_OUTSIDE_POINTS + _numPoints / 8
+			&& _numPoints <= 2 * _numPointsBuilt + POINTS_PER_CELL;
+	}
+
+	/**
+	 * Remove a range of point indices from the cells, shift the following ones,
+	 * and add another range of indices into the cells according to their scaled values.
+	 * The added range must not overlap any of the indices left in the cells.
+	 * @param inRemoveStart first index to remove
+	 * @param inRemoveEnd index after the last one to remove
+	 * @param inShift amount to add to the indices from inRemoveEnd onwards
+	 * @param inAddStart first index to add
+	 * @param inAddEnd index after the last one to add
+	 */
+	private void updateIndices(int inRemoveStart, int inRemoveEnd, int inShift, int inAddStart, int inAddEnd)
+	{
+		// Sort the added points by cell, keeping them in ascending order
+		final int numCells = _cellStarts.length - 1;
+		int[] addStarts = new int[numCells + 1];
+		int numAddedOutside = 0;
+		for (int i=inAddStart; i<inAddEnd; i++)
+		{
+			if (isFinite(i) && isInGrid(i)) {
+				addStarts[getCellIndex(i) + 1]++;
+			}
+			else {
+				numAddedOutside++;
+			}
+		}
+		for (int c=1; c<=numCells; c++) {
+			addStarts[c] += addStarts[c-1];
+		}
+		int[] added = new int[addStarts[numCells]];
+		int[] fillPositions = new int[numCells];
+		System.arraycopy(addStarts, 0, fillPositions, 0, numCells);
+		int[] outsidePoints = new int[_outsidePoints.length + numAddedOutside];
+		int numOutside = 0;
+		for (int i=inAddStart; i<inAddEnd; i++)
+		{
+			if (isFinite(i) && isInGrid(i)) {
+				added[fillPositions[getCellIndex(i)]++] = i;
+			}
+			else {
+				outsidePoints[numOutside++] = i;
+			}
+		}
+
+		// Merge the remaining indices of each cell with the added ones
+		int[] pointIndices = new int[_cellStarts[numCells] + added.length];
+		int pos = 0;
+		int oldStart = 0;
+		for (int c=0; c<numCells; c++)
+		{
+			final int oldEnd = _cellStarts[c+1];
+			_cellStarts[c] = pos;
+			int a = addStarts[c];
+			for (int p=oldStart; p<oldEnd; p++)
+			{
+				int index = _pointIndices[p];
+				if (index >= inRemoveStart && index < inRemoveEnd) {continue;}
+				if (index >= inRemoveEnd) {index += inShift;}
+				while (a < addStarts[c+1] && added[a] < index) {
+					pointIndices[pos++] = added[a++];
+				}
+				pointIndices[pos++] = index;
+			}
+			while (a < addStarts[c+1]) {
+				pointIndices[pos++] = added[a++];
+			}
+			oldStart = oldEnd;
+		}
+		_cellStarts[numCells] = pos;
+		_pointIndices = pointIndices;
+
+		// Same for the points outside the grid, whose order doesn't matter
+		for (int index : _outsidePoints)
+		{
+			if (index >= inRemoveStart && index < inRemoveEnd) {continue;}
+			outsidePoints[numOutside++] = (index >= inRemoveEnd ? index + inShift : index);
+		}
+		_outsidePoints = Arrays.copyOf(outsidePoints, numOutside);
+	}
+
+	/**
+	 * Find the nearest point to the specified x and y coordinates, using the same
+	 * distance measure as a linear scan would (y distance plus wrapped x distance)
+	 * @param inX x coordinate
+	 * @param inY y coordinate
+	 * @param inSkipWaypoints true to ignore waypoints
+	 * @param inColumns point columns to check for waypoints
+	 * @return two-element array holding the index and distance of the nearest point,
+	 *         or index 0 and distance -1 if none found
+	 */
+	public double[] findNearestPoint(double inX, double inY, boolean inSkipWaypoints, PointColumns inColumns)
+	{
+		double[] result = {0, -1.0};
+		// Points outside the grid are always checked
+		for (int i : _outsidePoints) {
+			checkPoint(i, inX, inY, inSkipWaypoints, inColumns, result);
+		}
+		// Search around the query position and its neighbours wrapped round the globe
+		for (int shift=-1; shift<=1; shift++) {
+			searchRings(inX, inX + shift, inY, inSkipWaypoints, inColumns, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Search outwards ring by ring from the cell containing the given position
+	 * @param inX original x coordinate for distance calculations
+	 * @param inSearchX (possibly wrapped) x coordinate to search around
+	 * @param inY y coordinate
+	 * @param inSkipWaypoints true to ignore waypoints
+	 * @param inColumns point columns to check for waypoints
+	 * @param inResult result array to update
+	 */
+	private void searchRings(double inX, double inSearchX, double inY, boolean inSkipWaypoints,
+		PointColumns inColumns, double[] inResult)
+	{
+		final int centreCol = getColumn(inSearchX), centreRow = getRow(inY);
+		// Distance from the search position to the edge of the grid
+		final double outsideDist = Math.max(0.0, Math.max(_minX - inSearchX, inSearchX - _minX - _numCellsX * _cellWidth))
+			+ Math.max(0.0, Math.max(_minY - inY, inY - _minY - _numCellsY * _cellHeight));
+		final double minCellSize = getMinimumCellSize();
+		final int maxRing = Math.max(_numCellsX, _numCellsY);
+		for (int ring=0; ring<=maxRing; ring++)
+		{
+			// All points in this ring are further away than this
+			final double ringDist = outsideDist + Math.max(0, ring-1) * minCellSize;
+			if (inResult[1] >= 0.0 && ringDist > inResult[1] * (1.0 + 1e-9) + 1e-15) {
+				return;
+			}
+			for (int row=centreRow-ring; row<=centreRow+ring; row++)
+			{
+				if (row < 0 || row >= _numCellsY) {continue;}
+				final boolean edgeRow = (row == centreRow-ring || row == centreRow+ring);
+				final int colStep = edgeRow ? 1 : Math.max(1, 2 * ring);
+				for (int col=centreCol-ring; col<=centreCol+ring; col+=colStep)
+				{
+					if (col < 0 || col >= _numCellsX) {continue;}
+					final int cell = row * _numCellsX + col;
+					for (int p=_cellStarts[cell]; p<_cellStarts[cell+1]; p++) {
+						checkPoint(_pointIndices[p], inX, inY, inSkipWaypoints, inColumns, inResult);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the smaller dimension of the cells, ignoring directions with only one cell
+	 */
+	private double getMinimumCellSize()
+	{
+		if (_numCellsX > 1 && _numCellsY > 1) {
+			return Math.min(_cellWidth, _cellHeight);
+		}
+		return (_numCellsX > 1) ? _cellWidth : _cellHeight;
+	}
+
+	/**
+	 * Check the given point and update the result if it's nearer
+	 * @param inIndex point index
+	 * @param inX x coordinate
+	 * @param inY y coordinate
+	 * @param inSkipWaypoints true to ignore waypoints
+	 * @param inColumns point columns to check for waypoints
+	 * @param inResult result array holding index and distance so far
+	 */
+	private void checkPoint(int inIndex, double inX, double inY, boolean inSkipWaypoints,
+		PointColumns inColumns, double[] inResult)
+	{
+		if (inSkipWaypoints && inColumns.isWaypoint(inIndex)) {return;}
+		final double dist = Math.abs(_yValues[inIndex] - inY) + getMinXDist(_xValues[inIndex] - inX);
+		if (Double.isNaN(dist)) {return;}
+		final int nearestIndex = (int) inResult[0];
+		if (dist < inResult[1] || inResult[1] < 0.0 || (dist == inResult[1] && inIndex < nearestIndex))
+		{
+			inResult[0] = inIndex;
+			inResult[1] = dist;
+		}
+	}
+
+	/**
+	 * @param inX x value of point
+	 * @return minimum wrapped value
+	 */
+	public static double getMinXDist(double inX)
+	{
+		return Math.min(Math.min(Math.abs(inX), Math.abs(inX-1.0)), Math.abs(inX+1.0));
+	}
+
+	/**
+	 * Find all the points which could lie inside the given rectangle of scaled values
+	 * @param inMinX minimum x value
+	 * @param inMinY minimum y value
+	 * @param inMaxX maximum x value
+	 * @param inMaxY maximum y value
+	 * @return array of candidate point indices, in ascending order
+	 */
+	public int[] getCandidatesInRectangle(double inMinX, double inMinY, double inMaxX, double inMaxY)
+	{
+		// Widen the range by one cell to allow for rounding errors at the edges
+		final int minCol = clamp(getColumn(inMinX) - 1, _numCellsX), maxCol = clamp(getColumn(inMaxX) + 1, _numCellsX);
+		final int minRow = clamp(getRow(inMinY) - 1, _numCellsY), maxRow = clamp(getRow(inMaxY) + 1, _numCellsY);
+		int numCandidates = _outsidePoints.length;
+		for (int row=minRow; row<=maxRow; row++) {
+			numCandidates += _cellStarts[row * _numCellsX + maxCol + 1] - _cellStarts[row * _numCellsX + minCol];
+		}
+		int[] result = new int[numCandidates];
+		int resultIndex = 0;
+		for (int row=minRow; row<=maxRow; row++)
+		{
+			// cells in the same row are contiguous in the index array
+			final int start = _cellStarts[row * _numCellsX + minCol];
+			final int end = _cellStarts[row * _numCellsX + maxCol + 1];
+			System.arraycopy(_pointIndices, start, result, resultIndex, end - start);
+			resultIndex += (end - start);
+		}
+		System.arraycopy(_outsidePoints, 0, result, resultIndex, _outsidePoints.length);
+		Arrays.sort(result);
+		return result;
+	}
+}
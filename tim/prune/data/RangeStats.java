@@ -57,88 +57,62 @@ public class RangeStats
 		_movingAltitudeRange = new AltitudeRange();
 		_gentleAltitudeRange = new AltitudeRange();
 		_steepAltitudeRange  = new AltitudeRange();
-		DataPoint prevPoint = null;
-		Altitude prevAltitude = null;
-		_totalDistanceRads = _movingDistanceRads = 0.0;
-		double radsSinceLastAltitude = 0.0;
-		_movingMilliseconds = 0L;
 
-		// Loop over the points in the range
+		// Distances, durations and counts come from the track's cumulative sums
+		CumulativeStats stats = inTrack.getCumulativeStats();
+		_totalDistanceRads = stats.getTotalRadians(inStartIndex, inEndIndex);
+		_movingDistanceRads = stats.getMovingRadians(inStartIndex, inEndIndex);
+		_movingMilliseconds = stats.getTrackMovingMilliseconds(inStartIndex, inEndIndex);
+		_numSegments = stats.getNumSegments(inStartIndex, inEndIndex);
+		_timesIncomplete = stats.hasTimestampsMissing(inStartIndex, inEndIndex);
+		_timesOutOfSequence = stats.hasTimestampsOutOfSequence(inStartIndex, inEndIndex);
+		final int earliestIndex = stats.getEarliestTimestampIndex(inStartIndex, inEndIndex);
+		if (earliestIndex >= 0) {
+			_earliestTimestamp = inTrack.getPoint(earliestIndex).getTimestamp();
+		}
+		final int latestIndex = stats.getLatestTimestampIndex(inStartIndex, inEndIndex);
+		if (latestIndex >= 0) {
+			_latestTimestamp = inTrack.getPoint(latestIndex).getTimestamp();
+		}
+
+		// Altitude ranges depend on the sequence of values, so loop over the points
+		Altitude prevAltitude = null;
+		int prevAltitudeIndex = -1;
 		for (int i=inStartIndex; i<= inEndIndex; i++)
 		{
 			DataPoint p = inTrack.getPoint(i);
 			if (p == null) return false;
 			// ignore all waypoints
-			if (p.isWaypoint()) continue;
+			if (p.isWaypoint() || !p.hasAltitude()) continue;
 
+			// Get the altitude difference to the previous track point
+			Altitude altitude = p.getAltitude();
+			_totalAltitudeRange.addValue(altitude);
 			if (p.getSegmentStart()) {
-				_numSegments++;
+				_movingAltitudeRange.ignoreValue(altitude);
 			}
-			// Get the distance to the previous track point
-			if (prevPoint != null)
-			{
-				double rads = DataPoint.calculateRadiansBetween(prevPoint, p);
-				_totalDistanceRads += rads;
-				if (!p.getSegmentStart()) {
-					_movingDistanceRads += rads;
-				}
-				// Keep track of rads since last point with an altitude
-				radsSinceLastAltitude += rads;
-			}
-			// Get the altitude difference to the previous track point
-			if (p.hasAltitude())
+			else
 			{
-				Altitude altitude = p.getAltitude();
-				_totalAltitudeRange.addValue(altitude);
-				if (p.getSegmentStart()) {
-					_movingAltitudeRange.ignoreValue(altitude);
-				}
-				else
+				_movingAltitudeRange.addValue(altitude);
+				if (prevAltitude != null)
 				{
-					_movingAltitudeRange.addValue(altitude);
-					if (prevAltitude != null)
-					{
-						// Work out gradient, see whether to ignore/add to gentle or steep
-						double heightDiff = altitude.getMetricValue() - prevAltitude.getMetricValue();
-						double metricDist = Distance.convertRadiansToDistance(radsSinceLastAltitude, UnitSetLibrary.UNITS_METRES);
-						final boolean isSteep = metricDist < 0.001 || (Math.abs(heightDiff / metricDist) > STEEP_ANGLE);
-						if (isSteep) {
-							_steepAltitudeRange.ignoreValue(prevAltitude);
-							_steepAltitudeRange.addValue(altitude);
-						}
-						else {
-							_gentleAltitudeRange.ignoreValue(prevAltitude);
-							_gentleAltitudeRange.addValue(altitude);
-						}
+					// Work out gradient, see whether to ignore/add to gentle or steep
+					double heightDiff = altitude.getMetricValue() - prevAltitude.getMetricValue();
+					double radsSinceLastAltitude = stats.getTotalRadians(prevAltitudeIndex, i);
+					double metricDist = Distance.convertRadiansToDistance(radsSinceLastAltitude, UnitSetLibrary.UNITS_METRES);
+					final boolean isSteep = metricDist < 0.001 || (Math.abs(heightDiff / metricDist) > STEEP_ANGLE);
+					if (isSteep) {
+						_steepAltitudeRange.ignoreValue(prevAltitude);
+						_steepAltitudeRange.addValue(altitude);
 					}
-				}
-				prevAltitude = altitude;
-				radsSinceLastAltitude = 0.0;
-			}
-
-			if (p.hasTimestamp())
-			{
-				if (_earliestTimestamp == null || p.getTimestamp().isBefore(_earliestTimestamp)) {
-					_earliestTimestamp = p.getTimestamp();
-				}
-				if (_latestTimestamp == null || p.getTimestamp().isAfter(_latestTimestamp)) {
-					_latestTimestamp = p.getTimestamp();
-				}
-				// Work out duration without segment gaps
-				if (!p.getSegmentStart() && prevPoint != null && prevPoint.hasTimestamp())
-				{
-					long millisLater = p.getTimestamp().getMillisecondsSince(prevPoint.getTimestamp());
-					if (millisLater < 0) {_timesOutOfSequence = true;}
 					else {
-						_movingMilliseconds += millisLater;
+						_gentleAltitudeRange.ignoreValue(prevAltitude);
+						_gentleAltitudeRange.addValue(altitude);
 					}
 				}
 			}
-			else {
-				_timesIncomplete = true;
-			}
-
-			prevPoint = p;
+			prevAltitude = altitude;
+			prevAltitudeIndex = i;
 		}
 		return true;
 	}
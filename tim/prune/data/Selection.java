@@ -2,6 +2,7 @@ package tim.prune.data;
 
 import tim.prune.DataSubscriber;
 import tim.prune.UpdateMessageBroker;
+import tim.prune.config.Config;
 
 /**
  * Class to represent a selected portion of a Track
@@ -17,6 +18,9 @@ public class Selection
 	private int _currentPhotoIndex = -1;
 	private int _currentAudioIndex = -1;
 	private AltitudeRange _altitudeRange = null;
+	/** Range of points, track modification count and tolerance used for the altitude range */
+	private int _altitudeStart = -1, _altitudeEnd = -1;
+	private int _altitudeModCount = -1, _altitudeTolerance = -1;
 	private long _movingMilliseconds = 0L;
 	private double _angMovingDistance = -1.0;
 
@@ -71,53 +75,49 @@ public class Selection
 			check();
 		}
 		if (numPoints > 0 && hasRangeSelected())
+		{
+			// Distance and time come from the track's cumulative sums
+			CumulativeStats stats = _track.getCumulativeStats();
+			_angMovingDistance = stats.getMovingRadians(_startIndex, _endIndex);
+			_movingMilliseconds = stats.getMovingMilliseconds(_startIndex, _endIndex);
+			updateAltitudeRange();
+		}
+		_valid = true;
+	}
+
+	/**
+	 * Climb and descent depend on the altitude tolerance, so loop over the altitudes,
+	 * continuing from the previous range if only the end of the selection has moved
+	 */
+	private void updateAltitudeRange()
+	{
+		final PointColumns columns = _track.getColumns();
+		final int modCount = _track.getModificationCount();
+		final int tolerance = Config.getConfigInt(Config.KEY_ALTITUDE_TOLERANCE);
+		int firstIndex = _altitudeEnd + 1;
+		if (_altitudeRange == null || _altitudeStart != _startIndex || _altitudeEnd > _endIndex
+			|| _altitudeModCount != modCount || _altitudeTolerance != tolerance)
 		{
 			_altitudeRange = new AltitudeRange();
-			Altitude altitude = null;
-			Timestamp time = null, previousTime = null;
-			DataPoint lastPoint = null, currPoint = null;
-			_angMovingDistance = 0.0;
-			_movingMilliseconds = 0L;
-			// Loop over points in selection
-			for (int i=_startIndex; i<=_endIndex; i++)
+			_altitudeStart = _startIndex;
+			_altitudeModCount = modCount;
+			_altitudeTolerance = tolerance;
+			firstIndex = _startIndex;
+		}
+		for (int i=firstIndex; i<=_endIndex; i++)
+		{
+			// Ignore waypoints in altitude calculations
+			if (!columns.isWaypoint(i) && columns.hasAltitude(i))
 			{
-				currPoint = _track.getPoint(i);
-				altitude = currPoint.getAltitude();
-				// Ignore waypoints in altitude calculations
-				if (!currPoint.isWaypoint() && altitude.isValid())
-				{
-					if (currPoint.getSegmentStart()) {
-						_altitudeRange.ignoreValue(altitude);
-					}
-					else {
-						_altitudeRange.addValue(altitude);
-					}
-				}
-				// Compare timestamps within the segments
-				time = currPoint.getTimestamp();
-				if (time.isValid())
-				{
-					// add moving time
-					if (!currPoint.getSegmentStart() && previousTime != null && time.isAfter(previousTime)) {
-						_movingMilliseconds += time.getMillisecondsSince(previousTime);
-					}
-					previousTime = time;
+				if (_track.getPoint(i).getSegmentStart()) {
+					_altitudeRange.ignoreMetricValue(columns.getAltitude(i));
 				}
-				// Calculate distances, again ignoring waypoints
-				if (!currPoint.isWaypoint())
-				{
-					if (lastPoint != null)
-					{
-						double radians = DataPoint.calculateRadiansBetween(lastPoint, currPoint);
-						if (!currPoint.getSegmentStart()) {
-							_angMovingDistance += radians;
-						}
-					}
-					lastPoint = currPoint;
+				else {
+					_altitudeRange.addMetricValue(columns.getAltitude(i));
 				}
 			}
 		}
-		_valid = true;
+		_altitudeEnd = _endIndex;
 	}
 
 
@@ -0,0 +1,109 @@
+package tim.prune.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Hash of points by their scaled x and y values, using square cells
+ * the same size as the search distance.  Points are added one by one
+ * during a scan through the track, so that each point can be checked
+ * against all the earlier points added anywhere in the track,
+ * only looking at the points in the neighbouring cells
+ */
+public class SpatialHash
+{
+	/** Track containing the points */
+	private Track _track = null;
+	/** Search distance and size of each cell */
+	private double _distance = 0.0;
+	/** Index of the last point added to each cell */
+	private HashMap<Long, Integer> _cellHeads = new HashMap<Long, Integer>();
+	/** Index of the previous point added to the same cell, for each point */
+	private int[] _nextIndices = null;
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track containing the points
+	 * @param inDistance search distance in scaled units, must be greater than zero
+	 */
+	public SpatialHash(Track inTrack, double inDistance)
+	{
+		_track = inTrack;
+		_distance = inDistance;
+		_nextIndices = new int[inTrack.getNumPoints()];
+		Arrays.fill(_nextIndices, -1);
+	}
+
+	/**
+	 * Add the given point to the hash
+	 * @param inIndex point index
+	 */
+	public void addPoint(int inIndex)
+	{
+		final double x = _track.getX(inIndex), y = _track.getY(inIndex);
+		if (!isFinite(x) || !isFinite(y)) {return;}
+		final Long key = makeKey(getCell(x), getCell(y));
+		Integer head = _cellHeads.put(key, inIndex);
+		if (head != null) {
+			_nextIndices[inIndex] = head.intValue();
+		}
+	}
+
+	/**
+	 * Find a point within the search distance of the given point,
+	 * measured as the sum of the x and y distances
+	 * @param inIndex point index
+	 * @return index of a point already added which is closer than the search distance, or -1 if none
+	 */
+	public int findPointWithin(int inIndex)
+	{
+		final double x = _track.getX(inIndex), y = _track.getY(inIndex);
+		if (!isFinite(x) || !isFinite(y)) {return -1;}
+		final long cellX = getCell(x), cellY = getCell(y);
+		// Any point within the distance must be in this cell or one of its neighbours
+		for (long cx=cellX-1; cx<=cellX+1; cx++)
+		{
+			for (long cy=cellY-1; cy<=cellY+1; cy++)
+			{
+				Integer head = _cellHeads.get(makeKey(cx, cy));
+				for (int i=(head == null ? -1 : head.intValue()); i>=0; i=_nextIndices[i])
+				{
+					final double dist = Math.abs(x - _track.getX(i)) + Math.abs(y - _track.getY(i));
+					if (dist < _distance) {
+						return i;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param inValue scaled x or y value
+	 * @return cell number in that direction
+	 */
+	private long getCell(double inValue)
+	{
+		return (long) Math.floor(inValue / _distance);
+	}
+
+	/**
+	 * @param inCellX cell number in x direction
+	 * @param inCellY cell number in y direction
+	 * @return key for the hash
+	 */
+	private static Long makeKey(long inCellX, long inCellY)
+	{
+		return Long.valueOf((inCellX << 32) ^ (inCellY & 0xffffffffL));
+	}
+
+	/**
+	 * @param inValue scaled value
+	 * @return true if value is neither infinite nor NaN
+	 */
+	private static boolean isFinite(double inValue)
+	{
+		return !Double.isNaN(inValue) && !Double.isInfinite(inValue);
+	}
+}
@@ -102,6 +102,13 @@ public class TimestampUtc extends Timestamp
 		_text = null;
 		if (inString != null && !inString.equals(""))
 		{
+			// Most timestamps are ISO 8601 or plain numbers, so try these first without any objects
+			if (parseIso8601(inString) || parseLong(inString))
+			{
+				_valid = true;
+				_text = inString;
+				return;
+			}
 			// Try each of the parse types in turn
 			for (ParseType type : ALL_PARSE_TYPES)
 			{
@@ -196,6 +203,175 @@ public class TimestampUtc extends Timestamp
 	}
 
 
+	/**
+	 * Fast path for ISO 8601 timestamps, giving the same result as the ISO8601_FRACTIONAL
+	 * parse type but without using a Matcher or a Calendar, so it's also thread-safe.
+	 * Unusual values such as years before 1583 are left for the general parsers
+	 * @param inText text to parse
+	 * @return true if successful
+	 */
+	private boolean parseIso8601(CharSequence inText)
+	{
+		final int textLen = inText.length();
+		if (textLen < 19 || inText.charAt(4) != '-' || inText.charAt(7) != '-' || inText.charAt(10) != 'T'
+			|| inText.charAt(13) != ':' || inText.charAt(16) != ':') {
+			return false;
+		}
+		final int year = parseDigits(inText, 0, 4);
+		final int month = parseDigits(inText, 5, 2);
+		final int day = parseDigits(inText, 8, 2);
+		final int hour = parseDigits(inText, 11, 2);
+		final int minute = parseDigits(inText, 14, 2);
+		final int second = parseDigits(inText, 17, 2);
+		if (year < 1583 || month < 1 || month > 12 || day < 1 || day > getDaysInMonth(year, month)
+			|| hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+			return false;
+		}
+		int pos = 19;
+		// Fractions of a second, up to three digits
+		int millis = 0;
+		if (pos < textLen && (inText.charAt(pos) == '.' || inText.charAt(pos) == ','))
+		{
+			pos++;
+			int numDigits = 0;
+			while (pos + numDigits < textLen && inText.charAt(pos + numDigits) >= '0'
+				&& inText.charAt(pos + numDigits) <= '9') {
+				numDigits++;
+			}
+			if (numDigits < 1 || numDigits > 3) {
+				return false;
+			}
+			millis = parseDigits(inText, pos, numDigits);
+			if (numDigits == 1) {millis *= 100;}
+			else if (numDigits == 2) {millis *= 10;}
+			pos += numDigits;
+		}
+		// Timezone, either Z or an offset in hours and optional minutes
+		int offsetMinutes = 0;
+		if (pos < textLen && inText.charAt(pos) == 'Z') {
+			pos++;
+		}
+		else if (pos < textLen && (inText.charAt(pos) == '+' || inText.charAt(pos) == '-'))
+		{
+			final boolean negative = (inText.charAt(pos) == '-');
+			pos++;
+			final int offsetHours = parseDigits(inText, pos, 2);
+			pos += 2;
+			final boolean hasColon = (pos < textLen && inText.charAt(pos) == ':');
+			if (hasColon) {
+				pos++;
+			}
+			int offsetMins = 0;
+			if (pos < textLen || hasColon)
+			{
+				offsetMins = parseDigits(inText, pos, 2);
+				pos += 2;
+			}
+			if (offsetHours < 0 || offsetHours > 23 || offsetMins < 0 || offsetMins > 59) {
+				return false;
+			}
+			offsetMinutes = (negative ? -1 : 1) * (offsetHours * 60 + offsetMins);
+		}
+		if (pos != textLen) {
+			return false;
+		}
+		final long days = getDaysSince1970(year, month, day);
+		_milliseconds = (((days * 24 + hour) * 60 + minute - offsetMinutes) * 60 + second) * 1000L + millis;
+		return true;
+	}
+
+	/**
+	 * Fast path for timestamps given as a number, giving the same result as the LONG parse type
+	 * @param inText text to parse
+	 * @return true if successful
+	 */
+	private boolean parseLong(CharSequence inText)
+	{
+		// Ignore surrounding whitespace like String.trim
+		int start = 0, end = inText.length();
+		while (start < end && inText.charAt(start) <= ' ') {start++;}
+		while (end > start && inText.charAt(end - 1) <= ' ') {end--;}
+		final boolean negative = (start < end && inText.charAt(start) == '-');
+		if (start < end && (negative || inText.charAt(start) == '+')) {start++;}
+		final int numDigits = end - start;
+		// Longer numbers are left for Long.parseLong to check for overflow
+		if (numDigits < 1 || numDigits > 18) {
+			return false;
+		}
+		long value = 0L;
+		for (int i=start; i<end; i++)
+		{
+			final char currChar = inText.charAt(i);
+			if (currChar < '0' || currChar > '9') {
+				return false;
+			}
+			value = value * 10 + (currChar - '0');
+		}
+		_milliseconds = getMilliseconds(negative ? -value : value);
+		return true;
+	}
+
+	/**
+	 * Parse a fixed number of digits from the given text
+	 * @param inText text to parse
+	 * @param inStart start index
+	 * @param inNumDigits number of digits
+	 * @return parsed value, or -1 if any of the characters aren't digits or are missing
+	 */
+	private static int parseDigits(CharSequence inText, int inStart, int inNumDigits)
+	{
+		if (inStart + inNumDigits > inText.length()) {
+			return -1;
+		}
+		int value = 0;
+		for (int i=inStart; i<inStart + inNumDigits; i++)
+		{
+			final char currChar = inText.charAt(i);
+			if (currChar < '0' || currChar > '9') {
+				return -1;
+			}
+			value = value * 10 + (currChar - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * @param inYear year
+	 * @param inMonth month, beginning with 1
+	 * @return number of days in the month
+	 */
+	private static int getDaysInMonth(int inYear, int inMonth)
+	{
+		switch (inMonth)
+		{
+			case 2:
+				final boolean isLeapYear = (inYear % 4 == 0 && (inYear % 100 != 0 || inYear % 400 == 0));
+				return isLeapYear ? 29 : 28;
+			case 4: case 6: case 9: case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+
+	/**
+	 * Count the days since 1st January 1970 in the Gregorian calendar
+	 * @param inYear year, not before 1583
+	 * @param inMonth month, beginning with 1
+	 * @param inDay day of month, beginning with 1
+	 * @return number of days
+	 */
+	private static long getDaysSince1970(int inYear, int inMonth, int inDay)
+	{
+		// Count years from March so that the leap day comes at the end
+		final int year = (inMonth <= 2 ? inYear - 1 : inYear);
+		final int era = year / 400;
+		final int yearOfEra = year - era * 400;
+		final int dayOfYear = (153 * (inMonth > 2 ? inMonth - 3 : inMonth + 9) + 2) / 5 + inDay - 1;
+		final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468L;
+	}
+
 	/**
 	 * Try to parse the given string with the given date format
 	 * @param inString String to parse
@@ -205,11 +381,14 @@ public class TimestampUtc extends Timestamp
 	private boolean parseString(String inString, DateFormat inDateFormat)
 	{
 		ParsePosition pPos = new ParsePosition(0);
-		Date date = inDateFormat.parse(inString, pPos);
+		Date date = null;
+		// Date formats are shared, but points may be created by several loading threads at once
+		synchronized (inDateFormat) {
+			date = inDateFormat.parse(inString, pPos);
+		}
 		if (date != null && inString.length() == pPos.getIndex()) // require use of _all_ the string, not just the beginning
 		{
-			CALENDAR.setTime(date);
-			_milliseconds = CALENDAR.getTimeInMillis();
+			_milliseconds = date.getTime();
 			return true;
 		}
 
@@ -19,6 +19,16 @@ public class Track
 	// Scaled x, y values
 	private double[] _xValues = null;
 	private double[] _yValues = null;
+	// Primitive copies of point values
+	private PointColumns _columns = null;
+	// Spatial index of scaled values, created when needed
+	private PointGrid _pointGrid = null;
+	// Cumulative sums for range statistics, created when needed
+	private CumulativeStats _cumulativeStats = null;
+	/** Speeds and gradients of all points, calculated when first needed */
+	private DerivedSeries _derivedSeries = null;
+	/** Counter of changes to the point values, for caches outside the track */
+	private int _modCount = 0;
 	private boolean _scaled = false;
 	private int _numPoints = 0;
 	private boolean _hasTrackpoint = false;
@@ -168,9 +178,10 @@ public class Track
 	{
 		if (inNewSize >= 0 && inNewSize < getNumPoints())
 		{
+			final int numDeleted = _numPoints - inNewSize;
 			_numPoints = inNewSize;
-			// needs to be scaled again
-			_scaled = false;
+			// just remove the cropped points from the scaled values
+			rescaleDeletedPoints(inNewSize, numDeleted);
 			UpdateMessageBroker.informSubscribers();
 		}
 	}
@@ -270,8 +281,11 @@ public class Track
 		// Copy points over original array
 		_dataPoints = newPointArray;
 		_numPoints -= numToDelete;
-		// needs to be scaled again
-		_scaled = false;
+		// remove the deleted points from the scaled values
+		rescaleDeletedPoints(inStart, numToDelete);
+		if (hasSegmentStart) {
+			segmentStartsChanged(inStart);
+		}
 		return true;
 	}
 
@@ -305,8 +319,8 @@ public class Track
 		if (firstTrackPoint != null) {firstTrackPoint.setSegmentStart(true);}
 		DataPoint nextTrackPoint = getNextTrackPoint(inEnd+1);
 		if (nextTrackPoint != null) {nextTrackPoint.setSegmentStart(true);}
-		// needs to be scaled again
-		_scaled = false;
+		// same points in a different order, so the ranges don't change
+		rescaleMovedPoints(inStart, inEnd);
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -339,6 +353,8 @@ public class Track
 				p.setModified(inUndo);
 			}
 		}
+		// only the timestamps have changed, not the scaled values
+		refreshColumns(inStart, inEnd);
 		return foundTimestamp;
 	}
 
@@ -371,8 +387,8 @@ public class Track
 				p.setModified(false);
 			}
 		}
-		// needs to be scaled again
-		_scaled = false;
+		// only the altitudes have changed, not the scaled values
+		refreshColumns(inStart, inEnd);
 		return foundAlt;
 	}
 
@@ -396,7 +412,7 @@ public class Track
 			{
 				waypoints[numWaypoints] = point;
 				pointIndices[numWaypoints] = getNearestPointIndex(
-					_xValues[i], _yValues[i], -1.0, true);
+					getX(i), getY(i), -1.0, true);
 				numWaypoints++;
 			}
 		}
@@ -428,8 +444,8 @@ public class Track
 		}
 		// Copy data back to track
 		_dataPoints = dataCopy;
-		// needs to be scaled again to recalc x, y
-		_scaled = false;
+		// x, y values need to be moved to their new positions
+		rescaleMovedPoints(0, _numPoints - 1);
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -488,7 +504,8 @@ public class Track
 			}
 			// Copy array references
 			_dataPoints = newPointArray;
-			_scaled = false;
+			// only the points between the section and the move to point have moved
+			rescaleMovedPoints(Math.min(inSectionStart, inMoveTo), Math.max(inSectionEnd, inMoveTo - 1));
 			return true;
 		}
 		return false;
@@ -568,7 +585,11 @@ public class Track
 		DataPoint nextPoint = getNextTrackPoint(inEndIndex+1);
 		if (nextPoint != null) {nextPoint.setSegmentStart(true);}
 		// Insert points into track
-		return insertRange(new DataPoint[] {insertedPoint}, inEndIndex + 1);
+		final boolean inserted = insertRange(new DataPoint[] {insertedPoint}, inEndIndex + 1);
+		if (inserted && nextPoint != null) {
+			segmentStartsChanged(inEndIndex + 2);
+		}
+		return inserted;
 	}
 
 
@@ -583,8 +604,6 @@ public class Track
 		{
 			insertRange(inPoints, _numPoints);
 		}
-		// needs to be scaled again to recalc x, y
-		_scaled = false;
 		UpdateMessageBroker.informSubscribers();
 	}
 
@@ -826,42 +845,333 @@ public class Track
 	 */
 	private synchronized void scalePoints()
 	{
+		// Copy the point values into primitive columns
+		final int numPoints = getNumPoints();
+		_columns = new PointColumns(_dataPoints, numPoints);
+		_pointGrid = null;
+		_cumulativeStats = null;
+		_derivedSeries = null;
+		_modCount++;
+		_hasWaypoint = _columns.hasWaypoints();
+		_hasTrackpoint = _columns.hasTrackPoints();
+
 		// Loop through all points in track, to see limits of lat, long
 		_longRange = new DoubleRange();
 		_latRange = new DoubleRange();
 		int p;
-		_hasWaypoint = false; _hasTrackpoint = false;
-		for (p=0; p < getNumPoints(); p++)
+		for (p=0; p < numPoints; p++)
+		{
+			if (_columns.isValid(p))
+			{
+				_longRange.addValue(_columns.getLongitude(p));
+				_latRange.addValue(_columns.getLatitude(p));
+			}
+		}
+
+		// Loop over points and calculate scales
+		_xValues = new double[numPoints];
+		_yValues = new double[numPoints];
+		_xRange = new DoubleRange();
+		_yRange = new DoubleRange();
+		for (p=0; p < numPoints; p++)
+		{
+			if (_dataPoints[p] != null)
+			{
+				_xValues[p] = MapUtils.getXFromLongitude(_columns.getLongitude(p));
+				_xRange.addValue(_xValues[p]);
+				_yValues[p] = MapUtils.getYFromLatitude(_columns.getLatitude(p));
+				_yRange.addValue(_yValues[p]);
+			}
+		}
+		_scaled = true;
+	}
+
+	/**
+	 * @return primitive columns of the point values, for bulk calculations
+	 */
+	public PointColumns getColumns()
+	{
+		if (!_scaled) {scalePoints();}
+		return _columns;
+	}
+
+	/**
+	 * @return counter which changes whenever the point values are changed
+	 */
+	public int getModificationCount()
+	{
+		if (!_scaled) {scalePoints();}
+		return _modCount;
+	}
+
+	/**
+	 * @return cumulative sums for range statistics, updated if necessary
+	 */
+	public synchronized CumulativeStats getCumulativeStats()
+	{
+		final PointColumns columns = getColumns();
+		if (_cumulativeStats == null) {
+			_cumulativeStats = new CumulativeStats(this);
+		}
+		_cumulativeStats.update(columns);
+		return _cumulativeStats;
+	}
+
+	/**
+	 * @return speeds, vertical speeds and gradients of all points, updated if necessary
+	 */
+	public synchronized DerivedSeries getDerivedSeries()
+	{
+		final PointColumns columns = getColumns();
+		if (_derivedSeries == null) {
+			_derivedSeries = new DerivedSeries(this);
+		}
+		_derivedSeries.update(columns);
+		return _derivedSeries;
+	}
+
+	/**
+	 * Inform the track that segment start flags have been changed directly on its points
+	 * @param inFirstIndex index of first changed point
+	 */
+	public synchronized void segmentStartsChanged(int inFirstIndex)
+	{
+		if (!_scaled) {return;}
+		final int firstIndex = Math.max(inFirstIndex, 0);
+		_columns.setSegmentStarts(_dataPoints, firstIndex, _numPoints - 1);
+		invalidateFrom(firstIndex, _numPoints - 1);
+	}
+
+	/**
+	 * Inform the track that values other than the coordinates have been changed directly on its points
+	 * @param inStart index of first changed point
+	 * @param inEnd index of last changed point
+	 */
+	public void pointValuesChanged(int inStart, int inEnd)
+	{
+		refreshColumns(Math.max(inStart, 0), Math.min(inEnd, _numPoints - 1));
+	}
+
+	/**
+	 * Mark the cumulative statistics and derived values of the given points as invalid,
+	 * so that they are both recalculated from the same point columns
+	 * @param inStart index of first changed point
+	 * @param inEnd index of last changed point
+	 */
+	private void invalidateFrom(int inStart, int inEnd)
+	{
+		invalidateStatsFrom(inStart);
+		if (_derivedSeries != null) {
+			_derivedSeries.pointsChanged(inStart, inEnd);
+		}
+	}
+
+	/**
+	 * Mark the cumulative statistics as invalid from the given index onwards
+	 * @param inIndex index of first changed point
+	 */
+	private void invalidateStatsFrom(int inIndex)
+	{
+		_modCount++;
+		if (_cumulativeStats != null) {
+			_cumulativeStats.invalidateFrom(inIndex);
+		}
+	}
+
+	/**
+	 * Update the scaled values after points have been inserted,
+	 * without rescaling the points which were already there
+	 * @param inIndex index of first inserted point
+	 * @param inNumInserted number of points inserted
+	 */
+	private synchronized void rescaleInsertedPoints(int inIndex, int inNumInserted)
+	{
+		if (!_scaled) {return;}
+		final int oldNumPoints = _numPoints - inNumInserted;
+		if (_numPoints > _xValues.length)
 		{
-			DataPoint point = getPoint(p);
-			if (point != null && point.isValid())
+			// Grow the arrays with some headroom for further insertions
+			final int capacity = Math.max(_numPoints, _xValues.length + _xValues.length / 2);
+			double[] xValues = new double[capacity], yValues = new double[capacity];
+			System.arraycopy(_xValues, 0, xValues, 0, oldNumPoints);
+			System.arraycopy(_yValues, 0, yValues, 0, oldNumPoints);
+			_xValues = xValues;
+			_yValues = yValues;
+		}
+		System.arraycopy(_xValues, inIndex, _xValues, inIndex + inNumInserted, oldNumPoints - inIndex);
+		System.arraycopy(_yValues, inIndex, _yValues, inIndex + inNumInserted, oldNumPoints - inIndex);
+		_columns.insertPoints(inIndex, _dataPoints, inNumInserted);
+		invalidateStatsFrom(inIndex);
+		if (_derivedSeries != null) {
+			_derivedSeries.pointsInserted(inIndex, inNumInserted);
+		}
+		// Inserted values can only extend the ranges
+		for (int p=inIndex; p<inIndex+inNumInserted; p++)
+		{
+			scalePoint(p);
+			if (_columns.isValid(p))
 			{
-				_longRange.addValue(point.getLongitude().getDouble());
-				_latRange.addValue(point.getLatitude().getDouble());
-				if (point.isWaypoint())
+				_longRange.addValue(_columns.getLongitude(p));
+				_latRange.addValue(_columns.getLatitude(p));
+				if (_columns.isWaypoint(p))
 					_hasWaypoint = true;
 				else
 					_hasTrackpoint = true;
 			}
 		}
+		if (_pointGrid != null && !_pointGrid.pointsInserted(_xValues, _yValues, inIndex, inNumInserted)) {
+			_pointGrid = null;
+		}
+	}
+
+	/**
+	 * Update the scaled values after a range of points has been deleted
+	 * @param inStart index of first deleted point
+	 * @param inNumDeleted number of points deleted
+	 */
+	private synchronized void rescaleDeletedPoints(int inStart, int inNumDeleted)
+	{
+		if (!_scaled) {return;}
+		// Ranges only need to be recalculated if an extreme value is deleted
+		boolean extremeDeleted = false;
+		for (int p=inStart; p<inStart+inNumDeleted && !extremeDeleted; p++) {
+			extremeDeleted = isExtreme(p);
+		}
+		final int numToMove = _numPoints - inStart;
+		System.arraycopy(_xValues, inStart + inNumDeleted, _xValues, inStart, numToMove);
+		System.arraycopy(_yValues, inStart + inNumDeleted, _yValues, inStart, numToMove);
+		_columns.deletePoints(inStart, inNumDeleted);
+		invalidateStatsFrom(inStart);
+		if (_derivedSeries != null) {
+			_derivedSeries.pointsDeleted(inStart, inNumDeleted);
+		}
+		_hasWaypoint = _columns.hasWaypoints();
+		_hasTrackpoint = _columns.hasTrackPoints();
+		if (extremeDeleted) {
+			recalculateRanges();
+		}
+		if (_pointGrid != null && !_pointGrid.pointsDeleted(inStart, inNumDeleted)) {
+			_pointGrid = null;
+		}
+	}
 
-		// Loop over points and calculate scales
-		_xValues = new double[getNumPoints()];
-		_yValues = new double[getNumPoints()];
+	/**
+	 * Update the scaled values of a single point after it has been edited
+	 * @param inIndex index of point
+	 */
+	private synchronized void rescalePoint(int inIndex)
+	{
+		if (!_scaled) {return;}
+		if (inIndex < 0 || inIndex >= _numPoints)
+		{
+			// point not found, so do it all again
+			_scaled = false;
+			return;
+		}
+		final boolean wasExtreme = isExtreme(inIndex);
+		_columns.setPoint(inIndex, _dataPoints[inIndex]);
+		invalidateFrom(inIndex, inIndex);
+		scalePoint(inIndex);
+		_hasWaypoint = _columns.hasWaypoints();
+		_hasTrackpoint = _columns.hasTrackPoints();
+		if (wasExtreme) {
+			recalculateRanges();
+		}
+		else if (_columns.isValid(inIndex))
+		{
+			_longRange.addValue(_columns.getLongitude(inIndex));
+			_latRange.addValue(_columns.getLatitude(inIndex));
+		}
+		if (_pointGrid != null && !_pointGrid.pointsChanged(inIndex, inIndex)) {
+			_pointGrid = null;
+		}
+	}
+
+	/**
+	 * Update the scaled values after the points of a range have been rearranged amongst themselves
+	 * @param inStart start of range
+	 * @param inEnd end of range (inclusive)
+	 */
+	private synchronized void rescaleMovedPoints(int inStart, int inEnd)
+	{
+		if (!_scaled) {return;}
+		for (int p=inStart; p<=inEnd; p++)
+		{
+			_columns.setPoint(p, _dataPoints[p]);
+			scalePoint(p);
+		}
+		// segment flags may also have changed after the range
+		segmentStartsChanged(inStart);
+		if (_pointGrid != null && !_pointGrid.pointsChanged(inStart, inEnd)) {
+			_pointGrid = null;
+		}
+	}
+
+	/**
+	 * Refresh the point columns for a range of points whose coordinates haven't changed
+	 * @param inStart start of range
+	 * @param inEnd end of range (inclusive)
+	 */
+	private synchronized void refreshColumns(int inStart, int inEnd)
+	{
+		if (!_scaled) {return;}
+		for (int p=inStart; p<=inEnd; p++) {
+			_columns.setPoint(p, _dataPoints[p]);
+		}
+		invalidateFrom(inStart, inEnd);
+	}
+
+	/**
+	 * Calculate the scaled x and y values of a single point
+	 * @param inIndex index of point
+	 */
+	private void scalePoint(int inIndex)
+	{
+		if (_dataPoints[inIndex] != null)
+		{
+			_xValues[inIndex] = MapUtils.getXFromLongitude(_columns.getLongitude(inIndex));
+			_xRange.addValue(_xValues[inIndex]);
+			_yValues[inIndex] = MapUtils.getYFromLatitude(_columns.getLatitude(inIndex));
+			_yRange.addValue(_yValues[inIndex]);
+		}
+	}
+
+	/**
+	 * @param inIndex index of point
+	 * @return true if any of the point's values lies on the edge of the ranges
+	 */
+	private boolean isExtreme(int inIndex)
+	{
+		final double lat = _columns.getLatitude(inIndex), lon = _columns.getLongitude(inIndex);
+		final double x = _xValues[inIndex], y = _yValues[inIndex];
+		return lat <= _latRange.getMinimum() || lat >= _latRange.getMaximum()
+			|| lon <= _longRange.getMinimum() || lon >= _longRange.getMaximum()
+			|| x <= _xRange.getMinimum() || x >= _xRange.getMaximum()
+			|| y <= _yRange.getMinimum() || y >= _yRange.getMaximum();
+	}
+
+	/**
+	 * Recalculate the ranges from the existing scaled values
+	 */
+	private void recalculateRanges()
+	{
+		_longRange = new DoubleRange();
+		_latRange = new DoubleRange();
 		_xRange = new DoubleRange();
 		_yRange = new DoubleRange();
-		for (p=0; p < getNumPoints(); p++)
+		for (int p=0; p < _numPoints; p++)
 		{
-			DataPoint point = getPoint(p);
-			if (point != null)
+			if (_columns.isValid(p))
+			{
+				_longRange.addValue(_columns.getLongitude(p));
+				_latRange.addValue(_columns.getLatitude(p));
+			}
+			if (_dataPoints[p] != null)
 			{
-				_xValues[p] = MapUtils.getXFromLongitude(point.getLongitude().getDouble());
 				_xRange.addValue(_xValues[p]);
-				_yValues[p] = MapUtils.getYFromLatitude(point.getLatitude().getDouble());
 				_yRange.addValue(_yValues[p]);
 			}
 		}
-		_scaled = true;
 	}
 
 
@@ -876,26 +1186,9 @@ public class Track
 	 */
 	public int getNearestPointIndex(double inX, double inY, double inMaxDist, boolean inJustTrackPoints)
 	{
-		int nearestPoint = 0;
-		double nearestDist = -1.0;
-		double mDist, yDist;
-		for (int i=0; i < getNumPoints(); i++)
-		{
-			if (!inJustTrackPoints || !_dataPoints[i].isWaypoint())
-			{
-				yDist = Math.abs(_yValues[i] - inY);
-				if (yDist < nearestDist || nearestDist < 0.0)
-				{
-					// y dist is within range, so check x too
-					mDist = yDist + getMinXDist(_xValues[i] - inX);
-					if (mDist < nearestDist || nearestDist < 0.0)
-					{
-						nearestPoint = i;
-						nearestDist = mDist;
-					}
-				}
-			}
-		}
+		final double[] nearest = getPointGrid().findNearestPoint(inX, inY, inJustTrackPoints, _columns);
+		final int nearestPoint = (int) nearest[0];
+		final double nearestDist = nearest[1];
 		// Check whether it's within required distance
 		if (nearestDist > inMaxDist && inMaxDist > 0.0)
 		{
@@ -905,13 +1198,45 @@ public class Track
 	}
 
 	/**
-	 * @param inX x value of point
-	 * @return minimum wrapped value
+	 * Find all the points inside the given rectangle
+	 * @param inRectangle rectangle of latitudes and longitudes
+	 * @return array of point indices, in ascending order
 	 */
-	private static final double getMinXDist(double inX)
+	public int[] getPointIndicesInRectangle(LatLonRectangle inRectangle)
 	{
-		// TODO: Should be abs(mod(inX-0.5,1)-0.5) - means two adds, one mod, one abs instead of two adds, 3 abss and two compares
-		return Math.min(Math.min(Math.abs(inX), Math.abs(inX-1.0)), Math.abs(inX+1.0));
+		if (inRectangle == null || inRectangle.isEmpty()) {
+			return new int[0];
+		}
+		// Note that y values increase as latitudes decrease
+		final int[] candidates = getPointGrid().getCandidatesInRectangle(
+			MapUtils.getXFromLongitude(inRectangle.getLonRange().getMinimum()),
+			MapUtils.getYFromLatitude(inRectangle.getLatRange().getMaximum()),
+			MapUtils.getXFromLongitude(inRectangle.getLonRange().getMaximum()),
+			MapUtils.getYFromLatitude(inRectangle.getLatRange().getMinimum()));
+		// Check each candidate with the exact coordinates
+		int[] result = new int[candidates.length];
+		int numFound = 0;
+		for (int i : candidates)
+		{
+			if (_columns.isValid(i) && inRectangle.containsPoint(_columns.getLatitude(i), _columns.getLongitude(i))) {
+				result[numFound++] = i;
+			}
+		}
+		int[] trimmed = new int[numFound];
+		System.arraycopy(result, 0, trimmed, 0, numFound);
+		return trimmed;
+	}
+
+	/**
+	 * @return spatial index of the scaled values, creating it if necessary
+	 */
+	private synchronized PointGrid getPointGrid()
+	{
+		if (!_scaled) {scalePoints();}
+		if (_pointGrid == null) {
+			_pointGrid = new PointGrid(_xValues, _yValues, _numPoints);
+		}
+		return _pointGrid;
 	}
 
 	/**
@@ -1056,8 +1381,8 @@ public class Track
 		// Change over to new array
 		_dataPoints = newPointArray;
 		_numPoints++;
-		// needs to be scaled again
-		_scaled = false;
+		// scale just the new point
+		rescaleInsertedPoints(inIndex, 1);
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -1089,8 +1414,8 @@ public class Track
 		// Change over to new array
 		_dataPoints = newPointArray;
 		_numPoints += inPoints.length;
-		// needs to be scaled again
-		_scaled = false;
+		// scale just the new points
+		rescaleInsertedPoints(inIndex, inPoints.length);
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -1116,13 +1441,14 @@ public class Track
 
 	/**
 	 * Edit the specified point
-	 * @param inPoint point to edit
+	 * @param inIndex index of point to edit
 	 * @param inEditList list of edits to make
 	 * @param inUndo true if undo operation, false otherwise
 	 * @return true if successful
 	 */
-	public boolean editPoint(DataPoint inPoint, FieldEditList inEditList, boolean inUndo)
+	public boolean editPoint(int inIndex, FieldEditList inEditList, boolean inUndo)
 	{
+		final DataPoint inPoint = getPoint(inIndex);
 		if (inPoint != null && inEditList != null && inEditList.getNumEdits() > 0)
 		{
 			// remember if coordinates have changed
@@ -1148,7 +1474,7 @@ public class Track
 				inPoint.getPhoto().setCurrentStatus(Photo.Status.CONNECTED);
 			}
 			// point possibly needs to be scaled again
-			_scaled = false;
+			rescalePoint(inIndex);
 			// trigger listeners
 			UpdateMessageBroker.informSubscribers();
 			return true;
@@ -320,6 +320,7 @@ public class TrackInfo
 		if (nextPoint != null) {
 			nextPoint.setSegmentStart(true);
 		}
+		_track.segmentStartsChanged(inStart);
 		_selection.markInvalid();
 		UpdateMessageBroker.informSubscribers();
 		return true;
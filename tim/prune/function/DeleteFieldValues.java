@@ -163,6 +163,7 @@ public class DeleteFieldValues extends GenericFunction
 			for (int i=selStart; i<= selEnd; i++) {
 				track.getPoint(i).setFieldValue(field, null, false);
 			}
+			track.pointValuesChanged(selStart, selEnd);
 			_dialog.dispose();
 			_app.getTrackInfo().getSelection().markInvalid();
 			UpdateMessageBroker.informSubscribers(DataSubscriber.DATA_EDITED);
@@ -10,6 +10,8 @@ import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -35,6 +37,7 @@ import tim.prune.GenericFunction;
 import tim.prune.I18nManager;
 import tim.prune.config.Config;
 import tim.prune.gui.WholeNumberField;
+import tim.prune.gui.map.TilePack;
 
 /**
  * Function class to manage the tile cache on local disk
@@ -49,6 +52,7 @@ public class ManageCacheFunction extends GenericFunction implements Runnable
 	private TileCacheModel _model = null;
 	private JTable _setsTable = null;
 	private JButton _deleteSetButton = null;
+	private JButton _packSetButton = null;
 	private JLabel _tileSetLabel = null, _zoomLabel = null;
 	private JLabel _ageLabel = null;
 	private JRadioButton _deleteAllRadio = null;
@@ -161,6 +165,7 @@ public class ManageCacheFunction extends GenericFunction implements Runnable
 				public void valueChanged(ListSelectionEvent e) {
 					ListSelectionModel lsm = (ListSelectionModel) e.getSource();
 					_deleteSetButton.setEnabled(!lsm.isSelectionEmpty());
+					_packSetButton.setEnabled(!lsm.isSelectionEmpty());
 				}
 			});
 
@@ -176,6 +181,19 @@ public class ManageCacheFunction extends GenericFunction implements Runnable
 			}
 		});
 		leftPanel.add(_deleteSetButton);
+		_packSetButton = new JButton(I18nManager.getText("button.pack"));
+		_packSetButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent arg0) {
+				// Show progress card and pack the tiles in a separate thread
+				_cards.first(_cardPanel);
+				new Thread(new Runnable() {
+					public void run() {
+						packCurrentSets();
+					}
+				}).start();
+			}
+		});
+		leftPanel.add(_packSetButton);
 		// right group
 		JPanel rightPanel = new JPanel();
 		rightPanel.setLayout(new FlowLayout(FlowLayout.RIGHT));
@@ -289,6 +307,7 @@ public class ManageCacheFunction extends GenericFunction implements Runnable
 		// Set controls according to current config
 		_setsTable.setModel(new TileSetTableModel(_model));
 		_deleteSetButton.setEnabled(false);
+		_packSetButton.setEnabled(false);
 		// Set column widths after model has been set
 		_setsTable.getColumnModel().getColumn(0).setPreferredWidth(220);
 		_setsTable.getColumnModel().getColumn(1).setPreferredWidth(200);
@@ -356,6 +375,16 @@ public class ManageCacheFunction extends GenericFunction implements Runnable
 				File dir = new File(_model.getCacheDir(), _model.getTileSet(i).getPath());
 				if (dir.exists())
 				{
+					// Delete from the pack first, so that the directory can be removed if it's empty
+					File packFile = new File(dir, TilePack.PACK_FILENAME);
+					TilePack pack = (packFile.exists() ? TilePack.getPack(packFile, false) : null);
+					if (pack != null)
+					{
+						totalDeleted += pack.deleteTiles(ageLimit);
+						if (pack.getNumTiles() == 0) {
+							pack.close(true);
+						}
+					}
 					int numFilesDeleted = deleteFilesFrom(dir, ageLimit);
 					if (numFilesDeleted > 0) {
 						totalDeleted += numFilesDeleted;
@@ -378,6 +407,101 @@ public class ManageCacheFunction extends GenericFunction implements Runnable
 	}
 
 
+	/**
+	 * Move all the tile files of the currently selected tilesets into tile packs,
+	 * then reload the model.  Called in a separate thread.
+	 */
+	private void packCurrentSets()
+	{
+		int totalPacked = 0;
+		for (int i=0; i<_setsTable.getRowCount(); i++)
+		{
+			if (_setsTable.isRowSelected(i))
+			{
+				File dir = new File(_model.getCacheDir(), _model.getTileSet(i).getPath());
+				// Creating the pack first means that any new tiles get saved into it
+				TilePack pack = (dir.exists() ? TilePack.getPack(new File(dir, TilePack.PACK_FILENAME), true) : null);
+				if (pack != null) {
+					totalPacked += packFilesFrom(dir, pack);
+				}
+			}
+		}
+		if (totalPacked > 0)
+		{
+			JOptionPane.showMessageDialog(_dialog, I18nManager.getTextWithNumber("dialog.diskcache.packed", totalPacked),
+				I18nManager.getText(getNameKey()), JOptionPane.INFORMATION_MESSAGE);
+		}
+		else {
+			_app.showErrorMessage(getNameKey(), "error.cache.cannotpack");
+		}
+		// reload model
+		run();
+	}
+
+
+	/**
+	 * Move all the tile files of a tileset into the given pack
+	 * @param inDir directory of tileset
+	 * @param inPack pack to add tiles to
+	 * @return number of tiles packed
+	 */
+	private static int packFilesFrom(File inDir, TilePack inPack)
+	{
+		int numPacked = 0;
+		for (File zoomDir : inDir.listFiles())
+		{
+			if (!zoomDir.isDirectory() || !TileSet.isNumeric(zoomDir.getName())) {continue;}
+			for (File xDir : zoomDir.listFiles())
+			{
+				if (!xDir.isDirectory() || !TileSet.isNumeric(xDir.getName())) {continue;}
+				for (File tileFile : xDir.listFiles())
+				{
+					// Skip temporary files which are still being downloaded
+					if (tileFile.isFile() && _TILEFILTER.accept(tileFile) && TileSet.isNumericUntilDot(tileFile.getName())
+						&& !tileFile.getName().endsWith(".temp"))
+					{
+						byte[] data = readFile(tileFile);
+						String tilePath = zoomDir.getName() + "/" + xDir.getName() + "/" + tileFile.getName();
+						if (data != null && inPack.addTile(tilePath, data, tileFile.lastModified()))
+						{
+							tileFile.delete();
+							numPacked++;
+						}
+					}
+				}
+				// Try to delete the directories (doesn't work if not empty)
+				xDir.delete();
+			}
+			zoomDir.delete();
+		}
+		return numPacked;
+	}
+
+
+	/**
+	 * @param inFile file to read
+	 * @return contents of file, or null if it couldn't be read
+	 */
+	private static byte[] readFile(File inFile)
+	{
+		RandomAccessFile raf = null;
+		try
+		{
+			raf = new RandomAccessFile(inFile, "r");
+			byte[] data = new byte[(int) raf.length()];
+			raf.readFully(data);
+			return data;
+		}
+		catch (IOException e) {
+			return null;
+		}
+		finally
+		{
+			try {raf.close();} catch (Exception e) {} // ignore
+		}
+	}
+
+
 	/**
 	 * Delete recursively all files which are older than the age limit
 	 * @param inDir directory to delete from
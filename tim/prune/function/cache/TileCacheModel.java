@@ -5,6 +5,7 @@ import java.util.ArrayList;
 
 import tim.prune.gui.map.MapSource;
 import tim.prune.gui.map.MapSourceLibrary;
+import tim.prune.gui.map.TilePack;
 
 /**
  * Class to obtain and hold information about the current
@@ -134,7 +135,7 @@ public class TileCacheModel
 	 */
 	private static boolean looksLikeCacheDir(File inDir)
 	{
-		// look for at least one numeric directory, nothing else
+		// look for at least one numeric directory or a tile pack, nothing else
 		boolean numFound = false;
 		if (inDir != null && inDir.exists() && inDir.isDirectory() && inDir.canRead())
 		{
@@ -149,6 +150,10 @@ public class TileCacheModel
 					{
 						numFound = true;
 					}
+					else if (subdir.isFile() && subdir.getName().equals(TilePack.PACK_FILENAME))
+					{
+						numFound = true;
+					}
 					else return false; // either a file or non-numeric directory
 				}
 			}
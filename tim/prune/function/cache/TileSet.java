@@ -2,6 +2,8 @@ package tim.prune.function.cache;
 
 import java.io.File;
 
+import tim.prune.gui.map.TilePack;
+
 
 /**
  * Class to hold information about a single tile set
@@ -40,6 +42,35 @@ public class TileSet
 					_rowInfo.addRow(row);
 				}
 			}
+			// Also count the tiles held in a pack, if any
+			File packFile = new File(inDir, TilePack.PACK_FILENAME);
+			if (packFile.exists()) {
+				addPackRows(TilePack.getPack(packFile, false));
+			}
+		}
+	}
+
+	/**
+	 * Add row info objects for the tiles in the given pack, one for each zoom level
+	 * @param inPack tile pack
+	 */
+	private void addPackRows(TilePack inPack)
+	{
+		if (inPack == null) {return;}
+		RowInfo[] rows = new RowInfo[32];
+		for (TilePack.TileRecord record : inPack.getRecords())
+		{
+			final int zoom = record.getZoom();
+			if (zoom < 0 || zoom >= rows.length) {continue;}
+			if (rows[zoom] == null)
+			{
+				rows[zoom] = new RowInfo();
+				rows[zoom].setZoom(zoom);
+			}
+			rows[zoom].addTile(record.getLength());
+		}
+		for (RowInfo row : rows) {
+			_rowInfo.addRow(row);
 		}
 	}
 
@@ -1,17 +1,27 @@
 package tim.prune.function.compress;
 
+import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.event.ActionListener;
 
+import javax.swing.JCheckBox;
+import javax.swing.JPanel;
+
 import tim.prune.data.DataPoint;
+import tim.prune.data.SpatialHash;
 import tim.prune.data.Track;
 
 /**
  * Algorithm for detecting close points to compress
- * Only checks distance to previous point, not any earlier point
+ * Normally only checks distance to previous point, not any earlier point,
+ * unless the option to compare with the whole track is selected
  */
 public class ClosePointsAlgorithm extends SingleParameterAlgorithm
 {
+	/** Checkbox to compare with the whole track instead of just the previous point */
+	private JCheckBox _wholeTrackCheckBox = null;
+	/** Whole track flag taken from the checkbox for the background preview */
+	private volatile boolean _wholeTrack = false;
 
 	/**
 	 * Constructor
@@ -22,6 +32,16 @@ public class ClosePointsAlgorithm extends SingleParameterAlgorithm
 	public ClosePointsAlgorithm(Track inTrack, TrackDetails inDetails, ActionListener inListener)
 	{
 		super(inTrack, inDetails, inListener);
+		_wholeTrackCheckBox = makeOptionCheckBox("dialog.compress.wholetrack", inListener);
+	}
+
+	/**
+	 * Take a copy of the activation and parameter and the whole track flag
+	 */
+	public void takeSettings()
+	{
+		super.takeSettings();
+		_wholeTrack = _wholeTrackCheckBox.isSelected();
 	}
 
 	/**
@@ -40,6 +60,9 @@ public class ClosePointsAlgorithm extends SingleParameterAlgorithm
 			return 0;
 		}
 		double threshold = _trackDetails.getTrackSpan() * param;
+		if (_wholeTrack) {
+			return compressWholeTrack(inFlags, threshold);
+		}
 
 		// Loop over all points checking distances to previous point
 		// TODO: Maybe this should also check distance to _next_ point as well!
@@ -88,12 +111,48 @@ public class ClosePointsAlgorithm extends SingleParameterAlgorithm
 	}
 
 
+	/**
+	 * Compare each point with all the earlier kept track points, using a spatial hash
+	 * @param inFlags deletion flags from previous algorithms
+	 * @param inThreshold distance threshold
+	 * @return number of points deleted
+	 */
+	private int compressWholeTrack(boolean[] inFlags, double inThreshold)
+	{
+		if (inThreshold <= 0.0) {return 0;}
+		final int numPoints = _track.getNumPoints();
+		SpatialHash hash = new SpatialHash(_track, inThreshold);
+		int numDeleted = 0;
+		for (int i=0; i<numPoints; i++)
+		{
+			// don't delete points already deleted, and don't consider waypoints
+			if (inFlags[i] || _track.getPoint(i).isWaypoint()) {continue;}
+			// Don't delete any photo points or start/end of segments
+			if (i > 0 && !_track.getPoint(i).hasMedia()
+				&& !_trackDetails.isSegmentStart(i) && !_trackDetails.isSegmentEnd(i)
+				&& hash.findPointWithin(i) >= 0)
+			{
+				inFlags[i] = true;
+				numDeleted++;
+			}
+			else {
+				hash.addPoint(i);
+			}
+		}
+		return numDeleted;
+	}
+
+
 	/**
 	 * @return specific gui components for dialog
 	 */
 	protected Component getSpecificGuiComponents()
 	{
-		return getSpecificGuiComponents("dialog.compress.closepoints.paramdesc", "200");
+		JPanel panel = new JPanel();
+		panel.setLayout(new BorderLayout());
+		panel.add(getSpecificGuiComponents("dialog.compress.closepoints.paramdesc", "200"), BorderLayout.CENTER);
+		panel.add(_wholeTrackCheckBox, BorderLayout.SOUTH);
+		return panel;
 	}
 
 	/**
@@ -13,6 +13,7 @@ import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import tim.prune.App;
 import tim.prune.I18nManager;
@@ -30,6 +31,16 @@ public class CompressTrackFunction extends MarkAndDeleteFunction
 	private JButton _okButton = null;
 	private CompressionAlgorithm[] _algorithms = null;
 	private SummaryLabel _summaryLabel = null;
+	/** Deletion flags after each algorithm, from the last preview */
+	private boolean[][] _stageFlags = null;
+	/** Number of points deleted by each algorithm, or -1 if not activated */
+	private int[] _stageCounts = null;
+	/** Index of first algorithm which needs to be run again */
+	private int _firstChangedStage = 0;
+	/** Number of latest preview request, to cancel older ones */
+	private int _requestNum = 0;
+	/** Thread running the preview, if any */
+	private Thread _previewThread = null;
 
 
 	/**
@@ -62,25 +73,112 @@ public class CompressTrackFunction extends MarkAndDeleteFunction
 			_dialog.getContentPane().add(makeDialogComponents());
 			_dialog.pack();
 		}
-		preview();
+		// Track may have changed since last time, so start again
+		requestPreview(0);
 		_dialog.setVisible(true);
 	}
 
 	/**
-	 * Preview the compression by calling each algorithm in turn
-	 * @return array of delete flags
+	 * Request a new preview because the given algorithm has changed.
+	 * The earlier algorithms keep their results, and the preview runs in the background
+	 * with a copy of the settings taken here on the EDT
+	 * @param inStage index of changed algorithm
 	 */
-	private boolean[] preview()
+	private synchronized void requestPreview(int inStage)
 	{
-		int numToDelete = 0;
-		boolean[] deleteFlags = new boolean[_track.getNumPoints()];
-		for (int i=0; i<_algorithms.length; i++)
+		for (int i=inStage; i<_algorithms.length; i++) {
+			_algorithms[i].takeSettings();
+		}
+		_firstChangedStage = Math.min(_firstChangedStage, inStage);
+		_requestNum++;
+		_okButton.setEnabled(false);
+		if (_previewThread == null)
 		{
-			numToDelete += _algorithms[i].preview(deleteFlags);
+			_previewThread = new Thread(new Runnable() {
+				public void run() {
+					runPreviews();
+				}
+			});
+			_previewThread.setDaemon(true);
+			_previewThread.start();
 		}
-		_summaryLabel.setValue(numToDelete);
-		_okButton.setEnabled(numToDelete > 0);
-		return deleteFlags;
+	}
+
+	/**
+	 * Run the preview requests until there are no more
+	 */
+	private void runPreviews()
+	{
+		final int numStages = _algorithms.length;
+		while (true)
+		{
+			int stage = 0, requestNum = 0;
+			synchronized (this)
+			{
+				if (_firstChangedStage >= numStages)
+				{
+					_previewThread = null;
+					return;
+				}
+				stage = _firstChangedStage;
+				requestNum = _requestNum;
+				_firstChangedStage = numStages;
+			}
+			final int numPoints = _track.getNumPoints();
+			if (stage == 0 || _stageFlags == null || _stageFlags[stage-1] == null
+				|| _stageFlags[stage-1].length != numPoints)
+			{
+				stage = 0;
+				_stageFlags = new boolean[numStages][];
+				_stageCounts = new int[numStages];
+			}
+			// Start with the flags from the previous algorithm, if any
+			boolean[] deleteFlags = (stage == 0 ? new boolean[numPoints] : _stageFlags[stage-1].clone());
+			for (; stage<numStages; stage++)
+			{
+				synchronized (this)
+				{
+					if (requestNum != _requestNum)
+					{
+						// Newer request has arrived, so continue from here with the new parameters
+						_firstChangedStage = Math.min(_firstChangedStage, stage);
+						break;
+					}
+				}
+				_stageCounts[stage] = _algorithms[stage].preview(deleteFlags);
+				_stageFlags[stage] = deleteFlags.clone();
+			}
+			if (stage == numStages) {
+				showPreview(requestNum, _stageCounts.clone());
+			}
+		}
+	}
+
+	/**
+	 * Show the results of the preview in the dialog
+	 * @param inRequestNum number of request
+	 * @param inCounts number of points deleted by each algorithm
+	 */
+	private void showPreview(final int inRequestNum, final int[] inCounts)
+	{
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run()
+			{
+				synchronized (CompressTrackFunction.this)
+				{
+					// Ignore old results if another request is waiting
+					if (inRequestNum != _requestNum) {return;}
+				}
+				int numToDelete = 0;
+				for (int i=0; i<_algorithms.length; i++)
+				{
+					_algorithms[i].showPreview(inCounts[i]);
+					numToDelete += Math.max(inCounts[i], 0);
+				}
+				_summaryLabel.setValue(numToDelete);
+				_okButton.setEnabled(numToDelete > 0);
+			}
+		});
 	}
 
 
@@ -142,22 +240,30 @@ public class CompressTrackFunction extends MarkAndDeleteFunction
 	 */
 	private void makeAlgorithms()
 	{
-		// make listener to be informed of algorithm activation
-		ActionListener changeListener = new ActionListener() {
-			public void actionPerformed(ActionEvent arg0)
-			{
-				preview();
-			};
-		};
 		// construct track details to be used by all algorithms
 		TrackDetails details = new TrackDetails(_track);
-		// make array of algorithm objects
+		// make array of algorithm objects, each with a listener to be informed of changes
 		_algorithms = new CompressionAlgorithm[] {
-			new DuplicatePointAlgorithm(_track, details, changeListener),
-			new ClosePointsAlgorithm(_track, details, changeListener),
-			new WackyPointAlgorithm(_track, details, changeListener),
-			new SingletonAlgorithm(_track, details, changeListener),
-			new DouglasPeuckerAlgorithm(_track, details, changeListener)
+			new DuplicatePointAlgorithm(_track, details, makeChangeListener(0)),
+			new ClosePointsAlgorithm(_track, details, makeChangeListener(1)),
+			new WackyPointAlgorithm(_track, details, makeChangeListener(2)),
+			new SingletonAlgorithm(_track, details, makeChangeListener(3)),
+			new DouglasPeuckerAlgorithm(_track, details, makeChangeListener(4))
+		};
+	}
+
+	/**
+	 * Make a listener to be informed of changes to an algorithm
+	 * @param inStage index of algorithm
+	 * @return listener to run the preview from this algorithm onwards
+	 */
+	private ActionListener makeChangeListener(final int inStage)
+	{
+		return new ActionListener() {
+			public void actionPerformed(ActionEvent arg0)
+			{
+				requestPreview(inStage);
+			};
 		};
 	}
 
@@ -167,7 +273,8 @@ public class CompressTrackFunction extends MarkAndDeleteFunction
 	 */
 	private void finish()
 	{
-		boolean[] deleteFlags = preview();
+		// Ok button is only enabled when the preview is complete
+		boolean[] deleteFlags = _stageFlags[_algorithms.length - 1];
 		// All flags are now combined in deleteFlags array
 		int numMarked = 0;
 		for (int i=0; i<deleteFlags.length; i++)
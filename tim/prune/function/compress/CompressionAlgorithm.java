@@ -2,6 +2,7 @@ package tim.prune.function.compress;
 
 import java.awt.BorderLayout;
 import java.awt.Component;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.BorderFactory;
@@ -20,6 +21,8 @@ public abstract class CompressionAlgorithm
 	protected SummaryLabel _summaryLabel = null;
 	protected Track _track = null;
 	protected TrackDetails _trackDetails = null;
+	/** Activation state taken from the checkbox for the background preview */
+	private volatile boolean _activated = false;
 
 
 	/**
@@ -48,6 +51,16 @@ public abstract class CompressionAlgorithm
 	}
 
 
+	/**
+	 * Take a copy of the settings from the gui components, so that the
+	 * preview can use them from a background thread.  Must be called on the EDT
+	 */
+	public void takeSettings()
+	{
+		_activated = _activateCheckBox.isSelected();
+	}
+
+
 	/**
 	 * @return JPanel containing gui components
 	 */
@@ -68,24 +81,55 @@ public abstract class CompressionAlgorithm
 	}
 
 	/**
-	 * Preview the algorithm by counting the number of points deleted
+	 * Preview the algorithm by counting the number of points deleted.
+	 * Only uses the settings copied by takeSettings, so it can be called from a background thread
 	 * @param inFlags array of deletion flags from previous algorithms
-	 * @return number of points to be deleted by this algorithm
+	 * @return number of points to be deleted by this algorithm, or -1 if not activated
 	 */
 	public int preview(boolean[] inFlags)
 	{
-		int numDeleted = 0;
-		if (isActivated())
-		{
-			// Run the compression and set the deletion flags
-			_trackDetails.initialise();
-			numDeleted = compress(inFlags);
-			_summaryLabel.setValue(numDeleted);
+		if (!_activated) {
+			return -1;
+		}
+		// Run the compression and set the deletion flags
+		_trackDetails.initialise();
+		return compress(inFlags);
+	}
+
+
+	/**
+	 * Show the result of the preview in the summary label
+	 * @param inNumDeleted number of points to be deleted, or -1 if not activated
+	 */
+	public void showPreview(int inNumDeleted)
+	{
+		if (inNumDeleted >= 0) {
+			_summaryLabel.setValue(inNumDeleted);
 		}
 		else {
 			_summaryLabel.clearValue();
 		}
-		return numDeleted;
+	}
+
+
+	/**
+	 * Make a checkbox for an option of the algorithm
+	 * @param inTextKey key for checkbox text
+	 * @param inListener listener to be informed of changes if the algorithm is activated
+	 * @return checkbox
+	 */
+	protected JCheckBox makeOptionCheckBox(String inTextKey, final ActionListener inListener)
+	{
+		JCheckBox checkBox = new JCheckBox(I18nManager.getText(inTextKey));
+		checkBox.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e)
+			{
+				if (isActivated()) {
+					inListener.actionPerformed(e);
+				}
+			}
+		});
+		return checkBox;
 	}
 
 
@@ -2,15 +2,101 @@ package tim.prune.function.compress;
 
 import java.awt.Component;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import tim.prune.data.DataPoint;
 import tim.prune.data.Track;
 
 /**
- * Douglas-Peucker algorithm for compresssion
+ * Douglas-Peucker algorithm for compresssion.
+ * Uses an explicit stack instead of recursion, and compresses
+ * separate segments and large sections of them in parallel
  */
 public class DouglasPeuckerAlgorithm extends SingleParameterAlgorithm
 {
+	/** Pool for compressing large tracks in parallel */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+	/** Minimum number of points in track to use the pool */
+	private static final int MIN_PARALLEL_POINTS = 20000;
+	/** Minimum number of points in a section to compress it in a separate task */
+	private static final int MIN_TASK_POINTS = 10000;
+
+
+	/**
+	 * Task to compress a section of a segment, splitting off
+	 * large sub-sections as new tasks if running in parallel
+	 */
+	private class SectionTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private int[] _flags = null;
+		private int _start = 0, _end = 0;
+		private double _threshold = 0.0;
+		private boolean _parallel = false;
+
+		/**
+		 * Constructor
+		 * @param inFlags int array of deletion flags for entire track
+		 * @param inStart index of start of section
+		 * @param inEnd index of end of section
+		 * @param inThreshold threshold to use
+		 * @param inParallel true if running in the pool
+		 */
+		SectionTask(int[] inFlags, int inStart, int inEnd, double inThreshold, boolean inParallel)
+		{
+			_flags = inFlags;
+			_start = inStart; _end = inEnd;
+			_threshold = inThreshold;
+			_parallel = inParallel;
+		}
+
+		/** Compress the section */
+		protected void compute()
+		{
+			ArrayList<SectionTask> forkedTasks = null;
+			// Stack of start and end indices still to be compressed
+			int[] stack = new int[64];
+			stack[0] = _start; stack[1] = _end;
+			int stackSize = 2;
+			while (stackSize > 0)
+			{
+				final int end = stack[--stackSize];
+				final int start = stack[--stackSize];
+				if (end - start < 2) {continue;} // section too short to compress
+				if (_parallel && end - start >= MIN_TASK_POINTS && (start != _start || end != _end))
+				{
+					// Large section, so let another thread do it
+					SectionTask task = new SectionTask(_flags, start, end, _threshold, true);
+					task.fork();
+					if (forkedTasks == null) {forkedTasks = new ArrayList<SectionTask>();}
+					forkedTasks.add(task);
+					continue;
+				}
+				final int splitIndex = findSplitIndex(_flags, start, end, _threshold);
+				if (splitIndex > start)
+				{
+					// Compress bit before and bit after split point
+					if (stackSize + 4 > stack.length)
+					{
+						int[] biggerStack = new int[stack.length * 2];
+						System.arraycopy(stack, 0, biggerStack, 0, stackSize);
+						stack = biggerStack;
+					}
+					stack[stackSize++] = splitIndex; stack[stackSize++] = end;
+					stack[stackSize++] = start; stack[stackSize++] = splitIndex;
+				}
+			}
+			if (forkedTasks != null)
+			{
+				for (SectionTask task : forkedTasks) {
+					task.join();
+				}
+			}
+		}
+	}
+
 	/**
 	 * Constructor
 	 * @param inTrack track object
@@ -44,17 +130,19 @@ public class DouglasPeuckerAlgorithm extends SingleParameterAlgorithm
 		// Convert inFlags into keepFlags
 		int[] keepFlags = new int[numPoints];
 		int segStart = -1, segEnd = -1;
+		final ArrayList<SectionTask> segmentTasks = new ArrayList<SectionTask>();
+		final boolean parallel = (numPoints >= MIN_PARALLEL_POINTS);
 		// Loop over all points in track
 		for (int i=0; i<numPoints; i++)
 		{
 			DataPoint currPoint = _track.getPoint(i);
 			if (currPoint.getSegmentStart())
 			{
-				// new segment found, so process previous one
+				// new segment found, so remember previous one
 				if (segStart > -1 && segEnd > segStart)
 				{
 					keepFlags[segEnd] = 1; // keep
-					compressSegment(keepFlags, segStart, segEnd, threshold);
+					segmentTasks.add(new SectionTask(keepFlags, segStart, segEnd, threshold, parallel));
 					segStart = segEnd = -1;
 				}
 			}
@@ -73,7 +161,25 @@ public class DouglasPeuckerAlgorithm extends SingleParameterAlgorithm
 		// Last segment, if any
 		if (segStart >= 0 && segEnd > segStart) {
 			keepFlags[segEnd] = 1; // keep
-			compressSegment(keepFlags, segStart, segEnd, threshold);
+			segmentTasks.add(new SectionTask(keepFlags, segStart, segEnd, threshold, parallel));
+		}
+		// Segments don't overlap, so they can all be compressed at once
+		if (numPoints > 0) {
+			_track.getX(0); // make sure track is scaled before starting
+		}
+		if (parallel)
+		{
+			POOL.invoke(new RecursiveAction() {
+				protected void compute() {
+					invokeAll(segmentTasks);
+				}
+			});
+		}
+		else
+		{
+			for (SectionTask task : segmentTasks) {
+				task.compute();
+			}
 		}
 		// Convert keepFlags back into inFlags
 		for (int i=1; i<numPoints; i++) {
@@ -98,57 +204,49 @@ public class DouglasPeuckerAlgorithm extends SingleParameterAlgorithm
 	}
 
 	/**
-	 * Compress the given segment (recursively)
+	 * Find the point at which to split the given section
 	 * @param inFlags int array of deletion flags for entire track
-	 * @param inSegStart index of start of segment
-	 * @param inSegEnd index of end of segment
+	 * @param inStart index of start of section
+	 * @param inEnd index of end of section
 	 * @param inThreshold threshold to use
+	 * @return index of split point, or -1 if section doesn't need splitting
 	 */
-	private void compressSegment(int[] inFlags, int inSegStart, int inSegEnd,
-		double inThreshold)
+	private int findSplitIndex(int[] inFlags, int inStart, int inEnd, double inThreshold)
 	{
-		// System.out.println("Compress segment " + inSegStart + "-" + inSegEnd);
-		final int numPoints = inSegEnd - inSegStart + 1;
-		if (numPoints < 3) {return;} // segment too short to compress
 		// Calculate parameters of straight line between first and last
-		XYpoint startxy = new XYpoint(_track.getX(inSegStart), _track.getY(inSegStart));
-		XYpoint endxy = new XYpoint(_track.getX(inSegEnd), _track.getY(inSegEnd));
-		XYpoint ab = startxy.vectorTo(endxy);
-		final double dist2AB = ab.len2();
-		// create unit vector perpendicular to AB
-		final double distAB = ab.len();
-		XYpoint perpendicular = new XYpoint(ab.y/distAB, -ab.x/distAB);
-		// Check whether distAB is 0.0 - if so, find furthest point from startxy and compress from start to here and here to end
-		if (distAB <= 0.0)
-		{
-			final int furthestIndex = getFurthestPointIndex(inSegStart, inSegEnd);
-			if (furthestIndex > inSegStart)
-			{
-				compressSegment(inFlags, inSegStart, furthestIndex, inThreshold);
-				compressSegment(inFlags, furthestIndex, inSegEnd, inThreshold);
-			}
-			return;
+		final double startX = _track.getX(inStart), startY = _track.getY(inStart);
+		final double endX = _track.getX(inEnd), endY = _track.getY(inEnd);
+		final double abX = endX - startX, abY = endY - startY;
+		final double dist2AB = abX * abX + abY * abY;
+		final double distAB = Math.sqrt(dist2AB);
+		// Check whether distAB is 0.0 - if so, find furthest point from start and split there
+		if (distAB <= 0.0) {
+			return getFurthestPointIndex(inStart, inEnd);
 		}
+		// create unit vector perpendicular to AB
+		final double perpX = abY / distAB, perpY = -abX / distAB;
 
 		double maxDist = -1.0, dist = -1.0;
 		int furthestIndex = -1;
-		for (int i=inSegStart+1; i<inSegEnd; i++)
+		for (int i=inStart+1; i<inEnd; i++)
 		{
 			if (inFlags[i] == 0) // unknown status
 			{
-				XYpoint currPoint = new XYpoint(_track.getX(i), _track.getY(i));
-				XYpoint ac = startxy.vectorTo(currPoint);
-				double distAP = ab.dot(ac) / dist2AB;
+				final double acX = _track.getX(i) - startX, acY = _track.getY(i) - startY;
+				final double distAP = (abX * acX + abY * acY) / dist2AB;
 				// calc distance from point to line depending on distAP
 				if (distAP < 0.0) {
-					dist = ac.len(); // outside line segment AB on the A side
+					dist = Math.sqrt(acX * acX + acY * acY); // outside line segment AB on the A side
 				}
-				else if (distAP > 1.0) {
-					dist = endxy.vectorTo(currPoint).len(); // outside on the B side
+				else if (distAP > 1.0)
+				{
+					// outside on the B side
+					final double bcX = _track.getX(i) - endX, bcY = _track.getY(i) - endY;
+					dist = Math.sqrt(bcX * bcX + bcY * bcY);
 				}
 				else {
 					// P lies between A and B so use dot product
-					dist = Math.abs(perpendicular.dot(ac));
+					dist = Math.abs(perpX * acX + perpY * acY);
 				}
 				if (dist > maxDist)
 				{
@@ -161,10 +259,9 @@ public class DouglasPeuckerAlgorithm extends SingleParameterAlgorithm
 		if (maxDist > inThreshold)
 		{
 			inFlags[furthestIndex] = 1;
-			// Make recursive calls for bit before and bit after kept point
-			compressSegment(inFlags, inSegStart, furthestIndex, inThreshold);
-			compressSegment(inFlags, furthestIndex, inSegEnd, inThreshold);
+			return furthestIndex;
 		}
+		return -1;
 	}
 
 
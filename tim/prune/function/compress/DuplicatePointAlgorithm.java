@@ -2,6 +2,9 @@ package tim.prune.function.compress;
 
 import java.awt.Component;
 import java.awt.event.ActionListener;
+import java.util.HashMap;
+
+import javax.swing.JCheckBox;
 
 import tim.prune.data.DataPoint;
 import tim.prune.data.Track;
@@ -13,6 +16,10 @@ public class DuplicatePointAlgorithm extends CompressionAlgorithm
 {
 	/** Number of points before this one to consider as duplicates */
 	private static final int NUM_POINTS_TO_BACKTRACK = 20;
+	/** Checkbox to compare with the whole track instead of just the last few points */
+	private JCheckBox _wholeTrackCheckBox = null;
+	/** Whole track flag taken from the checkbox for the background preview */
+	private volatile boolean _wholeTrack = false;
 
 	/**
 	 * Constructor
@@ -23,6 +30,16 @@ public class DuplicatePointAlgorithm extends CompressionAlgorithm
 	public DuplicatePointAlgorithm(Track inTrack, TrackDetails inDetails, ActionListener inListener)
 	{
 		super(inTrack, inDetails, inListener);
+		_wholeTrackCheckBox = makeOptionCheckBox("dialog.compress.wholetrack", inListener);
+	}
+
+	/**
+	 * Take a copy of the activation and the whole track flag
+	 */
+	public void takeSettings()
+	{
+		super.takeSettings();
+		_wholeTrack = _wholeTrackCheckBox.isSelected();
 	}
 
 	/**
@@ -32,6 +49,9 @@ public class DuplicatePointAlgorithm extends CompressionAlgorithm
 	 */
 	protected int compress(boolean[] inFlags)
 	{
+		if (_wholeTrack) {
+			return compressWholeTrack(inFlags);
+		}
 		int numPoints = _track.getNumPoints();
 		int numDeleted = 0;
 		// Loop over all points looking for duplicates
@@ -62,13 +82,66 @@ public class DuplicatePointAlgorithm extends CompressionAlgorithm
 	}
 
 
+	/**
+	 * Compare each point with all the earlier points in the track, using a hash of the positions
+	 * @param inFlags deletion flags from previous algorithms
+	 * @return number of points deleted
+	 */
+	private int compressWholeTrack(boolean[] inFlags)
+	{
+		final int numPoints = _track.getNumPoints();
+		int numDeleted = 0;
+		// Index of the last kept point for each hash, and of the previous kept point with the same hash
+		HashMap<Long, Integer> lastIndices = new HashMap<Long, Integer>();
+		int[] prevIndices = new int[numPoints];
+		for (int i=0; i<numPoints; i++)
+		{
+			// Don't consider points which are already marked as deleted
+			if (inFlags[i]) {continue;}
+			DataPoint currPoint = _track.getPoint(i);
+			if (currPoint.getLatitude() == null || currPoint.getLongitude() == null) {continue;}
+			final Long key = makeKey(currPoint);
+			Integer lastIndex = lastIndices.get(key);
+			// Don't delete any photo points or audio points
+			if (!currPoint.hasMedia())
+			{
+				for (int j=(lastIndex == null ? -1 : lastIndex.intValue()); j>=0; j=prevIndices[j])
+				{
+					if (currPoint.isDuplicate(_track.getPoint(j)))
+					{
+						inFlags[i] = true;
+						numDeleted++;
+						break;
+					}
+				}
+			}
+			if (!inFlags[i])
+			{
+				prevIndices[i] = (lastIndex == null ? -1 : lastIndex.intValue());
+				lastIndices.put(key, i);
+			}
+		}
+		return numDeleted;
+	}
+
+	/**
+	 * @param inPoint point with latitude and longitude
+	 * @return hash key for the point's position
+	 */
+	private static Long makeKey(DataPoint inPoint)
+	{
+		// Adding zero makes -0.0 the same as 0.0
+		return Long.valueOf(Double.doubleToLongBits(inPoint.getLatitude().getDouble() + 0.0) * 31
+			+ Double.doubleToLongBits(inPoint.getLongitude().getDouble() + 0.0));
+	}
+
+
 	/**
 	 * @return specific gui components for dialog
 	 */
 	protected Component getSpecificGuiComponents()
 	{
-		// no parameters to set, so no gui components
-		return null;
+		return _wholeTrackCheckBox;
 	}
 
 	/**
@@ -2,7 +2,9 @@ package tim.prune.function.compress;
 
 import tim.prune.App;
 import tim.prune.UpdateMessageBroker;
-import tim.prune.data.DataPoint;
+import tim.prune.data.DoubleRange;
+import tim.prune.data.LatLonRectangle;
+import tim.prune.data.Track;
 
 /**
  * Function to mark all the points in the selected rectangle
@@ -69,23 +71,16 @@ public class MarkPointsInRectangleFunction extends MarkAndDeleteFunction
 			return;
 		}
 
-		// Loop over all points in track
-		final int numPoints = _app.getTrackInfo().getTrack().getNumPoints();
-		int numMarked = 0;
-		for (int i=0; i<numPoints; i++)
-		{
-			DataPoint point = _app.getTrackInfo().getTrack().getPoint(i);
-			// For each point, see if it's within the rectangle
-			final double pointLon = point.getLongitude().getDouble();
-			final double pointLat = point.getLatitude().getDouble();
-			final boolean insideRect = (pointLon >= _minLon && pointLon <= _maxLon
-				&& pointLat >= _minLat && pointLat <= _maxLat);
-			// Mark it accordingly (also resetting points outside the rect to false)
-			point.setMarkedForDeletion(insideRect);
-			if (insideRect) {
-				numMarked++;
-			}
+		// Reset all the markers, then mark the points found inside the rectangle
+		Track track = _app.getTrackInfo().getTrack();
+		track.clearDeletionMarkers();
+		LatLonRectangle rect = new LatLonRectangle(new DoubleRange(_minLat, _maxLat),
+			new DoubleRange(_minLon, _maxLon));
+		final int[] pointsInside = track.getPointIndicesInRectangle(rect);
+		for (int i : pointsInside) {
+			track.getPoint(i).setMarkedForDeletion(true);
 		}
+		final int numMarked = pointsInside.length;
 
 		// Inform subscribers to update display
 		UpdateMessageBroker.informSubscribers();
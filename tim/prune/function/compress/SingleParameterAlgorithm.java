@@ -22,6 +22,8 @@ public abstract class SingleParameterAlgorithm extends CompressionAlgorithm
 	private JTextField _parameterField = null;
 	/** Listener from parent dialog */
 	private ActionListener _listener = null;
+	/** Parameter value taken from the text field for the background preview */
+	private volatile double _parameter = 0.0;
 
 
 	/**
@@ -62,18 +64,26 @@ public abstract class SingleParameterAlgorithm extends CompressionAlgorithm
 	}
 
 	/**
-	 * Parse the text field to get parameter
-	 * @return parameter given as double
+	 * Take a copy of the activation and the parsed parameter
 	 */
-	protected double getParameter()
+	public void takeSettings()
 	{
+		super.takeSettings();
 		double param = 0.0;
 		try {
 			// Parse from string
 			param = Double.parseDouble(_parameterField.getText());
 		}
 		catch (NumberFormatException nfe) {} // ignore, param stays zero
-		return param;
+		_parameter = param;
+	}
+
+	/**
+	 * @return parameter given as double, as parsed by takeSettings
+	 */
+	protected double getParameter()
+	{
+		return _parameter;
 	}
 
 	/**
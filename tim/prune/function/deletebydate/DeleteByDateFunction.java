@@ -192,16 +192,12 @@ public class DeleteByDateFunction extends MarkAndDeleteFunction
 				}
 			}
 		}
+		// delete flags have changed, so refresh display
+		UpdateMessageBroker.informSubscribers(DataSubscriber.DATA_EDITED);
 		// Now points have been marked, we can ask user to delete them (or delete automatically)
 		if (numMarked > 0) {
 			optionallyDeleteMarkedPoints(numMarked);
 		}
-		else
-		{
-			// Do nothing   //System.out.println("Nothing selected to delete!");
-			// delete flags might have been reset, so refresh display
-			UpdateMessageBroker.informSubscribers(DataSubscriber.SELECTION_CHANGED);
-		}
 		_dialog.dispose();
 	}
 }
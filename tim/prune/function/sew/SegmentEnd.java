@@ -13,7 +13,8 @@ public class SegmentEnd implements Comparable<SegmentEnd>
 	private Coordinate _longitude = null;
 	private Coordinate _latitude  = null;
 	private int        _pointIndex = 0;
-	private boolean    _active = true;
+	private int        _segmentNum = 0;
+	private SegmentEnd _joinedEnd = null;
 
 
 	/**
@@ -26,7 +27,6 @@ public class SegmentEnd implements Comparable<SegmentEnd>
 		_longitude = inPoint.getLongitude();
 		_latitude  = inPoint.getLatitude();
 		_pointIndex = inIndex;
-		_active    = true;
 	}
 
 	/**
@@ -58,62 +58,35 @@ public class SegmentEnd implements Comparable<SegmentEnd>
 		return _pointIndex;
 	}
 
-	/** @return point index of other end */
-	public int getOtherPointIndex()
-	{
-		return _otherEnd == null ? _pointIndex : _otherEnd._pointIndex;
-	}
-
-	/** @return get the earlier of the two point indices */
-	public int getEarlierIndex() {
-		return isStart() ? _pointIndex : _otherEnd._pointIndex;
-	}
-
-	/** @return get the later of the two point indices */
-	public int getLaterIndex() {
-		return isStart() ? _otherEnd._pointIndex : _pointIndex;
-	}
-
 	/**
-	 * @return earlier end of this segment
+	 * @return number of segment, shared by both ends
 	 */
-	public SegmentEnd getEarlierEnd() {
-		return isStart() ? this : _otherEnd;
+	public int getSegmentNum() {
+		return _segmentNum;
 	}
 
 	/**
-	 * @return later end of this segment
+	 * @param inNum number of segment
 	 */
-	public SegmentEnd getLaterEnd() {
-		return isStart() ? _otherEnd : this;
+	public void setSegmentNum(int inNum) {
+		_segmentNum = inNum;
 	}
 
 	/**
-	 * Reverse this segment, by swapping the point indices of the start and end
-	 * isStart() will thereby also be reversed for both ends
+	 * Sew this end to the end of another segment
+	 * @param inOther end of other segment at the same location
 	 */
-	public void reverseSegment()
+	public void joinTo(SegmentEnd inOther)
 	{
-		if (_otherEnd != null)
-		{
-			int pointIndex = _pointIndex;
-			_pointIndex = _otherEnd._pointIndex;
-			_otherEnd._pointIndex = pointIndex;
-		}
-	}
-
-	/**
-	 * @return true if this node is still active
-	 */
-	public boolean isActive() {
-		return _active;
+		_joinedEnd = inOther;
+		inOther._joinedEnd = this;
 	}
 
 	/**
-	 * Deactive this node, don't use it any more (it's already been merged)
+	 * @return end of the other segment which this end is sewn to, or null
 	 */
-	public void deactivate() {
-		_active = false;
+	public SegmentEnd getJoinedEnd() {
+		return _joinedEnd;
 	}
 
 	/**
@@ -142,56 +115,4 @@ public class SegmentEnd implements Comparable<SegmentEnd>
 		// Points are identical so just sort by index
 		return _pointIndex - o._pointIndex;
 	}
-
-	/**
-	 * Adjust the point index as a result of a cut/move operation on the track
-	 * @param inSegmentStart index of start of segment to be moved
-	 * @param inSegmentEnd index of end of segment to be moved
-	 * @param inMoveTo index of point before which the segment should be moved
-	 */
-	public void adjustPointIndex(int inSegmentStart, int inSegmentEnd, int inMoveTo)
-	{
-		final int segmentSize = inSegmentEnd - inSegmentStart + 1; // number of points moved
-		final boolean forwardsMove = inMoveTo > inSegmentEnd;
-		// Min and max indices of affected points (apart from segment to be moved)
-		final int minIndex = forwardsMove ? inSegmentEnd + 1 : inMoveTo;
-		final int maxIndex = forwardsMove ? inMoveTo - 1 : inSegmentStart - 1;
-		if (_pointIndex >= minIndex && _pointIndex <= maxIndex)
-		{
-			// final int origIndex = _pointIndex;
-			if (forwardsMove) {
-				_pointIndex -= segmentSize; // segment moved forwards, point indices reduced
-			}
-			else {
-				_pointIndex += segmentSize; // segment moved backwards, point indices shifted forwards
-			}
-			// System.out.println("    Need to adjust index: " + origIndex + " -> " + _pointIndex);
-		}
-		else if (_pointIndex == inSegmentStart)
-		{
-			// final int origIndex = _pointIndex;
-			if (forwardsMove) {
-				_pointIndex = inMoveTo - segmentSize;
-			}
-			else
-			{
-				// Point index moves to moveTo
-				_pointIndex = inMoveTo;
-			}
-			// System.out.println("    Need to adjust movedseg: " + origIndex + " -> " + _pointIndex);
-		}
-		else if (_pointIndex == inSegmentEnd)
-		{
-			// final int origEndIndex = _otherEnd._pointIndex;
-			if (forwardsMove) {
-				_pointIndex = inMoveTo - 1;
-			}
-			else
-			{
-				// Point index moves to moveTo
-				_pointIndex = inMoveTo + inSegmentEnd - inSegmentStart;
-			}
-			// System.out.println("    Need to adjust movedseg: " + origEndIndex + " -> " + _pointIndex);
-		}
-	}
 }
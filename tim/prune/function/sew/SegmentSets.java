@@ -0,0 +1,62 @@
+package tim.prune.function.sew;
+
+/**
+ * Class to keep track of which segments have been joined together into chains,
+ * so that a join which would close a loop of segments can be rejected
+ */
+public class SegmentSets
+{
+	/** Parent of each segment, or the segment itself if it's the root of its set */
+	private int[] _parents = null;
+
+
+	/**
+	 * Constructor
+	 * @param inNumSegments number of segments, each one starting in its own set
+	 */
+	public SegmentSets(int inNumSegments)
+	{
+		_parents = new int[inNumSegments];
+		for (int i=0; i<inNumSegments; i++) {
+			_parents[i] = i;
+		}
+	}
+
+	/**
+	 * @param inSegmentNum segment number
+	 * @return number of the root segment of its set
+	 */
+	private int findRoot(int inSegmentNum)
+	{
+		int root = inSegmentNum;
+		while (_parents[root] != root) {
+			root = _parents[root];
+		}
+		// Point everything on the path straight to the root for next time
+		int segmentNum = inSegmentNum;
+		while (_parents[segmentNum] != root)
+		{
+			final int parent = _parents[segmentNum];
+			_parents[segmentNum] = root;
+			segmentNum = parent;
+		}
+		return root;
+	}
+
+	/**
+	 * Combine the sets of the two given segments
+	 * @param inFirstNum first segment number
+	 * @param inSecondNum second segment number
+	 * @return true if combined, false if they were already in the same set
+	 */
+	public boolean union(int inFirstNum, int inSecondNum)
+	{
+		final int firstRoot = findRoot(inFirstNum);
+		final int secondRoot = findRoot(inSecondNum);
+		if (firstRoot == secondRoot) {
+			return false;
+		}
+		_parents[secondRoot] = firstRoot;
+		return true;
+	}
+}
@@ -10,17 +10,15 @@ import tim.prune.data.DataPoint;
 import tim.prune.data.Track;
 import tim.prune.function.Cancellable;
 import tim.prune.gui.GenericProgressDialog;
-import tim.prune.undo.UndoException;
 import tim.prune.undo.UndoSewSegments;
 
 /**
  * Function to sew the track segments together if possible,
- * reversing and moving as required
+ * reversing and moving as required.  All the joins are found first
+ * and then the points are rearranged together in a single pass.
  */
 public class SewTrackSegmentsFunction extends GenericFunction implements Runnable, Cancellable
 {
-	/** Set of sorted segment endpoints */
-	private TreeSet<SegmentEnd> _nodes = null;
 	/** Cancel flag */
 	private boolean _cancelled = false;
 
@@ -52,97 +50,92 @@ public class SewTrackSegmentsFunction extends GenericFunction implements Runnabl
 		// Make a progress bar
 		GenericProgressDialog progressDialog = new GenericProgressDialog(getNameKey(), null, _parentFrame, this);
 		progressDialog.show();
+		final Track track = _app.getTrackInfo().getTrack();
 		// Make an undo object to store the current points and sequence
-		UndoSewSegments undo = new UndoSewSegments(_app.getTrackInfo().getTrack());
+		UndoSewSegments undo = new UndoSewSegments(track);
 
 		// Make list of all the segment ends
-		_nodes = buildNodeList(_app.getTrackInfo().getTrack());
-		final int numNodes = (_nodes == null ? 0 : _nodes.size());
+		TreeSet<SegmentEnd> nodes = buildNodeList(track);
+		final int numNodes = (nodes == null ? 0 : nodes.size());
 		if (numNodes < 4)
 		{
 			System.out.println("Can't do anything with this, not enough segments");
 			progressDialog.close();
+			return;
 		}
-		else
-		{
-			progressDialog.showProgress(10, 100); // Say 10% for building the nodes
+		progressDialog.showProgress(10, 100); // Say 10% for building the nodes
 
-			// Disable messaging because we're probably doing a lot of reverses and moves
-			UpdateMessageBroker.enableMessaging(false);
-			// Set now contains all pairs of segment ends, ends at the same location are adjacent
-			// Now we're just interested in pairs of nodes, not three or more at the same location
-			SegmentEnd firstNode = null, secondNode = null;
-			int numJoins = 0, currNode = 0;
-			for (SegmentEnd node : _nodes)
-			{
-				if (!node.isActive()) {continue;}
-				if (firstNode == null)
-				{
-					firstNode = node;
-				}
-				else if (secondNode == null)
-				{
-					if (node.atSamePointAs(firstNode)) {
-						secondNode = node;
-					}
-					else {
-						firstNode = node;
-					}
-				}
-				else if (node.atSamePointAs(secondNode))
-				{
-					// Found three colocated nodes, not interested
-					firstNode = secondNode = null;
-				}
-				else
-				{
-					// Found a pair
-					joinSegments(firstNode, secondNode);
-					numJoins++;
-					firstNode = node; secondNode = null;
-				}
-				if (_cancelled) {break;}
-				final double fractionDone = 1.0 * currNode / numNodes;
-				progressDialog.showProgress(10 + (int) (fractionDone * 80), 100);
-				currNode++;
-			}
-			if (firstNode != null && secondNode != null)
+		// Set now contains all pairs of segment ends, ends at the same location are adjacent
+		// Now we're just interested in pairs of nodes, not three or more at the same location
+		// Each pair is only recorded here, the points are all rearranged together afterwards
+		SegmentSets segmentSets = new SegmentSets(numNodes / 2);
+		SegmentEnd firstNode = null, secondNode = null;
+		int numJoins = 0, currNode = 0;
+		for (SegmentEnd node : nodes)
+		{
+			if (firstNode == null)
 			{
-				joinSegments(firstNode, secondNode);
-				numJoins++;
+				firstNode = node;
 			}
-
-			progressDialog.showProgress(90, 100); // Say 90%, only duplicate point deletion left
-
-			// Delete the duplicate points
-			final int numDeleted = _cancelled ? 0 : deleteSegmentStartPoints(_app.getTrackInfo().getTrack());
-
-			progressDialog.close();
-			// Enable the messaging again
-			UpdateMessageBroker.enableMessaging(true);
-			if (_cancelled) // TODO: Also revert if any of the operations failed
+			else if (secondNode == null)
 			{
-				// try to restore using undo object
-				try {
-					undo.performUndo(_app.getTrackInfo());
+				if (node.atSamePointAs(firstNode)) {
+					secondNode = node;
 				}
-				catch (UndoException ue) {
-					_app.showErrorMessage("oops", "CANNOT UNDO");
+				else {
+					firstNode = node;
 				}
 			}
-			else if (numJoins > 0 || numDeleted > 0)
+			else if (node.atSamePointAs(secondNode))
 			{
-				// Give Undo object back to App to confirm
-				final String confirmMessage = (numJoins > 0 ? I18nManager.getTextWithNumber("confirm.sewsegments", numJoins)
-					: "" + numDeleted + " " + I18nManager.getText("confirm.deletepoint.multi"));
-				_app.completeFunction(undo, confirmMessage);
-				UpdateMessageBroker.informSubscribers();
+				// Found three colocated nodes, not interested
+				firstNode = secondNode = null;
 			}
 			else
 			{
-				// Nothing done
-				_app.showErrorMessageNoLookup(getNameKey(), I18nManager.getTextWithNumber("error.sewsegments.nothingdone", numNodes/2));
+				// Found a pair
+				if (joinSegments(firstNode, secondNode, segmentSets)) {
+					numJoins++;
+				}
+				firstNode = node; secondNode = null;
 			}
+			if (_cancelled) {break;}
+			final double fractionDone = 1.0 * currNode / numNodes;
+			progressDialog.showProgress(10 + (int) (fractionDone * 60), 100);
+			currNode++;
+		}
+		if (firstNode != null && secondNode != null && joinSegments(firstNode, secondNode, segmentSets))
+		{
+			numJoins++;
+		}
+		if (_cancelled)
+		{
+			// Nothing has been changed yet
+			progressDialog.close();
+			return;
+		}
+		progressDialog.showProgress(70, 100);
+
+		// Build the new point array in one go, then delete the duplicate points
+		DataPoint[] points = numJoins > 0 ? rearrangePoints(track, nodes) : track.cloneContents();
+		progressDialog.showProgress(90, 100); // Say 90%, only duplicate point deletion left
+		DataPoint[] pointCopies = deleteSegmentStartPoints(points);
+		final int numDeleted = points.length - pointCopies.length;
+
+		progressDialog.close();
+		if (numJoins > 0 || numDeleted > 0)
+		{
+			track.replaceContents(pointCopies);
+			// Give Undo object back to App to confirm
+			final String confirmMessage = (numJoins > 0 ? I18nManager.getTextWithNumber("confirm.sewsegments", numJoins)
+				: "" + numDeleted + " " + I18nManager.getText("confirm.deletepoint.multi"));
+			_app.completeFunction(undo, confirmMessage);
+			UpdateMessageBroker.informSubscribers();
+		}
+		else
+		{
+			// Nothing done
+			_app.showErrorMessageNoLookup(getNameKey(), I18nManager.getTextWithNumber("error.sewsegments.nothingdone", numNodes/2));
 		}
 	}
 
@@ -176,6 +169,8 @@ public class SewTrackSegmentsFunction extends GenericFunction implements Runnabl
 						// Don't add closed loops
 						if (!segmentStart.atSamePointAs(segmentEnd))
 						{
+							segmentStart.setSegmentNum(nodes.size() / 2);
+							segmentEnd.setSegmentNum(nodes.size() / 2);
 							nodes.add(segmentStart);
 							nodes.add(segmentEnd);
 						}
@@ -197,6 +192,8 @@ public class SewTrackSegmentsFunction extends GenericFunction implements Runnabl
 			// Don't add closed loops
 			if (!segmentStart.atSamePointAs(segmentEnd))
 			{
+				segmentStart.setSegmentNum(nodes.size() / 2);
+				segmentEnd.setSegmentNum(nodes.size() / 2);
 				nodes.add(segmentStart);
 				nodes.add(segmentEnd);
 			}
@@ -205,99 +202,157 @@ public class SewTrackSegmentsFunction extends GenericFunction implements Runnabl
 	}
 
 	/**
-	 * Join the two segments together represented by the given nodes
+	 * Join the two segments together represented by the given nodes,
+	 * unless they are already joined together into the same chain
 	 * @param inFirstNode first node (order doesn't matter)
 	 * @param inSecondNode other node
+	 * @param inSets sets of segments which are already joined together
+	 * @return true if the segments were joined
 	 */
-	private void joinSegments(SegmentEnd inFirstNode, SegmentEnd inSecondNode)
+	private static boolean joinSegments(SegmentEnd inFirstNode, SegmentEnd inSecondNode, SegmentSets inSets)
 	{
-		final Track track = _app.getTrackInfo().getTrack();
-		// System.out.println("Join: (" + inFirstNode.getPointIndex() + "-" + inFirstNode.getOtherPointIndex() + ") with ("
-		//	+ inSecondNode.getPointIndex() + "-" + inSecondNode.getOtherPointIndex() + ")");
-		// System.out.println("    : " + (inFirstNode.isStart() ? "start" : "end") + " to " + (inSecondNode.isStart() ? "start" : "end"));
-		final boolean moveSecondBeforeFirst = inFirstNode.isStart();
-		if (inFirstNode.isStart() == inSecondNode.isStart())
+		if (!inSets.union(inFirstNode.getSegmentNum(), inSecondNode.getSegmentNum()))
 		{
-			if (track.reverseRange(inSecondNode.getEarlierIndex(), inSecondNode.getLaterIndex()))
-			{
-				inSecondNode.reverseSegment();
-				// System.out.println("    : Reverse segment: " + inSecondNode.getEarlierIndex() + " - " + inSecondNode.getLaterIndex());
-			}
-			else {
-				System.err.println("Oops, reverse range didn't work");
-				// TODO: Abort?
+			// Joining these would make a closed loop of segments
+			return false;
+		}
+		inFirstNode.joinTo(inSecondNode);
+		return true;
+	}
+
+	/**
+	 * Build the new point array with each chain of joined segments placed at the position
+	 * of its earliest segment, which keeps its direction.  The other segments are reversed
+	 * as required to follow on.  Points which aren't part of any segment stay where they are.
+	 * @param inTrack track object
+	 * @param inNodes sorted list of segment ends
+	 * @return rearranged array of points
+	 */
+	private static DataPoint[] rearrangePoints(Track inTrack, TreeSet<SegmentEnd> inNodes)
+	{
+		// Segments are numbered in order of their position in the track
+		SegmentEnd[] segmentStarts = new SegmentEnd[inNodes.size() / 2];
+		for (SegmentEnd node : inNodes)
+		{
+			if (node.isStart()) {
+				segmentStarts[node.getSegmentNum()] = node;
 			}
 		}
-		if (moveSecondBeforeFirst)
+		final int numPoints = inTrack.getNumPoints();
+		DataPoint[] result = new DataPoint[numPoints];
+		boolean[] segmentsCopied = new boolean[segmentStarts.length];
+		// Flags for the points which follow reversed segments in the new array
+		boolean[] followsReversal = new boolean[numPoints + 1];
+		int resultIndex = 0;
+		int segmentNum = 0;
+		for (int i=0; i<numPoints; )
 		{
-			if ((inSecondNode.getLaterIndex()+1) != inFirstNode.getPointIndex())
+			if (segmentNum < segmentStarts.length && segmentStarts[segmentNum].getPointIndex() == i)
 			{
-				// System.out.println("    : Move second segment before first");
-				cutAndMoveSegment(inSecondNode.getEarlierIndex(), inSecondNode.getLaterIndex(), inFirstNode.getPointIndex());
+				if (!segmentsCopied[segmentNum])
+				{
+					// Go back to the outer end of the chain from this segment's start
+					SegmentEnd entry = segmentStarts[segmentNum];
+					while (entry.getJoinedEnd() != null) {
+						entry = entry.getJoinedEnd().getOtherEnd();
+					}
+					// Copy each segment of the chain in turn
+					while (entry != null)
+					{
+						final SegmentEnd exit = entry.getOtherEnd();
+						final int numToCopy = Math.abs(exit.getPointIndex() - entry.getPointIndex()) + 1;
+						for (int p=0; p<numToCopy; p++)
+						{
+							result[resultIndex + p] = inTrack.getPoint(entry.isStart() ?
+								entry.getPointIndex() + p : entry.getPointIndex() - p);
+						}
+						if (!entry.isStart())
+						{
+							shiftSegmentStarts(result, resultIndex, resultIndex + numToCopy - 1);
+							followsReversal[resultIndex + numToCopy] = true;
+						}
+						segmentsCopied[entry.getSegmentNum()] = true;
+						resultIndex += numToCopy;
+						entry = exit.getJoinedEnd();
+					}
+				}
+				// Skip over this segment's points
+				i = segmentStarts[segmentNum].getOtherEnd().getPointIndex() + 1;
+				segmentNum++;
+			}
+			else
+			{
+				result[resultIndex] = inTrack.getPoint(i);
+				resultIndex++;
+				i++;
 			}
 		}
-		else if ((inFirstNode.getLaterIndex()+1) != inSecondNode.getPointIndex())
+		// Make sure that the point after each reversed segment starts a new segment
+		for (int i=0; i<numPoints; i++)
 		{
-			// System.out.println("    : Move first segment before second (because " + (inFirstNode.getLaterIndex()+1) + " isn't " + inSecondNode.getPointIndex() + ")");
-			cutAndMoveSegment(inFirstNode.getEarlierIndex(), inFirstNode.getLaterIndex(), inSecondNode.getPointIndex());
-		}
-		// Now merge the SegmentEnds so that they're not split up again
-		if (inSecondNode.getEarlierIndex() == (inFirstNode.getLaterIndex()+1)) {
-			// System.out.println("second node is now directly after the first node");
-		}
-		else if (inFirstNode.getEarlierIndex() == (inSecondNode.getLaterIndex()+1)) {
-			//System.out.println("first node is now directly after the second node");
-		}
-		else {
-			System.err.println("Why aren't the segments directly consecutive after the join?");
+			if (followsReversal[i])
+			{
+				DataPoint nextTrackPoint = getNextTrackPoint(result, i);
+				if (nextTrackPoint != null) {nextTrackPoint.setSegmentStart(true);}
+			}
 		}
-		// Find the earliest and latest ends of these two segments
-		SegmentEnd earlierSegmentEnd = (inFirstNode.getEarlierIndex() < inSecondNode.getEarlierIndex() ? inFirstNode : inSecondNode).getEarlierEnd();
-		SegmentEnd laterSegmentEnd   = (inFirstNode.getLaterIndex() > inSecondNode.getLaterIndex() ? inFirstNode : inSecondNode).getLaterEnd();
-		// Get rid of the inner two segment ends, join the earliest and latest together
-		earlierSegmentEnd.getOtherEnd().deactivate();
-		laterSegmentEnd.getOtherEnd().deactivate();
-		earlierSegmentEnd.setOtherEnd(laterSegmentEnd);
-		laterSegmentEnd.setOtherEnd(earlierSegmentEnd);
+		return result;
 	}
 
 	/**
-	 * Cut and move the segment to a different position
-	 * @param inSegmentStart start index of segment
-	 * @param inSegmentEnd end index of segment
-	 * @param inMoveToPos index before which the segment should be moved
+	 * Shift the segment start flags of a reversed range by one track point,
+	 * so that the first track point starts a segment
+	 * @param inPoints array of points
+	 * @param inStartIndex start index of range
+	 * @param inEndIndex end index of range (inclusive)
 	 */
-	private void cutAndMoveSegment(int inSegmentStart, int inSegmentEnd, int inMoveToPos)
+	private static void shiftSegmentStarts(DataPoint[] inPoints, int inStartIndex, int inEndIndex)
 	{
-		if (!_app.getTrackInfo().getTrack().cutAndMoveSection(inSegmentStart, inSegmentEnd, inMoveToPos))
+		boolean prevFlag = true;
+		for (int i=inStartIndex; i<=inEndIndex; i++)
 		{
-			System.err.println("   Oops, cut and move didn't work");
-			// TODO: Throw exception? Return false?
+			DataPoint point = inPoints[i];
+			if (!point.isWaypoint())
+			{
+				// shift flag by 1
+				final boolean currFlag = point.getSegmentStart();
+				point.setSegmentStart(prevFlag);
+				prevFlag = currFlag;
+			}
 		}
-		else
+	}
+
+	/**
+	 * @param inPoints array of points
+	 * @param inStartIndex index to start looking from
+	 * @return next track point, or null if there isn't one
+	 */
+	private static DataPoint getNextTrackPoint(DataPoint[] inPoints, int inStartIndex)
+	{
+		for (int i=inStartIndex; i<inPoints.length; i++)
 		{
-			// Loop over each node to inform it of the index changes
-			for (SegmentEnd node : _nodes) {
-				node.adjustPointIndex(inSegmentStart, inSegmentEnd, inMoveToPos);
+			if (!inPoints[i].isWaypoint()) {
+				return inPoints[i];
 			}
 		}
+		return null;
 	}
 
 	/**
 	 * The final step of the sewing, removing the duplicate points at the start of each segment
-	 * @param inTrack track object
-	 * @return number of points deleted
+	 * @param inPoints array of points
+	 * @return array of points without the duplicates
 	 */
-	private static int deleteSegmentStartPoints(Track inTrack)
+	private static DataPoint[] deleteSegmentStartPoints(DataPoint[] inPoints)
 	{
-		final int numPoints = inTrack.getNumPoints();
+		final int numPoints = inPoints.length;
 		boolean[] deleteFlags = new boolean[numPoints];
 		// Loop over points in track, setting delete flags
 		int numToDelete = 0;
 		DataPoint prevPoint = null;
 		for (int i=0; i<numPoints; i++)
 		{
-			DataPoint point = inTrack.getPoint(i);
+			DataPoint point = inPoints[i];
 			if (!point.isWaypoint())
 			{
 				if (prevPoint != null && point.getSegmentStart() && point.isDuplicate(prevPoint))
@@ -315,13 +370,11 @@ public class SewTrackSegmentsFunction extends GenericFunction implements Runnabl
 		for (int i=0; i<numPoints; i++)
 		{
 			if (!deleteFlags[i]) {
-				pointCopies[copyIndex] = inTrack.getPoint(i);
+				pointCopies[copyIndex] = inPoints[i];
 				copyIndex++;
 			}
 		}
-		// Finally, replace the copied points in the track
-		inTrack.replaceContents(pointCopies);
-		return numToDelete;
+		return pointCopies;
 	}
 
 	/** Function cancelled by progress dialog */
@@ -71,6 +71,7 @@ public class SplitSegmentsFunction extends DistanceTimeLimitFunction
 
 		if (numSplitsMade > 0)
 		{
+			_app.getTrackInfo().getTrack().segmentStartsChanged(0);
 			_app.completeFunction(undo, I18nManager.getTextWithNumber("confirm.splitsegments", numSplitsMade));
 			UpdateMessageBroker.informSubscribers();
 			_dialog.dispose();
@@ -0,0 +1,271 @@
+package tim.prune.function.srtm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipInputStream;
+
+import tim.prune.config.Config;
+import tim.prune.gui.ProgressDialog;
+
+/**
+ * Class to sample altitudes from the SRTM data, either tile by tile
+ * or for a whole grid of latitudes and longitudes at once,
+ * without needing any DataPoint objects
+ */
+public class ElevationSampler
+{
+	/** Flag set when any tiles had to be downloaded (rather than just loaded locally) */
+	private volatile boolean _hadToDownload = false;
+	/** Flag set when any tiles which should exist couldn't be loaded */
+	private volatile boolean _hadMissingTiles = false;
+	/** Progress dialog to show the loading of grid tiles, or null */
+	private ProgressDialog _progress = null;
+
+	/** Altitude below which is considered void */
+	public static final int VOID_VAL = -32768;
+	/** Maximum number of tiles to load at the same time */
+	private static final int MAX_THREADS = 4;
+
+
+	/**
+	 * @return true if any tiles had to be downloaded
+	 */
+	public boolean hadToDownload()
+	{
+		return _hadToDownload;
+	}
+
+	/**
+	 * @return true if any tiles couldn't be loaded or the loading was cancelled,
+	 *         so that the sampled heights have gaps which shouldn't be there
+	 */
+	public boolean hadMissingTiles()
+	{
+		return _hadMissingTiles;
+	}
+
+	/**
+	 * @param inProgress progress dialog to update while loading the grid tiles
+	 */
+	public void setProgressDialog(ProgressDialog inProgress)
+	{
+		_progress = inProgress;
+	}
+
+	/**
+	 * Close the progress dialog, if any
+	 */
+	public void closeProgressDialog()
+	{
+		if (_progress != null)
+		{
+			_progress.dispose();
+			_progress = null;
+		}
+	}
+
+	/**
+	 * Get the heights for the given tile, from the tile cache if possible
+	 * @param inTile tile to get
+	 * @param inUrl url of zipped hgt file for this tile
+	 * @return buffer of heights, or null if not available
+	 * @throws IOException if the tile couldn't be read
+	 */
+	public ShortBuffer getTileHeights(SrtmTile inTile, URL inUrl)
+	throws IOException
+	{
+		ShortBuffer heights = SrtmTileCache.getHeights(inTile);
+		if (heights == null && inUrl != null)
+		{
+			ZipInputStream inStream = getStreamToHgtFile(inUrl);
+			if (inStream != null) {
+				heights = SrtmTileCache.loadHeights(inTile, inStream);
+			}
+		}
+		return heights;
+	}
+
+	/**
+	 * Sample the heights on a regular grid
+	 * @param inLatitudes latitude of each row of the grid
+	 * @param inLongitudes longitude of each column of the grid
+	 * @return heights in metres, indexed by row * numColumns + column, with NaN for voids
+	 */
+	public float[] sampleGrid(double[] inLatitudes, double[] inLongitudes)
+	{
+		final int numRows = inLatitudes.length, numCols = inLongitudes.length;
+		if (numRows == 0 || numCols == 0) {return new float[0];}
+		final int size = SrtmTileCache.TILE_SIZE;
+		// Work out the tile and position for each row and column just once
+		int[] rowTiles = new int[numRows], rowOffsets = new int[numRows];
+		double[] rowBetas = new double[numRows];
+		for (int r=0; r<numRows; r++)
+		{
+			rowTiles[r] = (int) Math.floor(inLatitudes[r]);
+			final double y = size - (inLatitudes[r] - rowTiles[r]) * (size - 1);
+			rowOffsets[r] = ((int) y) * size;
+			rowBetas[r] = 1 - (y - (int) y);
+		}
+		int[] colTiles = new int[numCols], colOffsets = new int[numCols];
+		double[] colAlphas = new double[numCols];
+		for (int c=0; c<numCols; c++)
+		{
+			colTiles[c] = (int) Math.floor(inLongitudes[c]);
+			final double x = (inLongitudes[c] - colTiles[c]) * (size - 1);
+			colOffsets[c] = (int) x;
+			colAlphas[c] = x - (int) x;
+		}
+		final int minLat = min(rowTiles), minLon = min(colTiles);
+		final int numLats = max(rowTiles) - minLat + 1, numLons = max(colTiles) - minLon + 1;
+		ShortBuffer[] tileHeights = getTileHeights(minLat, numLats, minLon, numLons);
+
+		float[] result = new float[numRows * numCols];
+		Arrays.fill(result, Float.NaN);
+		for (int r=0; r<numRows; r++)
+		{
+			final double beta = rowBetas[r];
+			final int rowTileIndex = (rowTiles[r] - minLat) * numLons - minLon;
+			for (int c=0; c<numCols; c++)
+			{
+				final ShortBuffer heights = tileHeights[rowTileIndex + colTiles[c]];
+				if (heights == null) {continue;}
+				final int idx = rowOffsets[r] + colOffsets[c];
+				if (idx < size || idx + 1 >= size * size) {continue;}
+				final int bl = heights.get(idx), br = heights.get(idx+1);
+				final int tl = heights.get(idx-size), tr = heights.get(idx-size+1);
+				if (bl == VOID_VAL || br == VOID_VAL || tl == VOID_VAL || tr == VOID_VAL) {continue;}
+				final double alpha = colAlphas[c];
+				result[r * numCols + c] = (float) ((1-alpha)*(1-beta)*bl + alpha*(1-beta)*br
+					+ (1-alpha)*beta*tl + alpha*beta*tr);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the heights of all the tiles in a rectangle, loading them in parallel
+	 * @param inMinLat minimum tile latitude
+	 * @param inNumLats number of tile latitudes
+	 * @param inMinLon minimum tile longitude
+	 * @param inNumLons number of tile longitudes
+	 * @return array of tile heights, indexed by latitude * numLons + longitude, with nulls where not available
+	 */
+	private ShortBuffer[] getTileHeights(int inMinLat, int inNumLats, int inMinLon, int inNumLons)
+	{
+		ArrayList<SrtmTile> tileList = new ArrayList<SrtmTile>();
+		for (int lat=0; lat<inNumLats; lat++) {
+			for (int lon=0; lon<inNumLons; lon++) {
+				tileList.add(new SrtmTile(inMinLat + lat, inMinLon + lon));
+			}
+		}
+		final ShortBuffer[] result = new ShortBuffer[tileList.size()];
+		final URL[] urls = TileFinder.getUrls(tileList);
+		final int numThreads = Math.min(tileList.size(), Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		final ProgressDialog progress = _progress;
+		if (progress != null)
+		{
+			progress.setMaximum(tileList.size());
+			progress.setValue(0);
+		}
+		final AtomicInteger numTilesDone = new AtomicInteger(0);
+		for (int t=0; t<tileList.size(); t++)
+		{
+			if (urls[t] != null)
+			{
+				final int tileIndex = t;
+				final SrtmTile tile = tileList.get(t);
+				pool.execute(new Runnable() {
+					public void run()
+					{
+						if (progress != null && progress.isCancelled())
+						{
+							_hadMissingTiles = true;
+							return;
+						}
+						try {
+							result[tileIndex] = getTileHeights(tile, urls[tileIndex]);
+						}
+						catch (IOException ioe) {
+							System.err.println("ElevationSampler: " + ioe.getClass().getName() + " - " + ioe.getMessage());
+						}
+						if (result[tileIndex] == null) {
+							_hadMissingTiles = true;
+						}
+						if (progress != null) {
+							progress.setValue(numTilesDone.incrementAndGet());
+						}
+					}
+				});
+			}
+			else if (progress != null) {
+				progress.setValue(numTilesDone.incrementAndGet()); // no data for this tile
+			}
+		}
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ie)
+		{
+			// Stop the remaining lookups, and don't let the incomplete grid be cached
+			pool.shutdownNow();
+			_hadMissingTiles = true;
+			Thread.currentThread().interrupt();
+		}
+		return result;
+	}
+
+	/**
+	 * See whether the SRTM file is already available locally first, then try online
+	 * @param inUrl URL for online resource
+	 * @return ZipInputStream either on the local file or on the downloaded zip file
+	 */
+	private ZipInputStream getStreamToHgtFile(URL inUrl)
+	throws IOException
+	{
+		String diskCachePath = Config.getConfigString(Config.KEY_DISK_CACHE);
+		if (diskCachePath != null)
+		{
+			File srtmDir = new File(diskCachePath, "srtm");
+			if (srtmDir.exists() && srtmDir.isDirectory() && srtmDir.canRead())
+			{
+				File srtmFile = new File(srtmDir, new File(inUrl.getFile()).getName());
+				if (srtmFile.exists() && srtmFile.isFile() && srtmFile.canRead()
+					&& srtmFile.length() > 400)
+				{
+					// File found, use this one
+					return new ZipInputStream(new FileInputStream(srtmFile));
+				}
+			}
+		}
+		_hadToDownload = true;
+		// MAYBE: Only download if we're in online mode?
+		return new ZipInputStream(inUrl.openStream());
+	}
+
+	/** @return minimum of the given values */
+	private static int min(int[] inValues)
+	{
+		int result = Integer.MAX_VALUE;
+		for (int v : inValues) {result = Math.min(result, v);}
+		return result;
+	}
+
+	/** @return maximum of the given values */
+	private static int max(int[] inValues)
+	{
+		int result = Integer.MIN_VALUE;
+		for (int v : inValues) {result = Math.max(result, v);}
+		return result;
+	}
+}
@@ -1,12 +1,15 @@
 package tim.prune.function.srtm;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JOptionPane;
 
@@ -15,7 +18,6 @@ import tim.prune.DataSubscriber;
 import tim.prune.GenericFunction;
 import tim.prune.I18nManager;
 import tim.prune.UpdateMessageBroker;
-import tim.prune.config.Config;
 import tim.prune.data.Altitude;
 import tim.prune.data.DataPoint;
 import tim.prune.data.Field;
@@ -32,21 +34,43 @@ import tim.prune.undo.UndoLookupSrtm;
  */
 public class LookupSrtmFunction extends GenericFunction implements Runnable
 {
+	/** Inner class to hold the indices of the points inside a single tile */
+	private static class TileBucket
+	{
+		private final SrtmTile _tile;
+		private int[] _pointIndices = new int[16];
+		private int _numPoints = 0;
+		/** Constructor */
+		TileBucket(SrtmTile inTile) {
+			_tile = inTile;
+		}
+		/** Add a point index to the bucket */
+		void addPoint(int inIndex)
+		{
+			if (_numPoints == _pointIndices.length) {
+				_pointIndices = Arrays.copyOf(_pointIndices, _numPoints * 2);
+			}
+			_pointIndices[_numPoints++] = inIndex;
+		}
+	}
+
 	/** Progress dialog */
 	private ProgressDialog _progress = null;
 	/** Track to process */
 	private Track _track = null;
 	/** Flag for whether this is a real track or a terrain one */
 	private boolean _normalTrack = true;
-	/** Flag set when any tiles had to be downloaded (rather than just loaded locally) */
-	private boolean _hadToDownload = false;
+	/** Sampler for getting the tiles */
+	private ElevationSampler _sampler = null;
+	/** Message from the last error reading a tile, if any */
+	private volatile String _errorMessage = null;
 	/** Flag to check whether this function is currently running or not */
 	private boolean _running = false;
 
-	/** Expected size of hgt file in bytes */
-	private static final long HGT_SIZE = 2884802L;
+	/** Maximum number of tiles to look up at the same time */
+	private static final int MAX_THREADS = 4;
 	/** Altitude below which is considered void */
-	private static final int VOID_VAL = -32768;
+	private static final int VOID_VAL = ElevationSampler.VOID_VAL;
 
 	/**
 	 * Constructor
@@ -84,7 +108,7 @@ public class LookupSrtmFunction extends GenericFunction implements Runnable
 	private void begin(Track inTrack, boolean inNormalTrack)
 	{
 		_running = true;
-		_hadToDownload = false;
+		_sampler = new ElevationSampler();
 		if (_progress == null) {
 			_progress = new ProgressDialog(_parentFrame, getNameKey());
 		}
@@ -127,29 +151,32 @@ public class LookupSrtmFunction extends GenericFunction implements Runnable
 			overwriteZeros = true;
 		}
 
-		// Now loop again to extract the required tiles
+		// Now loop again to sort the required points into tiles
+		LinkedHashMap<Integer, TileBucket> buckets = new LinkedHashMap<Integer, TileBucket>();
 		for (int i = 0; i < _track.getNumPoints(); i++)
 		{
 			// Consider points which don't have altitudes or have zero values
-			if (!_track.getPoint(i).hasAltitude()
-				|| (overwriteZeros && _track.getPoint(i).getAltitude().getValue() == 0))
+			DataPoint point = _track.getPoint(i);
+			if (!point.hasAltitude()
+				|| (overwriteZeros && point.getAltitude().getValue() == 0))
 			{
-				SrtmTile tile = new SrtmTile(_track.getPoint(i));
-				boolean alreadyGot = false;
-				for (int t = 0; t < tileList.size(); t++)
+				final int tileLat = (int) Math.floor(point.getLatitude().getDouble());
+				final int tileLon = (int) Math.floor(point.getLongitude().getDouble());
+				final Integer key = Integer.valueOf(tileLat * 1000 + tileLon);
+				TileBucket bucket = buckets.get(key);
+				if (bucket == null)
 				{
-					if (tileList.get(t).equals(tile)) {
-						alreadyGot = true;
-					}
+					bucket = new TileBucket(new SrtmTile(tileLat, tileLon));
+					buckets.put(key, bucket);
 				}
-				if (!alreadyGot) {tileList.add(tile);}
+				bucket.addPoint(i);
 			}
 		}
-		lookupValues(tileList, overwriteZeros);
+		lookupValues(new ArrayList<TileBucket>(buckets.values()));
 		// Finished
 		_running = false;
 		// Show tip if lots of online lookups were necessary
-		if (_hadToDownload) {
+		if (_sampler.hadToDownload()) {
 			_app.showTip(TipManager.Tip_DownloadSrtm);
 		}
 	}
@@ -157,115 +184,82 @@ public class LookupSrtmFunction extends GenericFunction implements Runnable
 
 	/**
 	 * Lookup the values from SRTM data
-	 * @param inTileList list of tiles to get
-	 * @param inOverwriteZeros true to overwrite zero altitude values
+	 * @param inBuckets list of tiles to get, each with the indices of its points
 	 */
-	private void lookupValues(ArrayList<SrtmTile> inTileList, boolean inOverwriteZeros)
+	private void lookupValues(ArrayList<TileBucket> inBuckets)
 	{
 		UndoLookupSrtm undo = new UndoLookupSrtm(_app.getTrackInfo());
-		int numAltitudesFound = 0;
 		// Update progress bar
 		if (_progress != null)
 		{
-			_progress.setMaximum(inTileList.size());
+			_progress.setMaximum(inBuckets.size());
 			_progress.setValue(0);
 		}
-		String errorMessage = null;
+		_errorMessage = null;
 		// Get urls for each tile
-		URL[] urls = TileFinder.getUrls(inTileList);
-		for (int t=0; t<inTileList.size() && !_progress.isCancelled(); t++)
+		ArrayList<SrtmTile> tileList = new ArrayList<SrtmTile>();
+		for (TileBucket bucket : inBuckets) {
+			tileList.add(bucket._tile);
+		}
+		URL[] urls = TileFinder.getUrls(tileList);
+		// Look up the altitudes of each tile in parallel, collecting them by point index
+		final double[] altitudes = new double[_track.getNumPoints()];
+		Arrays.fill(altitudes, VOID_VAL);
+		final AtomicInteger numTilesDone = new AtomicInteger(0);
+		final int numThreads = Math.max(1, Math.min(inBuckets.size(),
+			Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		for (int t=0; t<inBuckets.size(); t++)
 		{
 			if (urls[t] != null)
 			{
-				SrtmTile tile = inTileList.get(t);
-				try
-				{
-					// Set progress
-					_progress.setValue(t);
-					final int ARRLENGTH = 1201 * 1201;
-					int[] heights = new int[ARRLENGTH];
-					// Open zipinputstream on url and check size
-					ZipInputStream inStream = getStreamToHgtFile(urls[t]);
-					boolean entryOk = false;
-					if (inStream != null)
+				final TileBucket bucket = inBuckets.get(t);
+				final URL url = urls[t];
+				pool.execute(new Runnable() {
+					public void run()
 					{
-						ZipEntry entry = inStream.getNextEntry();
-						entryOk = (entry != null && entry.getSize() == HGT_SIZE);
-						if (entryOk)
+						if (!_progress.isCancelled())
 						{
-							// Read entire file contents into one byte array
-							for (int i = 0; i < ARRLENGTH; i++)
-							{
-								heights[i] = inStream.read() * 256 + inStream.read();
-								if (heights[i] >= 32768) {heights[i] -= 65536;}
-							}
+							lookupTile(bucket, url, altitudes);
+							_progress.setValue(numTilesDone.incrementAndGet());
 						}
-						// else {
-						//	System.out.println("length not ok: " + entry.getSize());
-						// }
-						// Close stream from url
-						inStream.close();
 					}
-
-					if (entryOk)
-					{
-						// Loop over all points in track, try to apply altitude from array
-						for (int p = 0; p < _track.getNumPoints(); p++)
-						{
-							DataPoint point = _track.getPoint(p);
-							if (!point.hasAltitude()
-								|| (inOverwriteZeros && point.getAltitude().getValue() == 0))
-							{
-								if (new SrtmTile(point).equals(tile))
-								{
-									double x = (point.getLongitude().getDouble() - tile.getLongitude()) * 1200;
-									double y = 1201 - (point.getLatitude().getDouble() - tile.getLatitude()) * 1200;
-									int idx1 = ((int)y)*1201 + (int)x;
-									try
-									{
-										int[] fouralts = {heights[idx1], heights[idx1+1], heights[idx1-1201], heights[idx1-1200]};
-										int numVoids = (fouralts[0]==VOID_VAL?1:0) + (fouralts[1]==VOID_VAL?1:0)
-											+ (fouralts[2]==VOID_VAL?1:0) + (fouralts[3]==VOID_VAL?1:0);
-										// if (numVoids > 0) System.out.println(numVoids + " voids found");
-										double altitude = 0.0;
-										switch (numVoids)
-										{
-											case 0:	altitude = bilinearInterpolate(fouralts, x, y); break;
-											case 1: altitude = bilinearInterpolate(fixVoid(fouralts), x, y); break;
-											case 2:
-											case 3: altitude = averageNonVoid(fouralts); break;
-											default: altitude = VOID_VAL;
-										}
-										// Special case for terrain tracks, don't interpolate voids yet
-										if (!_normalTrack && numVoids > 0) {
-											altitude = VOID_VAL;
-										}
-										if (altitude != VOID_VAL)
-										{
-											point.setFieldValue(Field.ALTITUDE, ""+altitude, false);
-											// depending on settings, this value may have been added as feet, we need to force metres
-											point.getAltitude().reset(new Altitude((int)altitude, UnitSetLibrary.UNITS_METRES));
-											numAltitudesFound++;
-										}
-									}
-									catch (ArrayIndexOutOfBoundsException obe) {
-										// System.err.println("lat=" + point.getLatitude().getDouble() + ", x=" + x + ", y=" + y + ", idx=" + idx1);
-									}
-								}
-							}
-						}
-					}
-				}
-				catch (IOException ioe) {errorMessage = ioe.getClass().getName() + " - " + ioe.getMessage();
-				}
+				});
 			}
 		}
+		pool.shutdown();
+		boolean interrupted = false;
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ie)
+		{
+			// Abandon the lookup without applying any of the altitudes
+			pool.shutdownNow();
+			interrupted = true;
+			Thread.currentThread().interrupt();
+		}
 
 		_progress.dispose();
-		if (_progress.isCancelled()) {
+		if (interrupted || _progress.isCancelled()) {
 			return;
 		}
 
+		// Apply the altitudes which were found
+		int numAltitudesFound = 0;
+		for (int p = 0; p < altitudes.length; p++)
+		{
+			final double altitude = altitudes[p];
+			if (altitude != VOID_VAL)
+			{
+				DataPoint point = _track.getPoint(p);
+				point.setFieldValue(Field.ALTITUDE, ""+altitude, false);
+				// depending on settings, this value may have been added as feet, we need to force metres
+				point.getAltitude().reset(new Altitude((int)altitude, UnitSetLibrary.UNITS_METRES));
+				numAltitudesFound++;
+			}
+		}
+
 		if (numAltitudesFound > 0)
 		{
 			// Inform app including undo information
@@ -278,10 +272,10 @@ public class LookupSrtmFunction extends GenericFunction implements Runnable
 					I18nManager.getTextWithNumber("confirm.lookupsrtm", numAltitudesFound));
 			}
 		}
-		else if (errorMessage != null) {
-			_app.showErrorMessageNoLookup(getNameKey(), errorMessage);
+		else if (_errorMessage != null) {
+			_app.showErrorMessageNoLookup(getNameKey(), _errorMessage);
 		}
-		else if (inTileList.size() > 0) {
+		else if (inBuckets.size() > 0) {
 			_app.showErrorMessage(getNameKey(), "error.lookupsrtm.nonefound");
 		}
 		else {
@@ -290,33 +284,61 @@ public class LookupSrtmFunction extends GenericFunction implements Runnable
 	}
 
 	/**
-	 * See whether the SRTM file is already available locally first, then try online
-	 * @param inUrl URL for online resource
-	 * @return ZipInputStream either on the local file or on the downloaded zip file
+	 * Look up the altitudes of the points in a single tile
+	 * @param inBucket tile with indices of its points
+	 * @param inUrl url of tile
+	 * @param inAltitudes array in which to put the altitudes found
 	 */
-	private ZipInputStream getStreamToHgtFile(URL inUrl)
-	throws IOException
+	private void lookupTile(TileBucket inBucket, URL inUrl, double[] inAltitudes)
 	{
-		String diskCachePath = Config.getConfigString(Config.KEY_DISK_CACHE);
-		if (diskCachePath != null)
+		final SrtmTile tile = inBucket._tile;
+		ShortBuffer heights = null;
+		try
+		{
+			heights = _sampler.getTileHeights(tile, inUrl);
+		}
+		catch (IOException ioe) {
+			_errorMessage = ioe.getClass().getName() + " - " + ioe.getMessage();
+		}
+		if (heights == null) {return;}
+
+		final int size = SrtmTileCache.TILE_SIZE;
+		int[] fouralts = new int[4];
+		for (int i = 0; i < inBucket._numPoints; i++)
 		{
-			File srtmDir = new File(diskCachePath, "srtm");
-			if (srtmDir.exists() && srtmDir.isDirectory() && srtmDir.canRead())
+			final int p = inBucket._pointIndices[i];
+			DataPoint point = _track.getPoint(p);
+			double x = (point.getLongitude().getDouble() - tile.getLongitude()) * (size - 1);
+			double y = size - (point.getLatitude().getDouble() - tile.getLatitude()) * (size - 1);
+			int idx1 = ((int)y)*size + (int)x;
+			try
 			{
-				File srtmFile = new File(srtmDir, new File(inUrl.getFile()).getName());
-				if (srtmFile.exists() && srtmFile.isFile() && srtmFile.canRead()
-					&& srtmFile.length() > 400)
+				fouralts[0] = heights.get(idx1);
+				fouralts[1] = heights.get(idx1+1);
+				fouralts[2] = heights.get(idx1-size);
+				fouralts[3] = heights.get(idx1-size+1);
+				int numVoids = (fouralts[0]==VOID_VAL?1:0) + (fouralts[1]==VOID_VAL?1:0)
+					+ (fouralts[2]==VOID_VAL?1:0) + (fouralts[3]==VOID_VAL?1:0);
+				// if (numVoids > 0) System.out.println(numVoids + " voids found");
+				double altitude = 0.0;
+				switch (numVoids)
 				{
-					// System.out.println("Lookup: Using file " + srtmFile.getAbsolutePath());
-					// File found, use this one
-					return new ZipInputStream(new FileInputStream(srtmFile));
+					case 0:	altitude = bilinearInterpolate(fouralts, x, y); break;
+					case 1: altitude = bilinearInterpolate(fixVoid(fouralts), x, y); break;
+					case 2:
+					case 3: altitude = averageNonVoid(fouralts); break;
+					default: altitude = VOID_VAL;
 				}
+				// Special case for terrain tracks, don't interpolate voids yet
+				if (!_normalTrack && numVoids > 0) {
+					altitude = VOID_VAL;
+				}
+				inAltitudes[p] = altitude;
+			}
+			catch (IndexOutOfBoundsException obe) {
+				// System.err.println("lat=" + point.getLatitude().getDouble() + ", x=" + x + ", y=" + y + ", idx=" + idx1);
 			}
 		}
-		// System.out.println("Lookup: Trying online: " + inUrl.toString());
-		_hadToDownload = true;
-		// MAYBE: Only download if we're in online mode?
-		return new ZipInputStream(inUrl.openStream());
 	}
 
 	/**
@@ -376,6 +398,33 @@ public class LookupSrtmFunction extends GenericFunction implements Runnable
 		return totalAltitude / numAlts;
 	}
 
+	/**
+	 * Make a sampler for looking up the heights of a terrain grid,
+	 * showing a new progress dialog while the tiles are loaded
+	 * @return sampler to pass back to finishGridLookup when done
+	 */
+	public ElevationSampler startGridLookup()
+	{
+		ElevationSampler sampler = new ElevationSampler();
+		ProgressDialog progress = new ProgressDialog(_parentFrame, getNameKey());
+		progress.show();
+		sampler.setProgressDialog(progress);
+		return sampler;
+	}
+
+	/**
+	 * Close the progress dialog of a grid lookup,
+	 * and show the tip if lots of online lookups were necessary
+	 * @param inSampler sampler from startGridLookup
+	 */
+	public void finishGridLookup(ElevationSampler inSampler)
+	{
+		inSampler.closeProgressDialog();
+		if (inSampler.hadToDownload()) {
+			_app.showTip(TipManager.Tip_DownloadSrtm);
+		}
+	}
+
 	/**
 	 * @return true if a thread is currently running
 	 */
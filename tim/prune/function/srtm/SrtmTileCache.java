@@ -0,0 +1,197 @@
+package tim.prune.function.srtm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import tim.prune.config.Config;
+
+/**
+ * Cache of decompressed SRTM tiles, shared by all lookups.
+ * Once a tile has been unzipped, its heights are written as a raw hgt file
+ * into the srtm directory of the disk cache (if there is one) and memory-mapped
+ * from there, so that later lookups don't have to unzip it again.
+ * A few recently-used tiles are also kept open.
+ */
+public abstract class SrtmTileCache
+{
+	/** Recently used tiles, by tile name, in order of use */
+	private static final LinkedHashMap<String, ShortBuffer> _openTiles
+		= new LinkedHashMap<String, ShortBuffer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String, ShortBuffer> inEldest) {
+				return size() > MAX_OPEN_TILES;
+			}
+		};
+
+	/** Number of heights along each side of a tile */
+	public static final int TILE_SIZE = 1201;
+	/** Expected size of hgt file in bytes */
+	private static final long HGT_SIZE = 2L * TILE_SIZE * TILE_SIZE;
+	/** Maximum number of tiles to keep open */
+	private static final int MAX_OPEN_TILES = 8;
+
+
+	/**
+	 * Get the heights for a tile which has already been decompressed
+	 * @param inTile tile to get
+	 * @return buffer of heights, or null if the tile hasn't been decompressed
+	 */
+	public static ShortBuffer getHeights(SrtmTile inTile)
+	{
+		final String name = getRawName(inTile);
+		synchronized (_openTiles)
+		{
+			ShortBuffer heights = _openTiles.get(name);
+			if (heights != null) {
+				return heights;
+			}
+		}
+		File rawFile = getRawFile(inTile);
+		if (rawFile == null || !rawFile.exists() || rawFile.length() != HGT_SIZE) {
+			return null;
+		}
+		try
+		{
+			return addTile(name, mapFile(rawFile));
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Decompress the heights of a tile from the given zipped hgt stream
+	 * and keep them for later lookups
+	 * @param inTile tile being read
+	 * @param inStream stream to zipped hgt file, which will be closed
+	 * @return buffer of heights, or null if the zip file didn't contain a valid hgt file
+	 * @throws IOException if the stream couldn't be read
+	 */
+	public static ShortBuffer loadHeights(SrtmTile inTile, ZipInputStream inStream)
+	throws IOException
+	{
+		byte[] bytes = null;
+		try
+		{
+			ZipEntry entry = inStream.getNextEntry();
+			if (entry == null || entry.getSize() != HGT_SIZE) {
+				return null;
+			}
+			bytes = new byte[(int) HGT_SIZE];
+			int numRead = 0;
+			while (numRead < bytes.length)
+			{
+				int n = inStream.read(bytes, numRead, bytes.length - numRead);
+				if (n < 0) {break;}
+				numRead += n;
+			}
+			if (numRead < bytes.length) {
+				return null;
+			}
+		}
+		finally {
+			inStream.close();
+		}
+		// hgt files hold big-endian shorts, which is the default order for buffers
+		ShortBuffer heights = ByteBuffer.wrap(bytes).asShortBuffer();
+		File rawFile = getRawFile(inTile);
+		if (rawFile != null)
+		{
+			// Write to a temporary file first so that other lookups never see a partial file
+			File tempFile = new File(rawFile.getParentFile(), rawFile.getName() + ".tmp" + Thread.currentThread().getId());
+			FileOutputStream outStream = null;
+			try
+			{
+				outStream = new FileOutputStream(tempFile);
+				outStream.write(bytes);
+				outStream.close();
+				outStream = null;
+				if ((rawFile.exists() || tempFile.renameTo(rawFile)) && rawFile.length() == HGT_SIZE) {
+					heights = mapFile(rawFile);
+				}
+			}
+			catch (IOException e) {} // just keep the heights in memory
+			finally
+			{
+				try {
+					if (outStream != null) outStream.close();
+				}
+				catch (IOException e) {} // ignore
+				if (tempFile.exists()) {
+					tempFile.delete();
+				}
+			}
+		}
+		return addTile(getRawName(inTile), heights);
+	}
+
+	/**
+	 * Add the given tile to the open tiles
+	 * @param inName name of tile
+	 * @param inHeights heights of tile
+	 * @return heights of tile
+	 */
+	private static ShortBuffer addTile(String inName, ShortBuffer inHeights)
+	{
+		synchronized (_openTiles)
+		{
+			_openTiles.put(inName, inHeights);
+		}
+		return inHeights;
+	}
+
+	/**
+	 * @param inTile tile
+	 * @return name of raw hgt file for this tile
+	 */
+	private static String getRawName(SrtmTile inTile)
+	{
+		final String zipName = inTile.getTileName();
+		return zipName.substring(0, zipName.length() - 4); // remove .zip
+	}
+
+	/**
+	 * @param inTile tile
+	 * @return raw file in the srtm cache directory, or null if there is no usable directory
+	 */
+	private static File getRawFile(SrtmTile inTile)
+	{
+		String diskCachePath = Config.getConfigString(Config.KEY_DISK_CACHE);
+		if (diskCachePath != null)
+		{
+			File srtmDir = new File(diskCachePath, "srtm");
+			if (srtmDir.exists() && srtmDir.isDirectory()) {
+				return new File(srtmDir, getRawName(inTile));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Map the given raw hgt file into memory
+	 * @param inFile file to map
+	 * @return buffer of heights
+	 * @throws IOException if the file couldn't be mapped
+	 */
+	private static ShortBuffer mapFile(File inFile) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(inFile, "r");
+		try
+		{
+			// mapping stays valid after the channel is closed
+			return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HGT_SIZE).asShortBuffer();
+		}
+		finally {
+			file.close();
+		}
+	}
+}
@@ -133,6 +133,14 @@ public class BaseImageDefinitionPanel extends JPanel implements BaseImageConsume
 		_editButton.setEnabled(BaseImageConfigDialog.isImagePossible());
 	}
 
+	/**
+	 * @param inMaxSize maximum image size in pixels which the consumer can handle
+	 */
+	public void setMaxImageSize(int inMaxSize)
+	{
+		_baseImageConfig.setMaxImageSize(inMaxSize);
+	}
+
 	/**
 	 * @return the grouter object for reuse of the prepared images
 	 */
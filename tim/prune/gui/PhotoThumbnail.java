@@ -4,7 +4,9 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Image;
-import javax.swing.ImageIcon;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
@@ -14,15 +16,19 @@ import tim.prune.data.Photo;
 /**
  * GUI component for showing photo thumbnail
  */
-public class PhotoThumbnail extends JPanel implements Runnable
+public class PhotoThumbnail extends JPanel
 {
 	private Photo _photo = null;
 	private Image _thumbnail = null;
 	private boolean _loadingImage = false;
 	private boolean _loadFailed = false;
 	private boolean _inPanel = false;
+	/** Number of the latest thumbnail request, to ignore any earlier results */
+	private int _requestNum = 0;
 	/** String to show before photo is loaded */
 	private static final String LOADING_STRING = I18nManager.getText("details.photo.loading") + " ...";
+	/** Thumbnail size inside details panel */
+	private static final int PANEL_THUMB_SIZE = 400;
 
 
 	/**
@@ -53,8 +59,7 @@ public class PhotoThumbnail extends JPanel implements Runnable
 		if (_photo != inPhoto)
 		{
 			_photo = inPhoto;
-			_thumbnail = null;
-			_loadFailed = false;
+			refresh();
 		}
 		repaint();
 	}
@@ -65,7 +70,9 @@ public class PhotoThumbnail extends JPanel implements Runnable
 	public void refresh()
 	{
 		_thumbnail = null;
+		_loadingImage = false;
 		_loadFailed = false;
+		_requestNum++;
 	}
 
 	/**
@@ -77,11 +84,16 @@ public class PhotoThumbnail extends JPanel implements Runnable
 		super.paint(inG);
 		if (_photo != null)
 		{
-			// read thumbnail in separate thread
+			// get thumbnail from cache, or request it from the thumbnail service
 			if (_thumbnail == null && !_loadingImage && !_loadFailed)
 			{
-				_loadingImage = true;
-				new Thread(this).start();
+				final ThumbnailService service = ThumbnailService.getInstance();
+				_thumbnail = service.getCachedThumbnail(_photo, getThumbnailSize(), _inPanel);
+				if (_thumbnail == null)
+				{
+					_loadingImage = true;
+					service.requestThumbnail(_photo, getThumbnailSize(), _inPanel, makeListener(_requestNum));
+				}
 			}
 			// if loading, display message
 			if (_loadingImage)
@@ -122,46 +134,41 @@ public class PhotoThumbnail extends JPanel implements Runnable
 
 
 	/**
-	 * Run method, for loading image in separate thread
-	 * @see java.lang.Runnable#run()
+	 * @return maximum size of thumbnail to request
 	 */
-	public void run()
+	private int getThumbnailSize()
 	{
-		if (_inPanel)
-		{
-			_thumbnail = null;
-			// try to use exif thumbnail
-			if (_photo.getExifThumbnail() != null) {
-				// Use exif thumbnail
-				Image image = new ImageIcon(_photo.getExifThumbnail()).getImage();
-				_thumbnail = ImageUtils.createScaledImage(image, image.getWidth(null), image.getHeight(null));
-				image = null;
-			}
-			// Maybe there's no thumbnail, maybe the load of the thumbnail failed
-			if (_thumbnail == null)
+		if (_inPanel) {
+			return PANEL_THUMB_SIZE;
+		}
+		// Popup window can't be bigger than the screen
+		Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
+		return Math.max(screenSize.width, screenSize.height);
+	}
+
+	/**
+	 * Make a listener to receive the thumbnail from the thumbnail service
+	 * @param inRequestNum number of request
+	 * @return listener which ignores the result if the photo has changed since the request
+	 */
+	private ThumbnailListener makeListener(final int inRequestNum)
+	{
+		return new ThumbnailListener() {
+			public void thumbnailLoaded(Photo inPhoto, final BufferedImage inThumbnail)
 			{
-				// no exif thumbnail available, going to have to read whole thing
-				int picWidth = _photo.getWidth();
-				int picHeight = _photo.getHeight();
-				if (picWidth > -1 && picHeight > -1)
-				{
-					// Just set a "reasonable" thumbnail size for now
-					final int DEFAULT_THUMB_SIZE = 400;
-					// calculate maximum thumbnail size
-					Dimension thumbSize = ImageUtils.getThumbnailSize(picWidth, picHeight, DEFAULT_THUMB_SIZE, DEFAULT_THUMB_SIZE);
-					// Make icon to load image into
-					Image image = _photo.createImageIcon().getImage();
-					// save scaled, smoothed thumbnail for reuse
-					_thumbnail = ImageUtils.createScaledImage(image, thumbSize.width, thumbSize.height);
-					image = null;
-				}
-				else _loadFailed = true;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run()
+					{
+						if (inRequestNum == _requestNum)
+						{
+							_thumbnail = inThumbnail;
+							_loadFailed = (inThumbnail == null);
+							_loadingImage = false;
+							repaint();
+						}
+					}
+				});
 			}
-		}
-		else {
-			_thumbnail = _photo.createImageIcon().getImage();
-		}
-		_loadingImage = false;
-		repaint();
+		};
 	}
 }
@@ -0,0 +1,19 @@
+package tim.prune.gui;
+
+import java.awt.image.BufferedImage;
+
+import tim.prune.data.Photo;
+
+/**
+ * Interface implemented by classes waiting for thumbnails from the ThumbnailService
+ */
+public interface ThumbnailListener
+{
+	/**
+	 * Inform the listener that a thumbnail has been loaded.
+	 * Note that this is called from a worker thread, not the event dispatch thread.
+	 * @param inPhoto photo requested
+	 * @param inThumbnail thumbnail image, or null if the photo couldn't be loaded
+	 */
+	public void thumbnailLoaded(Photo inPhoto, BufferedImage inThumbnail);
+}
@@ -0,0 +1,467 @@
+package tim.prune.gui;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.swing.ImageIcon;
+
+import tim.prune.config.Config;
+import tim.prune.data.Photo;
+
+/**
+ * Shared service for loading photo thumbnails on a small pool of threads.
+ * Images are decoded with subsampling so that the full-size image isn't needed,
+ * and the thumbnails are kept in a memory cache and, if a disk cache
+ * directory is configured, also saved to disk for next time.
+ * Large images such as those for the popup window only have a small cache of their own,
+ * so that they don't push the thumbnails out of memory.
+ * Requests with a listener are served newest first, and prefetch requests
+ * without a listener are served in the order they were made.
+ * Thumbnails are not rotated, rotation is left to the caller.
+ */
+public class ThumbnailService
+{
+	/** Pool of threads for decoding, taking the newest request with a listener first */
+	private ThreadPoolExecutor _executor = null;
+	/** Memory cache of thumbnails by key, in order of use */
+	private LinkedHashMap<String, BufferedImage> _memoryCache = new LinkedHashMap<String, BufferedImage>(64, 0.75f, true);
+	/** Memory cache of the few most recent large images */
+	private LinkedHashMap<String, BufferedImage> _largeImageCache = new LinkedHashMap<String, BufferedImage>(4, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> inEldest) {
+			return size() > MAX_LARGE_IMAGES;
+		}
+	};
+	/** Number of bytes of the thumbnails in the memory cache */
+	private long _memoryCacheBytes = 0L;
+	/** Requests which are queued or running, by key */
+	private HashMap<String, ThumbnailTask> _pendingTasks = new HashMap<String, ThumbnailTask>();
+
+	/** Single instance */
+	private static ThumbnailService _instance = null;
+	/** Maximum number of bytes of thumbnails to keep in memory */
+	private static final long MAX_MEMORY_BYTES = 48L * 1024 * 1024;
+	/** Number of large images to keep in memory */
+	private static final int MAX_LARGE_IMAGES = 2;
+	/** Largest thumbnail size to save in the disk cache, larger images count as large */
+	private static final int MAX_DISK_THUMB_SIZE = 800;
+	/** Name of subdirectory of disk cache for thumbnails */
+	private static final String DISK_CACHE_SUBDIR = "thumbnails";
+	/** Quality for saving jpegs in the disk cache */
+	private static final float DISK_JPEG_QUALITY = 0.9f;
+
+
+	/**
+	 * Task to load a single thumbnail and inform the listeners
+	 */
+	private class ThumbnailTask implements Callable<BufferedImage>
+	{
+		private String _key = null;
+		private Photo _photo = null;
+		private int _maxSize = 0;
+		private boolean _useExif = false;
+		private ArrayList<ThumbnailListener> _listeners = new ArrayList<ThumbnailListener>();
+		private QueuedTask _future = null;
+
+		/** Constructor */
+		ThumbnailTask(String inKey, Photo inPhoto, int inMaxSize, boolean inUseExif)
+		{
+			_key = inKey;
+			_photo = inPhoto;
+			_maxSize = inMaxSize;
+			_useExif = inUseExif;
+		}
+
+		/** Load the thumbnail, then inform the listeners */
+		public BufferedImage call()
+		{
+			BufferedImage thumbnail = null;
+			try {
+				thumbnail = loadThumbnail(_key, _photo, _maxSize, _useExif);
+			}
+			catch (RuntimeException e) {} // thumbnail stays null
+			ArrayList<ThumbnailListener> listeners = null;
+			synchronized (ThumbnailService.this)
+			{
+				_pendingTasks.remove(_key);
+				if (thumbnail != null) {
+					addToMemoryCache(_key, _maxSize, thumbnail);
+				}
+				listeners = _listeners;
+				_listeners = null;
+			}
+			for (ThumbnailListener listener : listeners) {
+				listener.thumbnailLoaded(_photo, thumbnail);
+			}
+			return thumbnail;
+		}
+	}
+
+
+	/**
+	 * Future for a queued task, remembering whether it's a prefetch
+	 */
+	private static class QueuedTask extends FutureTask<BufferedImage>
+	{
+		private boolean _prefetch = false;
+
+		/** Constructor */
+		QueuedTask(ThumbnailTask inTask, boolean inPrefetch)
+		{
+			super(inTask);
+			_prefetch = inPrefetch;
+		}
+	}
+
+
+	/**
+	 * Private constructor, use getInstance
+	 */
+	private ThumbnailService()
+	{
+		final int numThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+		// Deque used as a stack for requests with listeners, so the most recent one is served first,
+		// but as a queue for prefetches so they arrive in order
+		LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<Runnable>() {
+			private static final long serialVersionUID = 1L;
+			public boolean offer(Runnable inTask) {
+				if (inTask instanceof QueuedTask && ((QueuedTask) inTask)._prefetch) {
+					return offerLast(inTask);
+				}
+				return offerFirst(inTask);
+			}
+		};
+		_executor = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS, queue,
+			new ThreadFactory() {
+				public Thread newThread(Runnable inRunnable) {
+					Thread thread = new Thread(inRunnable, "ThumbnailService");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		_executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return the single instance of the service
+	 */
+	public static synchronized ThumbnailService getInstance()
+	{
+		if (_instance == null) {
+			_instance = new ThumbnailService();
+		}
+		return _instance;
+	}
+
+	/**
+	 * Get a thumbnail from the memory cache, without loading anything
+	 * @param inPhoto photo
+	 * @param inMaxSize maximum width and height of thumbnail
+	 * @param inUseExif true to use the exif thumbnail if there is one
+	 * @return thumbnail if it's already in memory, otherwise null
+	 */
+	public synchronized BufferedImage getCachedThumbnail(Photo inPhoto, int inMaxSize, boolean inUseExif)
+	{
+		return getFromMemoryCache(makeKey(inPhoto, inMaxSize, inUseExif), inMaxSize);
+	}
+
+	/**
+	 * Request a thumbnail to be loaded by the pool
+	 * @param inPhoto photo
+	 * @param inMaxSize maximum width and height of thumbnail
+	 * @param inUseExif true to use the exif thumbnail if there is one
+	 * @param inListener listener to inform when the thumbnail is loaded, or null for a prefetch
+	 * @return future for the thumbnail, giving null if it couldn't be loaded
+	 */
+	public synchronized Future<BufferedImage> requestThumbnail(Photo inPhoto, int inMaxSize, boolean inUseExif,
+		ThumbnailListener inListener)
+	{
+		final String key = makeKey(inPhoto, inMaxSize, inUseExif);
+		final BufferedImage cached = getFromMemoryCache(key, inMaxSize);
+		if (cached != null)
+		{
+			if (inListener != null) {
+				inListener.thumbnailLoaded(inPhoto, cached);
+			}
+			FutureTask<BufferedImage> done = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+				public BufferedImage call() {
+					return cached;
+				}
+			});
+			done.run();
+			return done;
+		}
+		// Join onto the same request if it's already waiting
+		ThumbnailTask task = _pendingTasks.get(key);
+		if (task == null)
+		{
+			task = new ThumbnailTask(key, inPhoto, inMaxSize, inUseExif);
+			_pendingTasks.put(key, task);
+			task._future = new QueuedTask(task, inListener == null);
+			_executor.execute(task._future);
+		}
+		if (inListener != null) {
+			task._listeners.add(inListener);
+		}
+		return task._future;
+	}
+
+	/**
+	 * Make the key for caching the given thumbnail
+	 * @param inPhoto photo
+	 * @param inMaxSize maximum width and height of thumbnail
+	 * @param inUseExif true to use the exif thumbnail if there is one
+	 * @return key including the file details so that changed files aren't found
+	 */
+	private static String makeKey(Photo inPhoto, int inMaxSize, boolean inUseExif)
+	{
+		StringBuilder builder = new StringBuilder();
+		File file = inPhoto.getFile();
+		if (file != null) {
+			builder.append(file.getAbsolutePath()).append('|').append(file.length()).append('|').append(file.lastModified());
+		}
+		else
+		{
+			// Photo from data, only kept in memory
+			builder.append("data|").append(inPhoto.getName()).append('|').append(System.identityHashCode(inPhoto.getByteData()));
+		}
+		final boolean exif = inUseExif && inPhoto.getExifThumbnail() != null;
+		builder.append('|').append(exif ? "exif" : ("" + inMaxSize));
+		return builder.toString();
+	}
+
+	/**
+	 * Get the given thumbnail from the memory cache
+	 * @param inKey key of thumbnail
+	 * @param inMaxSize maximum width and height of thumbnail
+	 * @return thumbnail, or null if not in memory
+	 */
+	private BufferedImage getFromMemoryCache(String inKey, int inMaxSize)
+	{
+		if (inMaxSize > MAX_DISK_THUMB_SIZE) {
+			return _largeImageCache.get(inKey);
+		}
+		return _memoryCache.get(inKey);
+	}
+
+	/**
+	 * Add the given thumbnail to the memory cache, removing the oldest if necessary
+	 * @param inKey key of thumbnail
+	 * @param inMaxSize maximum width and height of thumbnail
+	 * @param inThumbnail thumbnail image
+	 */
+	private void addToMemoryCache(String inKey, int inMaxSize, BufferedImage inThumbnail)
+	{
+		if (inMaxSize > MAX_DISK_THUMB_SIZE)
+		{
+			_largeImageCache.put(inKey, inThumbnail);
+			return;
+		}
+		BufferedImage previous = _memoryCache.put(inKey, inThumbnail);
+		if (previous != null) {
+			_memoryCacheBytes -= getNumBytes(previous);
+		}
+		_memoryCacheBytes += getNumBytes(inThumbnail);
+		Iterator<BufferedImage> it = _memoryCache.values().iterator();
+		while (_memoryCacheBytes > MAX_MEMORY_BYTES && _memoryCache.size() > 1)
+		{
+			_memoryCacheBytes -= getNumBytes(it.next());
+			it.remove();
+		}
+	}
+
+	/**
+	 * @param inImage image
+	 * @return approximate number of bytes used by the image
+	 */
+	private static long getNumBytes(BufferedImage inImage)
+	{
+		return 4L * inImage.getWidth() * inImage.getHeight();
+	}
+
+	/**
+	 * Load the thumbnail, from the exif thumbnail, the disk cache or the image itself
+	 * @param inKey key of thumbnail
+	 * @param inPhoto photo
+	 * @param inMaxSize maximum width and height of thumbnail
+	 * @param inUseExif true to use the exif thumbnail if there is one
+	 * @return thumbnail image, or null if it couldn't be loaded
+	 */
+	private static BufferedImage loadThumbnail(String inKey, Photo inPhoto, int inMaxSize, boolean inUseExif)
+	{
+		// try to use exif thumbnail
+		final byte[] exifThumbnail = inPhoto.getExifThumbnail();
+		if (inUseExif && exifThumbnail != null)
+		{
+			Image image = new ImageIcon(exifThumbnail).getImage();
+			BufferedImage thumbnail = ImageUtils.createScaledImage(image, image.getWidth(null), image.getHeight(null));
+			if (thumbnail != null) {
+				return thumbnail;
+			}
+		}
+		File diskFile = getDiskCacheFile(inKey, inPhoto, inMaxSize);
+		if (diskFile != null && diskFile.exists())
+		{
+			try
+			{
+				BufferedImage thumbnail = ImageIO.read(diskFile);
+				if (thumbnail != null) {
+					return thumbnail;
+				}
+			}
+			catch (IOException e) {} // ignore and load from image instead
+		}
+		BufferedImage thumbnail = decodeThumbnail(inPhoto, inMaxSize);
+		if (thumbnail != null && diskFile != null) {
+			saveToDisk(thumbnail, diskFile);
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Decode the given photo using subsampling, and scale it to the thumbnail size
+	 * @param inPhoto photo
+	 * @param inMaxSize maximum width and height of thumbnail
+	 * @return thumbnail image, or null if it couldn't be loaded
+	 */
+	private static BufferedImage decodeThumbnail(Photo inPhoto, int inMaxSize)
+	{
+		ImageInputStream stream = null;
+		ImageReader reader = null;
+		try
+		{
+			if (inPhoto.getFile() != null) {
+				stream = ImageIO.createImageInputStream(inPhoto.getFile());
+			}
+			else if (inPhoto.getByteData() != null) {
+				stream = ImageIO.createImageInputStream(new ByteArrayInputStream(inPhoto.getByteData()));
+			}
+			Iterator<ImageReader> readers = (stream == null ? null : ImageIO.getImageReaders(stream));
+			if (readers != null && readers.hasNext())
+			{
+				reader = readers.next();
+				reader.setInput(stream, true, true);
+				final int width = reader.getWidth(0), height = reader.getHeight(0);
+				Dimension thumbSize = ImageUtils.getThumbnailSize(width, height, inMaxSize, inMaxSize);
+				// Only decode every nth pixel, but keeping it at least as big as the thumbnail
+				final int subsampling = Math.max(1, Math.min(width / thumbSize.width, height / thumbSize.height));
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				BufferedImage image = reader.read(0, param);
+				return ImageUtils.createScaledImage(image, thumbSize.width, thumbSize.height);
+			}
+		}
+		catch (IOException e) {} // try again below
+		catch (RuntimeException e) {} // try again below
+		finally
+		{
+			if (reader != null) {reader.dispose();}
+			try {
+				if (stream != null) stream.close();
+			}
+			catch (IOException e) {} // ignore
+		}
+		// Some jpegs can't be read by ImageIO, so fall back to reading the whole image
+		Image image = inPhoto.createImageIcon().getImage();
+		final int width = image.getWidth(null), height = image.getHeight(null);
+		if (width <= 0 || height <= 0) {
+			return null;
+		}
+		Dimension thumbSize = ImageUtils.getThumbnailSize(width, height, inMaxSize, inMaxSize);
+		return ImageUtils.createScaledImage(image, thumbSize.width, thumbSize.height);
+	}
+
+	/**
+	 * Get the file for storing the given thumbnail in the disk cache
+	 * @param inKey key of thumbnail
+	 * @param inPhoto photo
+	 * @param inMaxSize maximum width and height of thumbnail
+	 * @return file, or null if this thumbnail shouldn't be saved to disk
+	 */
+	private static File getDiskCacheFile(String inKey, Photo inPhoto, int inMaxSize)
+	{
+		final String diskCachePath = Config.getConfigString(Config.KEY_DISK_CACHE);
+		if (diskCachePath == null || inPhoto.getFile() == null || inMaxSize > MAX_DISK_THUMB_SIZE) {
+			return null;
+		}
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest.digest(inKey.getBytes("UTF-8"))) {
+				name.append(String.format("%02x", b & 0xff));
+			}
+			return new File(new File(diskCachePath, DISK_CACHE_SUBDIR), name.append(".jpg").toString());
+		}
+		catch (NoSuchAlgorithmException e) {}
+		catch (IOException e) {}
+		return null;
+	}
+
+	/**
+	 * Save the given thumbnail to the disk cache, ignoring any errors
+	 * @param inThumbnail thumbnail image
+	 * @param inFile file to save to
+	 */
+	private static void saveToDisk(BufferedImage inThumbnail, File inFile)
+	{
+		File dir = inFile.getParentFile();
+		if (!dir.exists() && !dir.mkdirs()) {return;}
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
+		if (!writers.hasNext()) {return;}
+		ImageWriter writer = writers.next();
+		// Write to a temporary file first so that other threads never see half a file
+		File tempFile = new File(dir, inFile.getName() + "." + Thread.currentThread().getId() + ".temp");
+		ImageOutputStream stream = null;
+		boolean saved = false;
+		try
+		{
+			stream = ImageIO.createImageOutputStream(tempFile);
+			writer.setOutput(stream);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(DISK_JPEG_QUALITY);
+			writer.write(null, new IIOImage(inThumbnail, null, null), param);
+			saved = true;
+		}
+		catch (IOException e) {}
+		finally
+		{
+			writer.dispose();
+			try {
+				if (stream != null) stream.close();
+			}
+			catch (IOException e) {saved = false;}
+		}
+		if (!saved || !tempFile.renameTo(inFile)) {
+			tempFile.delete();
+		}
+	}
+}
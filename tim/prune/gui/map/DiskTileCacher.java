@@ -3,6 +3,7 @@ package tim.prune.gui.map;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.image.ImageObserver;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -23,6 +24,10 @@ public class DiskTileCacher implements Runnable
 	private URL _url = null;
 	/** File to save image to */
 	private File _file = null;
+	/** Pack to save image to instead of file, or null */
+	private TilePack _pack = null;
+	/** Relative path of tile, used for saving to pack */
+	private String _tilePath = null;
 	/** Observer to be notified */
 	private ImageObserver _observer = null;
 	/** Time limit to cache images for */
@@ -42,6 +47,20 @@ public class DiskTileCacher implements Runnable
 		_observer = inObserver;
 	}
 
+	/**
+	 * Private constructor for saving into a tile pack
+	 * @param inUrl URL to get
+	 * @param inPack pack to save to
+	 * @param inTilePath relative path of tile
+	 */
+	private DiskTileCacher(URL inUrl, TilePack inPack, String inTilePath, ImageObserver inObserver)
+	{
+		_url = inUrl;
+		_pack = inPack;
+		_tilePath = inTilePath;
+		_observer = inObserver;
+	}
+
 	/**
 	 * Get the specified tile from the disk cache
 	 * @param inBasePath base path to whole disk cache
@@ -51,6 +70,11 @@ public class DiskTileCacher implements Runnable
 	public static MapTile getTile(String inBasePath, String inTilePath)
 	{
 		if (inBasePath == null) {return null;}
+		// Tilesets which have been packed are read from the pack instead of separate files
+		TilePack pack = TilePack.getPack(inBasePath, inTilePath, false);
+		if (pack != null) {
+			return getTileFromPack(pack, inTilePath);
+		}
 		File tileFile = new File(inBasePath, inTilePath);
 		Image image = null;
 		if (tileFile.exists() && tileFile.canRead() && tileFile.length() > 0)
@@ -69,14 +93,35 @@ public class DiskTileCacher implements Runnable
 		return null;
 	}
 
+	/**
+	 * Get the specified tile from a tile pack
+	 * @param inPack pack for this tileset
+	 * @param inTilePath relative path to requested tile
+	 * @return tile image if available, or null if not there
+	 */
+	private static MapTile getTileFromPack(TilePack inPack, String inTilePath)
+	{
+		TilePack.TileRecord record = inPack.getRecord(inTilePath);
+		if (record == null || record.getLength() == 0) {return null;}
+		byte[] data = inPack.readTile(record);
+		if (data == null) {return null;}
+		boolean isExpired = ((System.currentTimeMillis()-record.getTimestamp()) > CACHE_TIME_LIMIT);
+		Image image = Toolkit.getDefaultToolkit().createImage(data);
+		return new MapTile(image, isExpired);
+	}
+
 	/**
 	 * Save the specified image tile to disk
+	 * @param inManager manager to inform when load complete
 	 * @param inUrl url to get image from
 	 * @param inBasePath base path to disk cache
 	 * @param inTilePath relative path to this tile
-	 * @param inObserver observer to inform when load complete
+	 * @param inZoom zoom level of tile
+	 * @param inX x coordinate of tile
+	 * @param inY y coordinate of tile
 	 */
-	public static void saveTile(URL inUrl, String inBasePath, String inTilePath, ImageObserver inObserver)
+	public static void saveTile(MapTileManager inManager, URL inUrl, String inBasePath, String inTilePath,
+		int inZoom, int inX, int inY)
 	{
 		if (inBasePath == null || inTilePath == null) {return;}
 		// save file if possible
@@ -85,17 +130,28 @@ public class DiskTileCacher implements Runnable
 			// Can't write to base path
 			return;
 		}
+		// Check if it has already failed
+		synchronized (BLOCKED_URLS)
+		{
+			if (BLOCKED_URLS.contains(inUrl.toString())) {return;}
+		}
+		TilePack pack = TilePack.getPack(inBasePath, inTilePath, false);
+		if (pack != null)
+		{
+			TileScheduler.addRequest(inManager, inUrl, inZoom, inX, inY,
+				new DiskTileCacher(inUrl, pack, inTilePath, inManager));
+			return;
+		}
 		File tileFile = new File(basePath, inTilePath);
 		// Check if this file is already being loaded
 		if (isBeingLoaded(tileFile)) {return;}
-		// Check if it has already failed
-		if (BLOCKED_URLS.contains(inUrl.toString())) {return;}
 
 		File dir = tileFile.getParentFile();
-		// Start a new thread to load the image if necessary
+		// Queue the image to be loaded if necessary
 		if ((dir.exists() || dir.mkdirs()) && dir.canWrite())
 		{
-			new Thread(new DiskTileCacher(inUrl, tileFile, inObserver)).start();
+			TileScheduler.addRequest(inManager, inUrl, inZoom, inX, inY,
+				new DiskTileCacher(inUrl, tileFile, inManager));
 		}
 	}
 
@@ -116,10 +172,16 @@ public class DiskTileCacher implements Runnable
 	}
 
 	/**
-	 * Run method for loading URL asynchronously and saving to file
+	 * Run method for loading URL asynchronously and saving to file,
+	 * called by one of the scheduler's worker threads
 	 */
 	public void run()
 	{
+		if (_pack != null)
+		{
+			runForPack();
+			return;
+		}
 		boolean finished = false;
 		InputStream in = null;
 		FileOutputStream out = null;
@@ -150,7 +212,10 @@ public class DiskTileCacher implements Runnable
 			finished = true;
 		} catch (IOException e) {
 			System.err.println("ioe: " + e.getClass().getName() + " - " + e.getMessage());
-			BLOCKED_URLS.add(_url.toString());
+			synchronized (BLOCKED_URLS)
+			{
+				BLOCKED_URLS.add(_url.toString());
+			}
 		}
 		finally
 		{
@@ -171,4 +236,41 @@ public class DiskTileCacher implements Runnable
 		// Tell parent that load is finished (parameters ignored)
 		_observer.imageUpdate(null, ImageObserver.ALLBITS, 0, 0, 0, 0);
 	}
+
+	/**
+	 * Load the URL into memory and add it to the tile pack
+	 */
+	private void runForPack()
+	{
+		InputStream in = null;
+		try
+		{
+			URLConnection conn = _url.openConnection();
+			conn.setRequestProperty("User-Agent", "GpsPrune v" + GpsPrune.VERSION_NUMBER);
+			in = conn.getInputStream();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+			byte[] buffer = new byte[8192];
+			int numRead = 0;
+			while ((numRead = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, numRead);
+			}
+			if (out.size() > 0) {
+				_pack.addTile(_tilePath, out.toByteArray(), System.currentTimeMillis());
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("ioe: " + e.getClass().getName() + " - " + e.getMessage());
+			synchronized (BLOCKED_URLS)
+			{
+				BLOCKED_URLS.add(_url.toString());
+			}
+		}
+		finally
+		{
+			try {in.close();} catch (Exception e) {} // ignore
+		}
+		// Tell parent that load is finished (parameters ignored)
+		_observer.imageUpdate(null, ImageObserver.ALLBITS, 0, 0, 0, 0);
+	}
 }
@@ -50,6 +50,8 @@ public class MapCanvas extends JPanel implements MouseListener, MouseMotionListe
 	private BufferedImage _mapImage = null;
 	/** Second image for drawing track (only needed for alpha blending) */
 	private BufferedImage _trackImage = null;
+	/** Cache of rendered track tiles */
+	private TrackTileCache _trackTiles = null;
 	/** Slider for transparency */
 	private JSlider _transparencySlider = null;
 	/** Checkbox for scale bar */
@@ -123,6 +125,7 @@ public class MapCanvas extends JPanel implements MouseListener, MouseMotionListe
 		_app = inApp;
 		_trackInfo = inTrackInfo;
 		_track = inTrackInfo.getTrack();
+		_trackTiles = new TrackTileCache(_track);
 		_selection = inTrackInfo.getSelection();
 		_midpoints = new MidpointData();
 		_mapPosition = new MapPosition();
@@ -509,7 +512,8 @@ public class MapCanvas extends JPanel implements MouseListener, MouseMotionListe
 		if (showMap)
 		{
 			// init tile cacher
-			_tileManager.centreMap(_mapPosition.getZoom(), _mapPosition.getCentreTileX(), _mapPosition.getCentreTileY());
+			_tileManager.centreMap(_mapPosition.getZoom(), _mapPosition.getCentreTileX(), _mapPosition.getCentreTileY(),
+				getWidth(), getHeight());
 
 			boolean loadingFailed = false;
 			if (_mapImage == null) return;
@@ -632,217 +636,128 @@ public class MapCanvas extends JPanel implements MouseListener, MouseMotionListe
 
 		final int winWidth  = getWidth();
 		final int winHeight = getHeight();
-		final int halfWinWidth  = winWidth / 2;
-		final int halfWinHeight = winHeight / 2;
-
-		final int numPoints = _track.getNumPoints();
-		final int[] xPixels = new int[numPoints];
-		final int[] yPixels = new int[numPoints];
-
-		final int pointSeparationForArrowsSqd = 350;
-		final int pointSeparation1dForArrows = (int) (Math.sqrt(pointSeparationForArrowsSqd) * 0.7);
 
 		// try to set line width for painting
+		int lineWidth = Config.getConfigInt(Config.KEY_LINE_WIDTH);
+		if (lineWidth < 1 || lineWidth > 4) {lineWidth = 2;}
 		if (inG instanceof Graphics2D)
 		{
-			int lineWidth = Config.getConfigInt(Config.KEY_LINE_WIDTH);
-			if (lineWidth < 1 || lineWidth > 4) {lineWidth = 2;}
 			((Graphics2D) inG).setStroke(new BasicStroke(lineWidth));
 		}
 
-		boolean pointsPainted = false;
-		// draw track points
-		inG.setColor(pointColour);
-		int prevX = -1, prevY = -1;
+		// draw track points and lines using the cached tiles
 		final int connectState = _connectCheckBox.getCurrentState();
 		final boolean drawLines = (connectState != 3);  // 0, 1 or 2
 		final boolean drawPoints = (connectState != 1); // 0, 2 or 3
-		final boolean drawArrows = (connectState == 0); // 0
-
-		boolean prevPointVisible = false, currPointVisible = false;
-		boolean anyWaypoints = false;
-		boolean isWaypoint = false;
-		boolean drawnLastArrow = false;	// avoid painting arrows on adjacent lines, looks too busy
-		for (int i=0; i<numPoints; i++)
+		_trackTiles.setDrawSettings(connectState, lineWidth, Config.getConfigBoolean(Config.KEY_ANTIALIAS),
+			pointColour, pointColourer);
+		boolean pointsPainted = _trackTiles.paintTrack(inG, _mapPosition, winWidth, winHeight);
+
+		// Draw track points marked for deletion on top
+		inG.setColor(currentColour);
+		final int[] deletedIndices = _trackTiles.getDeletedIndices();
+		final int[] deletedPrevIndices = _trackTiles.getDeletedPrevIndices();
+		for (int d=0; d<deletedIndices.length; d++)
 		{
-			// Calculate pixel position of point from its x, y coordinates
-			int px = halfWinWidth  + _mapPosition.getXFromCentre(_track.getX(i));
-			int py = halfWinHeight + _mapPosition.getYFromCentre(_track.getY(i));
-			px = wrapLongitudeValue(px, winWidth, _mapPosition.getZoom());
-			// Remember these calculated pixel values so they don't have to be recalculated
-			xPixels[i] = px; yPixels[i] = py;
-
-			currPointVisible = px >= 0 && px < winWidth && py >= 0 && py < winHeight;
-			isWaypoint = _track.getPoint(i).isWaypoint();
-			anyWaypoints = anyWaypoints || isWaypoint;
-			if (!isWaypoint)
-			{
-				if (currPointVisible || (drawLines && prevPointVisible))
-				{
-					// For track points, work out which colour to use
-					if (_track.getPoint(i).getDeleteFlag()) {
-						inG.setColor(currentColour);
-					}
-					else if (pointColourer != null)
-					{  // use the point colourer if there is one
-						Color trackColour = pointColourer.getColour(i);
-						inG.setColor(trackColour);
-					}
-					else
-					{
-						inG.setColor(pointColour);
-					}
-
-					// Draw rectangle for track point if it's visible
-					if (currPointVisible)
-					{
-						if (drawPoints) {
-							inG.drawRect(px-2, py-2, 3, 3);
-						}
-						pointsPainted = true;
-					}
-				}
-
-				// Connect track points if either of them are visible
-				if (drawLines
-				 && (currPointVisible || prevPointVisible)
-				 && !(prevX == -1 && prevY == -1)
-				 && !_track.getPoint(i).getSegmentStart())
-				{
-					inG.drawLine(prevX, prevY, px, py);
-					pointsPainted = true;
-
-					// Now consider whether we need to draw an arrow as well
-					if (drawArrows
-					 && !drawnLastArrow
-					 && (Math.abs(prevX-px) > pointSeparation1dForArrows || Math.abs(prevY-py) > pointSeparation1dForArrows))
-					{
-						final double pointSeparationSqd = (prevX-px) * (prevX-px) + (prevY-py) * (prevY-py);
-						if (pointSeparationSqd > pointSeparationForArrowsSqd)
-						{
-							final double midX = (prevX + px) / 2;
-							final double midY = (prevY + py) / 2;
-							final boolean midPointVisible = midX >= 0 && midX < winWidth && midY >= 0 && midY < winHeight;
-							if (midPointVisible)
-							{
-								final double alpha = Math.atan2(py - prevY, px - prevX);
-								//System.out.println("Draw arrow from (" + prevX + "," + prevY + ") to (" + px + "," + py
-								//	+ ") with angle" + (int) (alpha * 180/Math.PI));
-								final double MID_TO_VERTEX = 3.0;
-								final double arrowX = MID_TO_VERTEX * Math.cos(alpha);
-								final double arrowY = MID_TO_VERTEX * Math.sin(alpha);
-								final double vertexX = midX + arrowX;
-								final double vertexY = midY + arrowY;
-								inG.drawLine((int)(midX-arrowX-2*arrowY), (int)(midY-arrowY+2*arrowX), (int)vertexX, (int)vertexY);
-								inG.drawLine((int)(midX-arrowX+2*arrowY), (int)(midY-arrowY-2*arrowX), (int)vertexX, (int)vertexY);
-							}
-							drawnLastArrow = midPointVisible;
-						}
-					}
-					else
-					{
-						drawnLastArrow = false;
-					}
-				}
-				prevX = px; prevY = py;
+			final int i = deletedIndices[d], prevTrackPoint = deletedPrevIndices[d];
+			// Markers can be cleared without the track changing, so check the flag is still set
+			if (!_track.getPoint(i).getDeleteFlag()) {continue;}
+			final int px = getPixelX(i), py = getPixelY(i);
+			if (drawPoints && px >= 0 && px < winWidth && py >= 0 && py < winHeight) {
+				inG.drawRect(px-2, py-2, 3, 3);
+			}
+			if (drawLines && prevTrackPoint >= 0) {
+				inG.drawLine(getPixelX(prevTrackPoint), getPixelY(prevTrackPoint), px, py);
 			}
-			prevPointVisible = currPointVisible;
 		}
 
-		// Loop over points, just drawing blobs for waypoints
+		// Loop over waypoints, just drawing blobs
 		inG.setColor(textColour);
 		FontMetrics fm = inG.getFontMetrics();
 		int nameHeight = fm.getHeight();
-		if (anyWaypoints)
+		final int[] waypointIndices = _trackTiles.getWaypointIndices();
+		if (waypointIndices.length > 0)
 		{
 			int numWaypoints = 0;
-			for (int i=0; i<_track.getNumPoints(); i++)
+			for (int i : waypointIndices)
 			{
-				if (_track.getPoint(i).isWaypoint())
+				int px = getPixelX(i);
+				int py = getPixelY(i);
+				if (px >= 0 && px < winWidth && py >= 0 && py < winHeight)
 				{
-					int px = xPixels[i];
-					int py = yPixels[i];
-					if (px >= 0 && px < winWidth && py >= 0 && py < winHeight)
+					if (_waypointIconDefinition == null)
 					{
-						if (_waypointIconDefinition == null)
-						{
-							inG.fillRect(px-3, py-3, 6, 6);
-						}
-						else
+						inG.fillRect(px-3, py-3, 6, 6);
+					}
+					else
+					{
+						ImageIcon icon = _waypointIconDefinition.getImageIcon();
+						if (icon != null)
 						{
-							ImageIcon icon = _waypointIconDefinition.getImageIcon();
-							if (icon != null)
-							{
-								inG.drawImage(icon.getImage(), px-_waypointIconDefinition.getXOffset(),
-									py-_waypointIconDefinition.getYOffset(), null);
-							}
+							inG.drawImage(icon.getImage(), px-_waypointIconDefinition.getXOffset(),
+								py-_waypointIconDefinition.getYOffset(), null);
 						}
-						pointsPainted = true;
-						numWaypoints++;
 					}
+					pointsPainted = true;
+					numWaypoints++;
 				}
 			}
 			// Take more care with waypoint names if less than 100 are visible
 			final int numNameSteps = (numWaypoints > 100 ? 1 : 4);
 			final int numPointSteps = (numWaypoints > 1000 ? 2 : 1);
 
-			// Loop over points again, now draw names for waypoints
+			// Loop over waypoints again, now draw names
 			int[] nameXs = {0, 0, 0, 0};
 			int[] nameYs = {0, 0, 0, 0};
-			for (int i=0; i<_track.getNumPoints(); i += numPointSteps)
+			for (int w=0; w<waypointIndices.length; w += numPointSteps)
 			{
-				if (_track.getPoint(i).isWaypoint())
+				final int i = waypointIndices[w];
+				int px = getPixelX(i);
+				int py = getPixelY(i);
+				if (px >= 0 && px < winWidth && py >= 0 && py < winHeight)
 				{
-					int px = xPixels[i];
-					int py = yPixels[i];
-					if (px >= 0 && px < winWidth && py >= 0 && py < winHeight)
+					// Figure out where to draw waypoint name so it doesn't obscure track
+					String waypointName = _track.getPoint(i).getWaypointName();
+					int nameWidth = fm.stringWidth(waypointName);
+					boolean drawnName = false;
+					// Make arrays for coordinates right left up down
+					nameXs[0] = px + 2; nameXs[1] = px - nameWidth - 2;
+					nameXs[2] = nameXs[3] = px - nameWidth/2;
+					nameYs[0] = nameYs[1] = py + (nameHeight/2);
+					nameYs[2] = py - 2; nameYs[3] = py + nameHeight + 2;
+					for (int extraSpace = 0; extraSpace < numNameSteps && !drawnName; extraSpace++)
 					{
-						// Figure out where to draw waypoint name so it doesn't obscure track
-						String waypointName = _track.getPoint(i).getWaypointName();
-						int nameWidth = fm.stringWidth(waypointName);
-						boolean drawnName = false;
-						// Make arrays for coordinates right left up down
-						nameXs[0] = px + 2; nameXs[1] = px - nameWidth - 2;
-						nameXs[2] = nameXs[3] = px - nameWidth/2;
-						nameYs[0] = nameYs[1] = py + (nameHeight/2);
-						nameYs[2] = py - 2; nameYs[3] = py + nameHeight + 2;
-						for (int extraSpace = 0; extraSpace < numNameSteps && !drawnName; extraSpace++)
+						// Shift arrays for coordinates right left up down
+						nameXs[0] += 3; nameXs[1] -= 3;
+						nameYs[2] -= 3; nameYs[3] += 3;
+						// Check each direction in turn right left up down
+						for (int a=0; a<4; a++)
 						{
-							// Shift arrays for coordinates right left up down
-							nameXs[0] += 3; nameXs[1] -= 3;
-							nameYs[2] -= 3; nameYs[3] += 3;
-							// Check each direction in turn right left up down
-							for (int a=0; a<4; a++)
+							if (nameXs[a] > 0 && (nameXs[a] + nameWidth) < winWidth
+								&& nameYs[a] < winHeight && (nameYs[a] - nameHeight) > 0
+								&& !MapUtils.overlapsPoints(_mapImage, nameXs[a], nameYs[a], nameWidth, nameHeight, textColour))
 							{
-								if (nameXs[a] > 0 && (nameXs[a] + nameWidth) < winWidth
-									&& nameYs[a] < winHeight && (nameYs[a] - nameHeight) > 0
-									&& !MapUtils.overlapsPoints(_mapImage, nameXs[a], nameYs[a], nameWidth, nameHeight, textColour))
-								{
-									// Found a rectangle to fit - draw name here and quit
-									inG.drawString(waypointName, nameXs[a], nameYs[a]);
-									drawnName = true;
-									break;
-								}
+								// Found a rectangle to fit - draw name here and quit
+								inG.drawString(waypointName, nameXs[a], nameYs[a]);
+								drawnName = true;
+								break;
 							}
 						}
 					}
 				}
 			}
 		}
-		// Loop over points, drawing blobs for photo / audio points
+		// Loop over photo / audio points, drawing blobs
 		inG.setColor(secondColour);
-		for (int i=0; i<_track.getNumPoints(); i++)
+		for (int i : _trackTiles.getMediaIndices())
 		{
-			if (_track.getPoint(i).hasMedia())
+			int px = getPixelX(i);
+			int py = getPixelY(i);
+			if (px >= 0 && px < winWidth && py >= 0 && py < winHeight)
 			{
-				int px = xPixels[i];
-				int py = yPixels[i];
-				if (px >= 0 && px < winWidth && py >= 0 && py < winHeight)
-				{
-					inG.drawRect(px-1, py-1, 2, 2);
-					inG.drawRect(px-2, py-2, 4, 4);
-					pointsPainted = true;
-				}
+				inG.drawRect(px-1, py-1, 2, 2);
+				inG.drawRect(px-2, py-2, 4, 4);
+				pointsPainted = true;
 			}
 		}
 
@@ -852,8 +767,8 @@ public class MapCanvas extends JPanel implements MouseListener, MouseMotionListe
 			inG.setColor(rangeColour);
 			for (int i=_selection.getStart(); i<=_selection.getEnd(); i++)
 			{
-				int px = xPixels[i];
-				int py = yPixels[i];
+				int px = getPixelX(i);
+				int py = getPixelY(i);
 				inG.drawRect(px-1, py-1, 2, 2);
 			}
 		}
@@ -862,8 +777,8 @@ public class MapCanvas extends JPanel implements MouseListener, MouseMotionListe
 		int selectedPoint = _selection.getCurrentPointIndex();
 		if (selectedPoint >= 0)
 		{
-			int px = xPixels[selectedPoint];
-			int py = yPixels[selectedPoint];
+			int px = getPixelX(selectedPoint);
+			int py = getPixelY(selectedPoint);
 			inG.setColor(currentColour);
 			// crosshairs
 			inG.drawLine(px, 0, px, winHeight);
@@ -873,6 +788,25 @@ public class MapCanvas extends JPanel implements MouseListener, MouseMotionListe
 		return pointsPainted;
 	}
 
+	/**
+	 * @param inIndex index of point
+	 * @return x pixel position of point in the window, wrapped if possible
+	 */
+	private int getPixelX(int inIndex)
+	{
+		final int px = getWidth() / 2 + _mapPosition.getXFromCentre(_track.getX(inIndex));
+		return wrapLongitudeValue(px, getWidth(), _mapPosition.getZoom());
+	}
+
+	/**
+	 * @param inIndex index of point
+	 * @return y pixel position of point in the window
+	 */
+	private int getPixelY(int inIndex)
+	{
+		return getHeight() / 2 + _mapPosition.getYFromCentre(_track.getY(inIndex));
+	}
+
 	/**
 	 * Wrap the given pixel value if appropriate and possible
 	 * @param inPx Pixel x coordinate
@@ -1378,6 +1312,10 @@ public class MapCanvas extends JPanel implements MouseListener, MouseMotionListe
 	public void dataUpdated(byte inUpdateType)
 	{
 		_recalculate = true;
+		// Selection changes don't affect the track tiles, anything else might
+		if (inUpdateType != DataSubscriber.SELECTION_CHANGED) {
+			_trackTiles.clear();
+		}
 		if ((inUpdateType & DataSubscriber.DATA_ADDED_OR_REMOVED) > 0) {
 			_checkBounds = true;
 		}
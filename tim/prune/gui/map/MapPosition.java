@@ -18,7 +18,7 @@ public class MapPosition
 	/** Factor to zoom by, 2 to the power of zoom */
 	private int _zoomFactor = 1 << _zoom;
 	/** Maximum zoom level */
-	private static final int MAX_ZOOM = 21;
+	static final int MAX_ZOOM = 21;
 
 
 	/**
@@ -1,6 +1,9 @@
 package tim.prune.gui.map;
 
+import java.awt.Graphics;
 import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -18,18 +21,29 @@ public class MapTileManager implements ImageObserver
 	private TileConsumer _consumer = null;
 	/** Current map source */
 	private MapSource _mapSource = null;
-	/** Array of tile caches, one per layer */
-	private MemTileCacher[] _tempCaches = null;
+	/** Memory cache for tiles of all layers and zoom levels */
+	private MemTileCacher _tempCache = null;
 	/** Flag for whether to download any tiles or just pull from disk */
 	private boolean _downloadTiles = true;
 	/** Flag for whether to return incomplete images or just pass to tile cache until they're done */
 	private boolean _returnIncompleteImages = false;
 	/** Number of layers */
 	private int _numLayers = -1;
-	/** Current zoom level */
-	private int _zoom = 0;
+	/** Current zoom level, read by the download threads as well as the EDT */
+	private volatile int _zoom = 0;
 	/** Number of tiles in each direction for this zoom level */
-	private int _numTileIndices = 1;
+	private volatile int _numTileIndices = 1;
+	/** Coordinates of central tile, if known */
+	private volatile int _centreTileX = 0, _centreTileY = 0;
+	/** Flag for whether map has been centred, otherwise all requested tiles are wanted */
+	private volatile boolean _hasCentre = false;
+	/** Maximum distances in tiles from the centre for downloads to be kept in the queue */
+	private volatile int _maxRequestDistX = 0, _maxRequestDistY = 0;
+
+	/** Number of tiles outside the visible area for which downloads are still kept in the queue */
+	private static final int REQUEST_MARGIN_TILES = 2;
+	/** Maximum number of zoom levels to go up to find a parent tile while a tile is loading */
+	private static final int MAX_PARENT_LEVELS = 4;
 
 
 	/**
@@ -46,16 +60,18 @@ public class MapTileManager implements ImageObserver
 	 * @param inZoom zoom level
 	 * @param inTileX x coord of central tile
 	 * @param inTileY y coord of central tile
+	 * @param inWidth width of visible area in pixels
+	 * @param inHeight height of visible area in pixels
 	 */
-	public void centreMap(int inZoom, int inTileX, int inTileY)
+	public void centreMap(int inZoom, int inTileX, int inTileY, int inWidth, int inHeight)
 	{
 		setZoom(inZoom);
-		// Pass params onto all memory cachers
-		if (_tempCaches != null) {
-			for (int i=0; i<_tempCaches.length; i++) {
-				_tempCaches[i].centreMap(inZoom, inTileX, inTileY);
-			}
-		}
+		_centreTileX = ((inTileX % _numTileIndices) + _numTileIndices) % _numTileIndices;
+		_centreTileY = inTileY;
+		// Visible tiles can be up to half the window plus one tile away from the central one
+		_maxRequestDistX = inWidth / 512 + 1 + REQUEST_MARGIN_TILES;
+		_maxRequestDistY = inHeight / 512 + 1 + REQUEST_MARGIN_TILES;
+		_hasCentre = true;
 	}
 
 	/** @param inZoom zoom level to set */
@@ -66,6 +82,27 @@ public class MapTileManager implements ImageObserver
 		_numTileIndices = 1 << _zoom;
 	}
 
+	/**
+	 * Get the priority of a queued download, so that tiles nearest the centre are loaded first
+	 * @param inZoom zoom level of tile
+	 * @param inX x coordinate of tile
+	 * @param inY y coordinate of tile
+	 * @return distance in tiles from the centre, or -1 if the tile is no longer wanted
+	 */
+	public int getRequestPriority(int inZoom, int inX, int inY)
+	{
+		// Called from the scheduler threads, so take a local copy of the centre
+		final int zoom = _zoom;
+		if (inZoom != zoom) {return -1;}
+		if (!_hasCentre) {return 0;}
+		final int numTileIndices = 1 << zoom;
+		int xDist = Math.abs(inX - _centreTileX);
+		xDist = Math.min(xDist, numTileIndices - xDist); // wrap around
+		final int yDist = Math.abs(inY - _centreTileY);
+		if (xDist > _maxRequestDistX || yDist > _maxRequestDistY) {return -1;}
+		return Math.max(xDist, yDist);
+	}
+
 	/**
 	 * @return true if zoom is too high for tiles
 	 */
@@ -92,24 +129,17 @@ public class MapTileManager implements ImageObserver
 	}
 
 	/**
-	 * Clear all the memory caches due to changed config / zoom
+	 * Clear the memory cache due to changed config
 	 */
 	public void clearMemoryCaches()
 	{
-		int numLayers = _mapSource.getNumLayers();
-		if (_tempCaches == null || _tempCaches.length != numLayers)
+		if (_tempCache == null)
 		{
-			// Cachers don't match, so need to create the right number of them
-			_tempCaches = new MemTileCacher[numLayers];
-			for (int i=0; i<numLayers; i++) {
-				_tempCaches[i] = new MemTileCacher();
-			}
+			final long maxBytes = Math.max(1, Config.getConfigInt(Config.KEY_TILE_CACHE_SIZE)) * 1024L * 1024L;
+			_tempCache = new MemTileCacher(maxBytes);
 		}
 		else {
-			// Cachers already there, just need to be cleared
-			for (int i=0; i<numLayers; i++) {
-				_tempCaches[i].clearAll();
-			}
+			_tempCache.clearAll();
 		}
 	}
 
@@ -156,11 +186,10 @@ public class MapTileManager implements ImageObserver
 
 		// Check first in memory cache for tile
 		Image tileImage = null;
-		MemTileCacher tempCache = null;
-		if (_tempCaches != null)
+		final String tileKey = MemTileCacher.makeKey(_mapSource, inLayer, _zoom, inX, inY);
+		if (_tempCache != null)
 		{
-			tempCache = _tempCaches[inLayer]; // Should probably guard array indexes here
-			tileImage = tempCache.getTile(inX, inY);
+			tileImage = _tempCache.getTile(tileKey);
 			if (tileImage != null) {
 				return tileImage;
 			}
@@ -180,8 +209,10 @@ public class MapTileManager implements ImageObserver
 				tileImage = mapTile.getImage();
 				if (_returnIncompleteImages) {return tileImage;}
 				// Pass tile to memory cache
-				if (tempCache != null) {
-					tempCache.setTile(tileImage, inX, inY, _zoom);
+				if (_tempCache != null)
+				{
+					_tempCache.setTile(tileKey, tileImage);
+					removeScaledParentTiles(tileKey);
 				}
 				tileImage.getWidth(this); // trigger the load from file
 			}
@@ -198,8 +229,8 @@ public class MapTileManager implements ImageObserver
 				//System.out.println("Trying to fetch: " + tileUrl);
 				if (useDisk)
 				{
-					DiskTileCacher.saveTile(tileUrl, diskCachePath,
-						_mapSource.makeFilePath(inLayer, _zoom, inX, inY), this);
+					DiskTileCacher.saveTile(this, tileUrl, diskCachePath,
+						_mapSource.makeFilePath(inLayer, _zoom, inX, inY), _zoom, inX, inY);
 					// Image will now be copied directly from URL stream to disk cache
 				}
 				else
@@ -211,9 +242,62 @@ public class MapTileManager implements ImageObserver
 			}
 			catch (MalformedURLException urle) {} // ignore
 		}
+		// While the tile is loading, show part of a parent tile instead if there is one
+		if (tileImage == null && !_returnIncompleteImages) {
+			tileImage = getScaledParentTile(inLayer, inX, inY);
+		}
 		return tileImage;
 	}
 
+	/**
+	 * Make a substitute for a missing tile by scaling up part of a parent tile from the memory cache.
+	 * The scaled images are kept in the memory cache too, so they're only made once for each parent level
+	 * @param inLayer layer number, starting from 0
+	 * @param inX x index of tile
+	 * @param inY y index of tile
+	 * @return scaled image, or null if no loaded parent tile found
+	 */
+	private Image getScaledParentTile(int inLayer, int inX, int inY)
+	{
+		if (_tempCache == null) {return null;}
+		final String tileKey = MemTileCacher.makeKey(_mapSource, inLayer, _zoom, inX, inY);
+		for (int levelsUp=1; levelsUp<=MAX_PARENT_LEVELS && levelsUp<=_zoom; levelsUp++)
+		{
+			final String scaledKey = tileKey + "/up" + levelsUp;
+			Image scaled = _tempCache.getTile(scaledKey);
+			if (scaled != null) {
+				return scaled;
+			}
+			Image parent = _tempCache.getTile(MemTileCacher.makeKey(_mapSource, inLayer,
+				_zoom - levelsUp, inX >> levelsUp, inY >> levelsUp));
+			if (parent != null && (Toolkit.getDefaultToolkit().checkImage(parent, -1, -1, null) & ImageObserver.ALLBITS) > 0)
+			{
+				// Copy the right part of the parent, scaled up to the full tile size
+				final int partSize = 256 >> levelsUp;
+				final int partX = (inX & ((1 << levelsUp) - 1)) * partSize;
+				final int partY = (inY & ((1 << levelsUp) - 1)) * partSize;
+				BufferedImage result = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+				Graphics g = result.getGraphics();
+				g.drawImage(parent, 0, 0, 256, 256, partX, partY, partX + partSize, partY + partSize, null);
+				g.dispose();
+				_tempCache.setTile(scaledKey, result);
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the substitutes for a tile from the memory cache, once the tile itself is there
+	 * @param inTileKey key of tile
+	 */
+	private void removeScaledParentTiles(String inTileKey)
+	{
+		for (int levelsUp=1; levelsUp<=MAX_PARENT_LEVELS; levelsUp++) {
+			_tempCache.removeTile(inTileKey + "/up" + levelsUp);
+		}
+	}
+
 	/**
 	 * Method called by image loader to inform of updates to the tiles
 	 * @param img the image
@@ -244,13 +328,14 @@ public class MapTileManager implements ImageObserver
 	 */
 	public void notifyImageLoaded(Image inTile, int inLayer, int inX, int inY, int inZoom)
 	{
-		if (inTile != null && _tempCaches != null)
+		if (inTile != null && _tempCache != null)
 		{
-			MemTileCacher tempCache = _tempCaches[inLayer]; // Should probably guard against nulls and array indexes here
-			if (tempCache.getTile(inX, inY) == null)
+			final String tileKey = MemTileCacher.makeKey(_mapSource, inLayer, inZoom, inX, inY);
+			if (_tempCache.getTile(tileKey) == null)
 			{
-				// Check with cache that the zoom level is still valid
-				tempCache.setTile(inTile, inX, inY, inZoom);
+				// Tiles for other zoom levels are kept too, as they may be needed again
+				_tempCache.setTile(tileKey, inTile);
+				removeScaledParentTiles(tileKey);
 				inTile.getWidth(this); // trigger imageUpdate when image is ready
 			}
 		}
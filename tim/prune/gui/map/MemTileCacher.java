@@ -1,134 +1,116 @@
 package tim.prune.gui.map;
 
 import java.awt.Image;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Class to act as a memory-based map tile cache
+ * Class to act as a memory-based map tile cache, holding tiles from
+ * all zoom levels and keeping the most recently used ones up to a size limit.
  * For caching of tiles on disk, see the DiskTileCacher class.
  */
 public class MemTileCacher
 {
-	/** Array of images to hold tiles */
-	private Image[] _tiles = new Image[GRID_SIZE * GRID_SIZE];
-	/** Current zoom level */
-	private int _zoom = -1;
-	/** X coordinate of central tile */
-	private int _tileX = -1;
-	/** Y coordinate of central tile */
-	private int _tileY = -1;
-	/** X coord of grid centre */
-	private int _gridCentreX = 0;
-	/** Y coord of grid centre */
-	private int _gridCentreY = 0;
+	/** Map from tile keys to cached tiles, in order of access */
+	private LinkedHashMap<String, CachedTile> _tiles = new LinkedHashMap<String, CachedTile>(256, 0.75f, true);
+	/** Maximum total size of tiles in bytes */
+	private long _maxBytes = 0L;
+	/** Current total size of tiles in bytes */
+	private long _totalBytes = 0L;
+
+	/** Size in bytes to assume for each tile if it's not loaded yet */
+	private static final int DEFAULT_TILE_BYTES = 256 * 256 * 4;
 
-	/** Grid size */
-	private static final int GRID_SIZE = 15;
 
 	/**
-	 * Recentre the map and clear the cache
-	 * @param inZoom zoom level
-	 * @param inTileX x coord of central tile
-	 * @param inTileY y coord of central tile
+	 * Cached image together with its size
 	 */
-	public void centreMap(int inZoom, int inTileX, int inTileY)
+	private static class CachedTile
 	{
-		int shift = Math.max(Math.abs(inTileX-_tileX), Math.abs(inTileY - _tileY));
-		if (shift == 0) {return;}
-		// Clear cache if either zoom has changed or map has jumped too far
-		if (inZoom != _zoom || shift > GRID_SIZE/2)
-		{
-			_zoom = inZoom;
-			clearAll();
-		}
-		_gridCentreX = getCacheCoordinate(_gridCentreX + inTileX - _tileX);
-		_gridCentreY = getCacheCoordinate(_gridCentreY + inTileY - _tileY);
-		_tileX = inTileX;
-		_tileY = inTileY;
-		// Mark boundaries as invalid
-		for (int i=0; i<GRID_SIZE; i++)
-		{
-			_tiles[getArrayIndexNoWrap(_tileX + GRID_SIZE/2 + 1, _tileY + i - GRID_SIZE/2)] = null;
-			_tiles[getArrayIndexNoWrap(_tileX + i - GRID_SIZE/2, _tileY + GRID_SIZE/2 + 1)] = null;
-		}
+		Image _image = null;
+		int _numBytes = 0;
 	}
 
+
 	/**
-	 * Transform a coordinate from map tiles to array coordinates
-	 * @param inTile coordinate of tile
-	 * @return coordinate in array (wrapping around cache grid)
+	 * Constructor
+	 * @param inMaxBytes maximum total size of tiles in bytes
 	 */
-	private static int getCacheCoordinate(int inTile)
+	public MemTileCacher(long inMaxBytes)
 	{
-		int tile = inTile;
-		while (tile >= GRID_SIZE) {tile -= GRID_SIZE;}
-		while (tile < 0) {tile += GRID_SIZE;}
-		return tile;
+		_maxBytes = inMaxBytes;
 	}
 
 	/**
-	 * Get the array index for the given coordinates, including regular lon wrapping
-	 * @param inX x coord of tile
-	 * @param inY y coord of tile
-	 * @return array index
+	 * Make a key for the given tile
+	 * @param inSource map source
+	 * @param inLayer layer index
+	 * @param inZoom zoom level
+	 * @param inX x coordinate of tile
+	 * @param inY y coordinate of tile
+	 * @return key including the source's site name, zoom and coordinates
 	 */
-	private int getArrayIndex(int inX, int inY)
+	public static String makeKey(MapSource inSource, int inLayer, int inZoom, int inX, int inY)
 	{
-		final int tileSpan = 1 << _zoom;
-		int deltaX = (inX - _tileX);
-		while (deltaX > (tileSpan/2))  {deltaX -= tileSpan;}
-		while (deltaX < (-tileSpan/2)) {deltaX += tileSpan;}
-
-		int x = getCacheCoordinate(deltaX + _gridCentreX);
-		int y = getCacheCoordinate(inY - _tileY + _gridCentreY);
-		return (x + y * GRID_SIZE);
+		return inSource.makeFilePath(inLayer, inZoom, inX, inY);
 	}
 
 	/**
-	 * Get the array index for the given coordinates, without wrapping x coords
-	 * (used for deletion to avoid deleting the wrong tile)
-	 * @param inX x coord of tile
-	 * @param inY y coord of tile
-	 * @return array index
+	 * Clear all the cached images
 	 */
-	private int getArrayIndexNoWrap(int inX, int inY)
+	public synchronized void clearAll()
 	{
-		int x = getCacheCoordinate(inX - _tileX + _gridCentreX);
-		int y = getCacheCoordinate(inY - _tileY + _gridCentreY);
-		return (x + y * GRID_SIZE);
+		_tiles.clear();
+		_totalBytes = 0L;
 	}
 
 	/**
-	 * Clear all the cached images
+	 * @param inKey key of tile
+	 * @return selected tile if already loaded, or null otherwise
 	 */
-	public void clearAll()
+	public synchronized Image getTile(String inKey)
 	{
-		for (int i=0; i<_tiles.length; i++) {
-			_tiles[i] = null;
-		}
+		CachedTile tile = _tiles.get(inKey);
+		return (tile == null ? null : tile._image);
 	}
 
 	/**
-	 * @param inX x index of tile
-	 * @param inY y index of tile
-	 * @return selected tile if already loaded, or null otherwise
+	 * Remove the specified tile if it's in the cache
+	 * @param inKey key of tile
 	 */
-	public Image getTile(int inX, int inY)
+	public synchronized void removeTile(String inKey)
 	{
-		return _tiles[getArrayIndex(inX, inY)];
+		CachedTile tile = _tiles.remove(inKey);
+		if (tile != null) {
+			_totalBytes -= tile._numBytes;
+		}
 	}
 
 	/**
-	 * Save the specified tile at the given coordinates
+	 * Save the specified tile, removing the least recently used tiles if necessary
+	 * @param inKey key of tile
 	 * @param inTile image to save
-	 * @param inX x coordinate of tile
-	 * @param inY y coordinate of tile
-	 * @param inZoom zoom level
 	 */
-	public void setTile(Image inTile, int inX, int inY, int inZoom)
+	public synchronized void setTile(String inKey, Image inTile)
 	{
-		// Ignore images received for a different zoom level
-		if (inZoom == _zoom) {
-			_tiles[getArrayIndex(inX, inY)] = inTile;
+		CachedTile tile = new CachedTile();
+		tile._image = inTile;
+		final int width = inTile.getWidth(null), height = inTile.getHeight(null);
+		tile._numBytes = (width > 0 && height > 0) ? width * height * 4 : DEFAULT_TILE_BYTES;
+		CachedTile oldTile = _tiles.put(inKey, tile);
+		if (oldTile != null) {
+			_totalBytes -= oldTile._numBytes;
+		}
+		_totalBytes += tile._numBytes;
+		// Remove the least recently used tiles until the total size is within the limit again
+		Iterator<Map.Entry<String, CachedTile>> it = _tiles.entrySet().iterator();
+		while (_totalBytes > _maxBytes && _tiles.size() > 1 && it.hasNext())
+		{
+			CachedTile eldest = it.next().getValue();
+			if (eldest == tile) {break;}
+			_totalBytes -= eldest._numBytes;
+			it.remove();
 		}
 	}
 }
@@ -23,8 +23,6 @@ public class TileDownloader implements Runnable
 	private int _zoom = 0;
 	/** Hashset of all blocked / 404 tiles to avoid requesting them again */
 	private static final HashSet<String> BLOCKED_URLS = new HashSet<String>();
-	/** Hashset of all currently loading tiles to avoid requesting them again */
-	private static final HashSet<String> LOADING_URLS = new HashSet<String>();
 
 
 	/**
@@ -46,7 +44,7 @@ public class TileDownloader implements Runnable
 	}
 
 	/**
-	 * Trigger a download in a new thread
+	 * Trigger a download using the tile scheduler
 	 * @param inManager manager to callback when image is loaded
 	 * @param inUrl URL to load
 	 * @param inLayer layer index from 0
@@ -54,24 +52,23 @@ public class TileDownloader implements Runnable
 	 * @param inY y coordinate of tile
 	 * @param inZoom current zoom level
 	 */
-	public static synchronized void triggerLoad(MapTileManager inManager, URL inUrl, int inLayer,
+	public static void triggerLoad(MapTileManager inManager, URL inUrl, int inLayer,
 		int inX, int inY, int inZoom)
 	{
 		if (inManager != null && inUrl != null)
 		{
-			String url = inUrl.toString();
-			// System.out.println("Trigger load: " + url);
-			if (!BLOCKED_URLS.contains(url) && !LOADING_URLS.contains(url))
+			synchronized (BLOCKED_URLS)
 			{
-				// System.out.println("Not blocked: " + url);
-				LOADING_URLS.add(url);
-				new Thread(new TileDownloader(inManager, inUrl, inLayer, inX, inY, inZoom)).start();
+				if (BLOCKED_URLS.contains(inUrl.toString())) {return;}
 			}
+			// Scheduler ignores the request if this url is already being loaded
+			TileScheduler.addRequest(inManager, inUrl, inZoom, inX, inY,
+				new TileDownloader(inManager, inUrl, inLayer, inX, inY, inZoom));
 		}
 	}
 
 	/**
-	 * Run method, called in separate thread
+	 * Run method, called by one of the scheduler's worker threads
 	 */
 	public void run()
 	{
@@ -103,12 +100,11 @@ public class TileDownloader implements Runnable
 		catch (IOException e)
 		{
 			System.err.println("IOE: " + e.getClass().getName() + " - " + e.getMessage());
-			synchronized(this.getClass())
+			synchronized (BLOCKED_URLS)
 			{
 				BLOCKED_URLS.add(_url.toString());
 			}
 			try {in.close();} catch (Exception e2) {}
 		}
-		LOADING_URLS.remove(_url.toString());
 	}
 }
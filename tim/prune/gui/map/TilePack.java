@@ -0,0 +1,426 @@
+package tim.prune.gui.map;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Class to hold all the map tiles of a single tileset in one file on disk,
+ * instead of one file per tile. New tiles are appended to the end of the file,
+ * replacing any earlier version of the same tile, and an index of the file
+ * contents is built in memory when the pack is opened.
+ * Each record consists of zoom, x, y, timestamp and length followed by the image bytes.
+ * Once the replaced records take up too much of the file, it is compacted.
+ */
+public class TilePack
+{
+	/** Pack file */
+	private File _file = null;
+	/** Channel for reading and writing */
+	private FileChannel _channel = null;
+	/** Index from tile keys to record positions */
+	private HashMap<Long, TileRecord> _index = new HashMap<Long, TileRecord>();
+	/** Position of end of file */
+	private long _endPosition = 0L;
+	/** Number of bytes taken up by records which have been replaced */
+	private long _deadBytes = 0L;
+
+	/** Name of pack file within tileset directory */
+	public static final String PACK_FILENAME = "tiles.pack";
+	/** Identifier at start of file */
+	private static final int FILE_MAGIC = 0x47505450; // "GPTP"
+	/** Size of record header in bytes */
+	private static final int HEADER_SIZE = 24;
+	/** Minimum number of dead bytes before the file is compacted */
+	private static final long MIN_DEAD_BYTES_TO_COMPACT = 1024L * 1024L;
+	/** Open packs by path */
+	private static final HashMap<String, TilePack> OPEN_PACKS = new HashMap<String, TilePack>();
+
+
+	/**
+	 * Position and details of a single tile in the file
+	 */
+	public static class TileRecord
+	{
+		private int _zoom = 0, _x = 0, _y = 0;
+		private long _timestamp = 0L;
+		private long _position = 0L;
+		private int _length = 0;
+
+		/** @return zoom level */
+		public int getZoom() {return _zoom;}
+		/** @return time tile was saved in milliseconds */
+		public long getTimestamp() {return _timestamp;}
+		/** @return length of image data in bytes */
+		public int getLength() {return _length;}
+	}
+
+
+	/**
+	 * Private constructor, use getPack to open packs
+	 * @param inFile pack file
+	 * @throws IOException if file couldn't be read or created
+	 */
+	private TilePack(File inFile) throws IOException
+	{
+		_file = inFile;
+		_channel = new RandomAccessFile(inFile, "rw").getChannel();
+		if (_channel.size() == 0L)
+		{
+			ByteBuffer header = ByteBuffer.allocate(4);
+			header.putInt(FILE_MAGIC).flip();
+			_channel.write(header, 0L);
+			_endPosition = 4L;
+		}
+		else {
+			readIndex();
+		}
+	}
+
+	/**
+	 * Get the pack for the given tileset, opening it if necessary
+	 * @param inBasePath base path to whole disk cache
+	 * @param inTilePath relative path to a tile within the tileset
+	 * @param inCreate true to create the pack if it doesn't exist yet
+	 * @return pack, or null if there isn't one
+	 */
+	public static TilePack getPack(String inBasePath, String inTilePath, boolean inCreate)
+	{
+		final String setPath = getTileSetPath(inTilePath);
+		if (inBasePath == null || setPath == null) {return null;}
+		return getPack(new File(new File(inBasePath, setPath), PACK_FILENAME), inCreate);
+	}
+
+	/**
+	 * Get the pack for the given file, opening it if necessary
+	 * @param inFile pack file
+	 * @param inCreate true to create the pack if it doesn't exist yet
+	 * @return pack, or null if there isn't one
+	 */
+	public static TilePack getPack(File inFile, boolean inCreate)
+	{
+		synchronized (OPEN_PACKS)
+		{
+			final String key = inFile.getAbsolutePath();
+			TilePack pack = OPEN_PACKS.get(key);
+			if (pack == null && (inFile.exists() || inCreate))
+			{
+				try
+				{
+					pack = new TilePack(inFile);
+					OPEN_PACKS.put(key, pack);
+				}
+				catch (IOException e) {
+					System.err.println("TilePack: " + e.getClass().getName() + " - " + e.getMessage());
+				}
+			}
+			return pack;
+		}
+	}
+
+	/**
+	 * @param inTilePath relative path to tile, ending with zoom/x/y.extension
+	 * @return path of tileset, or null if path not valid
+	 */
+	private static String getTileSetPath(String inTilePath)
+	{
+		if (inTilePath == null) {return null;}
+		int slashPos = inTilePath.length();
+		for (int i=0; i<3 && slashPos > 0; i++) {
+			slashPos = inTilePath.lastIndexOf('/', slashPos - 1);
+		}
+		return (slashPos > 0 ? inTilePath.substring(0, slashPos + 1) : null);
+	}
+
+	/**
+	 * Parse the zoom and coordinates from the given tile path
+	 * @param inTilePath relative path to tile, ending with zoom/x/y.extension
+	 * @return key for the index, or -1 if not valid
+	 */
+	public static long getTileKey(String inTilePath)
+	{
+		final int dotPos = inTilePath.lastIndexOf('.');
+		final int yPos = inTilePath.lastIndexOf('/', dotPos) + 1;
+		final int xPos = inTilePath.lastIndexOf('/', yPos - 2) + 1;
+		final int zPos = inTilePath.lastIndexOf('/', xPos - 2) + 1;
+		try
+		{
+			return makeKey(Integer.parseInt(inTilePath.substring(zPos, xPos - 1)),
+				Integer.parseInt(inTilePath.substring(xPos, yPos - 1)),
+				Integer.parseInt(inTilePath.substring(yPos, dotPos)));
+		}
+		catch (RuntimeException e) {} // not a valid tile path
+		return -1L;
+	}
+
+	/**
+	 * @param inZoom zoom level
+	 * @param inX x coordinate of tile
+	 * @param inY y coordinate of tile
+	 * @return key for the index
+	 */
+	private static long makeKey(int inZoom, int inX, int inY)
+	{
+		return ((long) inZoom << 56) | ((long) inX << 28) | inY;
+	}
+
+	/**
+	 * Scan through the record headers to build the index
+	 * @throws IOException if file couldn't be read
+	 */
+	private void readIndex() throws IOException
+	{
+		final long fileSize = _channel.size();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+		buffer.limit(4);
+		_channel.read(buffer, 0L);
+		if (buffer.getInt(0) != FILE_MAGIC) {
+			throw new IOException("Not a tile pack: " + _file.getName());
+		}
+		long position = 4L;
+		while (position + HEADER_SIZE <= fileSize)
+		{
+			buffer.clear();
+			while (buffer.hasRemaining() && _channel.read(buffer, position + buffer.position()) > 0) {}
+			buffer.flip();
+			TileRecord record = new TileRecord();
+			record._zoom = buffer.getInt();
+			record._x = buffer.getInt();
+			record._y = buffer.getInt();
+			record._timestamp = buffer.getLong();
+			record._length = buffer.getInt();
+			record._position = position + HEADER_SIZE;
+			// Ignore a record at the end which wasn't completely written
+			if (record._length < 0 || record._position + record._length > fileSize) {break;}
+			addDeadRecord(_index.put(makeKey(record._zoom, record._x, record._y), record));
+			position = record._position + record._length;
+		}
+		_endPosition = position;
+	}
+
+	/**
+	 * @param inTilePath relative path to tile
+	 * @return record of tile, or null if not in pack
+	 */
+	public synchronized TileRecord getRecord(String inTilePath)
+	{
+		return _index.get(getTileKey(inTilePath));
+	}
+
+	/**
+	 * Read the image data of the given tile
+	 * @param inRecord record of tile
+	 * @return image bytes, or null if they couldn't be read
+	 */
+	public synchronized byte[] readTile(TileRecord inRecord)
+	{
+		byte[] data = new byte[inRecord._length];
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		try
+		{
+			while (buffer.hasRemaining())
+			{
+				if (_channel.read(buffer, inRecord._position + buffer.position()) < 0) {
+					return null;
+				}
+			}
+		}
+		catch (IOException e) {
+			return null;
+		}
+		return data;
+	}
+
+	/**
+	 * Add a tile to the end of the pack, replacing any previous version
+	 * @param inTilePath relative path to tile
+	 * @param inData image bytes
+	 * @param inTimestamp time of tile in milliseconds
+	 * @return true if tile saved
+	 */
+	public synchronized boolean addTile(String inTilePath, byte[] inData, long inTimestamp)
+	{
+		final long key = getTileKey(inTilePath);
+		if (key < 0L || inData == null) {return false;}
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + inData.length);
+		buffer.putInt((int) (key >>> 56)).putInt((int) ((key >>> 28) & 0xfffffff)).putInt((int) (key & 0xfffffff));
+		buffer.putLong(inTimestamp).putInt(inData.length).put(inData);
+		buffer.flip();
+		try
+		{
+			long position = _endPosition;
+			while (buffer.hasRemaining()) {
+				position += _channel.write(buffer, position);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("TilePack: " + e.getClass().getName() + " - " + e.getMessage());
+			return false;
+		}
+		TileRecord record = new TileRecord();
+		record._zoom = (int) (key >>> 56);
+		record._x = (int) ((key >>> 28) & 0xfffffff);
+		record._y = (int) (key & 0xfffffff);
+		record._timestamp = inTimestamp;
+		record._length = inData.length;
+		record._position = _endPosition + HEADER_SIZE;
+		_endPosition = record._position + record._length;
+		addDeadRecord(_index.put(key, record));
+		// Reclaim the space of replaced tiles once they take up half the file
+		if (_deadBytes >= MIN_DEAD_BYTES_TO_COMPACT && _deadBytes * 2 > _endPosition) {
+			rewriteFile();
+		}
+		return true;
+	}
+
+	/**
+	 * Count the space taken by a record which has been replaced
+	 * @param inRecord replaced record, or null if there wasn't one
+	 */
+	private void addDeadRecord(TileRecord inRecord)
+	{
+		if (inRecord != null) {
+			_deadBytes += HEADER_SIZE + inRecord._length;
+		}
+	}
+
+	/**
+	 * @return array of records of all the tiles in the pack
+	 */
+	public synchronized TileRecord[] getRecords()
+	{
+		return _index.values().toArray(new TileRecord[0]);
+	}
+
+	/**
+	 * @return number of tiles in the pack
+	 */
+	public synchronized int getNumTiles()
+	{
+		return _index.size();
+	}
+
+	/**
+	 * Delete all tiles older than the given age, by copying the remaining tiles
+	 * into a new file which then replaces the old one
+	 * @param inMaxDays age limit in days, or -1 to delete all tiles
+	 * @return number of tiles deleted, or 0 if the file couldn't be replaced
+	 */
+	public synchronized int deleteTiles(int inMaxDays)
+	{
+		final long now = System.currentTimeMillis();
+		int numDeleted = 0;
+		Iterator<Map.Entry<Long, TileRecord>> it = _index.entrySet().iterator();
+		while (it.hasNext())
+		{
+			TileRecord record = it.next().getValue();
+			final long tileAge = (now - record._timestamp) / 1000 / 60 / 60 / 24;
+			if (inMaxDays < 0 || tileAge > inMaxDays)
+			{
+				it.remove();
+				numDeleted++;
+			}
+		}
+		if (numDeleted == 0) {return 0;}
+		return rewriteFile() ? numDeleted : 0;
+	}
+
+	/**
+	 * Copy the tiles in the index into a new file which then replaces the old one.
+	 * The old file is only replaced once the new one is complete, so if anything
+	 * fails then the old file is kept and its index read again.
+	 * @return true if the file was replaced
+	 */
+	private boolean rewriteFile()
+	{
+		File tempFile = new File(_file.getAbsolutePath() + ".temp");
+		FileChannel tempChannel = null;
+		try
+		{
+			tempChannel = new RandomAccessFile(tempFile, "rw").getChannel();
+			tempChannel.truncate(0L);
+			// Copy the header and each remaining record including its record header
+			_channel.transferTo(0L, 4L, tempChannel);
+			long position = 4L;
+			for (TileRecord record : _index.values())
+			{
+				final long recordStart = record._position - HEADER_SIZE;
+				final long recordLength = HEADER_SIZE + record._length;
+				long numCopied = 0L;
+				while (numCopied < recordLength) {
+					numCopied += _channel.transferTo(recordStart + numCopied, recordLength - numCopied, tempChannel);
+				}
+				position += recordLength;
+			}
+			tempChannel.force(true);
+			tempChannel.close();
+			_channel.close();
+			try {
+				Files.move(tempFile.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			// Only now that the new file is in place, update the positions of the records
+			position = 4L;
+			for (TileRecord record : _index.values())
+			{
+				record._position = position + HEADER_SIZE;
+				position += HEADER_SIZE + record._length;
+			}
+			_channel = new RandomAccessFile(_file, "rw").getChannel();
+			_endPosition = position;
+			_deadBytes = 0L;
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("TilePack: " + e.getClass().getName() + " - " + e.getMessage());
+			try {tempChannel.close();} catch (Exception e2) {} // ignore
+			tempFile.delete();
+			// Reopen the original file, which hasn't been replaced
+			try
+			{
+				_index.clear();
+				_deadBytes = 0L;
+				if (!_channel.isOpen()) {
+					_channel = new RandomAccessFile(_file, "rw").getChannel();
+				}
+				readIndex();
+			}
+			catch (IOException e2) {
+				System.err.println("TilePack: " + e2.getClass().getName() + " - " + e2.getMessage());
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Close the pack and forget it
+	 * @param inDelete true to delete the file as well
+	 */
+	public void close(boolean inDelete)
+	{
+		synchronized (OPEN_PACKS)
+		{
+			OPEN_PACKS.remove(_file.getAbsolutePath());
+			synchronized (this)
+			{
+				try {_channel.close();} catch (IOException e) {} // ignore
+				if (inDelete) {
+					_file.delete();
+				}
+			}
+		}
+	}
+}
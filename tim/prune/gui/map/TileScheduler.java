@@ -0,0 +1,184 @@
+package tim.prune.gui.map;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Class to schedule the downloading of map tiles using a fixed pool of worker threads.
+ * Waiting requests are started in order of their distance from the centre of the
+ * requesting manager's view, with a limit on the number of connections to each host,
+ * and requests for tiles which are no longer wanted are dropped without being fetched.
+ */
+public abstract class TileScheduler
+{
+	/** Queue of waiting requests */
+	private static final ArrayList<TileRequest> WAITING_REQUESTS = new ArrayList<TileRequest>();
+	/** Urls of all waiting and running requests, to avoid requesting them twice */
+	private static final HashSet<String> ACTIVE_URLS = new HashSet<String>();
+	/** Number of running requests for each host */
+	private static final HashMap<String, Integer> HOST_CONNECTIONS = new HashMap<String, Integer>();
+	/** Lock object for all the above */
+	private static final Object LOCK = new Object();
+	/** Number of worker threads started so far */
+	private static int _numWorkers = 0;
+
+	/** Maximum number of worker threads */
+	private static final int MAX_WORKERS = 4;
+	/** Maximum number of simultaneous connections to each host */
+	private static final int MAX_CONNECTIONS_PER_HOST = 2;
+
+
+	/**
+	 * Request for a single tile
+	 */
+	private static class TileRequest
+	{
+		/** Manager which asked for the tile */
+		MapTileManager _manager = null;
+		/** Url to fetch */
+		String _url = null;
+		/** Host name of url */
+		String _host = null;
+		/** Zoom level and coordinates of tile */
+		int _zoom = 0, _x = 0, _y = 0;
+		/** Task to do the actual fetching */
+		Runnable _task = null;
+	}
+
+	/**
+	 * Worker thread which takes requests off the queue and runs them
+	 */
+	private static class Worker implements Runnable
+	{
+		/** Run method, loops forever */
+		public void run()
+		{
+			while (true)
+			{
+				TileRequest request = takeNextRequest();
+				try {
+					request._task.run();
+				}
+				catch (RuntimeException e) {
+					System.err.println("Tile fetch: " + e.getClass().getName() + " - " + e.getMessage());
+				}
+				finishRequest(request);
+			}
+		}
+	}
+
+
+	/**
+	 * Add a request for a tile to the queue
+	 * @param inManager manager asking for the tile, used to decide priority
+	 * @param inUrl url to fetch
+	 * @param inZoom zoom level of tile
+	 * @param inX x coordinate of tile
+	 * @param inY y coordinate of tile
+	 * @param inTask task to run to fetch the tile
+	 * @return true if request added, false if the same url was already waiting or running
+	 */
+	public static boolean addRequest(MapTileManager inManager, URL inUrl, int inZoom, int inX, int inY,
+		Runnable inTask)
+	{
+		TileRequest request = new TileRequest();
+		request._manager = inManager;
+		request._url = inUrl.toString();
+		request._host = inUrl.getHost();
+		request._zoom = inZoom;
+		request._x = inX; request._y = inY;
+		request._task = inTask;
+		synchronized (LOCK)
+		{
+			if (!ACTIVE_URLS.add(request._url)) {
+				return false;
+			}
+			WAITING_REQUESTS.add(request);
+			// Start another worker if all the existing ones could be busy
+			if (_numWorkers < MAX_WORKERS && _numWorkers < ACTIVE_URLS.size())
+			{
+				Thread worker = new Thread(new Worker(), "TileScheduler-" + _numWorkers);
+				worker.setDaemon(true);
+				worker.start();
+				_numWorkers++;
+			}
+			LOCK.notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * Wait for the next request which can be started, dropping any which are no longer wanted
+	 * @return request with the highest priority whose host has a free connection
+	 */
+	private static TileRequest takeNextRequest()
+	{
+		synchronized (LOCK)
+		{
+			while (true)
+			{
+				TileRequest bestRequest = null;
+				int bestPriority = Integer.MAX_VALUE;
+				for (int i=WAITING_REQUESTS.size()-1; i>=0; i--)
+				{
+					TileRequest request = WAITING_REQUESTS.get(i);
+					final int priority = request._manager.getRequestPriority(request._zoom, request._x, request._y);
+					if (priority < 0)
+					{
+						// Tile has scrolled out of view or zoom has changed, so cancel it
+						WAITING_REQUESTS.remove(i);
+						ACTIVE_URLS.remove(request._url);
+					}
+					else if (priority <= bestPriority && getNumConnections(request._host) < MAX_CONNECTIONS_PER_HOST)
+					{
+						// Ties go to the earliest request
+						bestRequest = request;
+						bestPriority = priority;
+					}
+				}
+				if (bestRequest != null)
+				{
+					WAITING_REQUESTS.remove(bestRequest);
+					HOST_CONNECTIONS.put(bestRequest._host, getNumConnections(bestRequest._host) + 1);
+					return bestRequest;
+				}
+				try {
+					LOCK.wait();
+				}
+				catch (InterruptedException ie) {}
+			}
+		}
+	}
+
+	/**
+	 * Release the host connection used by a finished request
+	 * @param inRequest request which has finished
+	 */
+	private static void finishRequest(TileRequest inRequest)
+	{
+		synchronized (LOCK)
+		{
+			ACTIVE_URLS.remove(inRequest._url);
+			final int numConnections = getNumConnections(inRequest._host) - 1;
+			if (numConnections > 0) {
+				HOST_CONNECTIONS.put(inRequest._host, numConnections);
+			}
+			else {
+				HOST_CONNECTIONS.remove(inRequest._host);
+			}
+			LOCK.notifyAll();
+		}
+	}
+
+	/**
+	 * @param inHost host name
+	 * @return number of running requests for this host
+	 */
+	private static int getNumConnections(String inHost)
+	{
+		Integer num = HOST_CONNECTIONS.get(inHost);
+		return (num == null ? 0 : num.intValue());
+	}
+}
@@ -0,0 +1,693 @@
+package tim.prune.gui.map;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tim.prune.data.DataPoint;
+import tim.prune.data.Track;
+import tim.prune.gui.colour.PointColourer;
+
+/**
+ * Class to draw the track lines and points onto the map canvas using
+ * a cache of rendered tiles, each one covering a single map tile at one zoom level.
+ * For each zoom level the track is simplified first, removing points which
+ * wouldn't be distinguishable at that scale, so new tiles can be drawn quickly
+ * and panning the map only needs the newly exposed tiles to be drawn.
+ * Waypoints, media, selections and deletion markers are not held in the tiles.
+ */
+public class TrackTileCache
+{
+	/** Track to draw */
+	private Track _track = null;
+	/** Simplified track for each zoom level, null if not calculated yet */
+	private TrackLevel[] _levels = new TrackLevel[MapPosition.MAX_ZOOM + 1];
+	/** Rendered tiles, in order of access */
+	private LinkedHashMap<Long, TrackTile> _tiles = null;
+	/** Indices of waypoints and media points, null if not calculated yet */
+	private int[] _waypointIndices = null, _mediaIndices = null;
+	/** Indices of track points marked for deletion, and of the track points before them (or -1) */
+	private int[] _deletedIndices = null, _deletedPrevIndices = null;
+
+	/** Settings used for drawing */
+	private boolean _drawLines = true, _drawPoints = true, _drawArrows = true;
+	private int _lineWidth = 2;
+	private boolean _antialias = false;
+	private Color _pointColour = null;
+	private PointColourer _colourer = null;
+
+	/** Width and height of each tile in pixels */
+	private static final int TILE_SIZE = 256;
+	/** Maximum number of tiles to keep */
+	private static final int MAX_TILES = 128;
+	/** Maximum distance in pixels between the simplified line and the dropped points */
+	private static final double TOLERANCE_PIXELS = 0.5;
+	/** Minimum separation of points to draw an arrow between them, squared */
+	private static final int POINT_SEPARATION_FOR_ARROWS_SQD = 350;
+	/** Minimum separation of points in either direction to consider an arrow */
+	private static final int POINT_SEPARATION_1D_FOR_ARROWS = (int) (Math.sqrt(POINT_SEPARATION_FOR_ARROWS_SQD) * 0.7);
+	/** Maximum number of tiles a line can cover before it's checked for every tile instead */
+	private static final int MAX_TILES_PER_LINE = 16;
+
+
+	/**
+	 * Simplified version of the track at a single zoom level
+	 */
+	private static class TrackLevel
+	{
+		/** Number of points kept */
+		int _numPoints = 0;
+		/** Indices of kept points in the track */
+		int[] _indices = null;
+		/** Pixel coordinates of kept points, relative to the top left corner of the world */
+		int[] _xPixels = null, _yPixels = null;
+		/** Flags for kept points which aren't connected to the previous one */
+		BitSet _lineStarts = new BitSet();
+		/** Flags for kept points with an arrow on the line from the previous one */
+		BitSet _arrows = new BitSet();
+		/** Kept points whose rectangle or line from the previous one touches each tile, null if not calculated yet */
+		HashMap<Long, IndexList> _tileBuckets = null;
+		/** Kept points with lines too long to put in the tile buckets */
+		IndexList _longLines = null;
+	}
+
+	/**
+	 * Growable list of point indices, in ascending order
+	 */
+	private static class IndexList
+	{
+		int[] _values = new int[8];
+		int _size = 0;
+
+		void add(int inValue)
+		{
+			if (_size == _values.length) {
+				_values = Arrays.copyOf(_values, _size * 2);
+			}
+			_values[_size++] = inValue;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(_values, _size);
+		}
+	}
+
+	/**
+	 * Rendered tile of the track
+	 */
+	private static class TrackTile
+	{
+		/** Image, or null if nothing is drawn on this tile */
+		BufferedImage _image = null;
+		/** Pixel bounds of the drawn points inside the tile, relative to the top left corner of the world */
+		int _minX = Integer.MAX_VALUE, _minY = Integer.MAX_VALUE;
+		int _maxX = Integer.MIN_VALUE, _maxY = Integer.MIN_VALUE;
+	}
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track to draw
+	 */
+	public TrackTileCache(Track inTrack)
+	{
+		_track = inTrack;
+		_tiles = new LinkedHashMap<Long, TrackTile>(MAX_TILES, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Long, TrackTile> inEldest) {
+				return size() > MAX_TILES;
+			}
+		};
+	}
+
+	/**
+	 * Clear all the simplified levels and tiles, for example when the track has changed
+	 */
+	public void clear()
+	{
+		clearTiles();
+		_waypointIndices = _mediaIndices = null;
+		_deletedIndices = _deletedPrevIndices = null;
+	}
+
+	/**
+	 * Clear the simplified levels and tiles but keep the lists of points
+	 */
+	private void clearTiles()
+	{
+		for (int i=0; i<_levels.length; i++) {
+			_levels[i] = null;
+		}
+		_tiles.clear();
+	}
+
+	/**
+	 * @return indices of all the waypoints in the track
+	 */
+	public int[] getWaypointIndices()
+	{
+		buildPointLists();
+		return _waypointIndices;
+	}
+
+	/**
+	 * @return indices of all the points with photos or audio clips
+	 */
+	public int[] getMediaIndices()
+	{
+		buildPointLists();
+		return _mediaIndices;
+	}
+
+	/**
+	 * @return indices of all the track points marked for deletion
+	 */
+	public int[] getDeletedIndices()
+	{
+		buildPointLists();
+		return _deletedIndices;
+	}
+
+	/**
+	 * @return for each of the deleted track points, the index of the track point
+	 *         before it in the same segment, or -1 if there isn't one
+	 */
+	public int[] getDeletedPrevIndices()
+	{
+		buildPointLists();
+		return _deletedPrevIndices;
+	}
+
+	/**
+	 * Find the waypoints, media points and deleted track points in a single pass
+	 */
+	private void buildPointLists()
+	{
+		if (_waypointIndices != null) {return;}
+		IndexList waypoints = new IndexList(), media = new IndexList();
+		IndexList deleted = new IndexList(), deletedPrevs = new IndexList();
+		int prevTrackPoint = -1;
+		final int numPoints = _track.getNumPoints();
+		for (int i=0; i<numPoints; i++)
+		{
+			DataPoint point = _track.getPoint(i);
+			if (point.hasMedia()) {
+				media.add(i);
+			}
+			if (point.isWaypoint())
+			{
+				waypoints.add(i);
+				continue;
+			}
+			if (point.getDeleteFlag())
+			{
+				deleted.add(i);
+				deletedPrevs.add(point.getSegmentStart() ? -1 : prevTrackPoint);
+			}
+			prevTrackPoint = i;
+		}
+		_mediaIndices = media.toArray();
+		_deletedIndices = deleted.toArray();
+		_deletedPrevIndices = deletedPrevs.toArray();
+		_waypointIndices = waypoints.toArray();
+	}
+
+	/**
+	 * Set the settings for drawing, and clear the cache if any of them have changed
+	 * @param inConnectState state of connect checkbox, 0 for points, lines and arrows,
+	 *        1 for lines only, 2 for points and lines, 3 for points only
+	 * @param inLineWidth line width in pixels
+	 * @param inAntialias true to use antialiasing
+	 * @param inPointColour colour to use for points if there's no colourer
+	 * @param inColourer point colourer, or null
+	 */
+	public void setDrawSettings(int inConnectState, int inLineWidth, boolean inAntialias,
+		Color inPointColour, PointColourer inColourer)
+	{
+		final boolean drawLines = (inConnectState != 3);  // 0, 1 or 2
+		final boolean drawPoints = (inConnectState != 1); // 0, 2 or 3
+		final boolean drawArrows = (inConnectState == 0); // 0
+		if (drawLines != _drawLines || drawPoints != _drawPoints || drawArrows != _drawArrows
+			|| inLineWidth != _lineWidth || inAntialias != _antialias
+			|| !inPointColour.equals(_pointColour) || inColourer != _colourer)
+		{
+			_drawLines = drawLines;
+			_drawPoints = drawPoints;
+			_drawArrows = drawArrows;
+			_lineWidth = inLineWidth;
+			_antialias = inAntialias;
+			_pointColour = inPointColour;
+			_colourer = inColourer;
+			clearTiles();
+		}
+	}
+
+	/**
+	 * Draw the track onto the given graphics object
+	 * @param inG graphics object to draw on
+	 * @param inPosition current map position
+	 * @param inWidth width of window in pixels
+	 * @param inHeight height of window in pixels
+	 * @return true if any points or lines drawn inside the window
+	 */
+	public boolean paintTrack(Graphics inG, MapPosition inPosition, int inWidth, int inHeight)
+	{
+		final int zoom = inPosition.getZoom();
+		final int numWorldTiles = 1 << zoom;
+		// Window position of the top left corner of the world
+		final int originX = inWidth / 2 + inPosition.getXFromCentre(0.0);
+		final int originY = inHeight / 2 + inPosition.getYFromCentre(0.0);
+		final int minTileX = floorDiv(-originX), maxTileX = floorDiv(inWidth - 1 - originX);
+		final int minTileY = Math.max(0, floorDiv(-originY));
+		final int maxTileY = Math.min(numWorldTiles - 1, floorDiv(inHeight - 1 - originY));
+		boolean pointsPainted = false, pointsMaybePainted = false;
+		for (int tileX = minTileX; tileX <= maxTileX; tileX++)
+		{
+			// Wrap the tile around the globe if necessary
+			final int worldTileX = ((tileX % numWorldTiles) + numWorldTiles) % numWorldTiles;
+			final int shiftX = (tileX - worldTileX) * TILE_SIZE;
+			for (int tileY = minTileY; tileY <= maxTileY; tileY++)
+			{
+				TrackTile tile = getTile(zoom, worldTileX, tileY);
+				if (tile._image == null) {continue;}
+				inG.drawImage(tile._image, originX + tileX * TILE_SIZE, originY + tileY * TILE_SIZE, null);
+				if (!pointsPainted && originX + shiftX + tile._maxX >= 0 && originX + shiftX + tile._minX < inWidth
+					&& originY + tile._maxY >= 0 && originY + tile._minY < inHeight)
+				{
+					// Bounds overlap the window, so all the points are visible if the bounds are inside it
+					pointsPainted = originX + shiftX + tile._minX >= 0 && originX + shiftX + tile._maxX < inWidth
+						&& originY + tile._minY >= 0 && originY + tile._maxY < inHeight;
+					pointsMaybePainted = true;
+				}
+			}
+		}
+		if (!pointsPainted && pointsMaybePainted) {
+			pointsPainted = anyPointsInWindow(getLevel(zoom), zoom, originX, originY, inWidth, inHeight);
+		}
+		return pointsPainted;
+	}
+
+	/**
+	 * Check whether any of the points lie inside the window
+	 * @param inLevel simplified track for the current zoom level
+	 * @param inZoom current zoom level
+	 * @param inOriginX window position of the left edge of the world
+	 * @param inOriginY window position of the top edge of the world
+	 * @param inWidth width of window in pixels
+	 * @param inHeight height of window in pixels
+	 * @return true if any point is visible, wrapping longitudes if necessary
+	 */
+	private static boolean anyPointsInWindow(TrackLevel inLevel, int inZoom, int inOriginX, int inOriginY,
+		int inWidth, int inHeight)
+	{
+		final int worldWidth = TILE_SIZE << inZoom;
+		for (int k=0; k<inLevel._numPoints; k++)
+		{
+			final int py = inOriginY + inLevel._yPixels[k];
+			if (py < 0 || py >= inHeight) {continue;}
+			int px = (inOriginX + inLevel._xPixels[k]) % worldWidth;
+			if (px < 0) {px += worldWidth;}
+			if (px < inWidth) {return true;}
+		}
+		return false;
+	}
+
+	/**
+	 * @param inPixels pixel position
+	 * @return index of tile containing this position, rounding down for negative values
+	 */
+	private static int floorDiv(int inPixels)
+	{
+		return (int) Math.floor(inPixels / (double) TILE_SIZE);
+	}
+
+	/**
+	 * Get the specified tile from the cache, or render it if necessary
+	 * @param inZoom zoom level
+	 * @param inTileX x index of tile
+	 * @param inTileY y index of tile
+	 * @return rendered tile
+	 */
+	private TrackTile getTile(int inZoom, int inTileX, int inTileY)
+	{
+		final Long key = Long.valueOf(((long) inZoom << 48) | ((long) inTileX << 24) | inTileY);
+		TrackTile tile = _tiles.get(key);
+		if (tile == null)
+		{
+			tile = renderTile(getLevel(inZoom), inTileX * TILE_SIZE, inTileY * TILE_SIZE);
+			_tiles.put(key, tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * @param inZoom zoom level
+	 * @return simplified track for this zoom level
+	 */
+	private TrackLevel getLevel(int inZoom)
+	{
+		if (_levels[inZoom] == null) {
+			_levels[inZoom] = buildLevel(inZoom);
+		}
+		return _levels[inZoom];
+	}
+
+	/**
+	 * Simplify the track for the given zoom level, keeping only the track points
+	 * which make a visible difference at that scale
+	 * @param inZoom zoom level
+	 * @return simplified track
+	 */
+	private TrackLevel buildLevel(int inZoom)
+	{
+		final int numPoints = _track.getNumPoints();
+		final int zoomFactor = 1 << inZoom;
+		int[] indices = new int[numPoints];
+		int[] xPixels = new int[numPoints], yPixels = new int[numPoints];
+		Color[] colours = new Color[numPoints];
+		BitSet lineStarts = new BitSet();
+		int numKept = 0;
+		// First pass, drop track points which fall on the same pixel as the previous one
+		for (int i=0; i<numPoints; i++)
+		{
+			DataPoint point = _track.getPoint(i);
+			if (point.isWaypoint()) {continue;}
+			// Same conversion as MapPosition uses, so pixels match the waypoints and selection
+			final int px = (int) (_track.getX(i) * TILE_SIZE * zoomFactor);
+			final int py = (int) (_track.getY(i) * TILE_SIZE * zoomFactor);
+			final Color colour = (_colourer == null ? _pointColour : _colourer.getColour(i));
+			final boolean lineStart = (numKept == 0 || point.getSegmentStart());
+			if (!lineStart && px == xPixels[numKept-1] && py == yPixels[numKept-1]
+				&& colour.equals(colours[numKept-1]))
+			{
+				continue;
+			}
+			indices[numKept] = i;
+			xPixels[numKept] = px;
+			yPixels[numKept] = py;
+			colours[numKept] = colour;
+			lineStarts.set(numKept, lineStart);
+			numKept++;
+		}
+
+		// Second pass, simplify the lines if the points themselves aren't drawn
+		if (_drawLines && !_drawPoints && numKept > 2)
+		{
+			boolean[] keepFlags = new boolean[numKept];
+			// Keep the ends of each line, and points where the colour changes
+			for (int k=0; k<numKept; k++)
+			{
+				if (lineStarts.get(k) || k == numKept-1 || lineStarts.get(k+1)
+					|| (!lineStarts.get(k) && !colours[k].equals(colours[k-1])))
+				{
+					keepFlags[k] = true;
+					if (k > 0) {keepFlags[k-1] = true;}
+				}
+			}
+			int startIndex = 0;
+			for (int k=1; k<numKept; k++)
+			{
+				if (keepFlags[k])
+				{
+					simplifyLine(xPixels, yPixels, startIndex, k, keepFlags);
+					startIndex = k;
+				}
+			}
+			// Compact the arrays to hold just the kept points
+			int numRemaining = 0;
+			BitSet remainingStarts = new BitSet();
+			for (int k=0; k<numKept; k++)
+			{
+				if (keepFlags[k])
+				{
+					indices[numRemaining] = indices[k];
+					xPixels[numRemaining] = xPixels[k];
+					yPixels[numRemaining] = yPixels[k];
+					remainingStarts.set(numRemaining, lineStarts.get(k));
+					numRemaining++;
+				}
+			}
+			numKept = numRemaining;
+			lineStarts = remainingStarts;
+		}
+
+		TrackLevel level = new TrackLevel();
+		level._numPoints = numKept;
+		level._indices = Arrays.copyOf(indices, numKept);
+		level._xPixels = Arrays.copyOf(xPixels, numKept);
+		level._yPixels = Arrays.copyOf(yPixels, numKept);
+		level._lineStarts = lineStarts;
+		// Decide where the arrows go, avoiding arrows on adjacent lines
+		if (_drawArrows)
+		{
+			boolean drawnLastArrow = false;
+			for (int k=1; k<numKept; k++)
+			{
+				if (lineStarts.get(k)) {continue;}
+				final int dx = xPixels[k] - xPixels[k-1], dy = yPixels[k] - yPixels[k-1];
+				if (!drawnLastArrow
+					&& (Math.abs(dx) > POINT_SEPARATION_1D_FOR_ARROWS || Math.abs(dy) > POINT_SEPARATION_1D_FOR_ARROWS))
+				{
+					if ((double) dx * dx + (double) dy * dy > POINT_SEPARATION_FOR_ARROWS_SQD)
+					{
+						level._arrows.set(k);
+						drawnLastArrow = true;
+					}
+				}
+				else {
+					drawnLastArrow = false;
+				}
+			}
+		}
+		return level;
+	}
+
+	/**
+	 * Simplify a line using the Douglas-Peucker algorithm, with an explicit stack
+	 * instead of recursion so that long lines can't overflow the call stack
+	 * @param inXPixels x coordinates of points
+	 * @param inYPixels y coordinates of points
+	 * @param inStart index of start of line
+	 * @param inEnd index of end of line
+	 * @param inKeepFlags flags to set for the points to keep
+	 */
+	private static void simplifyLine(int[] inXPixels, int[] inYPixels, int inStart, int inEnd,
+		boolean[] inKeepFlags)
+	{
+		if (inEnd - inStart < 2) {return;}
+		int[] stack = new int[2 * (inEnd - inStart + 1)];
+		int stackSize = 0;
+		stack[stackSize++] = inStart;
+		stack[stackSize++] = inEnd;
+		while (stackSize > 0)
+		{
+			final int end = stack[--stackSize];
+			final int start = stack[--stackSize];
+			if (end - start < 2) {continue;}
+			final double ax = inXPixels[start], ay = inYPixels[start];
+			final double abx = inXPixels[end] - ax, aby = inYPixels[end] - ay;
+			final double dist2AB = abx * abx + aby * aby;
+			double maxDist = -1.0;
+			int furthestIndex = -1;
+			for (int i=start+1; i<end; i++)
+			{
+				final double acx = inXPixels[i] - ax, acy = inYPixels[i] - ay;
+				// Distance from point to the line segment between start and end
+				final double distAP = (dist2AB > 0.0 ? (abx * acx + aby * acy) / dist2AB : 0.0);
+				final double dist;
+				if (distAP <= 0.0) {
+					dist = Math.sqrt(acx * acx + acy * acy);
+				}
+				else if (distAP >= 1.0) {
+					final double bcx = acx - abx, bcy = acy - aby;
+					dist = Math.sqrt(bcx * bcx + bcy * bcy);
+				}
+				else {
+					dist = Math.abs(abx * acy - aby * acx) / Math.sqrt(dist2AB);
+				}
+				if (dist > maxDist)
+				{
+					maxDist = dist;
+					furthestIndex = i;
+				}
+			}
+			if (maxDist > TOLERANCE_PIXELS)
+			{
+				inKeepFlags[furthestIndex] = true;
+				stack[stackSize++] = start;
+				stack[stackSize++] = furthestIndex;
+				stack[stackSize++] = furthestIndex;
+				stack[stackSize++] = end;
+			}
+		}
+	}
+
+	/**
+	 * Render the simplified track onto a single tile
+	 * @param inLevel simplified track for the tile's zoom level
+	 * @param inLeft pixel position of left edge of tile
+	 * @param inTop pixel position of top edge of tile
+	 * @return rendered tile
+	 */
+	private TrackTile renderTile(TrackLevel inLevel, int inLeft, int inTop)
+	{
+		TrackTile tile = new TrackTile();
+		// Allow for point rectangles, arrows and line widths which overlap the edges
+		final int margin = 10 + _lineWidth;
+		final int minX = inLeft - margin, maxX = inLeft + TILE_SIZE + margin;
+		final int minY = inTop - margin, maxY = inTop + TILE_SIZE + margin;
+		final int[] xPixels = inLevel._xPixels, yPixels = inLevel._yPixels;
+		if (inLevel._tileBuckets == null) {
+			bucketPoints(inLevel, margin);
+		}
+		// Merge the points from this tile's bucket with the long lines, keeping the track order
+		final IndexList bucket = inLevel._tileBuckets.get(getBucketKey(inLeft / TILE_SIZE, inTop / TILE_SIZE));
+		final int[] bucketValues = (bucket == null ? null : bucket._values);
+		final int bucketSize = (bucket == null ? 0 : bucket._size);
+		final int[] longValues = inLevel._longLines._values;
+		final int longSize = inLevel._longLines._size;
+		int bucketPos = 0, longPos = 0;
+		Graphics2D g = null;
+		while (bucketPos < bucketSize || longPos < longSize)
+		{
+			final int k;
+			if (longPos >= longSize || (bucketPos < bucketSize && bucketValues[bucketPos] < longValues[longPos])) {
+				k = bucketValues[bucketPos++];
+			}
+			else {
+				k = longValues[longPos++];
+			}
+			final int px = xPixels[k], py = yPixels[k];
+			final boolean connected = _drawLines && !inLevel._lineStarts.get(k);
+			final int prevX = connected ? xPixels[k-1] : px, prevY = connected ? yPixels[k-1] : py;
+			// Skip if neither the point nor the line to it touch this tile
+			if (Math.max(px, prevX) < minX || Math.min(px, prevX) > maxX
+				|| Math.max(py, prevY) < minY || Math.min(py, prevY) > maxY)
+			{
+				continue;
+			}
+			final boolean pointInTile = px >= minX && px <= maxX && py >= minY && py <= maxY;
+			if (!connected && !(_drawPoints && pointInTile)) {continue;}
+			if (g == null)
+			{
+				tile._image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+				g = tile._image.createGraphics();
+				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					_antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+				g.setStroke(new BasicStroke(_lineWidth));
+				g.translate(-inLeft, -inTop);
+			}
+			g.setColor(_colourer == null ? _pointColour : _colourer.getColour(inLevel._indices[k]));
+			if (_drawPoints && pointInTile) {
+				g.drawRect(px-2, py-2, 3, 3);
+			}
+			if (connected)
+			{
+				g.drawLine(prevX, prevY, px, py);
+				if (inLevel._arrows.get(k)) {
+					drawArrow(g, prevX, prevY, px, py);
+				}
+				addToBounds(tile, prevX, prevY, inLeft, inTop);
+			}
+			addToBounds(tile, px, py, inLeft, inTop);
+		}
+		if (g != null) {
+			g.dispose();
+		}
+		return tile;
+	}
+
+	/**
+	 * Sort the points of the given level into buckets for each tile they might be drawn on
+	 * @param inLevel simplified track
+	 * @param inMargin margin in pixels around each tile
+	 */
+	private void bucketPoints(TrackLevel inLevel, int inMargin)
+	{
+		HashMap<Long, IndexList> buckets = new HashMap<Long, IndexList>();
+		IndexList longLines = new IndexList();
+		final int[] xPixels = inLevel._xPixels, yPixels = inLevel._yPixels;
+		for (int k=0; k<inLevel._numPoints; k++)
+		{
+			final int px = xPixels[k], py = yPixels[k];
+			final boolean connected = _drawLines && !inLevel._lineStarts.get(k);
+			final int prevX = connected ? xPixels[k-1] : px, prevY = connected ? yPixels[k-1] : py;
+			final int minTileX = Math.floorDiv(Math.min(px, prevX) - inMargin, TILE_SIZE);
+			final int maxTileX = Math.floorDiv(Math.max(px, prevX) + inMargin, TILE_SIZE);
+			final int minTileY = Math.floorDiv(Math.min(py, prevY) - inMargin, TILE_SIZE);
+			final int maxTileY = Math.floorDiv(Math.max(py, prevY) + inMargin, TILE_SIZE);
+			if ((long) (maxTileX - minTileX + 1) * (maxTileY - minTileY + 1) > MAX_TILES_PER_LINE)
+			{
+				longLines.add(k);
+				continue;
+			}
+			for (int tileX = minTileX; tileX <= maxTileX; tileX++)
+			{
+				for (int tileY = minTileY; tileY <= maxTileY; tileY++)
+				{
+					buckets.computeIfAbsent(getBucketKey(tileX, tileY), key -> new IndexList()).add(k);
+				}
+			}
+		}
+		inLevel._tileBuckets = buckets;
+		inLevel._longLines = longLines;
+	}
+
+	/**
+	 * @param inTileX x index of tile
+	 * @param inTileY y index of tile
+	 * @return key for the bucket of this tile
+	 */
+	private static Long getBucketKey(int inTileX, int inTileY)
+	{
+		return Long.valueOf(((long) inTileX << 32) | (inTileY & 0xffffffffL));
+	}
+
+	/**
+	 * Extend the bounds of the given tile to include the given point, if it's inside the tile
+	 * @param inTile tile
+	 * @param inX x pixel position
+	 * @param inY y pixel position
+	 * @param inLeft pixel position of left edge of tile
+	 * @param inTop pixel position of top edge of tile
+	 */
+	private static void addToBounds(TrackTile inTile, int inX, int inY, int inLeft, int inTop)
+	{
+		if (inX < inLeft || inX >= inLeft + TILE_SIZE || inY < inTop || inY >= inTop + TILE_SIZE) {
+			return;
+		}
+		inTile._minX = Math.min(inTile._minX, inX);
+		inTile._maxX = Math.max(inTile._maxX, inX);
+		inTile._minY = Math.min(inTile._minY, inY);
+		inTile._maxY = Math.max(inTile._maxY, inY);
+	}
+
+	/**
+	 * Draw an arrow at the midpoint of the given line
+	 * @param inG graphics object
+	 * @param inPrevX x coordinate of start of line
+	 * @param inPrevY y coordinate of start of line
+	 * @param inX x coordinate of end of line
+	 * @param inY y coordinate of end of line
+	 */
+	private static void drawArrow(Graphics inG, int inPrevX, int inPrevY, int inX, int inY)
+	{
+		final double midX = (inPrevX + inX) / 2;
+		final double midY = (inPrevY + inY) / 2;
+		final double alpha = Math.atan2(inY - inPrevY, inX - inPrevX);
+		final double MID_TO_VERTEX = 3.0;
+		final double arrowX = MID_TO_VERTEX * Math.cos(alpha);
+		final double arrowY = MID_TO_VERTEX * Math.sin(alpha);
+		final double vertexX = midX + arrowX;
+		final double vertexY = midY + arrowY;
+		inG.drawLine((int)(midX-arrowX-2*arrowY), (int)(midY-arrowY+2*arrowX), (int)vertexX, (int)vertexY);
+		inG.drawLine((int)(midX-arrowX+2*arrowY), (int)(midY-arrowY-2*arrowX), (int)vertexX, (int)vertexY);
+	}
+}
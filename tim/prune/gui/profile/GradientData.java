@@ -1,7 +1,7 @@
 package tim.prune.gui.profile;
 
 import tim.prune.I18nManager;
-import tim.prune.data.GradientCalculator;
+import tim.prune.data.DerivedSeries;
 import tim.prune.data.SpeedValue;
 import tim.prune.data.Track;
 import tim.prune.data.UnitSet;
@@ -32,10 +32,11 @@ public class GradientData extends ProfileData
 		SpeedValue speed = new SpeedValue();
 		if (_track != null)
 		{
+			DerivedSeries series = _track.getDerivedSeries();
 			for (int i=0; i<_track.getNumPoints(); i++)
 			{
 				// Get the gradient either from the speed values or from the distances and altitudes
-				GradientCalculator.calculateGradient(_track, i, speed);
+				series.getGradient(i, speed);
 				if (speed.isValid())
 				{
 					double speedValue = speed.getValue();
@@ -0,0 +1,139 @@
+package tim.prune.gui.profile;
+
+/**
+ * Minimum and maximum values over blocks of consecutive points, at several levels,
+ * so that the range of values over any span of points can be found
+ * without looking at every point in the span.
+ * The point values themselves aren't held here, they're passed in each time.
+ */
+public class MinMaxPyramid
+{
+	/** Number of points covered */
+	private int _numPoints = 0;
+	/** Minimum and maximum of each block, by level, starting with the smallest blocks */
+	private double[][] _mins = null, _maxes = null;
+
+	/** Number of blocks or points combined into each block of the next level */
+	private static final int BLOCK_SIZE = 8;
+
+
+	/**
+	 * Constructor
+	 * @param inValues value of each point
+	 * @param inHasData flag for each point whether it has a value
+	 */
+	public MinMaxPyramid(double[] inValues, boolean[] inHasData)
+	{
+		_numPoints = inHasData.length;
+		int numLevels = 0;
+		for (long size=BLOCK_SIZE; size < _numPoints * (long) BLOCK_SIZE; size *= BLOCK_SIZE) {
+			numLevels++;
+		}
+		_mins = new double[numLevels][];
+		_maxes = new double[numLevels][];
+		int blockSize = 1;
+		for (int level=0; level<numLevels; level++)
+		{
+			blockSize *= BLOCK_SIZE;
+			final int numBlocks = (_numPoints + blockSize - 1) / blockSize;
+			_mins[level] = new double[numBlocks];
+			_maxes[level] = new double[numBlocks];
+		}
+		if (_numPoints > 0) {
+			update(inValues, inHasData, 0, _numPoints - 1);
+		}
+	}
+
+	/**
+	 * @return number of points covered
+	 */
+	public int getNumPoints()
+	{
+		return _numPoints;
+	}
+
+	/**
+	 * Recalculate the blocks containing the given range of points
+	 * @param inValues value of each point
+	 * @param inHasData flag for each point whether it has a value
+	 * @param inStart index of first changed point
+	 * @param inEnd index of last changed point
+	 */
+	public void update(double[] inValues, boolean[] inHasData, int inStart, int inEnd)
+	{
+		int firstBlock = inStart / BLOCK_SIZE, lastBlock = inEnd / BLOCK_SIZE;
+		for (int level=0; level<_mins.length; level++)
+		{
+			final double[] mins = _mins[level], maxes = _maxes[level];
+			for (int b=firstBlock; b<=lastBlock; b++)
+			{
+				double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+				final int childStart = b * BLOCK_SIZE;
+				final int childEnd = Math.min(childStart + BLOCK_SIZE, level == 0 ? _numPoints : _mins[level-1].length);
+				for (int c=childStart; c<childEnd; c++)
+				{
+					if (level == 0)
+					{
+						if (inHasData[c])
+						{
+							min = Math.min(min, inValues[c]);
+							max = Math.max(max, inValues[c]);
+						}
+					}
+					else
+					{
+						min = Math.min(min, _mins[level-1][c]);
+						max = Math.max(max, _maxes[level-1][c]);
+					}
+				}
+				mins[b] = min;
+				maxes[b] = max;
+			}
+			firstBlock /= BLOCK_SIZE;
+			lastBlock /= BLOCK_SIZE;
+		}
+	}
+
+	/**
+	 * Find the minimum and maximum values over a range of points
+	 * @param inValues value of each point
+	 * @param inHasData flag for each point whether it has a value
+	 * @param inStart index of first point
+	 * @param inEnd index of last point
+	 * @param inMinMax array of two in which to put the minimum and maximum
+	 * @return true if any of the points in the range has a value
+	 */
+	public boolean getRange(double[] inValues, boolean[] inHasData, int inStart, int inEnd, double[] inMinMax)
+	{
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		int i = inStart;
+		while (i <= inEnd)
+		{
+			// Use the biggest block which starts here and fits in the range
+			int level = -1, blockSize = 1;
+			while (level + 1 < _mins.length && i % (blockSize * BLOCK_SIZE) == 0
+				&& i + blockSize * BLOCK_SIZE - 1 <= inEnd)
+			{
+				blockSize *= BLOCK_SIZE;
+				level++;
+			}
+			if (level < 0)
+			{
+				if (inHasData[i])
+				{
+					min = Math.min(min, inValues[i]);
+					max = Math.max(max, inValues[i]);
+				}
+			}
+			else
+			{
+				min = Math.min(min, _mins[level][i / blockSize]);
+				max = Math.max(max, _maxes[level][i / blockSize]);
+			}
+			i += blockSize;
+		}
+		inMinMax[0] = min;
+		inMinMax[1] = max;
+		return min <= max;
+	}
+}
@@ -5,6 +5,7 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -153,6 +154,12 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 	private JPopupMenu _popup = null;
 	/** Parameters last time chart was drawn */
 	private ChartParameters _previousParameters = new ChartParameters();
+	/** Minimum and maximum value of each pixel column, kept for partial repaints */
+	private double[] _columnMins = null, _columnMaxes = null;
+	/** Flags for each pixel column whether any of its points has data */
+	private boolean[] _columnHasData = null;
+	/** Scale factor used to calculate the column values */
+	private double _columnScaleFactor = 0.0;
 
 	/** Possible scales to use */
 	private static final int[] LINE_SCALES = {10000, 5000, 2000, 1000, 500, 200, 100, 50, 10, 5, 2, 1};
@@ -270,34 +277,27 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 
 		try
 		{
-			// loop through points
-			g.setColor(barColour);
-			for (int p = 0; p < numPoints; p++)
+			if (_xScaleFactor < 1.0)
 			{
-				if (p == selectionStart)
-					g.setColor(rangeColour);
-				else if (p == (selectionEnd+1))
-					g.setColor(barColour);
-
-				final int x = (int) (_xScaleFactor * p) + 1;
-				if (_data.hasData(p))
+				// More points than pixels, so draw each column from the range of its values
+				paintColumns(g, minValue, yScaleFactor, zeroY, selectionStart, selectionEnd, barColour, rangeColour);
+			}
+			else
+			{
+				// loop through points
+				g.setColor(barColour);
+				for (int p = 0; p < numPoints; p++)
 				{
-					value = _data.getData(p);
-					// Normal case is the minimum value greater than zero
-					if (minValue >= 0)
+					if (p == selectionStart)
+						g.setColor(rangeColour);
+					else if (p == (selectionEnd+1))
+						g.setColor(barColour);
+
+					final int x = (int) (_xScaleFactor * p) + 1;
+					if (_data.hasData(p))
 					{
-						y = (int) (yScaleFactor * (value - minValue));
-						g.fillRect(BORDER_WIDTH+x, height-BORDER_WIDTH - y, barWidth, y);
-					}
-					else if (value >= 0.0) {
-						// Bar upwards from the zero line
-						y = height-BORDER_WIDTH - (int) (yScaleFactor * (value - minValue));
-						g.fillRect(BORDER_WIDTH+x, y, barWidth, zeroY - y);
-					}
-					else {
-						// Bar downwards from the zero line
-						int barHeight = (int) (yScaleFactor * value);
-						g.fillRect(BORDER_WIDTH+x, zeroY, barWidth, -barHeight);
+						value = _data.getData(p);
+						paintBar(g, x, barWidth, value, value, minValue, yScaleFactor, zeroY);
 					}
 				}
 			}
@@ -343,6 +343,153 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 	}
 
 
+	/**
+	 * Paint the bars for the points when there are more points than pixel columns,
+	 * by drawing each column with the range of values of its points
+	 * @param inG graphics object
+	 * @param inMinValue minimum value of chart
+	 * @param inYScaleFactor scale factor in y direction
+	 * @param inZeroY y coordinate of the zero line
+	 * @param inSelectionStart start index of selection, or -1
+	 * @param inSelectionEnd end index of selection, or -1
+	 * @param inBarColour colour for unselected points
+	 * @param inRangeColour colour for selected points
+	 */
+	private void paintColumns(Graphics inG, double inMinValue, double inYScaleFactor, int inZeroY,
+		int inSelectionStart, int inSelectionEnd, Color inBarColour, Color inRangeColour)
+	{
+		final int numPoints = _track.getNumPoints();
+		final int numColumns = (int) (_xScaleFactor * (numPoints - 1)) + 1;
+		if (_columnMins == null || _columnMins.length != numColumns || _columnScaleFactor != _xScaleFactor) {
+			calculateColumns(numPoints, numColumns);
+		}
+		// Only draw the columns inside the area being repainted
+		int firstColumn = 0, lastColumn = numColumns - 1;
+		Rectangle clip = inG.getClipBounds();
+		if (clip != null)
+		{
+			firstColumn = Math.max(firstColumn, clip.x - BORDER_WIDTH - 1);
+			lastColumn = Math.min(lastColumn, clip.x + clip.width - BORDER_WIDTH - 1);
+		}
+		double[] minMax = new double[2];
+		int columnStart = getFirstPointInColumn(firstColumn);
+		for (int c = firstColumn; c <= lastColumn; c++)
+		{
+			final int columnEnd = (c == numColumns - 1 ? numPoints : getFirstPointInColumn(c + 1)) - 1;
+			final int x = c + 1;
+			if (columnEnd < inSelectionStart || columnStart > inSelectionEnd)
+			{
+				// Whole column is outside the selection
+				if (_columnHasData[c])
+				{
+					inG.setColor(inBarColour);
+					paintBar(inG, x, 1, _columnMins[c], _columnMaxes[c], inMinValue, inYScaleFactor, inZeroY);
+				}
+			}
+			else if (columnStart >= inSelectionStart && columnEnd <= inSelectionEnd)
+			{
+				// Whole column is inside the selection
+				if (_columnHasData[c])
+				{
+					inG.setColor(inRangeColour);
+					paintBar(inG, x, 1, _columnMins[c], _columnMaxes[c], inMinValue, inYScaleFactor, inZeroY);
+				}
+			}
+			else
+			{
+				// Column contains an edge of the selection, so draw the parts in order
+				if (columnStart < inSelectionStart && _data.getRange(columnStart, inSelectionStart - 1, minMax))
+				{
+					inG.setColor(inBarColour);
+					paintBar(inG, x, 1, minMax[0], minMax[1], inMinValue, inYScaleFactor, inZeroY);
+				}
+				if (_data.getRange(Math.max(columnStart, inSelectionStart), Math.min(columnEnd, inSelectionEnd), minMax))
+				{
+					inG.setColor(inRangeColour);
+					paintBar(inG, x, 1, minMax[0], minMax[1], inMinValue, inYScaleFactor, inZeroY);
+				}
+				if (columnEnd > inSelectionEnd && _data.getRange(inSelectionEnd + 1, columnEnd, minMax))
+				{
+					inG.setColor(inBarColour);
+					paintBar(inG, x, 1, minMax[0], minMax[1], inMinValue, inYScaleFactor, inZeroY);
+				}
+			}
+			columnStart = columnEnd + 1;
+		}
+	}
+
+	/**
+	 * Calculate the minimum and maximum value of each pixel column
+	 * @param inNumPoints number of points
+	 * @param inNumColumns number of columns
+	 */
+	private void calculateColumns(int inNumPoints, int inNumColumns)
+	{
+		_columnMins = new double[inNumColumns];
+		_columnMaxes = new double[inNumColumns];
+		_columnHasData = new boolean[inNumColumns];
+		_columnScaleFactor = _xScaleFactor;
+		double[] minMax = new double[2];
+		int columnStart = 0;
+		for (int c = 0; c < inNumColumns; c++)
+		{
+			final int columnEnd = (c == inNumColumns - 1 ? inNumPoints : getFirstPointInColumn(c + 1)) - 1;
+			_columnHasData[c] = _data.getRange(columnStart, columnEnd, minMax);
+			_columnMins[c] = minMax[0];
+			_columnMaxes[c] = minMax[1];
+			columnStart = columnEnd + 1;
+		}
+	}
+
+	/**
+	 * @param inColumn pixel column, starting from zero
+	 * @return index of the first point drawn in this column
+	 */
+	private int getFirstPointInColumn(int inColumn)
+	{
+		int p = (int) Math.ceil(inColumn / _xScaleFactor);
+		// Correct for any rounding errors
+		while (p > 0 && (int) (_xScaleFactor * (p - 1)) >= inColumn) {p--;}
+		while ((int) (_xScaleFactor * p) < inColumn) {p++;}
+		return p;
+	}
+
+	/**
+	 * Paint the bars for a range of values at the given position
+	 * @param inG graphics object
+	 * @param inX x coordinate inside the border
+	 * @param inBarWidth width of bar
+	 * @param inMinValue minimum of the values to draw
+	 * @param inMaxValue maximum of the values to draw
+	 * @param inChartMin minimum value of chart
+	 * @param inYScaleFactor scale factor in y direction
+	 * @param inZeroY y coordinate of the zero line
+	 */
+	private void paintBar(Graphics inG, int inX, int inBarWidth, double inMinValue, double inMaxValue,
+		double inChartMin, double inYScaleFactor, int inZeroY)
+	{
+		final int height = getHeight();
+		// Normal case is the minimum value greater than zero
+		if (inChartMin >= 0)
+		{
+			int y = (int) (inYScaleFactor * (inMaxValue - inChartMin));
+			inG.fillRect(BORDER_WIDTH+inX, height-BORDER_WIDTH - y, inBarWidth, y);
+			return;
+		}
+		if (inMaxValue >= 0.0)
+		{
+			// Bar upwards from the zero line
+			int y = height-BORDER_WIDTH - (int) (inYScaleFactor * (inMaxValue - inChartMin));
+			inG.fillRect(BORDER_WIDTH+inX, y, inBarWidth, inZeroY - y);
+		}
+		if (inMinValue < 0.0)
+		{
+			// Bar downwards from the zero line
+			int barHeight = (int) (inYScaleFactor * inMinValue);
+			inG.fillRect(BORDER_WIDTH+inX, inZeroY, inBarWidth, -barHeight);
+		}
+	}
+
 	/**
 	 * Paint the background for the chart
 	 * @param inG graphics object
@@ -453,6 +600,7 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 		{
 			_data.init(Config.getUnitSet());
 			_previousParameters.clear();
+			_columnMins = null;
 		}
 		// Update the menu if necessary
 		if ((inUpdateType & DATA_ADDED_OR_REMOVED) > 0) {
@@ -555,6 +703,7 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 			}
 		}
 		_data.init(Config.getUnitSet());
+		_columnMins = null;
 		repaint();
 	}
 
@@ -23,6 +23,13 @@ public abstract class ProfileData
 	protected double _minValue = 0.0;
 	/** Maximum value for track */
 	protected double _maxValue = 0.0;
+	/** Pyramid of minimum and maximum values, only created when requested */
+	private MinMaxPyramid _pyramid = null;
+	/** Flag set when the pyramid has been updated for the current values */
+	private boolean _pyramidChecked = false;
+	/** Values which the pyramid was last updated with, to find which have changed */
+	private boolean[] _prevHasData = null;
+	private double[] _prevValues = null;
 
 	/**
 	 * Constructor giving track object
@@ -107,6 +114,69 @@ public abstract class ProfileData
 		{
 			_pointHasData = new boolean[numTrackPoints];
 			_pointValues = new double[numTrackPoints];
+			_prevHasData = null;
+			_prevValues = null;
 		}
+		else if (_pyramid != null && _pyramidChecked)
+		{
+			// Keep the current values so the pyramid can be updated just where they change
+			boolean[] hasData = (_prevHasData == null ? new boolean[numTrackPoints] : _prevHasData);
+			double[] values = (_prevValues == null ? new double[numTrackPoints] : _prevValues);
+			_prevHasData = _pointHasData;
+			_prevValues = _pointValues;
+			_pointHasData = hasData;
+			_pointValues = values;
+		}
+		_pyramidChecked = false;
+	}
+
+	/**
+	 * Get the pyramid of minimum and maximum values, updating it
+	 * for just those points whose values have changed since last time
+	 * @return pyramid, or null if there's no data
+	 */
+	public MinMaxPyramid getPyramid()
+	{
+		if (_pointHasData == null) {return null;}
+		if (_pyramid == null || _pyramid.getNumPoints() != _pointHasData.length
+			|| (!_pyramidChecked && _prevHasData == null))
+		{
+			_pyramid = new MinMaxPyramid(_pointValues, _pointHasData);
+		}
+		else if (!_pyramidChecked)
+		{
+			int first = 0, last = _pointHasData.length - 1;
+			while (first <= last && !hasChanged(first)) {first++;}
+			while (last > first && !hasChanged(last)) {last--;}
+			if (first <= last) {
+				_pyramid.update(_pointValues, _pointHasData, first, last);
+			}
+		}
+		_pyramidChecked = true;
+		return _pyramid;
+	}
+
+	/**
+	 * @param inPointNum index of point
+	 * @return true if the value for this point differs from the one the pyramid was made with
+	 */
+	private boolean hasChanged(int inPointNum)
+	{
+		return _pointHasData[inPointNum] != _prevHasData[inPointNum]
+			|| (_pointHasData[inPointNum] && _pointValues[inPointNum] != _prevValues[inPointNum]);
+	}
+
+	/**
+	 * Find the minimum and maximum values over a range of points
+	 * @param inStart index of first point
+	 * @param inEnd index of last point
+	 * @param inMinMax array of two in which to put the minimum and maximum
+	 * @return true if any of the points in the range has data
+	 */
+	public boolean getRange(int inStart, int inEnd, double[] inMinMax)
+	{
+		MinMaxPyramid pyramid = getPyramid();
+		return _hasData && pyramid != null
+			&& pyramid.getRange(_pointValues, _pointHasData, inStart, inEnd, inMinMax);
 	}
 }
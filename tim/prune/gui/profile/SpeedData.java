@@ -1,7 +1,7 @@
 package tim.prune.gui.profile;
 
 import tim.prune.I18nManager;
-import tim.prune.data.SpeedCalculator;
+import tim.prune.data.DerivedSeries;
 import tim.prune.data.SpeedValue;
 import tim.prune.data.Track;
 import tim.prune.data.UnitSet;
@@ -31,10 +31,11 @@ public class SpeedData extends ProfileData
 		SpeedValue speed = new SpeedValue();
 		if (_track != null)
 		{
+			DerivedSeries series = _track.getDerivedSeries();
 			for (int i=0; i<_track.getNumPoints(); i++)
 			{
 				// Get the speed either from the speed value or from the distances and timestamps
-				SpeedCalculator.calculateSpeed(_track, i, speed);
+				series.getSpeed(i, speed);
 				if (speed.isValid())
 				{
 					double speedValue = speed.getValue();
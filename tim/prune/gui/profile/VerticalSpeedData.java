@@ -1,7 +1,7 @@
 package tim.prune.gui.profile;
 
 import tim.prune.I18nManager;
-import tim.prune.data.SpeedCalculator;
+import tim.prune.data.DerivedSeries;
 import tim.prune.data.SpeedValue;
 import tim.prune.data.Track;
 import tim.prune.data.UnitSet;
@@ -31,9 +31,10 @@ public class VerticalSpeedData extends ProfileData
 		SpeedValue speed = new SpeedValue();
 		if (_track != null)
 		{
+			DerivedSeries series = _track.getDerivedSeries();
 			for (int i=0; i<_track.getNumPoints(); i++)
 			{
-				SpeedCalculator.calculateVerticalSpeed(_track, i, speed);
+				series.getVerticalSpeed(i, speed);
 				// Check whether we got a value from either method
 				if (speed.isValid())
 				{
@@ -0,0 +1,374 @@
+package tim.prune.jpeg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent cache of the exif data read from jpeg files, so that
+ * photos which have been loaded before don't need to be read again.
+ * Entries are keyed by the path of the file, and are only used if
+ * the size and modification time of the file haven't changed.
+ * Thumbnails aren't stored in the cache, only their position in the file.
+ */
+public class ExifCache
+{
+	/** Encoded entries by path, in order of use */
+	private LinkedHashMap<String, byte[]> _entries = null;
+	/** File to store the cache in */
+	private File _file = null;
+	/** Flag set if entries have changed since loading */
+	private boolean _changed = false;
+
+	/** Marker for a file which was read but has no exif data */
+	public static final JpegData NO_EXIF_DATA = new JpegData();
+	/** Single instance */
+	private static ExifCache _instance = null;
+	/** Default file for storing the cache */
+	private static final File DEFAULT_CACHE_FILE = new File(System.getProperty("user.home"), ".pruneexifcache");
+	/** Identifier at start of file, including version */
+	private static final int FILE_MAGIC = 0x47504531; // "GPE1"
+	/** Maximum number of entries to keep */
+	private static final int MAX_ENTRIES = 100000;
+
+
+	/**
+	 * Private constructor, use getInstance
+	 * @param inFile file to load from and save to
+	 */
+	private ExifCache(File inFile)
+	{
+		_file = inFile;
+		_entries = new LinkedHashMap<String, byte[]>(1000, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, byte[]> inEldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+		load();
+	}
+
+	/**
+	 * @return the cache, loaded from file when first requested
+	 */
+	public static synchronized ExifCache getInstance()
+	{
+		if (_instance == null) {
+			_instance = new ExifCache(DEFAULT_CACHE_FILE);
+		}
+		return _instance;
+	}
+
+	/**
+	 * Get the cached data for the given file
+	 * @param inFile jpeg file
+	 * @return data including thumbnail, NO_EXIF_DATA if file has no exif, or null if not cached
+	 */
+	public JpegData getJpegData(File inFile)
+	{
+		final byte[] entry;
+		synchronized (this) {
+			entry = _entries.get(inFile.getAbsolutePath());
+		}
+		if (entry == null) {return null;}
+		try
+		{
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+			if (in.readLong() != inFile.length() || in.readLong() != inFile.lastModified()) {
+				return null; // file has changed
+			}
+			if (!in.readBoolean()) {
+				return NO_EXIF_DATA;
+			}
+			JpegData data = readData(in);
+			final long thumbnailPosition = in.readLong();
+			final int thumbnailLength = in.readInt();
+			if (thumbnailLength > 0)
+			{
+				byte[] thumbnail = readThumbnail(inFile, thumbnailPosition, thumbnailLength);
+				if (thumbnail == null) {return null;}
+				data.setThumbnailImage(thumbnail);
+			}
+			return data;
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Store the data read from the given file
+	 * @param inFile jpeg file
+	 * @param inData data read from file, or null if none
+	 */
+	public void putJpegData(File inFile, JpegData inData)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeLong(inFile.length());
+			out.writeLong(inFile.lastModified());
+			out.writeBoolean(inData != null);
+			if (inData != null)
+			{
+				writeData(inData, out);
+				final byte[] thumbnail = inData.getThumbnailImage();
+				final long thumbnailPosition = inData.getThumbnailPosition();
+				if (thumbnail != null && thumbnailPosition < 0L) {
+					return; // thumbnail couldn't be found again, so don't cache
+				}
+				out.writeLong(thumbnailPosition);
+				out.writeInt(thumbnail == null ? 0 : thumbnail.length);
+			}
+			out.flush();
+		}
+		catch (IOException e) {
+			return; // can't happen with byte array
+		}
+		synchronized (this)
+		{
+			_entries.put(inFile.getAbsolutePath(), bytes.toByteArray());
+			_changed = true;
+		}
+	}
+
+	/**
+	 * Write the fields of the given data to the stream
+	 * @param inData jpeg data
+	 * @param inStream stream to write to
+	 */
+	private static void writeData(JpegData inData, DataOutputStream inStream) throws IOException
+	{
+		inStream.writeBoolean(inData.getExifDataPresent());
+		inStream.writeChar(inData.getLatitudeRef());
+		writeDoubles(inData.getLatitude(), inStream);
+		inStream.writeChar(inData.getLongitudeRef());
+		writeDoubles(inData.getLongitude(), inStream);
+		inStream.writeByte(inData.getAltitudeRef());
+		inStream.writeBoolean(inData.hasAltitude());
+		inStream.writeInt(inData.getAltitude());
+		writeInts(inData.getGpsTimestamp(), inStream);
+		writeInts(inData.getGpsDatestamp(), inStream);
+		writeString(inData.getOriginalTimestamp(), inStream);
+		writeString(inData.getDigitizedTimestamp(), inStream);
+		inStream.writeInt(inData.getOrientationCode());
+		inStream.writeDouble(inData.getBearing());
+	}
+
+	/**
+	 * Read the fields written by writeData
+	 * @param inStream stream to read from
+	 * @return jpeg data without thumbnail
+	 */
+	private static JpegData readData(DataInputStream inStream) throws IOException
+	{
+		JpegData data = new JpegData();
+		if (inStream.readBoolean()) {
+			data.setExifDataPresent();
+		}
+		data.setLatitudeRef(String.valueOf(inStream.readChar()));
+		data.setLatitude(readDoubles(inStream));
+		data.setLongitudeRef(String.valueOf(inStream.readChar()));
+		data.setLongitude(readDoubles(inStream));
+		data.setAltitudeRef(inStream.readByte());
+		final boolean hasAltitude = inStream.readBoolean();
+		final int altitude = inStream.readInt();
+		if (hasAltitude) {
+			data.setAltitude(altitude);
+		}
+		data.setGpsTimestamp(readInts(inStream));
+		data.setGpsDatestamp(readInts(inStream));
+		data.setOriginalTimestamp(readString(inStream));
+		data.setDigitizedTimestamp(readString(inStream));
+		data.setOrientationCode(inStream.readInt());
+		data.setBearing(inStream.readDouble());
+		return data;
+	}
+
+	/** Write an array of doubles, which may be null */
+	private static void writeDoubles(double[] inValues, DataOutputStream inStream) throws IOException
+	{
+		inStream.writeInt(inValues == null ? -1 : inValues.length);
+		if (inValues != null)
+		{
+			for (double value : inValues) {
+				inStream.writeDouble(value);
+			}
+		}
+	}
+
+	/** @return array of doubles written by writeDoubles */
+	private static double[] readDoubles(DataInputStream inStream) throws IOException
+	{
+		final int length = inStream.readInt();
+		if (length < 0) {return null;}
+		double[] values = new double[length];
+		for (int i=0; i<length; i++) {
+			values[i] = inStream.readDouble();
+		}
+		return values;
+	}
+
+	/** Write an array of ints, which may be null */
+	private static void writeInts(int[] inValues, DataOutputStream inStream) throws IOException
+	{
+		inStream.writeInt(inValues == null ? -1 : inValues.length);
+		if (inValues != null)
+		{
+			for (int value : inValues) {
+				inStream.writeInt(value);
+			}
+		}
+	}
+
+	/** @return array of ints written by writeInts */
+	private static int[] readInts(DataInputStream inStream) throws IOException
+	{
+		final int length = inStream.readInt();
+		if (length < 0) {return null;}
+		int[] values = new int[length];
+		for (int i=0; i<length; i++) {
+			values[i] = inStream.readInt();
+		}
+		return values;
+	}
+
+	/** Write a String, which may be null */
+	private static void writeString(String inValue, DataOutputStream inStream) throws IOException
+	{
+		inStream.writeBoolean(inValue != null);
+		if (inValue != null) {
+			inStream.writeUTF(inValue);
+		}
+	}
+
+	/** @return String written by writeString */
+	private static String readString(DataInputStream inStream) throws IOException
+	{
+		return inStream.readBoolean() ? inStream.readUTF() : null;
+	}
+
+	/**
+	 * Read the thumbnail bytes from the given position in the file
+	 * @param inFile jpeg file
+	 * @param inPosition position of thumbnail
+	 * @param inLength length of thumbnail in bytes
+	 * @return thumbnail bytes, or null if they couldn't be read
+	 */
+	private static byte[] readThumbnail(File inFile, long inPosition, int inLength)
+	{
+		RandomAccessFile raf = null;
+		try
+		{
+			raf = new RandomAccessFile(inFile, "r");
+			ByteBuffer buffer = ByteBuffer.allocate(inLength);
+			while (buffer.hasRemaining())
+			{
+				if (raf.getChannel().read(buffer, inPosition + buffer.position()) < 0) {
+					return null;
+				}
+			}
+			return buffer.array();
+		}
+		catch (IOException e) {
+			return null;
+		}
+		finally
+		{
+			try {
+				if (raf != null) raf.close();
+			}
+			catch (IOException e) {} // ignore
+		}
+	}
+
+	/**
+	 * Load the entries from the cache file, if any
+	 */
+	private void load()
+	{
+		if (_file == null || !_file.exists()) {return;}
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file)));
+			if (in.readInt() != FILE_MAGIC) {return;}
+			final int numEntries = in.readInt();
+			for (int i=0; i<numEntries; i++)
+			{
+				final String path = in.readUTF();
+				byte[] entry = new byte[in.readInt()];
+				in.readFully(entry);
+				_entries.put(path, entry);
+			}
+		}
+		catch (IOException e) {
+			System.err.println("ExifCache: " + e.getClass().getName() + " - " + e.getMessage());
+		}
+		finally
+		{
+			try {
+				if (in != null) in.close();
+			}
+			catch (IOException e) {} // ignore
+		}
+	}
+
+	/**
+	 * Save the entries to the cache file, if any have changed.
+	 * They're written to a temporary file first, which then replaces the old cache file,
+	 * so that a crash or another instance can't leave a half-written cache
+	 */
+	public synchronized void save()
+	{
+		if (!_changed || _file == null) {return;}
+		DataOutputStream out = null;
+		File tempFile = null;
+		boolean saved = false;
+		try
+		{
+			tempFile = File.createTempFile(_file.getName(), ".tmp", _file.getAbsoluteFile().getParentFile());
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(_entries.size());
+			for (Map.Entry<String, byte[]> entry : _entries.entrySet())
+			{
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().length);
+				out.write(entry.getValue());
+			}
+			out.close();
+			out = null;
+			saved = true;
+		}
+		catch (IOException e) {
+			System.err.println("ExifCache: " + e.getClass().getName() + " - " + e.getMessage());
+		}
+		finally
+		{
+			try {
+				if (out != null) out.close();
+			}
+			catch (IOException e) {} // ignore
+		}
+		if (tempFile == null) {return;}
+		// Replace the old file, which has to be deleted first on some systems
+		if (saved && (tempFile.renameTo(_file) || (_file.delete() && tempFile.renameTo(_file)))) {
+			_changed = false;
+		}
+		else {
+			tempFile.delete();
+		}
+	}
+}
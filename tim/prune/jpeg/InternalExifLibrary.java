@@ -12,17 +12,23 @@ import tim.prune.jpeg.drew.ExifException;
 public class InternalExifLibrary
 {
 	/**
-	 * Use the _internal_ exif library to get the data from the given file
+	 * Use the _internal_ exif library to get the data from the given file,
+	 * unless the file is unchanged since its data was cached
 	 * @param inFile file to access
 	 * @return Jpeg data if available, otherwise null
 	 */
 	public JpegData getJpegData(File inFile)
 	{
-		JpegData data = null;
+		ExifCache cache = ExifCache.getInstance();
+		JpegData data = cache.getJpegData(inFile);
+		if (data != null) {
+			return (data == ExifCache.NO_EXIF_DATA ? null : data);
+		}
 		try {
 			data = ExifReader.readMetadata(inFile);
 		}
 		catch (ExifException jpe) {} // data remains null
+		cache.putJpegData(inFile, data);
 		return data;
 	}
 }
@@ -21,6 +21,8 @@ public class JpegData
 	private String _digitizedTimestamp = null;
 	private int _orientationCode = -1;
 	private byte[] _thumbnail = null;
+	private long _exifPosition = -1L;
+	private int _thumbnailOffset = -1;
 	private double _bearing = -1.0;
 	private ArrayList<String> _errors = null;
 
@@ -194,6 +196,29 @@ public class JpegData
 		return _thumbnail;
 	}
 
+	/**
+	 * Set the position of the exif segment within the file
+	 * @param inPosition position in bytes
+	 */
+	public void setExifPosition(long inPosition) {
+		_exifPosition = inPosition;
+	}
+
+	/**
+	 * Set the offset of the thumbnail within the exif segment
+	 * @param inOffset offset in bytes
+	 */
+	public void setThumbnailOffset(int inOffset) {
+		_thumbnailOffset = inOffset;
+	}
+
+	/** @return position of thumbnail within the file, or -1 if not known */
+	public long getThumbnailPosition()
+	{
+		if (_exifPosition < 0L || _thumbnailOffset < 0) {return -1L;}
+		return _exifPosition + _thumbnailOffset;
+	}
+
 	/**
 	 * @return rotation required to display photo properly (0 to 3)
 	 */
@@ -1,9 +1,10 @@
 package tim.prune.jpeg.drew;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import tim.prune.jpeg.JpegData;
 
@@ -22,6 +23,9 @@ public class ExifReader
 	/** 6-byte preamble before starting the TIFF data. */
 	private static final String JPEG_EXIF_SEGMENT_PREAMBLE = "Exif\0\0";
 
+	/** Marker of APP1 segment containing the exif data */
+	private static final byte SEGMENT_APP1 = (byte) 0xE1;
+
 	/** Start of segment marker */
 	private static final byte SEGMENT_SOS = (byte) 0xDA;
 
@@ -35,12 +39,12 @@ public class ExifReader
 	public static JpegData readMetadata(File inFile) throws ExifException
 	{
 		JpegData jpegData = new JpegData();
-		BufferedInputStream bStream = null;
+		RandomAccessFile raf = null;
 
 		try
 		{
-			bStream = new BufferedInputStream(new FileInputStream(inFile));
-			byte[] segmentBytes = readSegments(bStream);
+			raf = new RandomAccessFile(inFile, "r");
+			byte[] segmentBytes = readSegments(raf.getChannel(), jpegData);
 			if (segmentBytes != null)
 			{
 				// Got the bytes for the required segment, now extract the data
@@ -52,9 +56,9 @@ public class ExifReader
 		}
 		finally
 		{
-			if (bStream != null) {
+			if (raf != null) {
 				try {
-					bStream.close();
+					raf.close();
 				} catch (IOException ioe) {}
 			}
 		}
@@ -63,33 +67,41 @@ public class ExifReader
 
 	/**
 	 * Reads the relevant segment and returns the bytes.
+	 * Only the segment headers are read until the exif segment is found, other segments are skipped.
+	 * @param inChannel channel to read from
+	 * @param inData jpeg data to receive the position of the segment
 	 */
-	private static byte[] readSegments(final BufferedInputStream bStream)
+	private static byte[] readSegments(final FileChannel inChannel, final JpegData inData)
 		throws ExifException, IOException
 	{
+		ByteBuffer header = ByteBuffer.allocate(2);
 		// first two bytes should be JPEG magic number
-		final int magic1 = bStream.read() & 0xFF;
-		final int magic2 = bStream.read() & 0xFF;
-		if (magic1 != MAGIC_JPEG_BYTE_1 || magic2 != MAGIC_JPEG_BYTE_2) {
+		if (readBytes(inChannel, header, 0L, 2) < 2
+			|| (header.get(0) & 0xFF) != MAGIC_JPEG_BYTE_1 || (header.get(1) & 0xFF) != MAGIC_JPEG_BYTE_2) {
 			throw new ExifException("Jpeg file failed Magic check");
 		}
-
-		final Byte segmentTypeByte = (byte)0xE1; // JpegSegmentType.APP1.byteValue;
+		long position = 2L;
 
 		do {
 			// Find the segment marker. Markers are zero or more 0xFF bytes, followed
 			// by a 0xFF and then a byte not equal to 0x00 or 0xFF.
 
-			final short segmentIdentifier = (short) bStream.read();
+			final int numRead = readBytes(inChannel, header, position, 2);
+			final short segmentIdentifier = (short) (numRead < 1 ? -1 : header.get(0) & 0xFF);
 
 			// We must have at least one 0xFF byte
-			if (segmentIdentifier != 0xFF)
+			if (segmentIdentifier != 0xFF || numRead < 2)
 				throw new ExifException("Expected JPEG segment start identifier 0xFF, not 0x" + Integer.toHexString(segmentIdentifier).toUpperCase());
+			position += 2;
 
 			// Read until we have a non-0xFF byte. This identifies the segment type.
-			byte currSegmentType = (byte) bStream.read();
-			while (currSegmentType == (byte)0xFF) {
-				currSegmentType = (byte) bStream.read();
+			byte currSegmentType = header.get(1);
+			while (currSegmentType == (byte)0xFF)
+			{
+				if (readBytes(inChannel, header, position, 1) < 1)
+					throw new ExifException("Unexpected end of file in JPEG marker identifier");
+				currSegmentType = header.get(0);
+				position++;
 			}
 
 			if (currSegmentType == 0)
@@ -108,31 +120,59 @@ public class ExifReader
 			}
 
 			// next 2-bytes are <segment-size>: [high-byte] [low-byte]
-			int segmentLength = (bStream.read() << 8) + bStream.read();
+			if (readBytes(inChannel, header, position, 2) < 2)
+				throw new ExifException("JPEG segment size would be less than zero");
 			// segment length includes size bytes, so subtract two
-			segmentLength -= 2;
+			final int segmentLength = ((header.get(0) & 0xFF) << 8) + (header.get(1) & 0xFF) - 2;
+			position += 2;
 
 			if (segmentLength < 0)
 				throw new ExifException("JPEG segment size would be less than zero");
 
-			byte[] segmentBytes = new byte[segmentLength];
-			int bytesRead = bStream.read(segmentBytes, 0, segmentLength);
-			// Bail if not all bytes read in one go - otherwise following sections will be out of step
-			if (bytesRead != segmentLength) {
-				throw new ExifException("Tried to read " + segmentLength + " bytes but only got " + bytesRead);
-			}
-			// Check whether we are interested in this segment
-			if (segmentTypeByte == currSegmentType)
+			// Check whether we are interested in this segment, otherwise just skip over it
+			if (currSegmentType == SEGMENT_APP1)
 			{
+				ByteBuffer segmentBuffer = ByteBuffer.allocate(segmentLength);
+				final int bytesRead = readBytes(inChannel, segmentBuffer, position, segmentLength);
+				// Bail if not all bytes could be read
+				if (bytesRead != segmentLength) {
+					throw new ExifException("Tried to read " + segmentLength + " bytes but only got " + bytesRead);
+				}
+				byte[] segmentBytes = segmentBuffer.array();
 				// Pass the appropriate byte arrays to reader.
-				if (canProcess(segmentBytes)) {
+				if (canProcess(segmentBytes))
+				{
+					inData.setExifPosition(position);
 					return segmentBytes;
 				}
 			}
+			position += segmentLength;
 
 		} while (true);
 	}
 
+	/**
+	 * Read bytes from the given position in the file into the start of the buffer
+	 * @param inChannel channel to read from
+	 * @param inBuffer buffer to fill
+	 * @param inPosition position in file
+	 * @param inLength number of bytes to read
+	 * @return number of bytes read, less than requested if the end of the file was reached
+	 */
+	private static int readBytes(final FileChannel inChannel, final ByteBuffer inBuffer,
+		final long inPosition, final int inLength) throws IOException
+	{
+		inBuffer.clear();
+		inBuffer.limit(inLength);
+		while (inBuffer.hasRemaining())
+		{
+			if (inChannel.read(inBuffer, inPosition + inBuffer.position()) < 0) {
+				break;
+			}
+		}
+		return inBuffer.position();
+	}
+
 	private static boolean canProcess(final byte[] segmentBytes)
 	{
 		return segmentBytes.length >= JPEG_EXIF_SEGMENT_PREAMBLE.length() && new String(segmentBytes, 0, JPEG_EXIF_SEGMENT_PREAMBLE.length()).equalsIgnoreCase(JPEG_EXIF_SEGMENT_PREAMBLE);
@@ -73,6 +73,7 @@ public class ExifTiffHandler
 					byte[] thumbCopy = new byte[thumbData.length];
 					System.arraycopy(thumbData, 0, thumbCopy, 0, thumbData.length);
 					_jpegData.setThumbnailImage(thumbCopy);
+					_jpegData.setThumbnailOffset(tiffHeaderOffset + (int) _thumbnailOffset);
 				}
 			} catch (ExifException ex) {}
 		}
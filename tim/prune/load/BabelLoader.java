@@ -206,36 +206,48 @@ public abstract class BabelLoader extends GenericFunction implements Runnable
 		else
 		{
 			// Pass input stream to try to parse the xml
+			XmlFileLoader xmlLoader = new XmlFileLoader(_app);
+			boolean loaded = false;
 			try
 			{
-				XmlFileLoader xmlLoader = new XmlFileLoader(_app);
-				SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
-				saxParser.parse(process.getInputStream(), xmlLoader);
-				handler = xmlLoader.getHandler();
-				if (handler == null) {
-					errorMessage = "Null handler";
+				try
+				{
+					SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+					saxParser.parse(process.getInputStream(), xmlLoader);
+					handler = xmlLoader.getHandler();
+					if (handler == null) {
+						errorMessage = "Null handler";
+					}
+				}
+				catch (Exception e) {
+					errorMessage = e.getMessage();
 				}
-			}
-			catch (Exception e) {
-				errorMessage = e.getMessage();
-			}
 
-			// Read the error stream to see if there's a better error message there
-			BufferedReader r = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-			while ((line = r.readLine()) != null) {
-				errorMessage2 += line + "\n";
-			}
-			// Close error stream
-			try {
-				r.close();
-			} catch (Exception e) {}
+				// Read the error stream to see if there's a better error message there
+				BufferedReader r = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+				while ((line = r.readLine()) != null) {
+					errorMessage2 += line + "\n";
+				}
+				// Close error stream
+				try {
+					r.close();
+				} catch (Exception e) {}
 
-			if (errorMessage2.length() > 0) {errorMessage = errorMessage2;}
-			if (errorMessage.length() > 0) {throw new Exception(errorMessage);}
+				if (errorMessage2.length() > 0) {errorMessage = errorMessage2;}
+				if (errorMessage.length() > 0) {throw new Exception(errorMessage);}
 
-			// Send data back to app
-			_app.informDataLoaded(handler.getFieldArray(), handler.getDataArray(), null,
-				getSourceInfo(), handler.getTrackNameList());
+				// Send data back to app
+				_app.informDataLoaded(handler.getLoadedTrack(), getSourceInfo(),
+					handler.getTrackNameList(), null);
+				loaded = true;
+			}
+			finally
+			{
+				// Stop the conversion of any points read so far if the load failed
+				if (!loaded) {
+					xmlLoader.reset();
+				}
+			}
 		}
 	}
 
@@ -64,6 +64,17 @@ public class DelimiterInfo
 		_numWinningRecords++;
 	}
 
+	/**
+	 * Add the counts from another info object for the same delimiter
+	 * @param inOther other info object, for example from another part of the file
+	 */
+	public void addCounts(DelimiterInfo inOther)
+	{
+		_numRecords += inOther._numRecords;
+		_numWinningRecords += inOther._numWinningRecords;
+		updateMaxFields(inOther._maxFields);
+	}
+
 	/** @return String for debug */
 	public String toString()
 	{
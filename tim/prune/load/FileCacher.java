@@ -1,21 +1,45 @@
 package tim.prune.load;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
- * Class to load the contents of a file
- * into an array for later retrieval
+ * Class to map the contents of a text file into memory,
+ * split into chunks at line boundaries so that the lines
+ * can be processed in parallel.  Only the first few lines
+ * are kept as Strings, for preview.  Files containing null
+ * characters are treated as binary and not as text.
  */
 public class FileCacher
 {
 	/** File to cache */
 	private File _file = null;
-	/** Array to hold lines of file */
-	private String[] _contentArray = null;
+	/** Mapped chunks of the file, each ending at the end of a line */
+	private MappedByteBuffer[] _chunks = null;
+	/** First few non-blank lines of the file */
+	private String[] _previewLines = null;
+	/** Flag set if the file looks like text and not xml or binary */
+	private volatile boolean _isText = false;
+
+	/** Size of each chunk in bytes, except the last */
+	private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+	/** Number of lines to keep for the preview */
+	private static final int PREVIEW_SIZE = 50;
+	/** Character set used to decode the lines */
+	private static final Charset CHARSET = Charset.defaultCharset();
+	/** Pool for processing the chunks in parallel, shared by all files */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
 
 
 	/**
@@ -30,58 +54,230 @@ public class FileCacher
 
 
 	/**
-	 * Load the specified file into memory
+	 * Map the specified file into memory and read the preview lines
 	 */
 	private void loadFile()
 	{
-		ArrayList<String> contentList = new ArrayList<String>();
+		ArrayList<MappedByteBuffer> chunkList = new ArrayList<MappedByteBuffer>();
 		if (_file != null && _file.exists() && _file.canRead())
 		{
-			BufferedReader reader = null;
+			RandomAccessFile raf = null;
 			try
 			{
-				reader = new BufferedReader(new FileReader(_file));
-				String currLine = reader.readLine();
-				if (currLine != null && currLine.startsWith("<?xml")) {
-					return; // it's an xml file, it shouldn't use this cacher
-				}
-				while (currLine != null)
+				raf = new RandomAccessFile(_file, "r");
+				FileChannel channel = raf.getChannel();
+				final long fileSize = channel.size();
+				long chunkStart = 0L;
+				while (chunkStart < fileSize)
 				{
-					if (currLine.indexOf('\0') >= 0)
-					{
-						reader.close();
-						return; // it's a binary file, shouldn't use this cacher
-					}
-					if (currLine.trim().length() > 0)
-						contentList.add(currLine);
-					currLine = reader.readLine();
+					final long chunkEnd = findLineEnd(channel, chunkStart + CHUNK_SIZE, fileSize);
+					chunkList.add(channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart));
+					chunkStart = chunkEnd;
 				}
 			}
-			catch (IOException ioe) {}
+			catch (IOException ioe) {
+				chunkList.clear();
+			}
 			finally
 			{
-				// close file ignoring errors
+				// close file ignoring errors, the mappings stay valid
 				try
 				{
-					if (reader != null) reader.close();
+					if (raf != null) raf.close();
 				}
 				catch (Exception e) {}
 			}
 		}
-		// Convert into String array for keeps
-		int numLines = contentList.size();
-		_contentArray = new String[numLines];
-		for (int i=0; i<numLines; i++)
-			_contentArray[i] = contentList.get(i);
+		_chunks = chunkList.toArray(new MappedByteBuffer[0]);
+		readPreview();
 	}
 
 
 	/**
-	 * @return Contents of the file as array of non-blank Strings
+	 * Find the position after the end of the line containing the given position
+	 * @param inChannel channel to read from
+	 * @param inPosition position to start looking from
+	 * @param inFileSize size of the file
+	 * @return position of the start of the next line, or the file size
 	 */
-	public String[] getContents()
+	private static long findLineEnd(FileChannel inChannel, long inPosition, long inFileSize)
+		throws IOException
 	{
-		return _contentArray;
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		long position = inPosition;
+		while (position < inFileSize)
+		{
+			buffer.clear();
+			final int numRead = inChannel.read(buffer, position);
+			if (numRead <= 0) {break;}
+			for (int i=0; i<numRead; i++)
+			{
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += numRead;
+		}
+		return inFileSize;
+	}
+
+
+	/**
+	 * Read the first few lines of the file to check the contents and keep for preview
+	 */
+	private void readPreview()
+	{
+		final ArrayList<String> previewList = new ArrayList<String>();
+		final boolean[] firstLine = {true};
+		_isText = true;
+		for (int c=0; c<_chunks.length && previewList.size() < PREVIEW_SIZE && _isText; c++)
+		{
+			// returns false if it's a binary file, which shouldn't use this cacher
+			_isText &= processChunk(_chunks[c], new LineProcessor() {
+				public void processLine(String inLine)
+				{
+					if (firstLine[0] && inLine.startsWith("<?xml")) {
+						_isText = false; // it's an xml file, it shouldn't use this cacher
+					}
+					firstLine[0] = false;
+					if (previewList.size() < PREVIEW_SIZE) {
+						previewList.add(inLine);
+					}
+				}
+			}, PREVIEW_SIZE);
+		}
+		_previewLines = previewList.toArray(new String[0]);
+		if (_previewLines.length == 0) {
+			_isText = false;
+		}
+	}
+
+
+	/**
+	 * Pass the lines of the given chunk to the given processor
+	 * @param inChunk chunk of file
+	 * @param inProcessor processor for lines
+	 * @param inMaxLines maximum number of lines to process, or -1 for all
+	 * @return false if a null character was found, so the file is binary
+	 */
+	private static boolean processChunk(ByteBuffer inChunk, LineProcessor inProcessor, int inMaxLines)
+	{
+		ByteBuffer chunk = inChunk.duplicate();
+		final int chunkSize = chunk.limit();
+		byte[] lineBytes = new byte[256];
+		int lineStart = 0;
+		int numLines = 0;
+		boolean foundNull = false;
+		for (int pos=0; pos<=chunkSize && (inMaxLines < 0 || numLines < inMaxLines); pos++)
+		{
+			final byte b = (pos < chunkSize ? chunk.get(pos) : (byte) '\n');
+			foundNull |= (b == 0);
+			if (b == '\n' || b == '\r')
+			{
+				final int lineLength = pos - lineStart;
+				if (lineLength > 0)
+				{
+					if (lineLength > lineBytes.length) {
+						lineBytes = new byte[lineLength * 2];
+					}
+					chunk.position(lineStart);
+					chunk.get(lineBytes, 0, lineLength);
+					String line = new String(lineBytes, 0, lineLength, CHARSET);
+					if (line.trim().length() > 0)
+					{
+						inProcessor.processLine(line);
+						numLines++;
+					}
+				}
+				lineStart = pos + 1;
+			}
+		}
+		return !foundNull;
+	}
+
+
+	/**
+	 * @return true if the file could be read and looks like text
+	 */
+	public boolean isText()
+	{
+		return _isText;
+	}
+
+
+	/**
+	 * @return the number of chunks, and so the number of line processors needed
+	 */
+	public int getNumChunks()
+	{
+		return _chunks.length;
+	}
+
+
+	/**
+	 * Process all the non-blank lines of the file, using one processor for each chunk.
+	 * The chunks are processed in parallel, so the processors shouldn't depend on each other.
+	 * @param inProcessors array of processors, one for each chunk in the order of the file
+	 * @return false if the file was found to contain binary data, or if the thread was interrupted
+	 */
+	public boolean processLines(final LineProcessor[] inProcessors)
+	{
+		if (_chunks.length == 1) {
+			_isText &= processChunk(_chunks[0], inProcessors[0], -1);
+		}
+		else if (_chunks.length > 1)
+		{
+			ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for (int c=0; c<_chunks.length; c++)
+			{
+				final int chunkIndex = c;
+				tasks.add(new Callable<Object>() {
+					public Object call() {
+						if (!processChunk(_chunks[chunkIndex], inProcessors[chunkIndex], -1)) {
+							_isText = false;
+						}
+						return null;
+					}
+				});
+			}
+			List<Future<Object>> results = null;
+			try
+			{
+				results = POOL.invokeAll(tasks);
+				for (Future<Object> result : results) {
+					result.get();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// Abort the load, stopping any chunks which haven't finished yet
+				if (results != null)
+				{
+					for (Future<Object> result : results) {
+						result.cancel(true);
+					}
+				}
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return _isText;
+	}
+
+
+	/**
+	 * @return the first few non-blank lines of the file
+	 */
+	public String[] getPreviewLines()
+	{
+		return _previewLines;
 	}
 
 
@@ -96,12 +292,12 @@ public class FileCacher
 		final int MIN_SNIPPET_SIZE = 3;
 		// Check size is within sensible limits
 		int numToCopy = inNumRows;
-		if (numToCopy > getNumLines()) numToCopy = getNumLines();
+		if (numToCopy > _previewLines.length) numToCopy = _previewLines.length;
 		int size = numToCopy;
 		if (size < MIN_SNIPPET_SIZE) size = MIN_SNIPPET_SIZE;
 		String[] result = new String[size];
 		// Copy Strings across
-		System.arraycopy(_contentArray, 0, result, 0, numToCopy);
+		System.arraycopy(_previewLines, 0, result, 0, numToCopy);
 		// Chop Strings to max width if necessary
 		if (inMaxWidth > 10)
 		{
@@ -121,14 +317,6 @@ public class FileCacher
 		return result;
 	}
 
-	/**
-	 * @return the number of non-blank lines in the file
-	 */
-	public int getNumLines()
-	{
-		return _contentArray.length;
-	}
-
 
 	/**
 	 * Clear the memory
@@ -136,6 +324,7 @@ public class FileCacher
 	public void clear()
 	{
 		_file = null;
-		_contentArray = null;
+		_chunks = new MappedByteBuffer[0];
+		_previewLines = new String[0];
 	}
 }
@@ -1,7 +1,15 @@
 package tim.prune.load;
 
+import java.util.ArrayList;
+
+import tim.prune.data.DataPoint;
+import tim.prune.data.Field;
+import tim.prune.data.FieldList;
+import tim.prune.data.PointCreateOptions;
+import tim.prune.data.Track;
+
 /**
- * Class responsible for splitting the file contents into an array
+ * Class responsible for splitting the file contents into fields
  * based on the selected delimiter character
  */
 public class FileSplitter
@@ -13,6 +21,68 @@ public class FileSplitter
 	private String[] _firstFullRow = null;
 
 
+	/**
+	 * Line processor to count the rows and fields in one chunk of the file
+	 */
+	private static class FieldCounter implements LineProcessor
+	{
+		private char _delimiter = ',';
+		private int _numRows = 0;
+		private int _maxFields = 0;
+		private String _firstFullLine = null;
+
+		/** Constructor */
+		FieldCounter(char inDelimiter) {
+			_delimiter = inDelimiter;
+		}
+
+		/** Count the fields of the given line */
+		public void processLine(String inLine)
+		{
+			_numRows++;
+			final int numFields = countFields(inLine, _delimiter);
+			if (numFields > _maxFields)
+			{
+				_maxFields = numFields;
+				_firstFullLine = inLine;
+			}
+		}
+	}
+
+	/**
+	 * Line processor to make points from one chunk of the file
+	 */
+	private static class PointMaker implements LineProcessor
+	{
+		private char _delimiter = ',';
+		private int _numFields = 0;
+		private FieldList _fieldList = null;
+		private PointCreateOptions _options = null;
+		private ArrayList<DataPoint> _points = new ArrayList<DataPoint>();
+
+		/** Constructor */
+		PointMaker(char inDelimiter, int inNumFields, FieldList inFieldList, PointCreateOptions inOptions)
+		{
+			_delimiter = inDelimiter;
+			_numFields = inNumFields;
+			_fieldList = inFieldList;
+			_options = inOptions;
+		}
+
+		/** Make a point from the given line */
+		public void processLine(String inLine)
+		{
+			String[] values = new String[_numFields];
+			String[] splitLine = splitLine(inLine, _delimiter);
+			System.arraycopy(splitLine, 0, values, 0, Math.min(splitLine.length, _numFields));
+			DataPoint point = new DataPoint(values, _fieldList, _options);
+			if (point.isValid()) {
+				_points.add(point);
+			}
+		}
+	}
+
+
 	/**
 	 * Constructor
 	 * @param inCacher FileCacher object holding file contents
@@ -23,62 +93,56 @@ public class FileSplitter
 	}
 
 	/**
-	 * Split the FileCacher's contents into a 2d array
+	 * Count the rows and fields of the whole file, and split the preview lines into a 2d array
 	 * @param inDelim delimiter character
-	 * @return 2d Object array
+	 * @return 2d Object array of the preview lines
 	 */
 	public String[][] splitFieldData(char inDelim)
 	{
 		_firstFullRow = null;
-		if (_cacher == null) return null;
-		String[] contents = _cacher.getContents();
-		if (contents == null || contents.length == 0) return null;
-		String delimStr = checkDelimiter(inDelim);
-		// Count non-blank rows and max field count
+		if (_cacher == null || !_cacher.isText()) return null;
+		// Count non-blank rows and max field count, in parallel over the whole file
+		FieldCounter[] counters = new FieldCounter[_cacher.getNumChunks()];
+		for (int i=0; i<counters.length; i++) {
+			counters[i] = new FieldCounter(inDelim);
+		}
+		_cacher.processLines(counters);
 		_numRows = 0;
 		int maxFields = 0;
-		for (int i=0; i<contents.length; i++)
+		String firstFullLine = null;
+		for (FieldCounter counter : counters)
 		{
-			if (contents[i] != null && !contents[i].trim().equals(""))
+			_numRows += counter._numRows;
+			if (counter._maxFields > maxFields)
 			{
-				_numRows++;
-				String[] splitLine = contents[i].split(delimStr);
-				if (splitLine != null && splitLine.length > maxFields)
-				{
-					maxFields = splitLine.length;
-					_firstFullRow = splitLine;
-				}
+				maxFields = counter._maxFields;
+				firstFullLine = counter._firstFullLine;
 			}
 		}
+		if (_numRows == 0) return null;
+		if (firstFullLine != null) {
+			_firstFullRow = splitLine(firstFullLine, inDelim);
+		}
 		_numColumns = maxFields;
 		_columnStates = new boolean[maxFields];
 
-		// Create array and populate it
+		// Create array and populate it from the preview lines
 		// Note that array will be rectangular even if data is ragged
-		String[][] result = new String[_numRows][];
+		String[] contents = _cacher.getPreviewLines();
+		String[][] result = new String[contents.length][];
 		for (int i=0; i<contents.length; i++)
 		{
 			result[i] = new String[maxFields];
-			if (contents[i] != null)
+			// Don't use trimmed string here because you'll lose empty fields at beginning
+			// if separated by spaces or tabs
+			String[] splitLine = splitLine(contents[i], inDelim);
+			System.arraycopy(splitLine, 0, result[i], 0, splitLine.length);
+			// Check if columns are blank or not
+			for (int j=0; j<splitLine.length; j++)
 			{
-				String wholeLine = contents[i];
-				if (!wholeLine.trim().equals(""))
+				if (!_columnStates[j] && splitLine[j].trim().length() > 0)
 				{
-					// Don't use trimmed string here because you'll lose empty fields at beginning
-					// if separated by spaces or tabs
-					String[] splitLine = wholeLine.split(delimStr);
-					if (splitLine != null)
-					{
-						System.arraycopy(splitLine, 0, result[i], 0, splitLine.length);
-						// Check if columns are blank or not
-						for (int j=0; j<splitLine.length; j++)
-						{
-							if (!_columnStates[j] && splitLine[j].trim().length() > 0)
-							{
-								_columnStates[j] = true;
-							}
-						}
-					}
+					_columnStates[j] = true;
 				}
 			}
 		}
@@ -86,6 +150,47 @@ public class FileSplitter
 	}
 
 
+	/**
+	 * Make a track from the whole file, parsing the chunks in parallel
+	 * @param inDelim delimiter character
+	 * @param inFields array of fields for the columns
+	 * @param inOptions creation options such as units
+	 * @return track containing all the valid points, or null if the thread was interrupted
+	 */
+	public Track makeTrack(char inDelim, Field[] inFields, PointCreateOptions inOptions)
+	{
+		FieldList fieldList = new FieldList(inFields);
+		PointMaker[] makers = new PointMaker[_cacher.getNumChunks()];
+		for (int i=0; i<makers.length; i++) {
+			makers[i] = new PointMaker(inDelim, Math.max(_numColumns, inFields.length), fieldList, inOptions);
+		}
+		if (!_cacher.processLines(makers) && Thread.currentThread().isInterrupted()) {
+			return null;
+		}
+		// Join the points from each chunk together in order
+		int numPoints = 0;
+		for (PointMaker maker : makers) {
+			numPoints += maker._points.size();
+		}
+		DataPoint[] points = new DataPoint[numPoints];
+		int pointIndex = 0;
+		for (PointMaker maker : makers)
+		{
+			for (DataPoint point : maker._points) {
+				points[pointIndex++] = point;
+			}
+			maker._points = null;
+		}
+		Track track = new Track(fieldList, points);
+		// Set first track point to be start of segment
+		DataPoint firstTrackPoint = track.getNextTrackPoint(0);
+		if (firstTrackPoint != null) {
+			firstTrackPoint.setSegmentStart(true);
+		}
+		return track;
+	}
+
+
 	/**
 	 * @return the number of rows in the data
 	 */
@@ -113,7 +218,7 @@ public class FileSplitter
 
 
 	/**
-	 * Check if the specified column of the data is blank
+	 * Check if the specified column of the preview data is blank
 	 * @param inColumnNum number of column, starting with 0
 	 * @return true if no data exists in this column
 	 */
@@ -124,16 +229,49 @@ public class FileSplitter
 	}
 
 	/**
-	 * Check the delimiter for proper regular expression matching
-	 * @param inDelim character selected as delimiter
-	 * @return regular expression for splitting
+	 * Count the fields in the given line, giving the same result as the length of the
+	 * array from String.split, so trailing empty fields are not counted
+	 * @param inLine line of file
+	 * @param inDelim delimiter character
+	 * @return number of fields
+	 */
+	public static int countFields(String inLine, char inDelim)
+	{
+		int numFields = 0;
+		int fieldNum = 0;
+		int fieldStart = 0;
+		final int lineLength = inLine.length();
+		for (int i=0; i<=lineLength; i++)
+		{
+			if (i == lineLength || inLine.charAt(i) == inDelim)
+			{
+				fieldNum++;
+				// Only count up to the last non-empty field
+				if (i > fieldStart) {numFields = fieldNum;}
+				fieldStart = i + 1;
+			}
+		}
+		// A line without any delimiters is a single field even if it's empty
+		return (lineLength == 0 ? 1 : numFields);
+	}
+
+	/**
+	 * Split the given line into fields, giving the same result as String.split
+	 * but without using a regular expression
+	 * @param inLine line of file
+	 * @param inDelim delimiter character
+	 * @return array of fields
 	 */
-	private static String checkDelimiter(char inDelim)
+	public static String[] splitLine(String inLine, char inDelim)
 	{
-		String result = "" + inDelim;
-		// Don't pass asterisks or dots without escaping them for RE
-		if (inDelim == '*' || inDelim == '.') {
-			result = "\\" + result;
+		String[] result = new String[countFields(inLine, inDelim)];
+		int fieldStart = 0;
+		for (int f=0; f<result.length; f++)
+		{
+			int fieldEnd = inLine.indexOf(inDelim, fieldStart);
+			if (fieldEnd < 0) {fieldEnd = inLine.length();}
+			result[f] = inLine.substring(fieldStart, fieldEnd);
+			fieldStart = fieldEnd + 1;
 		}
 		return result;
 	}
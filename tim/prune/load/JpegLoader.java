@@ -1,7 +1,13 @@
 package tim.prune.load;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.swing.BoxLayout;
 import javax.swing.JCheckBox;
@@ -23,6 +29,7 @@ import tim.prune.data.TimestampLocal;
 import tim.prune.data.TimestampUtc;
 import tim.prune.data.UnitSetLibrary;
 import tim.prune.function.Cancellable;
+import tim.prune.jpeg.ExifCache;
 import tim.prune.jpeg.InternalExifLibrary;
 import tim.prune.jpeg.JpegData;
 
@@ -40,10 +47,13 @@ public class JpegLoader implements Runnable, Cancellable
 	private JCheckBox _outsideAreaCheckbox = null;
 	private MediaLoadProgressDialog _progressDialog = null;
 	private int[] _fileCounts = null;
-	private boolean _cancelled = false;
+	private volatile boolean _cancelled = false;
 	private LatLonRectangle _trackRectangle = null;
 	private TreeSet<Photo> _photos = null;
 
+	/** Pool for reading files in parallel, shared by all loads */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
 
 	/**
 	 * Constructor
@@ -117,15 +127,17 @@ public class JpegLoader implements Runnable, Cancellable
 		// Initialise arrays, errors, summaries
 		_fileCounts = new int[3]; // files, jpegs, gps
 		_photos = new TreeSet<Photo>(new MediaSorter());
+		_cancelled = false;
 		File[] files = _fileChooser.getSelectedFiles();
-		// Loop recursively over selected files/directories to count files
-		int numFiles = countFileList(files, true, _subdirCheckbox.isSelected());
+		// Loop recursively over selected files/directories to list the files
+		ArrayList<File> fileList = new ArrayList<File>();
+		collectFileList(files, true, _subdirCheckbox.isSelected(), fileList);
 		// Set up the progress bar for this number of files
-		_progressDialog.showProgress(0, numFiles);
-		_cancelled = false;
+		_progressDialog.showProgress(0, fileList.size());
 
-		// Process the files recursively and build lists of photos
-		processFileList(files, true, _subdirCheckbox.isSelected());
+		// Process the files in parallel and build lists of photos
+		processFileList(fileList);
+		ExifCache.getInstance().save();
 		_progressDialog.close();
 		if (_cancelled) {return;}
 
@@ -153,34 +165,36 @@ public class JpegLoader implements Runnable, Cancellable
 
 
 	/**
-	 * Process a list of files and/or directories
-	 * @param inFiles array of file/directories
-	 * @param inFirstDir true if first directory
-	 * @param inDescend true to descend to subdirectories
+	 * Process a list of files in parallel, as reading the files takes most of the time
+	 * @param inFiles list of files
 	 */
-	private void processFileList(File[] inFiles, boolean inFirstDir, boolean inDescend)
+	private void processFileList(List<File> inFiles)
 	{
-		if (inFiles == null) return;
-		// Loop over elements in array
-		for (int i=0; i<inFiles.length && !_cancelled; i++)
+		ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (final File file : inFiles)
 		{
-			File file = inFiles[i];
-			if (file.exists() && file.canRead())
-			{
-				// Check whether it's a file or a directory
-				if (file.isFile())
-				{
-					processFile(file);
-				}
-				else if (file.isDirectory() && (inFirstDir || inDescend))
-				{
-					// Always process first directory,
-					// only process subdirectories if checkbox selected
-					File[] files = file.listFiles();
-					processFileList(files, false, inDescend);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					if (!_cancelled) {
+						processFile(file);
+					}
+					return null;
 				}
+			});
+		}
+		try
+		{
+			for (Future<Object> result : POOL.invokeAll(tasks)) {
+				result.get();
 			}
-			// if file doesn't exist or isn't readable - ignore
+		}
+		catch (InterruptedException e) {}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
 		}
 	}
 
@@ -191,27 +205,31 @@ public class JpegLoader implements Runnable, Cancellable
 	 */
 	private void processFile(File inFile)
 	{
-		// Update progress bar
-		_fileCounts[0]++; // file found
-		_progressDialog.showProgress(_fileCounts[0], -1);
-
 		// Check whether filename corresponds with accepted filenames
-		if (!_fileFilter.acceptFilename(inFile.getName())) {return;}
 		// If it's a Jpeg, we can use ExifReader to get coords, otherwise we could try exiftool (if it's installed)
+		final boolean isJpeg = _fileFilter.acceptFilename(inFile.getName());
+		Photo photo = (isJpeg ? createPhoto(inFile) : null);
 
-		if (inFile.exists() && inFile.canRead()) {
-			_fileCounts[1]++; // jpeg found
-		}
-		Photo photo = createPhoto(inFile);
-		if (photo.getDataPoint() != null) {
-			_fileCounts[2]++; // photo has coordinates
-		}
-		// Check the criteria for adding the photo - check whether the photo has coordinates and if so if they're within the rectangle
-		if ( (photo.getDataPoint() != null || _noExifCheckbox.isSelected())
-			&& (photo.getDataPoint() == null || !_outsideAreaCheckbox.isEnabled()
-				|| _outsideAreaCheckbox.isSelected() || _trackRectangle.containsPoint(photo.getDataPoint())))
+		synchronized (this)
 		{
-			_photos.add(photo);
+			// Update progress bar
+			_fileCounts[0]++; // file found
+			_progressDialog.showProgress(_fileCounts[0], -1);
+			if (!isJpeg) {return;}
+
+			if (inFile.exists() && inFile.canRead()) {
+				_fileCounts[1]++; // jpeg found
+			}
+			if (photo.getDataPoint() != null) {
+				_fileCounts[2]++; // photo has coordinates
+			}
+			// Check the criteria for adding the photo - check whether the photo has coordinates and if so if they're within the rectangle
+			if ( (photo.getDataPoint() != null || _noExifCheckbox.isSelected())
+				&& (photo.getDataPoint() == null || !_outsideAreaCheckbox.isEnabled()
+					|| _outsideAreaCheckbox.isSelected() || _trackRectangle.containsPoint(photo.getDataPoint())))
+			{
+				_photos.add(photo);
+			}
 		}
 	}
 
@@ -266,19 +284,18 @@ public class JpegLoader implements Runnable, Cancellable
 
 
 	/**
-	 * Recursively count the selected Files so we can draw a progress bar
+	 * Recursively list the selected Files so we can draw a progress bar and process them
 	 * @param inFiles file list
 	 * @param inFirstDir true if first directory
 	 * @param inDescend true to descend to subdirectories
-	 * @return count of the files selected
+	 * @param inList list to add the files to
 	 */
-	private int countFileList(File[] inFiles, boolean inFirstDir, boolean inDescend)
+	private void collectFileList(File[] inFiles, boolean inFirstDir, boolean inDescend, List<File> inList)
 	{
-		int fileCount = 0;
 		if (inFiles != null)
 		{
 			// Loop over elements in array
-			for (int i=0; i<inFiles.length; i++)
+			for (int i=0; i<inFiles.length && !_cancelled; i++)
 			{
 				File file = inFiles[i];
 				if (file.exists() && file.canRead())
@@ -291,16 +308,18 @@ public class JpegLoader implements Runnable, Cancellable
 					// Check whether it's a file or a directory
 					if (file.isFile())
 					{
-						fileCount++;
+						inList.add(file);
 					}
 					else if (file.isDirectory() && (inFirstDir || inDescend))
 					{
-						fileCount += countFileList(file.listFiles(), false, inDescend);
+						// Always process first directory,
+						// only process subdirectories if checkbox selected
+						collectFileList(file.listFiles(), false, inDescend, inList);
 					}
 				}
+				// if file doesn't exist or isn't readable - ignore
 			}
 		}
-		return fileCount;
 	}
 
 
@@ -0,0 +1,14 @@
+package tim.prune.load;
+
+/**
+ * Interface for objects which process the lines of one chunk of a text file.
+ * Each chunk has its own processor, so processors don't need to be thread-safe.
+ */
+public interface LineProcessor
+{
+	/**
+	 * Process a single line
+	 * @param inLine non-blank line of the file, without line ending
+	 */
+	public void processLine(String inLine);
+}
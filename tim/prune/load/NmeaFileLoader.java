@@ -1,14 +1,14 @@
 package tim.prune.load;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
 
 import tim.prune.App;
+import tim.prune.data.DataPoint;
 import tim.prune.data.Field;
+import tim.prune.data.FieldList;
 import tim.prune.data.SourceInfo;
+import tim.prune.data.Track;
 
 /**
  * Class to handle the loading of Nmea files
@@ -18,6 +18,65 @@ public class NmeaFileLoader
 	/** App for callback of file loading */
 	private App _app = null;
 
+
+	/**
+	 * Line processor to collect the messages from one chunk of the file.
+	 * Segments and dates depend on the lines before the chunk,
+	 * so these are fixed afterwards when the chunks are joined together
+	 */
+	private static class MessageCollector implements LineProcessor
+	{
+		/** Messages with a fix */
+		private ArrayList<NmeaMessage> _messages = new ArrayList<NmeaMessage>();
+		/** Number of messages received before the first date in this chunk */
+		private int _numUndated = 0;
+		/** First and last dates found in this chunk */
+		private String _firstDate = null, _lastDate = null;
+		/** True if no GGA sentence found yet in this chunk */
+		private boolean _noGgaYet = true;
+		/** True if the first message with a fix follows the start of the chunk without any lost fixes */
+		private boolean _firstFollowsStart = false;
+		/** True if the last GGA sentence had no fix, null if there weren't any */
+		private Boolean _lastFixLost = null;
+
+		/** Process a single line of the file */
+		public void processLine(String inLine)
+		{
+			NmeaMessage message = processGGA(inLine);
+			if (message != null)
+			{
+				if (message.hasFix())
+				{
+					if (_messages.isEmpty()) {
+						_firstFollowsStart = _noGgaYet;
+					}
+					// Segment flag is only correct for messages after the first one
+					message.setSegment(_lastFixLost != null && _lastFixLost.booleanValue());
+					message.setDate(_lastDate);
+					if (_lastDate == null) {
+						_numUndated++;
+					}
+					_messages.add(message);
+				}
+				_noGgaYet = false;
+				// Start a new segment if fix lost
+				_lastFixLost = Boolean.valueOf(!message.hasFix());
+			}
+			else
+			{
+				String date = getDateFromRMC(inLine);
+				if (date != null)
+				{
+					if (_firstDate == null) {
+						_firstDate = date;
+					}
+					_lastDate = date;
+				}
+			}
+		}
+	}
+
+
 	/**
 	 * Constructor
 	 * @param inApp App object
@@ -33,65 +92,66 @@ public class NmeaFileLoader
 	 */
 	public void openFile(File inFile)
 	{
-		BufferedReader reader = null;
-		ArrayList<NmeaMessage> messages = new ArrayList<NmeaMessage>();
+		if (!inFile.exists() || !inFile.canRead())
+		{
+			_app.showErrorMessage("error.load.dialogtitle", "error.load.noread");
+			return;
+		}
+		// Map the file and collect the messages from each chunk in parallel
+		FileCacher cacher = new FileCacher(inFile);
+		MessageCollector[] collectors = new MessageCollector[cacher.getNumChunks()];
+		for (int i=0; i<collectors.length; i++) {
+			collectors[i] = new MessageCollector();
+		}
+		final boolean processed = cacher.processLines(collectors);
+		cacher.clear();
+		if (!processed && Thread.currentThread().isInterrupted())
+		{
+			_app.informNoDataLoaded();
+			return;
+		}
+
+		// Join the chunks in order, carrying the segment flags and dates across the chunk boundaries
+		int numMessages = 0;
+		for (MessageCollector collector : collectors) {
+			numMessages += collector._messages.size();
+		}
+		ArrayList<NmeaMessage> messages = new ArrayList<NmeaMessage>(numMessages);
 		String lastDate = null;
-		try
+		boolean newSegment = true;
+		for (MessageCollector collector : collectors)
 		{
-			reader = new BufferedReader(new FileReader(inFile));
-			String currLine = reader.readLine();
-			boolean newSegment = true;
-			while (currLine != null)
+			if (collector._firstFollowsStart) {
+				collector._messages.get(0).setSegment(newSegment);
+			}
+			if (collector._lastFixLost != null) {
+				newSegment = collector._lastFixLost.booleanValue();
+			}
+			final int numBefore = messages.size();
+			messages.addAll(collector._messages);
+			collector._messages = null;
+			if (lastDate != null)
 			{
-				// Try to make an NmeaMessage object for each line of file
-				if (currLine.trim().length() > 0)
-				{
-					NmeaMessage message = processGGA(currLine);
-					if (message != null)
-					{
-						if (message.hasFix())
-						{
-							message.setSegment(newSegment);
-							message.setDate(lastDate);
-							// add message to list
-							messages.add(message);
-						}
-						// Start a new segment if fix lost
-						newSegment = !message.hasFix();
-					}
-					else {
-						String date = getDateFromRMC(currLine);
-						if (date != null)
-						{
-							if (lastDate == null && !messages.isEmpty()) {
-								// Backfill first few messages received before the first date
-								for (int m=0; m<messages.size(); m++) {
-									messages.get(m).setDate(date);
-								}
-							}
-							lastDate = date;
-						}
-					}
+				// Messages received before the first date in this chunk get the previous date
+				for (int m=0; m<collector._numUndated; m++) {
+					messages.get(numBefore + m).setDate(lastDate);
 				}
-				// Read next line, if any
-				currLine = reader.readLine();
 			}
-		}
-		catch (IOException ioe) {
-			_app.showErrorMessage("error.load.dialogtitle", "error.load.noread");
-		}
-		finally
-		{
-			// close file ignoring errors
-			try {
-				if (reader != null) reader.close();
+			else if (collector._firstDate != null)
+			{
+				// Backfill first few messages received before the first date
+				for (int m=0; m<numBefore + collector._numUndated; m++) {
+					messages.get(m).setDate(collector._firstDate);
+				}
+			}
+			if (collector._lastDate != null) {
+				lastDate = collector._lastDate;
 			}
-			catch (Exception e) {}
 		}
-		if (messages.size() > 0)
-		{
-			_app.informDataLoaded(getFieldArray(), makeDataArray(messages),
-				null, new SourceInfo(inFile, SourceInfo.FILE_TYPE.NMEA), null);
+
+		if (messages.size() > 0) {
+			_app.informDataLoaded(makeTrack(messages, getFieldArray()),
+				new SourceInfo(inFile, SourceInfo.FILE_TYPE.NMEA), null, null);
 		}
 	}
 
@@ -107,7 +167,7 @@ public class NmeaFileLoader
 			return null;
 		}
 		// Assume comma delimiter, split into array
-		String[] splitLine = inLine.split(",");
+		String[] splitLine = FileSplitter.splitLine(inLine, ',');
 		if (splitLine != null && splitLine.length >= 10)
 		{
 			return new NmeaMessage(splitLine[2] + splitLine[3], // latitude
@@ -132,7 +192,7 @@ public class NmeaFileLoader
 			return null;
 		}
 		// Assume comma delimiter, split into array
-		String[] splitLine = inLine.split(",");
+		String[] splitLine = FileSplitter.splitLine(inLine, ',');
 		if (splitLine != null && splitLine.length >= 10)
 		{
 			return splitLine[9]; // date in position 9
@@ -142,17 +202,29 @@ public class NmeaFileLoader
 	}
 
 	/**
-	 * Make an object array from the data list
+	 * Make a track from the list of messages
 	 * @param inList list of messages
-	 * @return object array for loading
+	 * @param inFields fields for the points
+	 * @return track containing the valid points
 	 */
-	private static Object[][] makeDataArray(ArrayList<NmeaMessage> inList)
+	private static Track makeTrack(ArrayList<NmeaMessage> inList, Field[] inFields)
 	{
-		Object[][] result = new Object[inList.size()][];
-		for (int i=0; i<inList.size(); i++) {
-			result[i] = inList.get(i).getStrings();
+		FieldList fieldList = new FieldList(inFields);
+		ArrayList<DataPoint> points = new ArrayList<DataPoint>(inList.size());
+		for (NmeaMessage message : inList)
+		{
+			DataPoint point = new DataPoint(message.getStrings(), fieldList, null);
+			if (point.isValid()) {
+				points.add(point);
+			}
+		}
+		Track track = new Track(fieldList, points.toArray(new DataPoint[0]));
+		// Set first track point to be start of segment
+		DataPoint firstTrackPoint = track.getNextTrackPoint(0);
+		if (firstTrackPoint != null) {
+			firstTrackPoint.setSegmentStart(true);
 		}
-		return result;
+		return track;
 	}
 
 	/**
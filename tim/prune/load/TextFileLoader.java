@@ -24,6 +24,7 @@ import tim.prune.I18nManager;
 import tim.prune.data.Field;
 import tim.prune.data.PointCreateOptions;
 import tim.prune.data.SourceInfo;
+import tim.prune.data.Track;
 import tim.prune.data.Unit;
 import tim.prune.data.UnitSetLibrary;
 import tim.prune.gui.GuiGridLayout;
@@ -163,52 +164,58 @@ public class TextFileLoader
 		{
 			return false;
 		}
-		// Use a FileCacher to read the file into an array
+		// Use a FileCacher to map the file into memory
 		_fileCacher = new FileCacher(inFile);
-
-		// Check each line of the file
-		String[] fileContents = _fileCacher.getContents();
-		if (fileContents == null) {
+		if (!_fileCacher.isText()) {
 			return false; // nothing cached, might be binary
 		}
-		boolean fileOK = true;
+
+		// Check each line of the file, with each chunk of the file checked in parallel
+		DelimiterCounter[] counters = new DelimiterCounter[_fileCacher.getNumChunks()];
+		for (int i=0; i<counters.length; i++) {
+			counters[i] = new DelimiterCounter();
+		}
+		// Processing fails if there are any null characters, so it's not a text file
+		boolean fileOK = _fileCacher.processLines(counters);
 		_delimiterInfos = new DelimiterInfo[5];
 		for (int i=0; i<4; i++) _delimiterInfos[i] = new DelimiterInfo(DELIMITERS[i]);
+		for (DelimiterCounter counter : counters)
+		{
+			for (int i=0; i<4; i++) _delimiterInfos[i].addCounts(counter._infos[i]);
+		}
+		return fileOK;
+	}
+
+
+	/**
+	 * Line processor to count the fields for the various separators in one chunk of the file
+	 */
+	private static class DelimiterCounter implements LineProcessor
+	{
+		private DelimiterInfo[] _infos = new DelimiterInfo[4];
+		private int[] _numFields = new int[4];
+
+		/** Constructor */
+		DelimiterCounter()
+		{
+			for (int i=0; i<4; i++) _infos[i] = new DelimiterInfo(DELIMITERS[i]);
+		}
 
-		String currLine = null;
-		String[] splitFields = null;
-		int commaFields = 0, semicolonFields = 0, tabFields = 0, spaceFields = 0;
-		for (int lineNum=0; lineNum<fileContents.length && fileOK; lineNum++)
+		/** Count the fields of the given line */
+		public void processLine(String inLine)
 		{
-			currLine = fileContents[lineNum];
-			// check for invalid characters
-			if (currLine.indexOf('\0') >= 0) {fileOK = false;}
-			// check for commas
-			splitFields = currLine.split(",");
-			commaFields = splitFields.length;
-			if (commaFields > 1) _delimiterInfos[0].incrementNumRecords();
-			_delimiterInfos[0].updateMaxFields(commaFields);
-			// check for tabs
-			splitFields = currLine.split("\t");
-			tabFields = splitFields.length;
-			if (tabFields > 1) _delimiterInfos[1].incrementNumRecords();
-			_delimiterInfos[1].updateMaxFields(tabFields);
-			// check for semicolons
-			splitFields = currLine.split(";");
-			semicolonFields = splitFields.length;
-			if (semicolonFields > 1) _delimiterInfos[2].incrementNumRecords();
-			_delimiterInfos[2].updateMaxFields(semicolonFields);
-			// check for spaces
-			splitFields = currLine.split(" ");
-			spaceFields = splitFields.length;
-			if (spaceFields > 1) _delimiterInfos[3].incrementNumRecords();
-			_delimiterInfos[3].updateMaxFields(spaceFields);
+			// check for commas, tabs, semicolons and spaces
+			for (int i=0; i<4; i++)
+			{
+				_numFields[i] = FileSplitter.countFields(inLine, DELIMITERS[i]);
+				if (_numFields[i] > 1) _infos[i].incrementNumRecords();
+				_infos[i].updateMaxFields(_numFields[i]);
+			}
 			// increment counters
-			int bestScorer = getBestOption(commaFields, tabFields, semicolonFields, spaceFields);
+			int bestScorer = getBestOption(_numFields[0], _numFields[1], _numFields[2], _numFields[3]);
 			if (bestScorer >= 0)
-				_delimiterInfos[bestScorer].incrementNumWinningRecords();
+				_infos[bestScorer].incrementNumWinningRecords();
 		}
-		return fileOK;
 	}
 
 
@@ -637,21 +644,34 @@ public class TextFileLoader
 		_lastSelectedFields = _fieldTableModel.getFieldArray();
 		// TODO: Remember all the units selections for next load?
 		// Get the selected units for altitudes and speeds
-		SourceInfo sourceInfo = new SourceInfo(_file, SourceInfo.FILE_TYPE.TEXT);
-		PointCreateOptions options = new PointCreateOptions();
+		final SourceInfo sourceInfo = new SourceInfo(_file, SourceInfo.FILE_TYPE.TEXT);
+		final PointCreateOptions options = new PointCreateOptions();
 		options.setAltitudeUnits(_altitudeUnitsDropdown.getSelectedIndex() == 0 ? UnitSetLibrary.UNITS_METRES : UnitSetLibrary.UNITS_FEET);
 		Unit hSpeedUnit = UnitSetLibrary.ALL_SPEED_UNITS[_hSpeedUnitsDropdown.getSelectedIndex()];
 		options.setSpeedUnits(hSpeedUnit);
 		Unit vSpeedUnit = UnitSetLibrary.ALL_SPEED_UNITS[_vSpeedUnitsDropdown.getSelectedIndex()];
 		options.setVerticalSpeedUnits(vSpeedUnit, _vSpeedUpwardsRadio.isSelected());
 
-		// give data to App
-		_app.informDataLoaded(_fieldTableModel.getFieldArray(),
-			_fileExtractTableModel.getData(), options, sourceInfo, null);
-		// clear up file cacher
-		_fileCacher.clear();
 		// dispose of dialog
 		_dialog.dispose();
+		// parse the whole file in a separate thread and give the points to App
+		final Field[] fields = _fieldTableModel.getFieldArray();
+		final char delimiter = _currentDelimiter;
+		final FileCacher cacher = _fileCacher;
+		new Thread(new Runnable() {
+			public void run()
+			{
+				Track loadedTrack = new FileSplitter(cacher).makeTrack(delimiter, fields, options);
+				// clear up file cacher
+				cacher.clear();
+				if (loadedTrack == null) {
+					_app.informNoDataLoaded(); // interrupted
+				}
+				else {
+					_app.informDataLoaded(loadedTrack, sourceInfo, null, null);
+				}
+			}
+		}).start();
 	}
 
 	/**
@@ -6,11 +6,14 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 import tim.prune.data.Field;
+import tim.prune.data.Track;
 import tim.prune.load.TrackNameList;
 
 
 /**
- * Class for handling specifics of parsing Gpx files
+ * Class for handling specifics of parsing Gpx files.
+ * Points are passed in batches to a TrackBuilder as they are parsed,
+ * so they are converted while the rest of the file is still being read.
  */
 public class GpxHandler extends XmlHandler
 {
@@ -26,11 +29,23 @@ public class GpxHandler extends XmlHandler
 	private GpxTag _type = new GpxTag(), _description = new GpxTag();
 	private GpxTag _link = new GpxTag();
 	private GpxTag _currentTag = null;
-	private ArrayList<String[]> _pointList = new ArrayList<String[]>();
+	private TrackBuilder _builder = null;
+	private String[][] _batch = new String[TrackBuilder.BATCH_SIZE][];
+	private int _batchCount = 0;
+	private int _numPoints = 0;
 	private ArrayList<String> _linkList = new ArrayList<String>();
 	private TrackNameList _trackNameList = new TrackNameList();
 
 
+	/**
+	 * Constructor
+	 */
+	public GpxHandler()
+	{
+		_builder = new TrackBuilder(getFieldArray());
+	}
+
+
 	/**
 	 * Receive the start of a tag
 	 * @see org.xml.sax.ContentHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
@@ -166,9 +181,24 @@ public class GpxHandler extends XmlHandler
 		}
 		values[6] = _type.getValue();
 		values[7] = _description.getValue();
-		_pointList.add(values);
+		_batch[_batchCount] = values;
+		_batchCount++;
+		if (_batchCount == _batch.length)
+		{
+			_builder.addBatch(_batch);
+			_batch = new String[TrackBuilder.BATCH_SIZE][];
+			_batchCount = 0;
+		}
 		_trackNameList.addPoint(_trackNum, _trackName.getValue(), _isTrackPoint);
-		_linkList.add(_link.getValue());
+		// Links are rare, so the list is only filled up to the last point with a link
+		if (_link.getValue() != null)
+		{
+			while (_linkList.size() < _numPoints) {
+				_linkList.add(null);
+			}
+			_linkList.add(_link.getValue());
+		}
+		_numPoints++;
 	}
 
 
@@ -185,19 +215,29 @@ public class GpxHandler extends XmlHandler
 
 
 	/**
-	 * Return the parsed information as a 2d array
-	 * @see tim.prune.load.xml.XmlHandler#getDataArray()
+	 * Pass the last batch to the builder and wait for all the points to be converted
+	 * @see tim.prune.load.xml.XmlHandler#getLoadedTrack()
 	 */
-	public String[][] getDataArray()
+	public Track getLoadedTrack()
 	{
-		int numPoints = _pointList.size();
-		// construct data array
-		String[][] result = new String[numPoints][];
-		for (int i=0; i<numPoints; i++)
+		if (_batchCount > 0)
 		{
-			result[i] = _pointList.get(i);
+			String[][] lastBatch = new String[_batchCount][];
+			System.arraycopy(_batch, 0, lastBatch, 0, _batchCount);
+			_builder.addBatch(lastBatch);
+			_batchCount = 0;
 		}
-		return result;
+		return _builder.finish();
+	}
+
+	/**
+	 * Stop the conversion of points in the background
+	 * @see tim.prune.load.xml.XmlHandler#discard()
+	 */
+	public void discard()
+	{
+		_builder.cancel();
+		_batchCount = 0;
 	}
 
 	/**
@@ -205,15 +245,11 @@ public class GpxHandler extends XmlHandler
 	 */
 	public String[] getLinkArray()
 	{
-		int numPoints = _linkList.size();
-		boolean hasLink = false;
-		String[] result = new String[numPoints];
-		for (int i=0; i<numPoints; i++)
-		{
+		if (_linkList.isEmpty()) {return null;}
+		String[] result = new String[_numPoints];
+		for (int i=0; i<_linkList.size(); i++) {
 			result[i] = _linkList.get(i);
-			if (result[i] != null) {hasLink = true;}
 		}
-		if (!hasLink) {result = null;}
 		return result;
 	}
 
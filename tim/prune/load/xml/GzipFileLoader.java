@@ -51,13 +51,14 @@ public class GzipFileLoader
 				// Send back to app
 				SourceInfo sourceInfo = new SourceInfo(inFile,
 					(handler instanceof GpxHandler?SourceInfo.FILE_TYPE.GPX:SourceInfo.FILE_TYPE.KML));
-				_app.informDataLoaded(handler.getFieldArray(), handler.getDataArray(),
-					null, sourceInfo, handler.getTrackNameList(),
+				_app.informDataLoaded(handler.getLoadedTrack(), sourceInfo, handler.getTrackNameList(),
 					new MediaLinkInfo(inFile, handler.getLinkArray()));
 			}
 		}
 		catch (Exception e)
 		{
+			// Stop the conversion of any points read so far
+			_xmlLoader.reset();
 			// Error occurred, could be a non-xml file borking the parser
 			_app.showErrorMessageNoLookup("error.load.dialogtitle",
 				I18nManager.getText("error.load.othererror") + " " + e.getClass().getName());
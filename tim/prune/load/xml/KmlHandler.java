@@ -5,6 +5,7 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 import tim.prune.data.Field;
+import tim.prune.data.Track;
 
 
 /**
@@ -268,9 +269,20 @@ public class KmlHandler extends XmlHandler
 	}
 
 
+	/**
+	 * Convert the parsed information into a Track
+	 * @see tim.prune.load.xml.XmlHandler#getLoadedTrack()
+	 */
+	public Track getLoadedTrack()
+	{
+		Track track = new Track();
+		track.load(getFieldArray(), getDataArray(), null);
+		return track;
+	}
+
+
 	/**
 	 * Return the parsed information as a 2d array
-	 * @see tim.prune.load.xml.XmlHandler#getDataArray()
 	 */
 	public String[][] getDataArray()
 	{
@@ -0,0 +1,177 @@
+package tim.prune.load.xml;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import tim.prune.data.DataPoint;
+import tim.prune.data.Field;
+import tim.prune.data.FieldList;
+import tim.prune.data.Track;
+
+/**
+ * Class to convert batches of parsed point values into DataPoints
+ * using a separate thread, so that the conversion of coordinates and
+ * timestamps overlaps with the xml parsing and the whole file never
+ * needs to be held in memory as Strings
+ */
+public class TrackBuilder implements Runnable
+{
+	/** Field list for the points */
+	private FieldList _fieldList = null;
+	/** Batches waiting to be converted */
+	private ArrayBlockingQueue<String[][]> _queue = new ArrayBlockingQueue<String[][]>(MAX_WAITING_BATCHES);
+	/** Converted points, may be longer than the number of points */
+	private DataPoint[] _points = new DataPoint[1024];
+	/** Number of converted points */
+	private int _numPoints = 0;
+	/** Thread doing the conversion, started with the first batch */
+	private Thread _thread = null;
+	/** Flag set when the conversion has been cancelled */
+	private volatile boolean _cancelled = false;
+
+	/** Number of points in each batch */
+	public static final int BATCH_SIZE = 2000;
+	/** Maximum number of batches waiting, to limit the memory used if the conversion is slower */
+	private static final int MAX_WAITING_BATCHES = 4;
+	/** Empty batch to signal the end of the points */
+	private static final String[][] END_MARKER = new String[0][];
+
+
+	/**
+	 * Constructor
+	 * @param inFieldArray array of fields in each point value array
+	 */
+	public TrackBuilder(Field[] inFieldArray)
+	{
+		_fieldList = new FieldList(inFieldArray);
+	}
+
+	/**
+	 * Add a batch of points to be converted, waiting if too many batches are already waiting
+	 * @param inBatch array of point value arrays
+	 */
+	public void addBatch(String[][] inBatch)
+	{
+		if (inBatch == null || inBatch.length == 0 || _cancelled) {return;}
+		if (_thread == null)
+		{
+			_thread = new Thread(this, "TrackBuilder");
+			_thread.setDaemon(true);
+			_thread.start();
+		}
+		putBatch(inBatch);
+	}
+
+	/**
+	 * Put the given batch onto the queue
+	 * @param inBatch batch to add
+	 */
+	private void putBatch(String[][] inBatch)
+	{
+		while (true)
+		{
+			try
+			{
+				_queue.put(inBatch);
+				return;
+			}
+			catch (InterruptedException e) {} // try again
+		}
+	}
+
+	/**
+	 * Run method, converting each batch as it arrives until the end marker is received
+	 */
+	public void run()
+	{
+		while (true)
+		{
+			String[][] batch = null;
+			try {
+				batch = _queue.take();
+			}
+			catch (InterruptedException e) {continue;}
+			if (batch == END_MARKER) {break;}
+			if (!_cancelled) {
+				convertBatch(batch);
+			}
+		}
+	}
+
+	/**
+	 * Convert the given batch of values into points
+	 * @param inBatch array of point value arrays
+	 */
+	private void convertBatch(String[][] inBatch)
+	{
+		if (_numPoints + inBatch.length > _points.length)
+		{
+			DataPoint[] newPoints = new DataPoint[Math.max(_points.length * 2, _numPoints + inBatch.length)];
+			System.arraycopy(_points, 0, newPoints, 0, _numPoints);
+			_points = newPoints;
+		}
+		for (String[] values : inBatch)
+		{
+			DataPoint point = new DataPoint(values, _fieldList, null);
+			if (point.isValid())
+			{
+				_points[_numPoints] = point;
+				_numPoints++;
+			}
+		}
+	}
+
+	/**
+	 * Wait for all the batches to be converted
+	 * @return track containing all the valid points
+	 */
+	public Track finish()
+	{
+		if (_thread != null)
+		{
+			putBatch(END_MARKER);
+			while (_thread.isAlive())
+			{
+				try {
+					_thread.join();
+				}
+				catch (InterruptedException e) {} // keep waiting
+			}
+			_thread = null;
+		}
+		DataPoint[] points = new DataPoint[_numPoints];
+		System.arraycopy(_points, 0, points, 0, _numPoints);
+		_points = new DataPoint[0];
+		Track track = new Track(_fieldList, points);
+		// Set first track point to be start of segment
+		DataPoint firstTrackPoint = track.getNextTrackPoint(0);
+		if (firstTrackPoint != null) {
+			firstTrackPoint.setSegmentStart(true);
+		}
+		return track;
+	}
+
+	/**
+	 * Cancel the conversion and release the points converted so far.
+	 * The thread is told to stop through the queue, and the points are only
+	 * released once it has finished with the batch it's converting
+	 */
+	public void cancel()
+	{
+		_cancelled = true;
+		if (_thread != null)
+		{
+			_queue.clear();
+			putBatch(END_MARKER);
+			while (_thread.isAlive())
+			{
+				try {
+					_thread.join();
+				}
+				catch (InterruptedException e) {} // keep waiting
+			}
+			_thread = null;
+		}
+		_points = new DataPoint[0];
+		_numPoints = 0;
+	}
+}
@@ -3,6 +3,7 @@ package tim.prune.load.xml;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -19,6 +20,7 @@ import org.xml.sax.helpers.XMLReaderFactory;
 import tim.prune.App;
 import tim.prune.I18nManager;
 import tim.prune.data.SourceInfo;
+import tim.prune.gui.ProgressDialog;
 import tim.prune.load.MediaLinkInfo;
 
 /**
@@ -31,6 +33,66 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 	private App _app = null;
 	private XmlHandler _handler = null;
 	private String _unknownType = null;
+	private ProgressDialog _progress = null;
+
+	/** Minimum file size in bytes for showing a progress dialog */
+	private static final long MIN_PROGRESS_FILE_SIZE = 5000000L;
+
+
+	/**
+	 * Input stream which shows the proportion of the file read so far,
+	 * and stops the parsing if the progress dialog is cancelled
+	 */
+	private class ProgressInputStream extends FilterInputStream
+	{
+		private long _fileSize = 0L;
+		private long _numRead = 0L;
+		private int _lastPercent = -1;
+
+		/**
+		 * Constructor
+		 * @param inStream stream to read from
+		 * @param inFileSize size of file in bytes
+		 */
+		ProgressInputStream(InputStream inStream, long inFileSize)
+		{
+			super(inStream);
+			_fileSize = inFileSize;
+		}
+
+		public int read() throws IOException
+		{
+			final int value = super.read();
+			if (value >= 0) {addProgress(1);}
+			return value;
+		}
+
+		public int read(byte[] inBuffer, int inOffset, int inLength) throws IOException
+		{
+			final int numRead = super.read(inBuffer, inOffset, inLength);
+			if (numRead > 0) {addProgress(numRead);}
+			return numRead;
+		}
+
+		/**
+		 * Update the progress bar if necessary
+		 * @param inNumBytes number of bytes just read
+		 * @throws IOException if the load has been cancelled
+		 */
+		private void addProgress(int inNumBytes) throws IOException
+		{
+			if (_progress.isCancelled()) {
+				throw new IOException("cancelled");
+			}
+			_numRead += inNumBytes;
+			final int percent = (int) (_numRead * 100 / _fileSize);
+			if (percent != _lastPercent)
+			{
+				_progress.setValue(percent);
+				_lastPercent = percent;
+			}
+		}
+	}
 
 
 	/**
@@ -47,6 +109,9 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 	 */
 	public void reset()
 	{
+		if (_handler != null) {
+			_handler.discard();
+		}
 		_handler = null;
 		_unknownType = null;
 	}
@@ -70,18 +135,43 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 	 */
 	public void run()
 	{
-		FileInputStream inStream = null;
+		InputStream inStream = null;
 		boolean success = false;
+		// Show progress for big files, as the points are converted while the file is being read
+		final long fileSize = _file.length();
+		if (fileSize > MIN_PROGRESS_FILE_SIZE)
+		{
+			_progress = new ProgressDialog(_app.getFrame(), "function.open");
+			_progress.show();
+			_progress.setMaximum(100);
+		}
 		try
 		{
 			inStream = new FileInputStream(_file);
+			if (_progress != null) {
+				inStream = new ProgressInputStream(inStream, fileSize);
+			}
 			success = parseXmlStream(inStream);
 		}
 		catch (FileNotFoundException fnfe) {}
 
 		// Clean up the stream, don't need it any more
-		try {inStream.close();} catch (IOException e2) {}
+		try {inStream.close();} catch (Exception e2) {}
 
+		if (_progress != null)
+		{
+			if (_progress.isCancelled())
+			{
+				success = false;
+				_app.informNoDataLoaded();
+			}
+			_progress.dispose();
+			_progress = null;
+		}
+		// Throw away any points converted so far if the load failed
+		if (!success) {
+			reset();
+		}
 		if (success)
 		{
 			// Check whether handler was properly instantiated
@@ -98,8 +188,7 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 				sourceInfo.setFileTitle(_handler.getFileTitle());
 
 				// Pass information back to app
-				_app.informDataLoaded(_handler.getFieldArray(), _handler.getDataArray(),
-					null, sourceInfo, _handler.getTrackNameList(),
+				_app.informDataLoaded(_handler.getLoadedTrack(), sourceInfo, _handler.getTrackNameList(),
 					new MediaLinkInfo(_handler.getLinkArray()));
 			}
 		}
@@ -136,7 +225,8 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 			}
 			catch (Exception e)
 			{
-				// Show error dialog
+				// Show error dialog unless the load was cancelled
+				if (_progress != null && _progress.isCancelled()) {return false;}
 				_app.showErrorMessageNoLookup("error.load.dialogtitle",
 					I18nManager.getText("error.load.othererror") + " " + e.getMessage());
 			}
@@ -3,6 +3,7 @@ package tim.prune.load.xml;
 import org.xml.sax.helpers.DefaultHandler;
 
 import tim.prune.data.Field;
+import tim.prune.data.Track;
 import tim.prune.load.TrackNameList;
 
 /**
@@ -11,10 +12,16 @@ import tim.prune.load.TrackNameList;
 public abstract class XmlHandler extends DefaultHandler
 {
 	/**
-	 * Method for returning data loaded from file
-	 * @return 2d String array containing data
+	 * Method for returning the points loaded from file
+	 * @return Track containing the loaded points
 	 */
-	public abstract String[][] getDataArray();
+	public abstract Track getLoadedTrack();
+
+	/**
+	 * Can be overridden (eg by gpx handler) to stop any work still running in the background
+	 * when the handler is not going to be used
+	 */
+	public void discard() {}
 
 	/**
 	 * @return field array describing fields of data
@@ -67,8 +67,7 @@ public class ZipFileLoader
 							// Send back to app
 							SourceInfo sourceInfo = new SourceInfo(inFile,
 								(handler instanceof GpxHandler?SourceInfo.FILE_TYPE.GPX:SourceInfo.FILE_TYPE.KML));
-							_app.informDataLoaded(handler.getFieldArray(), handler.getDataArray(),
-								null, sourceInfo, handler.getTrackNameList(),
+							_app.informDataLoaded(handler.getLoadedTrack(), sourceInfo, handler.getTrackNameList(),
 								new MediaLinkInfo(inFile, handler.getLinkArray()));
 							xmlFound = true;
 						}
@@ -81,7 +80,10 @@ public class ZipFileLoader
 				_app.showErrorMessage("error.load.dialogtitle", "error.load.noxmlinzip");
 			}
 		}
-		catch (Exception e) {
+		catch (Exception e)
+		{
+			// Stop the conversion of any points read so far
+			_xmlLoader.reset();
 			_app.showErrorMessageNoLookup("error.load.dialogtitle", e.getClass().getName() + "\n - " + e.getMessage());
 		}
 	}
@@ -115,9 +117,9 @@ public class ZipFileLoader
 						else
 						{
 							// Send back to app
-							_app.informDataLoaded(handler.getFieldArray(), handler.getDataArray(),
+							_app.informDataLoaded(handler.getLoadedTrack(),
 								new SourceInfo("gpsies", SourceInfo.FILE_TYPE.GPSIES),
-								handler.getTrackNameList());
+								handler.getTrackNameList(), null);
 							xmlFound = true;
 						}
 					}
@@ -128,7 +130,10 @@ public class ZipFileLoader
 				_app.showErrorMessage("error.load.dialogtitle", "error.load.noxmlinzip");
 			}
 		}
-		catch (Exception e) {
+		catch (Exception e)
+		{
+			// Stop the conversion of any points read so far
+			_xmlLoader.reset();
 			System.err.println("ZipStream Error: " + e.getClass().getName() + " -message= " + e.getMessage());
 		}
 	}
@@ -66,6 +66,8 @@ public class BaseImageConfigDialog implements Runnable
 	private boolean _rebuilding = false;
 	/** Cached values to allow cancellation of dialog */
 	private ImageDefinition _imageDef = new ImageDefinition();
+	/** Maximum image size in pixels which the consumer can handle */
+	private int _maxImageSize = MapGrouter.MAX_IMAGE_SIZE;
 
 
 	/**
@@ -96,6 +98,14 @@ public class BaseImageConfigDialog implements Runnable
 		}
 	}
 
+	/**
+	 * @param inMaxSize maximum image size in pixels which the consumer can handle
+	 */
+	public void setMaxImageSize(int inMaxSize)
+	{
+		_maxImageSize = inMaxSize;
+	}
+
 	/**
 	 * Begin the function
 	 */
@@ -189,7 +199,7 @@ public class BaseImageConfigDialog implements Runnable
 				final int zoomFactor = 1 << i;
 				final int pixCount = (int) (xyExtent * zoomFactor * 256);
 				if (pixCount > 100      // less than this isn't worth it
-					&& pixCount < 4000  // don't want to run out of memory
+					&& pixCount < _maxImageSize  // don't want to run out of memory
 					&& isZoomAvailable(i, MapSourceLibrary.getSource(currentSource)))
 				{
 					_zoomDropdown.addItem("" + i);
@@ -461,7 +471,7 @@ public class BaseImageConfigDialog implements Runnable
 		MapSource mapSource = MapSourceLibrary.getSource(mapIndex);
 
 		// Use the Grouter to create an image (slow, blocks thread)
-		GroutedImage groutedImage = _grouter.createMapImage(_track, mapSource, getSelectedZoomLevel());
+		GroutedImage groutedImage = _grouter.createPreviewImage(_track, mapSource, getSelectedZoomLevel(), false);
 
 		// If the dialog hasn't changed, pass the generated image to the preview panel
 		if (_useImageCheckbox.isSelected()
@@ -528,7 +538,7 @@ public class BaseImageConfigDialog implements Runnable
 		final int zoomFactor = 1 << _imageDef.getZoom();
 		final int pixCount = (int) (xyExtent * zoomFactor * 256);
 		return (pixCount > 100     // less than this isn't worth it
-			&& pixCount < 4000);   // don't want to run out of memory
+			&& pixCount < _maxImageSize);   // don't want to run out of memory
 	}
 
 	/**
@@ -554,7 +564,7 @@ public class BaseImageConfigDialog implements Runnable
 				final int mapIndex = _mapSourceDropdown.getSelectedIndex();
 				if (!_useImageCheckbox.isSelected() || mapIndex < 0) {return;}
 				MapSource mapSource = MapSourceLibrary.getSource(mapIndex);
-				grouter.createMapImage(_track, mapSource, getSelectedZoomLevel(), true);
+				grouter.createPreviewImage(_track, mapSource, getSelectedZoomLevel(), true);
 				_progressBar.setVisible(false);
 				// And then refresh the dialog
 				_grouter.clearMapImage();
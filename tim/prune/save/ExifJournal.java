@@ -0,0 +1,143 @@
+package tim.prune.save;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Journal of the photos written by the ExifSaver, so that if saving is
+ * interrupted, the photos which were already done can be skipped next time.
+ * Each line holds the signature of the command used, the size and
+ * modification time of the file after writing, and the path of the file.
+ */
+public class ExifJournal
+{
+	/** File to store the journal in */
+	private File _file = null;
+	/** Entries loaded from file, by path */
+	private HashMap<String, String> _entries = new HashMap<String, String>();
+	/** Writer for appending new entries */
+	private PrintWriter _writer = null;
+
+
+	/**
+	 * Constructor, loading any entries left from an interrupted save
+	 * @param inFile journal file
+	 */
+	public ExifJournal(File inFile)
+	{
+		_file = inFile;
+		if (_file.exists()) {
+			load();
+		}
+	}
+
+	/**
+	 * @param inCommand command used to write the file
+	 * @return signature identifying the command
+	 */
+	public static String getSignature(String[] inCommand)
+	{
+		return Integer.toHexString(Arrays.hashCode(inCommand));
+	}
+
+	/**
+	 * Check whether a file has already been written with the given command
+	 * @param inFile photo file
+	 * @param inSignature signature of command
+	 * @return true if the file was written and hasn't changed since
+	 */
+	public synchronized boolean isDone(File inFile, String inSignature)
+	{
+		String entry = _entries.get(inFile.getAbsolutePath());
+		return entry != null && entry.equals(makeEntry(inFile, inSignature));
+	}
+
+	/**
+	 * Record that the given file has been written
+	 * @param inFile photo file
+	 * @param inSignature signature of command
+	 */
+	public synchronized void addDone(File inFile, String inSignature)
+	{
+		try
+		{
+			if (_writer == null) {
+				_writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(_file, true), "UTF-8"));
+			}
+			_writer.println(makeEntry(inFile, inSignature) + "\t" + inFile.getAbsolutePath());
+			_writer.flush();
+		}
+		catch (IOException e) {
+			System.err.println("ExifJournal: " + e.getClass().getName() + " - " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Close the journal, keeping the file so that saving can be resumed
+	 */
+	public synchronized void close()
+	{
+		if (_writer != null) {
+			_writer.close();
+		}
+		_writer = null;
+	}
+
+	/**
+	 * Close the journal and delete the file, once saving has been completed
+	 */
+	public synchronized void clear()
+	{
+		close();
+		_entries.clear();
+		if (_file.exists() && !_file.delete()) {
+			System.err.println("ExifJournal: failed to delete " + _file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * @return entry for the current state of the file
+	 */
+	private static String makeEntry(File inFile, String inSignature)
+	{
+		return inSignature + "\t" + inFile.length() + "\t" + inFile.lastModified();
+	}
+
+	/**
+	 * Load the entries from the journal file
+	 */
+	private void load()
+	{
+		BufferedReader reader = null;
+		try
+		{
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(_file), "UTF-8"));
+			String line = null;
+			while ((line = reader.readLine()) != null)
+			{
+				String[] parts = line.split("\t", 4);
+				if (parts.length == 4) {
+					_entries.put(parts[3], parts[0] + "\t" + parts[1] + "\t" + parts[2]);
+				}
+			}
+		}
+		catch (IOException e) {
+			System.err.println("ExifJournal: " + e.getClass().getName() + " - " + e.getMessage());
+		}
+		finally
+		{
+			try {
+				if (reader != null) reader.close();
+			}
+			catch (IOException e) {} // ignore
+		}
+	}
+}
@@ -7,6 +7,13 @@ import java.awt.Frame;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
@@ -41,7 +48,14 @@ public class ExifSaver implements Runnable
 	private JCheckBox _forceCheckbox = null;
 	private JProgressBar _progressBar = null;
 	private PhotoTableModel _photoTableModel = null;
-	private boolean _saveCancelled = false;
+	private volatile boolean _saveCancelled = false;
+	private AtomicInteger _numSaved = null, _numFailed = null, _numForced = null, _numDone = null;
+	private volatile Exception _saveException = null;
+
+	/** Maximum number of photos to save in parallel */
+	private static final int MAX_WORKERS = 4;
+	/** Journal file for resuming an interrupted save */
+	private static final File JOURNAL_FILE = new File(System.getProperty("user.home"), ".pruneexifjournal");
 
 
 	// To preserve timestamps of file use parameter -P
@@ -227,55 +241,87 @@ public class ExifSaver implements Runnable
 	public void run()
 	{
 		_saveCancelled = false;
-		PhotoTableEntry entry = null;
-		Photo photo = null;
 		int numPhotos = _photoTableModel.getRowCount();
 		_progressBar.setMaximum(numPhotos);
 		_progressBar.setValue(0);
 		_progressBar.setVisible(true);
 		boolean overwriteFlag = _overwriteCheckbox.isSelected();
-		int numSaved = 0, numFailed = 0, numForced = 0;
-		// Loop over all photos in list
-		for (int i=0; i<numPhotos; i++)
+		boolean forceFlag = _forceCheckbox.isSelected();
+		_numSaved = new AtomicInteger(0);
+		_numFailed = new AtomicInteger(0);
+		_numForced = new AtomicInteger(0);
+		_numDone = new AtomicInteger(0);
+		_saveException = null;
+		ExifJournal journal = new ExifJournal(JOURNAL_FILE);
+		// Loop over all photos in list to collect the commands to run
+		ConcurrentLinkedQueue<SaveJob> jobs = new ConcurrentLinkedQueue<SaveJob>();
+		for (int i=0; i<numPhotos && !_saveCancelled; i++)
 		{
-			entry = _photoTableModel.getPhotoTableEntry(i);
-			if (entry != null && entry.getSaveFlag() && !_saveCancelled)
+			PhotoTableEntry entry = _photoTableModel.getPhotoTableEntry(i);
+			if (entry != null && entry.getSaveFlag())
 			{
 				// Only look at photos which are selected and whose status has changed since load
-				photo = entry.getPhoto();
+				Photo photo = entry.getPhoto();
 				if (photo != null && photo.isModified())
 				{
-					// Increment counter if save successful
-					if (savePhoto(photo, overwriteFlag, false)) {
-						numSaved++;
+					SaveJob job = makeSaveJob(photo, overwriteFlag, forceFlag);
+					if (job == null) {
+						_numFailed.incrementAndGet();
 					}
-					else {
-						if (_forceCheckbox.isSelected() && savePhoto(photo, overwriteFlag, true))
-						{
-							numForced++;
-						}
-						else {
-							numFailed++;
-						}
+					else if (journal.isDone(job._file, job._signature)) {
+						_numSaved.incrementAndGet(); // already saved by an earlier, interrupted run
+					}
+					else
+					{
+						jobs.add(job);
+						continue;
 					}
 				}
 			}
 			// update progress bar
-			_progressBar.setValue(i + 1);
+			_progressBar.setValue(_numDone.incrementAndGet());
+		}
+		// Run the commands using a few workers in parallel
+		final int numWorkers = Math.min(jobs.size(),
+			Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+		if (numWorkers > 0)
+		{
+			ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+			for (int i=0; i<numWorkers; i++) {
+				pool.execute(new SaveWorker(jobs, journal));
+			}
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException ie) {}
+		}
+		// Only keep the journal if saving was interrupted
+		if (_saveCancelled) {
+			journal.close();
+		}
+		else {
+			journal.clear();
 		}
 		_progressBar.setVisible(false);
 		// Show confirmation
-		UpdateMessageBroker.informSubscribers(I18nManager.getTextWithNumber("confirm.saveexif.ok", numSaved));
-		if (numFailed > 0)
+		UpdateMessageBroker.informSubscribers(I18nManager.getTextWithNumber("confirm.saveexif.ok", _numSaved.get()));
+		if (_saveException != null)
+		{
+			// show error message
+			JOptionPane.showMessageDialog(_parentFrame, "Exception: '" + _saveException.getClass().getName() + "' : "
+				+ _saveException.getMessage(), I18nManager.getText("dialog.saveexif.title"), JOptionPane.ERROR_MESSAGE);
+		}
+		if (_numFailed.get() > 0)
 		{
 			JOptionPane.showMessageDialog(_parentFrame,
-				I18nManager.getTextWithNumber("error.saveexif.failed", numFailed),
+				I18nManager.getTextWithNumber("error.saveexif.failed", _numFailed.get()),
 				I18nManager.getText("dialog.saveexif.title"), JOptionPane.ERROR_MESSAGE);
 		}
-		if (numForced > 0)
+		if (_numForced.get() > 0)
 		{
 			JOptionPane.showMessageDialog(_parentFrame,
-				I18nManager.getTextWithNumber("error.saveexif.forced", numForced),
+				I18nManager.getTextWithNumber("error.saveexif.forced", _numForced.get()),
 				I18nManager.getText("dialog.saveexif.title"), JOptionPane.WARNING_MESSAGE);
 		}
 		// close dialog, all finished
@@ -284,17 +330,17 @@ public class ExifSaver implements Runnable
 
 
 	/**
-	 * Save the details for the given photo
+	 * Check the given photo and make the commands to save its details
 	 * @param inPhoto Photo object
 	 * @param inOverwriteFlag true to overwrite file, false otherwise
-	 * @param inForceFlag true to force write, ignoring minor errors
-	 * @return true if details saved ok
+	 * @param inForceFlag true to also make a command to force the write, ignoring minor errors
+	 * @return save job with the commands, or null if the photo can't be saved
 	 */
-	private boolean savePhoto(Photo inPhoto, boolean inOverwriteFlag, boolean inForceFlag)
+	private SaveJob makeSaveJob(Photo inPhoto, boolean inOverwriteFlag, boolean inForceFlag)
 	{
 		// If photos don't have a file, then can't save them
 		if (inPhoto.getFile() == null) {
-			return false;
+			return null;
 		}
 		// Check whether photo file still exists
 		if (!inPhoto.getFile().exists())
@@ -303,7 +349,7 @@ public class ExifSaver implements Runnable
 			JOptionPane.showMessageDialog(_parentFrame,
 				I18nManager.getText("error.saveexif.filenotfound") + " : " + inPhoto.getFile().getAbsolutePath(),
 				I18nManager.getText("dialog.saveexif.title"), JOptionPane.ERROR_MESSAGE);
-			return false;
+			return null;
 		}
 		// Warn if file read-only and selected to overwrite
 		if (inOverwriteFlag && !inPhoto.getFile().canWrite())
@@ -322,39 +368,158 @@ public class ExifSaver implements Runnable
 			else
 			{
 				// don't do anything with this file
-				return false;
+				return null;
 			}
 		}
-		String[] command = null;
+		String[] command = getSaveCommand(inPhoto, inOverwriteFlag, false);
+		String[] forceCommand = inForceFlag ? getSaveCommand(inPhoto, inOverwriteFlag, true) : null;
+		return new SaveJob(inPhoto.getFile(), command, forceCommand);
+	}
+
+
+	/**
+	 * Make the command to save the details for the given photo
+	 * @param inPhoto Photo object
+	 * @param inOverwriteFlag true to overwrite file, false otherwise
+	 * @param inForceFlag true to force write, ignoring minor errors
+	 * @return external command to run
+	 */
+	private static String[] getSaveCommand(Photo inPhoto, boolean inOverwriteFlag, boolean inForceFlag)
+	{
 		if (inPhoto.getCurrentStatus() == Photo.Status.NOT_CONNECTED)
 		{
 			// Photo is no longer connected, so delete gps tags
-			command = getDeleteGpsExifTagsCommand(inPhoto.getFile(), inOverwriteFlag);
+			return getDeleteGpsExifTagsCommand(inPhoto.getFile(), inOverwriteFlag);
 		}
-		else
+		// Photo is now connected, so write new gps tags
+		return getWriteGpsExifTagsCommand(inPhoto.getFile(), inPhoto.getDataPoint(), inOverwriteFlag, inForceFlag);
+	}
+
+
+	/**
+	 * Commands to save the details of a single photo
+	 */
+	private static class SaveJob
+	{
+		private File _file = null;
+		private String[] _command = null;
+		private String[] _forceCommand = null;
+		private String _signature = null;
+
+		private SaveJob(File inFile, String[] inCommand, String[] inForceCommand)
 		{
-			// Photo is now connected, so write new gps tags
-			command = getWriteGpsExifTagsCommand(inPhoto.getFile(), inPhoto.getDataPoint(), inOverwriteFlag, inForceFlag);
+			_file = inFile;
+			_command = inCommand;
+			_forceCommand = inForceCommand;
+			_signature = ExifJournal.getSignature(inCommand);
 		}
-		// Execute exif command
-		boolean saved = false;
-		try
+	}
+
+
+	/**
+	 * Worker to run save jobs from the queue until it's empty,
+	 * using a single exiftool process for all of them if possible
+	 */
+	private class SaveWorker implements Runnable
+	{
+		private ConcurrentLinkedQueue<SaveJob> _jobs = null;
+		private ExifJournal _journal = null;
+		private ExiftoolSession _session = null;
+		private boolean _useSession = true;
+
+		/**
+		 * Constructor
+		 * @param inJobs queue of jobs shared between workers
+		 * @param inJournal journal to record saved files
+		 */
+		private SaveWorker(ConcurrentLinkedQueue<SaveJob> inJobs, ExifJournal inJournal)
 		{
-			Process process = Runtime.getRuntime().exec(command);
-			// Wait for process to finish so not too many run in parallel
-			try {
-				process.waitFor();
+			_jobs = inJobs;
+			_journal = inJournal;
+		}
+
+		/** Run all the jobs */
+		public void run()
+		{
+			try
+			{
+				SaveJob job = null;
+				while (!_saveCancelled && (job = _jobs.poll()) != null)
+				{
+					// Increment counter if save successful
+					if (runCommand(job._command))
+					{
+						_numSaved.incrementAndGet();
+						_journal.addDone(job._file, job._signature);
+					}
+					else if (job._forceCommand != null && runCommand(job._forceCommand))
+					{
+						_numForced.incrementAndGet();
+						_journal.addDone(job._file, job._signature);
+					}
+					else {
+						_numFailed.incrementAndGet();
+					}
+					// update progress bar
+					_progressBar.setValue(_numDone.incrementAndGet());
+				}
+			}
+			finally
+			{
+				if (_session != null) {
+					_session.close();
+				}
 			}
-			catch (InterruptedException ie) {}
-			saved = (process.exitValue() == 0);
 		}
-		catch (Exception e)
+
+		/**
+		 * Run the given command, using the exiftool session if it's working
+		 * or a separate process if not
+		 * @param inCommand command including exiftool path
+		 * @return true if successful
+		 */
+		private boolean runCommand(String[] inCommand)
 		{
-			// show error message
-			JOptionPane.showMessageDialog(_parentFrame, "Exception: '" + e.getClass().getName() + "' : "
-				+ e.getMessage(), I18nManager.getText("dialog.saveexif.title"), JOptionPane.ERROR_MESSAGE);
+			if (_useSession)
+			{
+				try
+				{
+					if (_session == null) {
+						_session = new ExiftoolSession(inCommand[0]);
+					}
+					return _session.execute(Arrays.copyOfRange(inCommand, 1, inCommand.length));
+				}
+				catch (IOException e)
+				{
+					final boolean timedOut = (_session != null && _session.hasTimedOut());
+					if (_session != null) {
+						_session.close();
+					}
+					_session = null;
+					// A hung command fails, and the next job starts a new session
+					if (timedOut) {
+						return false;
+					}
+					// Session couldn't be started or has stopped, so don't use it again
+					_useSession = false;
+				}
+			}
+			try
+			{
+				Process process = Runtime.getRuntime().exec(inCommand);
+				// Wait for process to finish so not too many run in parallel
+				try {
+					process.waitFor();
+				}
+				catch (InterruptedException ie) {}
+				return process.exitValue() == 0;
+			}
+			catch (Exception e)
+			{
+				_saveException = e;
+				return false;
+			}
 		}
-		return saved;
 	}
 
 
@@ -370,7 +535,7 @@ public class ExifSaver implements Runnable
 		String[] result = new String[inOverwrite?5:4];
 		result[0] = Config.getConfigString(Config.KEY_EXIFTOOL_PATH);
 		result[1] = "-P";
-		if (inOverwrite) {result[2] = " -overwrite_original_in_place";}
+		if (inOverwrite) {result[2] = "-overwrite_original_in_place";}
 		// remove all gps tags
 		int paramOffset = inOverwrite?3:2;
 		result[paramOffset] = "-GPS:All=";
@@ -0,0 +1,127 @@
+package tim.prune.save;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Long-running exiftool process using its -stay_open mode,
+ * so that many files can be written without starting a new process for each one.
+ * Each command's arguments are sent one per line, and the output
+ * is read until exiftool reports that it's ready for the next command.
+ * If a command takes too long, the process is killed and the session can't be used again.
+ */
+public class ExiftoolSession
+{
+	private Process _process = null;
+	private Writer _writer = null;
+	private BufferedReader _reader = null;
+	private int _commandNum = 0;
+	/** Timer to kill the process if a command hangs */
+	private Timer _timer = null;
+	/** Flag set if the process was killed because a command took too long */
+	private volatile boolean _timedOut = false;
+
+	/** Maximum time in milliseconds to wait for a single command */
+	private static final long COMMAND_TIMEOUT = 60000L;
+
+
+	/**
+	 * Constructor, starting the process
+	 * @param inExiftoolPath path to exiftool
+	 * @throws IOException if the process couldn't be started
+	 */
+	public ExiftoolSession(String inExiftoolPath) throws IOException
+	{
+		// Filenames in the argument stream are given in utf8, which isn't the default on Windows
+		ProcessBuilder builder = new ProcessBuilder(inExiftoolPath, "-stay_open", "True", "-@", "-",
+			"-common_args", "-charset", "filename=utf8");
+		builder.redirectErrorStream(true);
+		_process = builder.start();
+		_writer = new OutputStreamWriter(_process.getOutputStream(), "UTF-8");
+		_reader = new BufferedReader(new InputStreamReader(_process.getInputStream(), "UTF-8"));
+		_timer = new Timer("exiftool timeout", true);
+	}
+
+	/**
+	 * Execute a single command and wait for it to finish
+	 * @param inArgs arguments to pass to exiftool, not including exiftool itself
+	 * @return true if the command completed without errors
+	 * @throws IOException if the process has stopped, can't be talked to or has timed out
+	 */
+	public boolean execute(String[] inArgs) throws IOException
+	{
+		_commandNum++;
+		StringBuilder builder = new StringBuilder();
+		for (String arg : inArgs) {
+			builder.append(arg).append('\n');
+		}
+		builder.append("-execute").append(_commandNum).append('\n');
+		// Kill the process if the ready marker doesn't arrive in time, which ends the read
+		TimerTask killTask = new TimerTask() {
+			public void run()
+			{
+				_timedOut = true;
+				_process.destroy();
+			}
+		};
+		_timer.schedule(killTask, COMMAND_TIMEOUT);
+		try
+		{
+			_writer.write(builder.toString());
+			_writer.flush();
+			// Read output until the ready marker for this command
+			final String readyLine = "{ready" + _commandNum + "}";
+			boolean errors = false;
+			String line = null;
+			while ((line = _reader.readLine()) != null)
+			{
+				line = line.trim();
+				if (line.equals(readyLine)) {
+					return !errors;
+				}
+				if (line.startsWith("Error") || line.endsWith("due to errors")) {
+					errors = true;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			if (!_timedOut) {throw e;}
+		}
+		finally {
+			killTask.cancel();
+		}
+		throw new IOException(_timedOut ? "exiftool timed out" : "exiftool stopped unexpectedly");
+	}
+
+	/**
+	 * @return true if the process was killed because a command took too long
+	 */
+	public boolean hasTimedOut()
+	{
+		return _timedOut;
+	}
+
+	/**
+	 * Tell the process to finish, and wait for it
+	 */
+	public void close()
+	{
+		_timer.cancel();
+		if (_timedOut) {return;} // process already killed
+		try
+		{
+			_writer.write("-stay_open\nFalse\n");
+			_writer.close();
+			_process.waitFor();
+		}
+		catch (Exception e) {
+			_process.destroy();
+		}
+	}
+}
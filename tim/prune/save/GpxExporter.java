@@ -336,6 +336,7 @@ public class GpxExporter extends GenericFunction implements Runnable
 
 			// close file
 			writer.close();
+			if (gpxCachers != null) {gpxCachers.close();}
 			// Store directory in config for later
 			Config.setConfigString(Config.KEY_TRACK_DIR, _exportFile.getParentFile().getAbsolutePath());
 			// Add to recent file list
@@ -356,6 +357,7 @@ public class GpxExporter extends GenericFunction implements Runnable
 				if (writer != null) writer.close();
 			}
 			catch (IOException ioe2) {}
+			if (gpxCachers != null) {gpxCachers.close();}
 			JOptionPane.showMessageDialog(_parentFrame,
 				I18nManager.getText("error.save.failed") + " : " + ioe.getMessage(),
 				I18nManager.getText("error.save.dialogtitle"), JOptionPane.ERROR_MESSAGE);
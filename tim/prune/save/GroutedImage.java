@@ -12,6 +12,7 @@ import tim.prune.data.DoubleRange;
 public class GroutedImage
 {
 	private BufferedImage _image = null;
+	private int   _imageSize = -1;
 	private int   _numTilesFound = 0;
 	private int   _numTilesMissing = 0;
 	private DoubleRange _xRange = null;
@@ -26,6 +27,9 @@ public class GroutedImage
 	public GroutedImage(BufferedImage inImage, int inTilesUsed, int inTilesMissing)
 	{
 		_image = inImage;
+		if (inImage != null) {
+			_imageSize = inImage.getWidth();
+		}
 		_numTilesFound = inTilesUsed;
 		_numTilesMissing = inTilesMissing;
 	}
@@ -43,7 +47,14 @@ public class GroutedImage
 	public int getImageSize()
 	{
 		if (_image == null) {return -1;}
-		return _image.getWidth();
+		return _imageSize;
+	}
+
+	/**
+	 * @param inSize pixel dimensions of the full image, if this one is just a scaled-down preview
+	 */
+	public void setImageSize(int inSize) {
+		_imageSize = inSize;
 	}
 
 	/**
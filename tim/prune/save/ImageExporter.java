@@ -7,6 +7,7 @@ import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.image.BufferedImage;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
@@ -14,7 +15,6 @@ import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
@@ -168,6 +168,7 @@ public class ImageExporter extends GenericFunction implements BaseImageConsumer
 
 		// Panel for the base image
 		_baseImagePanel = new BaseImageDefinitionPanel(this, _dialog, _app.getTrackInfo().getTrack());
+		_baseImagePanel.setMaxImageSize(MapGrouter.MAX_STREAMED_IMAGE_SIZE);
 
 		// Panel for the checkboxes at the top
 		JPanel checkPanel = new JPanel();
@@ -250,190 +251,280 @@ public class ImageExporter extends GenericFunction implements BaseImageConsumer
 	 */
 	private boolean exportFile(File inPngFile)
 	{
-		// Get the image file from the grouter
+		// Reuse the preview image if it's full size, otherwise get a tile stitcher for the selected map source and zoom
 		ImageDefinition imageDef = _baseImagePanel.getImageDefinition();
 		MapSource source = MapSourceLibrary.getSource(imageDef.getSourceIndex());
-		MapGrouter grouter = _baseImagePanel.getGrouter();
-		GroutedImage baseImage = grouter.getMapImage(_app.getTrackInfo().getTrack(), source,
-			imageDef.getZoom());
-		if (baseImage == null || !baseImage.isValid())
+		GroutedImage baseImage = _baseImagePanel.getGrouter().getFullSizeImage(source, imageDef.getZoom());
+		TileStitcher stitcher = null;
+		if (baseImage == null)
 		{
-			_app.showErrorMessage(getNameKey(), "dialog.exportpov.cannotmakebaseimage");
-			return true;
+			stitcher = MapGrouter.createStitcher(_app.getTrackInfo().getTrack(), source, imageDef.getZoom(), false);
+			if (stitcher == null)
+			{
+				_app.showErrorMessage(getNameKey(), "dialog.exportpov.cannotmakebaseimage");
+				return true;
+			}
 		}
 		try
 		{
+			// Draw the track on top of each strip if required, and write the strips straight to file
+			StripPainter painter = null;
 			if (_drawDataCheckbox.isSelected())
 			{
-				// Draw the track on top of this image
-				drawData(baseImage);
+				painter = (baseImage != null ?
+					new DataPainter(baseImage.getXRange(), baseImage.getYRange(), imageDef.getZoom(), baseImage.getImageSize())
+					: new DataPainter(stitcher.getXRange(), stitcher.getYRange(), imageDef.getZoom(), stitcher.getImageSize()));
 			}
-			// Write composite image to file
-			if (!ImageIO.write(baseImage.getImage(), "png", inPngFile)) {
+			final boolean written = (baseImage != null ? MapGrouter.writeMapImage(baseImage, inPngFile, painter)
+				: MapGrouter.writeMapImage(stitcher, inPngFile, painter));
+			if (!written) {
 				_app.showErrorMessage(getNameKey(), "dialog.exportpov.cannotmakebaseimage");
-				return false; // choose again - the image creation worked but the save failed
 			}
 		}
-		catch (IOException ioe) {
+		catch (IOException ioe)
+		{
 			System.err.println("Can't write image: " + ioe.getClass().getName());
+			_app.showErrorMessage(getNameKey(), "dialog.exportpov.cannotmakebaseimage");
+			return false; // choose again - the image creation worked but the save failed
 		}
 		return true;
 	}
 
 	/**
-	 * Draw the track and waypoint data from the current Track onto the given image
-	 * @param inImage GroutedImage from map tiles
+	 * Painter to draw the track and waypoint data from the current Track onto each strip of the image.
+	 * Waypoint names are placed one strip ahead, so that each name is placed
+	 * before any of the rows it could cover have been written.
 	 */
-	private void drawData(GroutedImage inImage)
+	private class DataPainter implements StripPainter
 	{
-		// Work out x, y limits for drawing
-		DoubleRange xRange = inImage.getXRange();
-		DoubleRange yRange = inImage.getYRange();
-		final int zoomFactor = 1 << _baseImagePanel.getImageDefinition().getZoom();
-		Graphics g = inImage.getImage().getGraphics();
-		// TODO: Set line width, style etc
-		final PointColourer pointColourer = _app.getPointColourer();
-		final Color defaultPointColour = Config.getColourScheme().getColour(ColourScheme.IDX_POINT);
-		g.setColor(defaultPointColour);
-
-		// Loop to draw all track points
-		final Track track = _app.getTrackInfo().getTrack();
-		final int numPoints = track.getNumPoints();
-		int prevX = 0, prevY = 0;
-		for (int i=0; i<numPoints; i++)
+		/** Track to draw */
+		private Track _track = null;
+		/** Pixel coordinates of each point on the image */
+		private int[] _pxs = null, _pys = null;
+		/** Size of image in pixels */
+		private int _imageSize = 0;
+		/** Font for waypoint names */
+		private Font _nameFont = null;
+		/** Metrics of name font */
+		private FontMetrics _fontMetrics = null;
+		/** Number of rows above or below a waypoint which its name could cover */
+		private int _nameReach = 0;
+		/** Position of each waypoint's name once it's been placed */
+		private int[] _nameXs = null, _nameYs = null;
+		/** Flag for each point whether its name has been placed (or couldn't be) */
+		private boolean[] _namePlaced = null;
+
+		/** Marker for names which couldn't be placed */
+		private static final int NOT_DRAWN = Integer.MIN_VALUE;
+
+		/**
+		 * Constructor
+		 * @param inXRange x range of image
+		 * @param inYRange y range of image
+		 * @param inZoom zoom level
+		 * @param inImageSize image size in pixels
+		 */
+		DataPainter(DoubleRange inXRange, DoubleRange inYRange, int inZoom, int inImageSize)
 		{
-			DataPoint point = track.getPoint(i);
-			if (!point.isWaypoint())
+			_track = _app.getTrackInfo().getTrack();
+			_imageSize = inImageSize;
+			final int zoomFactor = 1 << inZoom;
+			final int numPoints = _track.getNumPoints();
+			_pxs = new int[numPoints];
+			_pys = new int[numPoints];
+			for (int i=0; i<numPoints; i++)
 			{
-				// Determine what colour to use to draw the track point
-				if (pointColourer != null)
-				{
-					Color c = pointColourer.getColour(i);
-					g.setColor(c == null ? defaultPointColour : c);
-				}
-				double x = track.getX(i) - xRange.getMinimum();
-				double y = track.getY(i) - yRange.getMinimum();
 				// use zoom level to calculate pixel coords on image
-				int px = (int) (x * zoomFactor * 256), py = (int) (y * zoomFactor * 256);
-				// System.out.println("Point: x=" + x + ", px=" + px + ", y=" + y + ", py=" + py);
-				if (!point.getSegmentStart()) {
-					// draw from previous point to this one
-					g.drawLine(prevX, prevY, px, py);
-				}
-				// Only draw points if requested
-				if (_drawTrackPointsCheckbox.isSelected())
-				{
-					g.drawRect(px-2, py-2, 3, 3);
-				}
-				// save coordinates
-				prevX = px; prevY = py;
+				double x = _track.getX(i) - inXRange.getMinimum();
+				double y = _track.getY(i) - inYRange.getMinimum();
+				_pxs[i] = (int) (x * zoomFactor * 256);
+				_pys[i] = (int) (y * zoomFactor * 256);
 			}
+			// Set text size according to input
+			Graphics g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).getGraphics();
+			_nameFont = g.getFont();
+			int fontScalePercent = _textScaleField.getValue();
+			if (fontScalePercent > 10 && fontScalePercent <= 999)
+			{
+				_nameFont = _nameFont.deriveFont((float) (_nameFont.getSize() * 0.01 * fontScalePercent));
+			}
+			_fontMetrics = g.getFontMetrics(_nameFont);
+			g.dispose();
+			// Names can be shifted up to 12 pixels away, then the text itself can go further
+			_nameReach = 2 * _fontMetrics.getHeight() + 16;
+			_nameXs = new int[numPoints];
+			_nameYs = new int[numPoints];
+			_namePlaced = new boolean[numPoints];
+		}
+
+		/** @return number of extra rows needed to place the names */
+		public int getOverlap() {
+			return 2 * _nameReach;
 		}
 
-		// Now the waypoints
-		final Color textColour = Config.getColourScheme().getColour(ColourScheme.IDX_TEXT);
-		g.setColor(textColour);
-		WpIconDefinition wpIconDefinition = null;
-		final int wpType = Config.getConfigInt(Config.KEY_WAYPOINT_ICONS);
-		if (wpType != WpIconLibrary.WAYPT_DEFAULT)
+		/**
+		 * Draw the data on top of the given strip
+		 * @param inStrip strip image whose first row is row inTop of the whole image
+		 * @param inTop index of first row of strip
+		 * @param inEnd index of row after the last one which will be written
+		 */
+		public void paintStrip(BufferedImage inStrip, int inTop, int inEnd)
 		{
-			wpIconDefinition = WpIconLibrary.getIconDefinition(wpType, WpIconLibrary.SIZE_MEDIUM);
+			Graphics g = inStrip.getGraphics();
+			g.translate(0, -inTop);
+			drawPoints(g, inTop - 4, Math.min(inEnd + getOverlap(), _imageSize) + 4);
+			g.setFont(_nameFont);
+			final Color textColour = Config.getColourScheme().getColour(ColourScheme.IDX_TEXT);
+			g.setColor(textColour);
+			// Draw the names which have already been placed
+			for (int i=0; i<_namePlaced.length; i++)
+			{
+				if (_namePlaced[i] && _nameXs[i] != NOT_DRAWN) {
+					g.drawString(_track.getPoint(i).getWaypointName(), _nameXs[i], _nameYs[i]);
+				}
+			}
+			// Place the names of the waypoints near enough to this strip, which
+			// can't cover any rows above it, so it now has all the rows they could cover
+			final int placeLimit = (inEnd >= _imageSize ? Integer.MAX_VALUE : inEnd + _nameReach);
+			for (int i=0; i<_namePlaced.length; i++)
+			{
+				if (!_namePlaced[i] && _pys[i] < placeLimit && _track.getPoint(i).isWaypoint()) {
+					placeName(g, i, inStrip, inTop, textColour);
+				}
+			}
+			g.dispose();
 		}
-		// Loop again to draw waypoints
-		for (int i=0; i<numPoints; i++)
+
+		/**
+		 * Draw the track points, waypoints and photo points
+		 * @param inG graphics to draw on, using image coordinates
+		 * @param inMinY minimum y coordinate of lines to draw
+		 * @param inMaxY maximum y coordinate of lines to draw
+		 */
+		private void drawPoints(Graphics inG, int inMinY, int inMaxY)
 		{
-			DataPoint point = track.getPoint(i);
-			if (point.isWaypoint())
+			// TODO: Set line width, style etc
+			final PointColourer pointColourer = _app.getPointColourer();
+			final Color defaultPointColour = Config.getColourScheme().getColour(ColourScheme.IDX_POINT);
+			inG.setColor(defaultPointColour);
+
+			// Loop to draw all track points
+			final int numPoints = _track.getNumPoints();
+			int prevX = 0, prevY = 0;
+			for (int i=0; i<numPoints; i++)
 			{
-				// use zoom level to calculate pixel coords on image
-				double x = track.getX(i) - xRange.getMinimum();
-				double y = track.getY(i) - yRange.getMinimum();
-				int px = (int) (x * zoomFactor * 256), py = (int) (y * zoomFactor * 256);
-				// Fill Rect or draw icon image?
-				g.fillRect(px-3, py-3, 6, 6);
-				if (wpIconDefinition == null)
+				DataPoint point = _track.getPoint(i);
+				if (!point.isWaypoint())
 				{
-					g.fillRect(px-3, py-3, 6, 6);
+					final int px = _pxs[i], py = _pys[i];
+					final boolean drawLine = !point.getSegmentStart()
+						&& Math.max(prevY, py) >= inMinY && Math.min(prevY, py) <= inMaxY;
+					final boolean drawPoint = _drawTrackPointsCheckbox.isSelected()
+						&& py >= inMinY && py <= inMaxY;
+					if (drawLine || drawPoint)
+					{
+						// Determine what colour to use to draw the track point
+						if (pointColourer != null)
+						{
+							Color c = pointColourer.getColour(i);
+							inG.setColor(c == null ? defaultPointColour : c);
+						}
+						if (drawLine) {
+							// draw from previous point to this one
+							inG.drawLine(prevX, prevY, px, py);
+						}
+						// Only draw points if requested
+						if (drawPoint) {
+							inG.drawRect(px-2, py-2, 3, 3);
+						}
+					}
+					// save coordinates
+					prevX = px; prevY = py;
 				}
-				else
+			}
+
+			// Now the waypoints
+			inG.setColor(Config.getColourScheme().getColour(ColourScheme.IDX_TEXT));
+			WpIconDefinition wpIconDefinition = null;
+			final int wpType = Config.getConfigInt(Config.KEY_WAYPOINT_ICONS);
+			if (wpType != WpIconLibrary.WAYPT_DEFAULT)
+			{
+				wpIconDefinition = WpIconLibrary.getIconDefinition(wpType, WpIconLibrary.SIZE_MEDIUM);
+			}
+			// Loop again to draw waypoints
+			for (int i=0; i<numPoints; i++)
+			{
+				DataPoint point = _track.getPoint(i);
+				if (point.isWaypoint())
 				{
-					g.drawImage(wpIconDefinition.getImageIcon().getImage(), px-wpIconDefinition.getXOffset(),
-						py-wpIconDefinition.getYOffset(), null);
+					final int px = _pxs[i], py = _pys[i];
+					// Fill Rect or draw icon image?
+					inG.fillRect(px-3, py-3, 6, 6);
+					if (wpIconDefinition == null)
+					{
+						inG.fillRect(px-3, py-3, 6, 6);
+					}
+					else
+					{
+						inG.drawImage(wpIconDefinition.getImageIcon().getImage(), px-wpIconDefinition.getXOffset(),
+							py-wpIconDefinition.getYOffset(), null);
+					}
 				}
 			}
-		}
-		// Set text size according to input
-		int fontScalePercent = _textScaleField.getValue();
-		if (fontScalePercent > 10 && fontScalePercent <= 999)
-		{
-			Font gFont = g.getFont();
-			g.setFont(gFont.deriveFont((float) (gFont.getSize() * 0.01 * fontScalePercent)));
-		}
-		FontMetrics fm = g.getFontMetrics();
-		final int nameHeight = fm.getHeight();
-		final int imageSize = inImage.getImageSize();
-
-		// Loop over points again, draw photo points
-		final Color photoColour = Config.getColourScheme().getColour(ColourScheme.IDX_SECONDARY);
-		g.setColor(photoColour);
-		for (int i=0; i<numPoints; i++)
-		{
-			DataPoint point = track.getPoint(i);
-			if (point.hasMedia())
+
+			// Loop over points again, draw photo points
+			inG.setColor(Config.getColourScheme().getColour(ColourScheme.IDX_SECONDARY));
+			for (int i=0; i<numPoints; i++)
 			{
-				// draw blob for each photo
-				double x = track.getX(i) - xRange.getMinimum();
-				double y = track.getY(i) - yRange.getMinimum();
-				// use zoom level to calculate pixel coords on image
-				int px = (int) (x * zoomFactor * 256), py = (int) (y * zoomFactor * 256);
-				g.fillRect(px-3, py-3, 6, 6);
+				if (_track.getPoint(i).hasMedia())
+				{
+					// draw blob for each photo
+					inG.fillRect(_pxs[i]-3, _pys[i]-3, 6, 6);
+				}
 			}
 		}
 
-		// Loop over points again, now draw names for waypoints
-		g.setColor(textColour);
-		for (int i=0; i<numPoints; i++)
+		/**
+		 * Figure out where to draw a waypoint name so it doesn't obscure the track, and draw it
+		 * @param inG graphics to draw on, using image coordinates
+		 * @param inIndex index of waypoint
+		 * @param inStrip strip image to check for overlaps
+		 * @param inTop index of first row of strip
+		 * @param inTextColour text colour
+		 */
+		private void placeName(Graphics inG, int inIndex, BufferedImage inStrip, int inTop, Color inTextColour)
 		{
-			DataPoint point = track.getPoint(i);
-			if (point.isWaypoint())
+			_namePlaced[inIndex] = true;
+			_nameXs[inIndex] = NOT_DRAWN;
+			final int px = _pxs[inIndex], py = _pys[inIndex];
+			final String waypointName = _track.getPoint(inIndex).getWaypointName();
+			final int nameWidth = _fontMetrics.stringWidth(waypointName);
+			final int nameHeight = _fontMetrics.getHeight();
+			// Make arrays for coordinates right left up down
+			int[] nameXs = {px + 2, px - nameWidth - 2, px - nameWidth/2, px - nameWidth/2};
+			int[] nameYs = {py + (nameHeight/2), py + (nameHeight/2), py - 2, py + nameHeight + 2};
+			for (int extraSpace = 4; extraSpace < 13; extraSpace+=2)
 			{
-				double x = track.getX(i) - xRange.getMinimum();
-				double y = track.getY(i) - yRange.getMinimum();
-				int px = (int) (x * zoomFactor * 256), py = (int) (y * zoomFactor * 256);
-
-				// Figure out where to draw waypoint name so it doesn't obscure track
-				String waypointName = point.getWaypointName();
-				int nameWidth = fm.stringWidth(waypointName);
-				boolean drawnName = false;
-				// Make arrays for coordinates right left up down
-				int[] nameXs = {px + 2, px - nameWidth - 2, px - nameWidth/2, px - nameWidth/2};
-				int[] nameYs = {py + (nameHeight/2), py + (nameHeight/2), py - 2, py + nameHeight + 2};
-				for (int extraSpace = 4; extraSpace < 13 && !drawnName; extraSpace+=2)
+				// Shift arrays for coordinates right left up down
+				nameXs[0] += 2; nameXs[1] -= 2;
+				nameYs[2] -= 2; nameYs[3] += 2;
+				// Check each direction in turn right left up down
+				for (int a=0; a<4; a++)
 				{
-					// Shift arrays for coordinates right left up down
-					nameXs[0] += 2; nameXs[1] -= 2;
-					nameYs[2] -= 2; nameYs[3] += 2;
-					// Check each direction in turn right left up down
-					for (int a=0; a<4; a++)
+					if (nameXs[a] > 0 && (nameXs[a] + nameWidth) < _imageSize
+						&& nameYs[a] < _imageSize && (nameYs[a] - nameHeight) > 0
+						&& !MapUtils.overlapsPoints(inStrip, nameXs[a], nameYs[a] - inTop,
+							nameWidth, nameHeight, inTextColour))
 					{
-						if (nameXs[a] > 0 && (nameXs[a] + nameWidth) < imageSize
-							&& nameYs[a] < imageSize && (nameYs[a] - nameHeight) > 0
-							&& !MapUtils.overlapsPoints(inImage.getImage(), nameXs[a], nameYs[a],
-								nameWidth, nameHeight, textColour))
-						{
-							// Found a rectangle to fit - draw name here and quit
-							g.drawString(waypointName, nameXs[a], nameYs[a]);
-							drawnName = true;
-							break;
-						}
+						// Found a rectangle to fit - draw name here and quit
+						inG.drawString(waypointName, nameXs[a], nameYs[a]);
+						_nameXs[inIndex] = nameXs[a];
+						_nameYs[inIndex] = nameYs[a];
+						return;
 					}
 				}
 			}
 		}
-
-		// Maybe draw note at the bottom, export from GpsPrune?  Filename?
-		// Note: Differences from main map: No mapPosition (modifying position and visible points),
-		//       no selection, no opacities, maybe different scale/text factors
 	}
 
 	/**
@@ -444,7 +535,7 @@ public class ImageExporter extends GenericFunction implements BaseImageConsumer
 		final boolean useImage = _baseImagePanel.getImageDefinition().getUseImage();
 		final int zoomLevel = _baseImagePanel.getImageDefinition().getZoom();
 		final boolean okEnabled = useImage && _baseImagePanel.getFoundData()
-			&& MapGrouter.isZoomLevelOk(_app.getTrackInfo().getTrack(), zoomLevel);
+			&& MapGrouter.isZoomLevelOk(_app.getTrackInfo().getTrack(), zoomLevel, MapGrouter.MAX_STREAMED_IMAGE_SIZE);
 		_okButton.setEnabled(okEnabled);
 	}
 }
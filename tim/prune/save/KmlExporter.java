@@ -5,6 +5,7 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
@@ -15,7 +16,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -24,7 +28,6 @@ import javax.imageio.ImageWriter;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JDialog;
@@ -46,6 +49,7 @@ import tim.prune.config.Config;
 import tim.prune.data.Coordinate;
 import tim.prune.data.DataPoint;
 import tim.prune.data.Field;
+import tim.prune.data.Photo;
 import tim.prune.data.RecentFile;
 import tim.prune.data.Timestamp;
 import tim.prune.data.Track;
@@ -53,6 +57,7 @@ import tim.prune.data.TrackInfo;
 import tim.prune.data.UnitSetLibrary;
 import tim.prune.gui.DialogCloser;
 import tim.prune.gui.ImageUtils;
+import tim.prune.gui.ThumbnailService;
 import tim.prune.gui.WholeNumberField;
 import tim.prune.gui.colour.ColourChooser;
 import tim.prune.gui.colour.ColourPatch;
@@ -92,6 +97,8 @@ public class KmlExporter extends GenericFunction implements Runnable
 	private static final int DEFAULT_THUMBNAIL_WIDTH = 240;
 	// Default track colour
 	private static final Color DEFAULT_TRACK_COLOUR = new Color(204, 0, 0); // red
+	// Number of thumbnails to request in advance of writing
+	private static final int NUM_THUMBNAILS_AHEAD = 8;
 
 
 	/**
@@ -883,35 +890,56 @@ public class KmlExporter extends GenericFunction implements Runnable
 			selEnd = _trackInfo.getSelection().getEnd();
 		}
 
+		// Find the photos to export
 		final int numPoints = _track.getNumPoints();
-		DataPoint point = null;
-		int photoNum = 0;
-		// Loop over all points in track
-		for (int i=0; i<numPoints && !_cancelPressed; i++)
+		ArrayList<Integer> photoIndices = new ArrayList<Integer>();
+		for (int i=0; i<numPoints; i++)
 		{
-			point = _track.getPoint(i);
-			if (point.getPhoto() != null && point.getPhoto().isValid() && (!justSelection || (i>=selStart && i<=selEnd)))
+			DataPoint point = _track.getPoint(i);
+			if (point.getPhoto() != null && point.getPhoto().isValid() && (!justSelection || (i>=selStart && i<=selEnd))) {
+				photoIndices.add(i);
+			}
+		}
+		// Thumbnails are loaded by the thumbnail service, a few photos ahead of the one being written
+		ThumbnailService service = ThumbnailService.getInstance();
+		ArrayList<Future<BufferedImage>> thumbnails = new ArrayList<Future<BufferedImage>>();
+		for (int p=0; p<photoIndices.size() && !_cancelPressed; p++)
+		{
+			while (thumbnails.size() < photoIndices.size() && thumbnails.size() <= p + NUM_THUMBNAILS_AHEAD)
 			{
-				photoNum++;
-				// Make a new entry in zip file
-				ZipEntry entry = new ZipEntry("images/image" + photoNum + ".jpg");
-				inZipStream.putNextEntry(entry);
-				// Load image and write to outstream
-				ImageIcon icon = point.getPhoto().createImageIcon();
-
-				// Scale image to required size (not smoothed)
-				BufferedImage bufferedImage = ImageUtils.rotateImage(icon.getImage(),
-					inThumbSize, inThumbSize, point.getPhoto().getRotationDegrees());
-				// Store image dimensions so that it doesn't have to be calculated again for the points
-				_imageDimensions[i] = new Dimension(bufferedImage.getWidth(), bufferedImage.getHeight());
-
-				imageWriter.setOutput(ImageIO.createImageOutputStream(inZipStream));
-				imageWriter.write(bufferedImage);
-				// Close zip file entry
-				inZipStream.closeEntry();
-				// Update progress bar
-				_progressBar.setValue(photoNum+1);
+				Photo photo = _track.getPoint(photoIndices.get(thumbnails.size())).getPhoto();
+				thumbnails.add(service.requestThumbnail(photo, inThumbSize, false, null));
 			}
+			final int pointIndex = photoIndices.get(p);
+			final Photo photo = _track.getPoint(pointIndex).getPhoto();
+			final int photoNum = p + 1;
+			// Make a new entry in zip file
+			ZipEntry entry = new ZipEntry("images/image" + photoNum + ".jpg");
+			inZipStream.putNextEntry(entry);
+			// Get thumbnail, or the whole image if it couldn't be loaded
+			Image thumbnail = null;
+			try {
+				thumbnail = thumbnails.get(p).get();
+			}
+			catch (InterruptedException e) {}
+			catch (ExecutionException e) {}
+			thumbnails.set(p, null);
+			if (thumbnail == null) {
+				thumbnail = photo.createImageIcon().getImage();
+			}
+
+			// Scale image to required size (not smoothed)
+			BufferedImage bufferedImage = ImageUtils.rotateImage(thumbnail,
+				inThumbSize, inThumbSize, photo.getRotationDegrees());
+			// Store image dimensions so that it doesn't have to be calculated again for the points
+			_imageDimensions[pointIndex] = new Dimension(bufferedImage.getWidth(), bufferedImage.getHeight());
+
+			imageWriter.setOutput(ImageIO.createImageOutputStream(inZipStream));
+			imageWriter.write(bufferedImage);
+			// Close zip file entry
+			inZipStream.closeEntry();
+			// Update progress bar
+			_progressBar.setValue(photoNum+1);
 		}
 	}
 
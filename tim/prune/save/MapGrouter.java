@@ -1,31 +1,46 @@
 package tim.prune.save;
 
-import tim.prune.data.DoubleRange;
 import tim.prune.data.Track;
 import tim.prune.data.TrackExtents;
 import tim.prune.gui.map.MapSource;
-import tim.prune.gui.map.MapTileManager;
-import tim.prune.gui.map.TileConsumer;
 
 import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Image;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 
 /**
  * Class to handle the sticking together (grouting) of map tiles
  * to create a single map image for the current track
  */
-public class MapGrouter implements TileConsumer
+public class MapGrouter
 {
-	/** The most recently produced image */
+	/** The most recently produced preview image */
 	private GroutedImage _lastGroutedImage = null;
+	/** Map source used for the last preview image */
+	private MapSource _lastMapSource = null;
+	/** Zoom level used for the last preview image */
+	private int _lastZoom = 0;
+
+	/** Maximum size of image to create in memory */
+	public static final int MAX_IMAGE_SIZE = 4000;
+	/** Maximum size of image to write to file strip by strip */
+	public static final int MAX_STREAMED_IMAGE_SIZE = 32000;
+	/** Size of preview image to make for images too big to create in memory */
+	private static final int PREVIEW_SIZE = 1000;
+	/** Number of rows in each strip written to file */
+	private static final int STRIP_HEIGHT = 256;
 
 	/**
 	 * Clear the last image, it's not needed any more
 	 */
-	public void clearMapImage() {
+	public synchronized void clearMapImage() {
 		_lastGroutedImage = null;
 	}
 
@@ -50,109 +65,190 @@ public class MapGrouter implements TileConsumer
 	 * @return grouted image, or null if no image could be created
 	 */
 	public GroutedImage createMapImage(Track inTrack, MapSource inMapSource, int inZoom, boolean inDownload)
+	{
+		return createMapImage(createStitcher(inTrack, inMapSource, inZoom, inDownload), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Grout the map tiles together for a preview, scaling down the image if it's too big to hold in memory
+	 * @param inTrack track object
+	 * @param inMapSource map source to use (may have one or two layers)
+	 * @param inZoom selected zoom level
+	 * @param inDownload true to download tiles, false to just pull from disk
+	 * @return grouted image, or null if no image could be created
+	 */
+	public GroutedImage createPreviewImage(Track inTrack, MapSource inMapSource, int inZoom, boolean inDownload)
+	{
+		TileStitcher stitcher = createStitcher(inTrack, inMapSource, inZoom, inDownload);
+		final boolean isTooBig = (stitcher != null && stitcher.getImageSize() > MAX_IMAGE_SIZE);
+		GroutedImage result = createMapImage(stitcher, isTooBig ? PREVIEW_SIZE : Integer.MAX_VALUE);
+		synchronized (this)
+		{
+			_lastGroutedImage = result;
+			_lastMapSource = inMapSource;
+			_lastZoom = inZoom;
+		}
+		return result;
+	}
+
+	/**
+	 * Get the last preview image if it was made at full size, so it can be exported directly
+	 * @param inMapSource map source to use
+	 * @param inZoom selected zoom level
+	 * @return full-size grouted image, or null if the preview doesn't match or was scaled down
+	 */
+	public synchronized GroutedImage getFullSizeImage(MapSource inMapSource, int inZoom)
+	{
+		if (_lastGroutedImage == null || !_lastGroutedImage.isValid()
+			|| _lastMapSource != inMapSource || _lastZoom != inZoom
+			|| _lastGroutedImage.getImage().getWidth() != _lastGroutedImage.getImageSize())
+		{
+			return null;
+		}
+		return _lastGroutedImage;
+	}
+
+	/**
+	 * Create the tile stitcher for the track's extent
+	 * @param inTrack track object
+	 * @param inMapSource map source to use (may have one or two layers)
+	 * @param inZoom selected zoom level
+	 * @param inDownload true to download tiles, false to just pull from disk
+	 * @return tile stitcher, or null if no image could be created
+	 */
+	public static TileStitcher createStitcher(Track inTrack, MapSource inMapSource, int inZoom, boolean inDownload)
 	{
 		// Get the extents of the track including a standard (10%) border around the data
 		TrackExtents extents = new TrackExtents(inTrack);
 		extents.applySquareBorder();
-		DoubleRange xRange = extents.getXRange();
-		DoubleRange yRange = extents.getYRange();
+		if (getImageSize(extents, inZoom) < 2 || inZoom == 0) {return null;}
+		return new TileStitcher(extents.getXRange(), extents.getYRange(), inMapSource, inZoom, inDownload);
+	}
 
-		// Work out which tiles are required
-		final int zoomFactor = 1 << inZoom;
-		final int minTileX = (int) (xRange.getMinimum() * zoomFactor);
-		final int maxTileX = (int) (xRange.getMaximum() * zoomFactor);
-		final int minTileY = (int) (yRange.getMinimum() * zoomFactor);
-		final int maxTileY = (int) (yRange.getMaximum() * zoomFactor);
-
-		// Work out how big the final image will be, create a BufferedImage
-		final int pixCount = (int) (extents.getXRange().getRange() * zoomFactor * 256);
-		if (pixCount < 2 || inZoom == 0) {return null;}
-		BufferedImage resultImage = new BufferedImage(pixCount, pixCount, BufferedImage.TYPE_INT_RGB);
-		Graphics g = resultImage.getGraphics();
+	/**
+	 * Draw all the tiles into a single image in memory
+	 * @param inStitcher tile stitcher, or null
+	 * @param inMaxSize maximum size of image, beyond which it is scaled down
+	 * @return grouted image, or null if no image could be created
+	 */
+	private static GroutedImage createMapImage(TileStitcher inStitcher, int inMaxSize)
+	{
+		if (inStitcher == null) {return null;}
+		final int pixCount = inStitcher.getImageSize();
+		final int imageSize = Math.min(pixCount, inMaxSize);
+		BufferedImage resultImage = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = resultImage.createGraphics();
 		g.setColor(Color.WHITE);
-		g.fillRect(0, 0, pixCount, pixCount);
-		// Work out where to start drawing the tiles on the image
-		int xOffset = (int) ((minTileX - xRange.getMinimum() * zoomFactor) * 256);
-
-		// Make a map tile manager to load (or download) the tiles
-		MapTileManager tileManager = new MapTileManager(this);
-		tileManager.setMapSource(inMapSource);
-		tileManager.enableTileDownloading(inDownload);
-		tileManager.setReturnIncompleteImages();
-		tileManager.setZoom(inZoom);
-
-		int numTilesUsed = 0;
-		int numTilesMissing = 0;
-
-		// Loop over the tiles
-		for (int x = minTileX; x <= maxTileX; x++)
+		g.fillRect(0, 0, imageSize, imageSize);
+		if (imageSize < pixCount)
 		{
-			int yOffset = (int) ((minTileY - yRange.getMinimum() * zoomFactor) * 256);
-			for (int y = minTileY; y <= maxTileY; y++)
-			{
-				for (int layer=0; layer < inMapSource.getNumLayers(); layer++)
-				{
-					Image tile = tileManager.getTile(layer, x, y, true);
-					// If we're downloading tiles, wait until the tile isn't null
-					int waitCount = 0;
-					while (tile == null && inDownload && waitCount < 3)
-					{
-						// System.out.println("wait " + waitCount + " for tile to be not null");
-						try {Thread.sleep(250);} catch (InterruptedException e) {}
-						tile = tileManager.getTile(layer, x, y, false); // don't request another download
-						waitCount++;
-					}
-					// See if there's a tile or not
-					if (tile != null)
-					{
-						// Wait until tile is available (loaded asynchronously)
-						while (tile.getWidth(null) < 0 && !inDownload)
-						{
-							// System.out.println("Wait for tile width");
-							try {
-								Thread.sleep(inDownload ? 500 : 100);
-							}
-							catch (InterruptedException ie) {}
-						}
-						// work out where to copy it to, paint it
-						// System.out.println("Painting tile " + x + "," + y + " at " + xOffset + "," + yOffset);
-						numTilesUsed++;
-						g.drawImage(tile, xOffset, yOffset, null);
-					}
-					else
-					{
-						// null tile, that means it's either not available or really slow to start downloading
-						numTilesMissing++;
-					}
-				}
-				yOffset += 256;
-			}
-			xOffset += 256;
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.scale(imageSize / (double) pixCount, imageSize / (double) pixCount);
 		}
+		// Draw a strip at a time so that the tiles of each strip can be released
+		for (int top=0; top<pixCount; top+=STRIP_HEIGHT) {
+			inStitcher.drawRows(g, top, Math.min(top + STRIP_HEIGHT, pixCount));
+		}
+		g.dispose();
 		// Get rid of the image if it's empty
-		if (numTilesUsed == 0) {
+		if (inStitcher.getNumTilesUsed() == 0) {
 			resultImage = null;
 		}
 		// Store the xy limits in the GroutedImage to make it easier to draw on top
-		GroutedImage result = new GroutedImage(resultImage, numTilesUsed, numTilesMissing);
-		result.setXRange(xRange);
-		result.setYRange(yRange);
+		GroutedImage result = new GroutedImage(resultImage, inStitcher.getNumTilesUsed(), inStitcher.getNumTilesMissing());
+		result.setImageSize(pixCount);
+		result.setXRange(inStitcher.getXRange());
+		result.setYRange(inStitcher.getYRange());
 		return result;
 	}
 
 	/**
-	 * Get the grouted map image, using the previously-created one if available
-	 * @param inTrack track object
-	 * @param inMapSource map source to use (may have one or two layers)
-	 * @param inZoom selected zoom level
-	 * @return grouted image, or null if no image could be created
+	 * Write the map image to a png file a strip at a time,
+	 * so that the whole image never has to be held in memory
+	 * @param inStitcher tile stitcher
+	 * @param inFile file to write to
+	 * @param inPainter painter to draw on top of each strip, or null
+	 * @return true if any tiles were found, false if the file wasn't written
+	 * @throws IOException if the file couldn't be written
+	 */
+	public static boolean writeMapImage(TileStitcher inStitcher, File inFile, StripPainter inPainter)
+	throws IOException
+	{
+		return writeMapImage(inStitcher, null, inStitcher.getImageSize(), inFile, inPainter);
+	}
+
+	/**
+	 * Write an already grouted full-size map image to a png file a strip at a time,
+	 * so that the data can be drawn on top without changing the image itself
+	 * @param inImage full-size grouted image
+	 * @param inFile file to write to
+	 * @param inPainter painter to draw on top of each strip, or null
+	 * @return true if the file was written
+	 * @throws IOException if the file couldn't be written
 	 */
-	public synchronized GroutedImage getMapImage(Track inTrack, MapSource inMapSource, int inZoom)
+	public static boolean writeMapImage(GroutedImage inImage, File inFile, StripPainter inPainter)
+	throws IOException
 	{
-		if (_lastGroutedImage == null) {
-			_lastGroutedImage = createMapImage(inTrack, inMapSource, inZoom);
+		return writeMapImage(null, inImage.getImage(), inImage.getImageSize(), inFile, inPainter);
+	}
+
+	/**
+	 * Write the map image to a png file a strip at a time
+	 * @param inStitcher tile stitcher to draw the rows from, or null to use the image
+	 * @param inImage full-size image to copy the rows from if there's no stitcher
+	 * @param inPixCount size of image in pixels
+	 * @param inFile file to write to
+	 * @param inPainter painter to draw on top of each strip, or null
+	 * @return true if any tiles were found, false if the file wasn't written
+	 * @throws IOException if the file couldn't be written
+	 */
+	private static boolean writeMapImage(TileStitcher inStitcher, BufferedImage inImage, int inPixCount,
+		File inFile, StripPainter inPainter)
+	throws IOException
+	{
+		final int pixCount = inPixCount;
+		final int overlap = (inPainter == null ? 0 : inPainter.getOverlap());
+		BufferedImage strip = new BufferedImage(pixCount, STRIP_HEIGHT + overlap, BufferedImage.TYPE_INT_RGB);
+		OutputStream outStream = null;
+		boolean finished = false;
+		try
+		{
+			outStream = new BufferedOutputStream(new FileOutputStream(inFile));
+			PngStripWriter writer = new PngStripWriter(outStream, pixCount, pixCount);
+			for (int top=0; top<pixCount; top+=STRIP_HEIGHT)
+			{
+				final int end = Math.min(top + STRIP_HEIGHT, pixCount);
+				final int stripEnd = Math.min(end + overlap, pixCount);
+				Graphics2D g = strip.createGraphics();
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, pixCount, stripEnd - top);
+				g.translate(0, -top);
+				if (inStitcher != null) {
+					inStitcher.drawRows(g, top, stripEnd);
+				}
+				else {
+					g.drawImage(inImage, 0, 0, null);
+				}
+				g.dispose();
+				if (inPainter != null) {
+					inPainter.paintStrip(strip, top, end);
+				}
+				writer.writeRows(strip, 0, end - top);
+			}
+			writer.finish();
+			finished = (inStitcher == null || inStitcher.getNumTilesUsed() > 0);
 		}
-		return _lastGroutedImage;
+		finally
+		{
+			if (outStream != null) {
+				outStream.close();
+			}
+			// Don't leave a partial or empty file
+			if (!finished) {
+				inFile.delete();
+			}
+		}
+		return finished;
 	}
 
 	/**
@@ -161,20 +257,33 @@ public class MapGrouter implements TileConsumer
 	 * @return true if the image size is acceptable
 	 */
 	public static boolean isZoomLevelOk(Track inTrack, int inZoom)
+	{
+		return isZoomLevelOk(inTrack, inZoom, MAX_IMAGE_SIZE);
+	}
+
+	/**
+	 * @param inTrack track object
+	 * @param inZoom selected zoom level
+	 * @param inMaxSize maximum image size
+	 * @return true if the image size is acceptable
+	 */
+	public static boolean isZoomLevelOk(Track inTrack, int inZoom, int inMaxSize)
 	{
 		// Get the extents of the track including a standard (10%) border around the data
 		TrackExtents extents = new TrackExtents(inTrack);
 		extents.applySquareBorder();
-
-		// Work out how big the final image will be
-		final int zoomFactor = 1 << inZoom;
-		final int pixCount = (int) (extents.getXRange().getRange() * zoomFactor * 256);
-		return pixCount > 2 && pixCount < 4000;
+		final int pixCount = getImageSize(extents, inZoom);
+		return pixCount > 2 && pixCount < inMaxSize;
 	}
 
-	/** React to tiles being updated by the tile manager */
-	public void tilesUpdated(boolean inIsOk)
+	/**
+	 * @param inExtents track extents including border
+	 * @param inZoom zoom level
+	 * @return how big the final image will be
+	 */
+	private static int getImageSize(TrackExtents inExtents, int inZoom)
 	{
-		// Doesn't need any action
+		final int zoomFactor = 1 << inZoom;
+		return (int) (inExtents.getXRange().getRange() * zoomFactor * 256);
 	}
 }
@@ -0,0 +1,245 @@
+package tim.prune.save;
+
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Class to write an RGB png image a strip of rows at a time,
+ * so that the whole image never has to be held in memory.
+ * Each row is filtered with whichever png filter gives the smallest differences.
+ */
+public class PngStripWriter
+{
+	/** Stream to write the chunks to */
+	private DataOutputStream _out = null;
+	/** Image width and height in pixels */
+	private int _width = 0, _height = 0;
+	/** Number of rows written so far */
+	private int _numRowsWritten = 0;
+	/** Compressor for the image data */
+	private Deflater _deflater = null;
+	/** Stream to compress the filtered rows into IDAT chunks */
+	private DeflaterOutputStream _dataStream = null;
+	/** Previous and current rows as bytes */
+	private byte[] _prevRow = null, _currRow = null;
+	/** Current row filtered with each filter type, starting with the filter type byte */
+	private byte[][] _filteredRows = null;
+	/** Pixel values of current row */
+	private int[] _pixels = null;
+
+	/** Png file signature */
+	private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+	/** Bytes per pixel */
+	private static final int BPP = 3;
+	/** Maximum size of each IDAT chunk */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+
+	/**
+	 * Output stream which collects the compressed data into IDAT chunks
+	 */
+	private class IdatStream extends OutputStream
+	{
+		private byte[] _buffer = new byte[CHUNK_SIZE];
+		private int _length = 0;
+
+		public void write(int inByte) throws IOException
+		{
+			if (_length == _buffer.length) {flush();}
+			_buffer[_length++] = (byte) inByte;
+		}
+
+		public void write(byte[] inBytes, int inOffset, int inLength) throws IOException
+		{
+			while (inLength > 0)
+			{
+				if (_length == _buffer.length) {flush();}
+				final int num = Math.min(inLength, _buffer.length - _length);
+				System.arraycopy(inBytes, inOffset, _buffer, _length, num);
+				_length += num;
+				inOffset += num;
+				inLength -= num;
+			}
+		}
+
+		public void flush() throws IOException
+		{
+			if (_length > 0)
+			{
+				writeChunk("IDAT", _buffer, _length);
+				_length = 0;
+			}
+		}
+	}
+
+
+	/**
+	 * Constructor, writes the png header
+	 * @param inStream stream to write to, not closed by this writer
+	 * @param inWidth width of image
+	 * @param inHeight height of image
+	 * @throws IOException if the header couldn't be written
+	 */
+	public PngStripWriter(OutputStream inStream, int inWidth, int inHeight)
+	throws IOException
+	{
+		_out = new DataOutputStream(inStream);
+		_width = inWidth;
+		_height = inHeight;
+		_out.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, inWidth);
+		putInt(header, 4, inHeight);
+		header[8] = 8; // bit depth
+		header[9] = 2; // colour type RGB
+		// compression, filter and interlace methods all 0
+		writeChunk("IHDR", header, header.length);
+
+		_deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		_dataStream = new DeflaterOutputStream(new IdatStream(), _deflater, CHUNK_SIZE);
+		_prevRow = new byte[inWidth * BPP];
+		_currRow = new byte[inWidth * BPP];
+		_filteredRows = new byte[5][inWidth * BPP + 1];
+		_pixels = new int[inWidth];
+	}
+
+	/**
+	 * Write the next rows of the image
+	 * @param inImage image containing the rows
+	 * @param inFirstRow index of first row within the given image
+	 * @param inNumRows number of rows to write
+	 * @throws IOException if the rows couldn't be written
+	 */
+	public void writeRows(BufferedImage inImage, int inFirstRow, int inNumRows)
+	throws IOException
+	{
+		if (_numRowsWritten + inNumRows > _height) {
+			throw new IOException("Too many rows: " + (_numRowsWritten + inNumRows) + " > " + _height);
+		}
+		for (int r=0; r<inNumRows; r++)
+		{
+			inImage.getRGB(0, inFirstRow + r, _width, 1, _pixels, 0, _width);
+			for (int x=0, b=0; x<_width; x++)
+			{
+				final int pixel = _pixels[x];
+				_currRow[b++] = (byte) (pixel >> 16);
+				_currRow[b++] = (byte) (pixel >> 8);
+				_currRow[b++] = (byte) pixel;
+			}
+			_dataStream.write(filterRow());
+			// swap rows ready for the next one
+			byte[] row = _prevRow;
+			_prevRow = _currRow;
+			_currRow = row;
+			_numRowsWritten++;
+		}
+	}
+
+	/**
+	 * Finish off the image, after all the rows have been written
+	 * @throws IOException if the image data couldn't be written or was incomplete
+	 */
+	public void finish() throws IOException
+	{
+		_dataStream.finish();
+		_dataStream.flush();
+		_deflater.end();
+		writeChunk("IEND", new byte[0], 0);
+		_out.flush();
+		if (_numRowsWritten != _height) {
+			throw new IOException("Only " + _numRowsWritten + " of " + _height + " rows written");
+		}
+	}
+
+	/**
+	 * Apply each filter type to the current row and choose the best one
+	 * @return filtered row starting with the filter type
+	 */
+	private byte[] filterRow()
+	{
+		final byte[] curr = _currRow, prev = _prevRow;
+		final boolean isFirstRow = (_numRowsWritten == 0);
+		long bestSum = Long.MAX_VALUE;
+		byte[] bestRow = null;
+		for (int filter=0; filter<5; filter++)
+		{
+			// Filters using the previous row are no use on the first row
+			if (isFirstRow && filter >= 2) {break;}
+			final byte[] out = _filteredRows[filter];
+			out[0] = (byte) filter;
+			long sum = 0;
+			for (int i=0; i<curr.length; i++)
+			{
+				final int left = (i >= BPP ? curr[i-BPP] & 0xff : 0);
+				final int up = prev[i] & 0xff;
+				final int upLeft = (i >= BPP ? prev[i-BPP] & 0xff : 0);
+				final int predicted;
+				switch (filter)
+				{
+					case 1:  predicted = left; break;
+					case 2:  predicted = up; break;
+					case 3:  predicted = (left + up) >> 1; break;
+					case 4:  predicted = paeth(left, up, upLeft); break;
+					default: predicted = 0;
+				}
+				final byte value = (byte) (curr[i] - predicted);
+				out[i+1] = value;
+				sum += Math.abs(value);
+			}
+			if (sum < bestSum)
+			{
+				bestSum = sum;
+				bestRow = out;
+			}
+		}
+		return bestRow;
+	}
+
+	/**
+	 * @return the Paeth predictor for the given neighbours
+	 */
+	private static int paeth(int inLeft, int inUp, int inUpLeft)
+	{
+		final int p = inLeft + inUp - inUpLeft;
+		final int pLeft = Math.abs(p - inLeft), pUp = Math.abs(p - inUp), pUpLeft = Math.abs(p - inUpLeft);
+		if (pLeft <= pUp && pLeft <= pUpLeft) {return inLeft;}
+		if (pUp <= pUpLeft) {return inUp;}
+		return inUpLeft;
+	}
+
+	/**
+	 * Write a single chunk to the output
+	 * @param inType chunk type
+	 * @param inData chunk data
+	 * @param inLength length of data
+	 * @throws IOException if the chunk couldn't be written
+	 */
+	private void writeChunk(String inType, byte[] inData, int inLength)
+	throws IOException
+	{
+		final byte[] type = inType.getBytes("US-ASCII");
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(inData, 0, inLength);
+		_out.writeInt(inLength);
+		_out.write(type);
+		_out.write(inData, 0, inLength);
+		_out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Put the given int into the array as four big-endian bytes
+	 */
+	private static void putInt(byte[] inArray, int inOffset, int inValue)
+	{
+		inArray[inOffset]   = (byte) (inValue >> 24);
+		inArray[inOffset+1] = (byte) (inValue >> 16);
+		inArray[inOffset+2] = (byte) (inValue >> 8);
+		inArray[inOffset+3] = (byte) inValue;
+	}
+}
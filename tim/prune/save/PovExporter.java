@@ -12,7 +12,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 
-import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -44,7 +43,7 @@ import tim.prune.gui.map.MapSourceLibrary;
 import tim.prune.load.GenericFileFilter;
 import tim.prune.threedee.ImageDefinition;
 import tim.prune.threedee.TerrainCache;
-import tim.prune.threedee.TerrainDefinition;
+import tim.prune.threedee.TerrainGrid;
 import tim.prune.threedee.TerrainHelper;
 import tim.prune.threedee.ThreeDModel;
 
@@ -244,6 +243,7 @@ public class PovExporter extends Export3dFunction
 
 		// Panel for the base image (parent is null because we don't need callback)
 		_baseImagePanel = new BaseImageDefinitionPanel(null, _dialog, _track);
+		_baseImagePanel.setMaxImageSize(MapGrouter.MAX_STREAMED_IMAGE_SIZE);
 		// Panel for the terrain definition
 		_terrainPanel = new TerrainDefinitionPanel();
 
@@ -376,13 +376,19 @@ public class PovExporter extends Export3dFunction
 			boolean useImage = imageDef.getUseImage();
 			if (useImage)
 			{
-				// Get base image from grouter
+				// Reuse the preview image if it's full size, otherwise write the tiles straight to file
 				MapSource mapSource = MapSourceLibrary.getSource(imageDef.getSourceIndex());
-				MapGrouter grouter = _baseImagePanel.getGrouter();
-				GroutedImage baseImage = grouter.getMapImage(_track, mapSource, imageDef.getZoom());
+				GroutedImage baseImage = _baseImagePanel.getGrouter().getFullSizeImage(mapSource, imageDef.getZoom());
 				try
 				{
-					useImage = ImageIO.write(baseImage.getImage(), "png", inImageFile);
+					if (baseImage != null) {
+						useImage = MapGrouter.writeMapImage(baseImage, inImageFile, null);
+					}
+					else
+					{
+						TileStitcher stitcher = MapGrouter.createStitcher(_track, mapSource, imageDef.getZoom(), false);
+						useImage = stitcher != null && MapGrouter.writeMapImage(stitcher, inImageFile, null);
+					}
 				}
 				catch (IOException ioe) {
 					System.err.println("Can't write image: " + ioe.getClass().getName());
@@ -397,31 +403,10 @@ public class PovExporter extends Export3dFunction
 			if (useTerrain)
 			{
 				TerrainHelper terrainHelper = new TerrainHelper(_terrainPanel.getGridSize());
-				// See if there's a previously saved terrain track we can reuse
-				TerrainDefinition terrainDef = new TerrainDefinition(_terrainPanel.getUseTerrain(), _terrainPanel.getGridSize());
-				Track terrainTrack = TerrainCache.getTerrainTrack(_app.getCurrentDataStatus(), terrainDef);
-				if (terrainTrack == null)
-				{
-					// Construct the terrain track according to these extents and the grid size
-					terrainTrack = terrainHelper.createGridTrack(_track);
-					// Get the altitudes from SRTM for all the points in the track
-					LookupSrtmFunction srtmLookup = (LookupSrtmFunction) FunctionLibrary.FUNCTION_LOOKUP_SRTM;
-					srtmLookup.begin(terrainTrack);
-					while (srtmLookup.isRunning())
-					{
-						try {
-							Thread.sleep(750);  // just polling in a wait loop isn't ideal but simple
-						}
-						catch (InterruptedException e) {}
-					}
-					// Fix the voids
-					terrainHelper.fixVoids(terrainTrack);
-
-					// Store this back in the cache, maybe we'll need it again
-					TerrainCache.storeTerrainTrack(terrainTrack, _app.getCurrentDataStatus(), terrainDef);
-				}
-
-				model.setTerrain(terrainTrack);
+				// Get the terrain grid for the track extents, reusing a previous one if possible
+				TerrainGrid terrainGrid = TerrainCache.getTerrainGrid(_track, _terrainPanel.getGridSize(),
+					(LookupSrtmFunction) FunctionLibrary.FUNCTION_LOOKUP_SRTM);
+				model.setTerrain(terrainGrid);
 				model.scale();
 
 				// Call TerrainHelper to write out the data from the model
@@ -0,0 +1,21 @@
+package tim.prune.save;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Interface used by the MapGrouter to let consumers draw on top of
+ * each strip of a map image before it is written
+ */
+public interface StripPainter
+{
+	/** @return number of extra rows needed below each strip to decide what to draw */
+	public int getOverlap();
+
+	/**
+	 * Draw on top of the given strip
+	 * @param inStrip strip image, with the map already drawn, whose first row is row inTop of the whole image
+	 * @param inTop index of first row of the strip
+	 * @param inEnd index of the row after the last one which will be written, before the overlap
+	 */
+	public void paintStrip(BufferedImage inStrip, int inTop, int inEnd);
+}
@@ -0,0 +1,389 @@
+package tim.prune.save;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.image.ImageObserver;
+
+import tim.prune.config.Config;
+import tim.prune.data.DoubleRange;
+import tim.prune.gui.map.MapSource;
+import tim.prune.gui.map.MapTileManager;
+import tim.prune.gui.map.TileConsumer;
+
+/**
+ * Class to stitch map tiles together into a square image, a range of pixel rows at a time.
+ * Tiles are requested a few rows ahead of the rows being drawn, so that they are loaded
+ * (or downloaded) concurrently without flooding the tile server, and the stitcher is woken by callbacks as they arrive
+ * instead of polling for them.  Only the tiles of the rows still being drawn are kept,
+ * so images bigger than the available memory can be produced strip by strip.
+ */
+public class TileStitcher implements TileConsumer, ImageObserver
+{
+	/** Tile manager to get the tiles from */
+	private MapTileManager _tileManager = null;
+	/** Number of layers in the map source */
+	private int _numLayers = 0;
+	/** Flag for whether to wait for missing tiles to be downloaded */
+	private boolean _download = false;
+	/** Number of rows in succession which timed out without any tiles arriving */
+	private int _numRowsTimedOut = 0;
+	/** Range of x and y values covered by the image */
+	private DoubleRange _xRange = null, _yRange = null;
+	/** Size of the image in pixels */
+	private int _imageSize = 0;
+	/** Indices of the top-left tile */
+	private int _minTileX = 0, _minTileY = 0;
+	/** Number of tiles in each direction for this zoom level */
+	private int _numTileIndices = 1;
+	/** Number of tile columns and rows covering the image */
+	private int _numCols = 0, _numRows = 0;
+	/** Pixel position of the top-left tile on the image */
+	private int _xOffset = 0, _yOffset = 0;
+	/** Requested rows of tiles, null if not requested yet or already released */
+	private TileRow[] _rows = null;
+	/** Index of the next row to request */
+	private int _nextRowToRequest = 0;
+	/** Index of the first row which hasn't been released */
+	private int _firstKeptRow = 0;
+	/** Number of tiles and missing tiles so far */
+	private int _numTilesUsed = 0, _numTilesMissing = 0;
+	/** Number of callbacks received, guarded by this */
+	private int _numUpdates = 0;
+	/** Time of the last callback or tile arrival, guarded by this */
+	private long _lastUpdateTime = 0L;
+
+	/** Tile size in pixels */
+	private static final int TILE_SIZE = 256;
+	/** Maximum number of tiles to request ahead of the ones being drawn */
+	private static final int MAX_TILES_AHEAD = 64;
+	/** Time in ms to wait without any tiles arriving before giving up on the missing ones */
+	private static final long TIMEOUT = 5000L;
+	/** Number of rows in succession timing out before the downloads are stopped */
+	private static final int MAX_ROWS_TIMED_OUT = 3;
+	/** States of a tile */
+	private static final byte STATE_WAITING = 0, STATE_LOADING = 1, STATE_LOADED = 2, STATE_MISSING = 3;
+
+
+	/**
+	 * Tiles of all layers for a single row
+	 */
+	private static class TileRow
+	{
+		/** Tile images, by column and then layer */
+		Image[] _tiles = null;
+		/** State of each tile */
+		byte[] _states = null;
+		/** Flag set once all the tiles have arrived or been given up */
+		boolean _complete = false;
+
+		/** Constructor */
+		TileRow(int inNumTiles)
+		{
+			_tiles = new Image[inNumTiles];
+			_states = new byte[inNumTiles];
+		}
+	}
+
+
+	/**
+	 * Constructor
+	 * @param inXRange range of x values to cover
+	 * @param inYRange range of y values to cover
+	 * @param inMapSource map source to use (may have one or two layers)
+	 * @param inZoom zoom level
+	 * @param inDownload true to download missing tiles, false to just pull from disk
+	 */
+	public TileStitcher(DoubleRange inXRange, DoubleRange inYRange, MapSource inMapSource,
+		int inZoom, boolean inDownload)
+	{
+		_xRange = inXRange;
+		_yRange = inYRange;
+		_numLayers = inMapSource.getNumLayers();
+		_download = inDownload && Config.getConfigBoolean(Config.KEY_ONLINE_MODE);
+		// Work out which tiles are required
+		_numTileIndices = 1 << inZoom;
+		_minTileX = (int) (inXRange.getMinimum() * _numTileIndices);
+		_minTileY = (int) (inYRange.getMinimum() * _numTileIndices);
+		final int maxTileX = (int) (inXRange.getMaximum() * _numTileIndices);
+		final int maxTileY = (int) (inYRange.getMaximum() * _numTileIndices);
+		_imageSize = Math.max(0, (int) (inXRange.getRange() * _numTileIndices * TILE_SIZE));
+		// Work out where to draw the tiles on the image, ignoring any which fall outside it
+		_xOffset = (int) ((_minTileX - inXRange.getMinimum() * _numTileIndices) * TILE_SIZE);
+		_yOffset = (int) ((_minTileY - inYRange.getMinimum() * _numTileIndices) * TILE_SIZE);
+		_numCols = Math.min(maxTileX - _minTileX + 1, (_imageSize - _xOffset + TILE_SIZE - 1) / TILE_SIZE);
+		_numRows = Math.min(maxTileY - _minTileY + 1, (_imageSize - _yOffset + TILE_SIZE - 1) / TILE_SIZE);
+		_rows = new TileRow[Math.max(0, _numRows)];
+
+		// Make a map tile manager to load (or download) the tiles
+		_tileManager = new MapTileManager(this);
+		_tileManager.setMapSource(inMapSource);
+		_tileManager.enableTileDownloading(_download);
+		_tileManager.setReturnIncompleteImages();
+		_tileManager.setZoom(inZoom);
+	}
+
+	/** @return size of the (square) image in pixels */
+	public int getImageSize() {
+		return _imageSize;
+	}
+
+	/** @return x range covered by the image */
+	public DoubleRange getXRange() {
+		return _xRange;
+	}
+
+	/** @return y range covered by the image */
+	public DoubleRange getYRange() {
+		return _yRange;
+	}
+
+	/** @return number of tiles drawn so far */
+	public int getNumTilesUsed() {
+		return _numTilesUsed;
+	}
+
+	/** @return number of tiles which couldn't be found so far */
+	public int getNumTilesMissing() {
+		return _numTilesMissing;
+	}
+
+	/**
+	 * Draw the tiles covering the given range of pixel rows.
+	 * Successive calls must not go back up the image, as the tiles above are released.
+	 * @param inG graphics to draw on, using image coordinates
+	 * @param inStartRow first pixel row to draw
+	 * @param inEndRow pixel row after the last one to draw
+	 */
+	public void drawRows(Graphics inG, int inStartRow, int inEndRow)
+	{
+		if (inEndRow <= inStartRow || _numRows <= 0 || _numCols <= 0) {return;}
+		final int firstRow = Math.max(0, (inStartRow - _yOffset) / TILE_SIZE);
+		final int lastRow = Math.min(_numRows - 1, (inEndRow - 1 - _yOffset) / TILE_SIZE);
+		// Release the rows above which aren't needed any more
+		for (; _firstKeptRow < firstRow && _firstKeptRow < _nextRowToRequest; _firstKeptRow++) {
+			_rows[_firstKeptRow] = null;
+		}
+		for (int r=firstRow; r<=lastRow; r++)
+		{
+			requestRows(r);
+			TileRow row = _rows[r];
+			if (row == null) {continue;} // already released
+			if (!row._complete)
+			{
+				waitForRow(row, r);
+				for (byte state : row._states)
+				{
+					if (state == STATE_LOADED) {_numTilesUsed++;}
+					else {_numTilesMissing++;}
+				}
+			}
+			final int y = _yOffset + r * TILE_SIZE;
+			for (int col=0; col<_numCols; col++)
+			{
+				for (int layer=0; layer<_numLayers; layer++)
+				{
+					final int index = col * _numLayers + layer;
+					if (row._states[index] == STATE_LOADED) {
+						inG.drawImage(row._tiles[index], _xOffset + col * TILE_SIZE, y, null);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Request the tiles for the given row, and as many following rows as allowed.
+	 * Missing tiles are only downloaded within this window, so that they arrive shortly
+	 * before they're drawn and aren't pushed out of the memory cache first.
+	 * @param inRow index of row which is needed now
+	 */
+	private void requestRows(int inRow)
+	{
+		final int tilesPerRow = _numCols * _numLayers;
+		while (_nextRowToRequest < _numRows && (_nextRowToRequest <= inRow
+			|| (_nextRowToRequest - _firstKeptRow) * tilesPerRow < MAX_TILES_AHEAD))
+		{
+			final int r = _nextRowToRequest++;
+			TileRow row = new TileRow(tilesPerRow);
+			for (int i=0; i<tilesPerRow; i++) {
+				row._states[i] = STATE_WAITING;
+			}
+			pollWaitingTiles(row, r, _download);
+			_rows[r] = row;
+		}
+		if (_download)
+		{
+			// Give the downloads of the new rows a chance to arrive
+			synchronized (this) {
+				_lastUpdateTime = System.currentTimeMillis();
+			}
+		}
+	}
+
+	/**
+	 * Get any of the tiles in the given row which have arrived
+	 * @param inRow row of tiles
+	 * @param inRowIndex index of row
+	 * @param inDownload true to request downloads of the tiles which aren't available
+	 */
+	private void pollWaitingTiles(TileRow inRow, int inRowIndex, boolean inDownload)
+	{
+		final int tileY = _minTileY + inRowIndex;
+		for (int i=0; i<inRow._states.length; i++)
+		{
+			if (inRow._states[i] == STATE_WAITING)
+			{
+				Image tile = null;
+				if (tileY >= 0 && tileY < _numTileIndices) {
+					tile = _tileManager.getTile(i % _numLayers, _minTileX + i / _numLayers, tileY, inDownload);
+				}
+				if (tile != null) {
+					startLoading(inRow, i, tile);
+				}
+				else if (!_download || tileY < 0 || tileY >= _numTileIndices) {
+					inRow._states[i] = STATE_MISSING;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Start loading the given tile image
+	 * @param inRow row containing tile
+	 * @param inIndex index of tile within row
+	 * @param inTile tile image, possibly not loaded yet
+	 */
+	private void startLoading(TileRow inRow, int inIndex, Image inTile)
+	{
+		inRow._tiles[inIndex] = inTile;
+		if (Toolkit.getDefaultToolkit().prepareImage(inTile, -1, -1, this)) {
+			inRow._states[inIndex] = STATE_LOADED;
+		}
+		else
+		{
+			inRow._states[inIndex] = STATE_LOADING;
+			// Give the tile a chance to load
+			synchronized (this) {
+				_lastUpdateTime = System.currentTimeMillis();
+			}
+		}
+	}
+
+	/**
+	 * Wait until all the tiles of the given row have either arrived or been given up
+	 * @param inRow row to wait for
+	 * @param inRowIndex index of row
+	 */
+	private void waitForRow(TileRow inRow, int inRowIndex)
+	{
+		final Toolkit toolkit = Toolkit.getDefaultToolkit();
+		final int firstNumUpdates;
+		synchronized (this) {
+			firstNumUpdates = _numUpdates;
+		}
+		while (true)
+		{
+			final int numUpdates;
+			final long lastUpdateTime;
+			synchronized (this)
+			{
+				numUpdates = _numUpdates;
+				lastUpdateTime = _lastUpdateTime;
+			}
+			pollWaitingTiles(inRow, inRowIndex, false);
+			boolean complete = true;
+			for (int i=0; i<inRow._states.length; i++)
+			{
+				if (inRow._states[i] == STATE_LOADING)
+				{
+					final int flags = toolkit.checkImage(inRow._tiles[i], -1, -1, null);
+					if ((flags & ImageObserver.ALLBITS) != 0) {
+						inRow._states[i] = STATE_LOADED;
+					}
+					else if ((flags & (ImageObserver.ERROR | ImageObserver.ABORT)) != 0) {
+						inRow._states[i] = STATE_MISSING;
+					}
+				}
+				complete &= (inRow._states[i] == STATE_LOADED || inRow._states[i] == STATE_MISSING);
+			}
+			if (complete)
+			{
+				_numRowsTimedOut = 0;
+				break;
+			}
+			if (System.currentTimeMillis() - lastUpdateTime > TIMEOUT)
+			{
+				// Nothing has arrived for a while, so give up on the tiles of this row which are still missing
+				for (int i=0; i<inRow._states.length; i++)
+				{
+					if (inRow._states[i] != STATE_LOADED) {
+						inRow._states[i] = STATE_MISSING;
+					}
+				}
+				// Only stop downloading if nothing at all has arrived for several rows
+				if (numUpdates == firstNumUpdates) {
+					_numRowsTimedOut++;
+				}
+				else {
+					_numRowsTimedOut = 0;
+				}
+				if (_numRowsTimedOut >= MAX_ROWS_TIMED_OUT)
+				{
+					_download = false;
+					for (int r=inRowIndex+1; r<_nextRowToRequest; r++) {
+						pollWaitingTiles(_rows[r], r, false);
+					}
+				}
+				break;
+			}
+			// Wait for the next callback, unless one has already come in
+			synchronized (this)
+			{
+				if (_numUpdates == numUpdates)
+				{
+					try {
+						wait(TIMEOUT / 5);
+					}
+					catch (InterruptedException ie) {}
+				}
+			}
+		}
+		inRow._complete = true;
+	}
+
+	/** React to tiles being downloaded by the tile manager */
+	public void tilesUpdated(boolean inIsOk)
+	{
+		notifyUpdate();
+	}
+
+	/**
+	 * Method called by image loader to inform of updates to the tiles
+	 * @param img the image
+	 * @param infoflags flags describing how much of the image is known
+	 * @param x ignored
+	 * @param y ignored
+	 * @param width ignored
+	 * @param height ignored
+	 * @return false to stop receiving updates, true to carry on
+	 */
+	public boolean imageUpdate(Image img, int infoflags, int x, int y, int width, int height)
+	{
+		final boolean finished = (infoflags & (ImageObserver.ALLBITS | ImageObserver.ERROR | ImageObserver.ABORT)) != 0;
+		if (finished) {
+			notifyUpdate();
+		}
+		return !finished;
+	}
+
+	/**
+	 * Wake up the thread waiting for tiles
+	 */
+	private synchronized void notifyUpdate()
+	{
+		_numUpdates++;
+		_lastUpdateTime = System.currentTimeMillis();
+		notifyAll();
+	}
+}
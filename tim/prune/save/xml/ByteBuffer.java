@@ -47,6 +47,13 @@ public class ByteBuffer
 		}
 	}
 
+	/**
+	 * @return number of bytes in buffer
+	 */
+	public int getLength() {
+		return _currPos;
+	}
+
 	/**
 	 * Set the flag that this stream is encoded with utf8
 	 */
@@ -3,7 +3,14 @@ package tim.prune.save.xml;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -12,13 +19,19 @@ import tim.prune.data.DataPoint;
 import tim.prune.data.SourceInfo;
 
 /**
- * Class to read in a GPX file and cache all the point strings
+ * Class to read in a GPX file and index the positions of all the point strings.
+ * The file is memory-mapped and each point string is only decoded when requested.
+ * Zipped or gzipped files are first uncompressed to a temporary file.
  */
 public class GpxCacher implements TagReceiver
 {
 	private SourceInfo _sourceInfo = null;
-	private String _headerString = null;
-	private String[] _strings = null;
+	private MappedByteBuffer _buffer = null;
+	private File _tempFile = null;
+	private Charset _charset = null;
+	private int _headerOffset = -1, _headerLength = 0;
+	private int[] _offsets = null;
+	private int[] _lengths = null;
 	private int _pointNum = 0;
 
 
@@ -29,7 +42,8 @@ public class GpxCacher implements TagReceiver
 	public GpxCacher(SourceInfo inInfo)
 	{
 		_sourceInfo = inInfo;
-		_strings = new String[inInfo.getNumPoints()];
+		_offsets = new int[inInfo.getNumPoints()];
+		_lengths = new int[inInfo.getNumPoints()];
 		_pointNum = 0;
 		// Should be a gpx file, but might be raw, zipped or gzipped
 		File gpxFile = inInfo.getFile();
@@ -40,50 +54,111 @@ public class GpxCacher implements TagReceiver
 			InputStream istream = null;
 			BufferedInputStream bstream = null;
 			try {
+				File sourceFile = null;
 				if (fileName.endsWith(".gpx") || fileName.endsWith(".xml")) {
-					istream = new FileInputStream(inInfo.getFile());
+					sourceFile = gpxFile;
 				}
 				else if (fileName.endsWith(".zip")) {
-					istream = getZipInputStream(inInfo.getFile());
+					sourceFile = uncompressToTempFile(getZipInputStream(gpxFile));
 				}
 				else if (fileName.endsWith(".gz")) {
-					istream = new GZIPInputStream(new FileInputStream(inInfo.getFile()));
+					sourceFile = uncompressToTempFile(new GZIPInputStream(new FileInputStream(gpxFile)));
 				}
 				else {
 					System.out.println("GpxCacher unrecognised file type: " + inInfo.getFile().getName());
 				}
-				if (istream != null) {
+				if (sourceFile != null)
+				{
+					istream = new FileInputStream(sourceFile);
 					bstream = new BufferedInputStream(istream);
 					slicer.slice(bstream);
 					bstream.close();
+					_charset = (slicer.isUtf8() ? Charset.forName("UTF-8") : Charset.defaultCharset());
+					mapFile(sourceFile);
 				}
 			} catch (Exception e) {
 				// TODO: Handle errors here with a list of warnings?
 				e.printStackTrace();
+				_offsets = null;
 			}
 		}
 	}
 
 	/**
-	 * Accept a tag from the slicer
+	 * Uncompress the given stream into a temporary file
+	 * @param inStream stream to read, will be closed
+	 * @return temporary file, or null if stream was null
+	 * @throws IOException if file couldn't be written
 	 */
-	public void reportTag(String inTag)
+	private File uncompressToTempFile(InputStream inStream) throws IOException
 	{
-		if (_headerString == null) {
-			_headerString = inTag;
+		if (inStream == null) {return null;}
+		_tempFile = File.createTempFile("prune", ".gpx");
+		_tempFile.deleteOnExit();
+		OutputStream out = null;
+		try
+		{
+			out = new FileOutputStream(_tempFile);
+			byte[] buffer = new byte[65536];
+			int numRead = 0;
+			while ((numRead = inStream.read(buffer)) >= 0) {
+				out.write(buffer, 0, numRead);
+			}
 		}
-		else if (_strings != null)
+		finally
+		{
+			try {inStream.close();} catch (Exception e) {} // ignore
+			try {out.close();} catch (Exception e) {} // ignore
+		}
+		return _tempFile;
+	}
+
+	/**
+	 * Map the given file into memory
+	 * @param inFile file to map
+	 * @throws IOException if file couldn't be mapped
+	 */
+	private void mapFile(File inFile) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(inFile, "r");
+		try
 		{
-			if (_pointNum < _strings.length)
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File too big to map: " + inFile.getName());
+			}
+			// The mapping stays valid after the channel is closed
+			_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Accept the position of a tag from the slicer
+	 */
+	public void reportTag(long inOffset, int inLength)
+	{
+		if (_headerOffset < 0)
+		{
+			_headerOffset = (int) inOffset;
+			_headerLength = inLength;
+		}
+		else if (_offsets != null)
+		{
+			if (_pointNum < _offsets.length)
 			{
-				_strings[_pointNum] = inTag;
+				_offsets[_pointNum] = (int) inOffset;
+				_lengths[_pointNum] = inLength;
 				_pointNum++;
 			}
 			else
 			{
-				// _pointNum has got too high for the strings array
+				// _pointNum has got too high for the offsets array
 				// This means the cacher has failed, probably by invalid points - need to give up caching here
-				_strings = null;
+				_offsets = null;
+				_lengths = null;
 			}
 		}
 	}
@@ -94,7 +169,8 @@ public class GpxCacher implements TagReceiver
 	 */
 	public String getHeaderString()
 	{
-		return _headerString;
+		if (_headerOffset < 0) {return null;}
+		return decode(_headerOffset, _headerLength);
 	}
 
 	/**
@@ -105,12 +181,43 @@ public class GpxCacher implements TagReceiver
 	public String getSourceString(DataPoint inPoint)
 	{
 		int index = _sourceInfo.getIndex(inPoint);
-		if (_strings != null && index >= 0 && index < _strings.length) {
-			return _strings[index];
+		if (_offsets != null && index >= 0 && index < _pointNum) {
+			return decode(_offsets[index], _lengths[index]);
 		}
 		return null;
 	}
 
+	/**
+	 * Decode the given part of the mapped file into a String
+	 * @param inOffset offset in bytes
+	 * @param inLength length in bytes
+	 * @return decoded String, or null if file not mapped
+	 */
+	private synchronized String decode(int inOffset, int inLength)
+	{
+		if (_buffer == null) {return null;}
+		byte[] bytes = new byte[inLength];
+		_buffer.position(inOffset);
+		_buffer.get(bytes);
+		return new String(bytes, _charset);
+	}
+
+	/**
+	 * Release the mapped file and delete the temporary file, if any
+	 */
+	public synchronized void close()
+	{
+		_buffer = null;
+		_offsets = null;
+		_lengths = null;
+		if (_tempFile != null)
+		{
+			// Might not work until the mapping has been garbage collected, but then deleteOnExit will do it
+			_tempFile.delete();
+			_tempFile = null;
+		}
+	}
+
 	/**
 	 * Get an inputstream of a GPX file inside a zip
 	 * @param inFile File object describing zip file
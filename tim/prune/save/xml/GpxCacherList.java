@@ -63,4 +63,17 @@ public class GpxCacherList
 		}
 		return str;
 	}
+
+	/**
+	 * Release the resources held by all the cachers
+	 */
+	public void close()
+	{
+		for (GpxCacher cacher : _cacherList)
+		{
+			if (cacher != null) {
+				cacher.close();
+			}
+		}
+	}
 }
@@ -4,14 +4,16 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Class to slice up a gpx stream and report the found tags
+ * Class to slice up a gpx stream and report the positions of the found tags
  * back to a listener.
- * Used by Gpx caching to re-read and store the gpx source
+ * Used by Gpx caching to re-read and index the gpx source
  */
 public class GpxSlicer
 {
 	/** listener to receive tags */
 	private TagReceiver _receiver = null;
+	/** Flag set if the stream is encoded with utf8 */
+	private boolean _isUtf8 = false;
 
 	// character sequences for start and end of tags
 	private static final char[] GPX_START = "<gpx".toCharArray();
@@ -35,7 +37,15 @@ public class GpxSlicer
 	}
 
 	/**
-	 * Begin the slicing and pass the found tags back to the listener
+	 * @return true if the stream was found to be utf8 encoded
+	 */
+	public boolean isUtf8()
+	{
+		return _isUtf8;
+	}
+
+	/**
+	 * Begin the slicing and pass the found tag positions back to the listener
 	 * @param inStream input stream for reading gpx source
 	 */
 	public void slice(InputStream inStream)
@@ -47,10 +57,12 @@ public class GpxSlicer
 		char[] endTag = null;
 		boolean foundHeader = false;
 		int b = 0;
+		long offset = -1L;
 		try
 		{
 			while ((b = inStream.read()) >= 0)
 			{
+				offset++;
 				// copy character
 				byteBuffer.appendByte((byte) b);
 				// clear buffer if necessary
@@ -79,7 +91,7 @@ public class GpxSlicer
 							// Check begin buffer for utf8 encoding
 							if (beginBuffer != null && beginBuffer.toString().toLowerCase().indexOf("encoding=\"utf-8\"") > 0)
 							{
-								byteBuffer.setEncodingUtf8();
+								_isUtf8 = true;
 							}
 							beginBuffer = null; // don't need it any more
 						}
@@ -104,8 +116,8 @@ public class GpxSlicer
 						// Look for end of found tag
 						if (byteBuffer.foundSequence(endTag))
 						{
-							String tag = byteBuffer.toString();
-							_receiver.reportTag(tag);
+							final int tagLength = byteBuffer.getLength();
+							_receiver.reportTag(offset + 1 - tagLength, tagLength);
 							byteBuffer.clear();
 							insideTag = false;
 						}
@@ -1,14 +1,15 @@
 package tim.prune.save.xml;
 
 /**
- * Interface for receivers of tag strings
+ * Interface for receivers of tag positions
  * used for reading tags from xml and reporting them back to a listener
  */
 public interface TagReceiver
 {
 	/**
-	 * Method to give a tag string to a listener
-	 * @param inTag xml tag
+	 * Method to give the position of a tag to a listener
+	 * @param inOffset offset of start of tag in bytes from start of stream
+	 * @param inLength length of tag in bytes
 	 */
-	public void reportTag(String inTag);
+	public void reportTag(long inOffset, int inLength);
 }
@@ -336,33 +336,12 @@ public class Java3DWindow implements ThreeDWindow
 		if (showTerrain)
 		{
 			TerrainHelper terrainHelper = new TerrainHelper(_terrainDefinition.getGridSize());
-			// See if there's a previously saved terrain track we can reuse
-			Track terrainTrack = TerrainCache.getTerrainTrack(_dataStatus, _terrainDefinition);
-			if (terrainTrack == null)
-			{
-				// Construct the terrain track according to these extents and the grid size
-				terrainTrack = terrainHelper.createGridTrack(_track);
-				// Get the altitudes from SRTM for all the points in the track
-				LookupSrtmFunction srtmLookup = (LookupSrtmFunction) FunctionLibrary.FUNCTION_LOOKUP_SRTM;
-				srtmLookup.begin(terrainTrack);
-				while (srtmLookup.isRunning())
-				{
-					try {
-						Thread.sleep(750);  // just polling in a wait loop isn't ideal but simple
-					}
-					catch (InterruptedException e) {}
-				}
-
-				// Fix the voids
-				terrainHelper.fixVoids(terrainTrack);
-
-				// Store this back in the cache, maybe we'll need it again
-				TerrainCache.storeTerrainTrack(terrainTrack, _dataStatus, _terrainDefinition);
-			}
-			// else System.out.println("Yay - reusing the cached track!");
+			// Get the terrain grid for the track extents, reusing a previous one if possible
+			TerrainGrid terrainGrid = TerrainCache.getTerrainGrid(_track, _terrainDefinition.getGridSize(),
+				(LookupSrtmFunction) FunctionLibrary.FUNCTION_LOOKUP_SRTM);
 
 			// Give the terrain definition to the _model as well
-			_model.setTerrain(terrainTrack);
+			_model.setTerrain(terrainGrid);
 			_model.scale();
 
 			objTrans.addChild(createTerrain(_model, terrainHelper, _baseImage));
@@ -1,57 +1,91 @@
 package tim.prune.threedee;
 
-import tim.prune.DataStatus;
+import java.util.LinkedList;
+
+import tim.prune.data.DoubleRange;
 import tim.prune.data.Track;
+import tim.prune.data.TrackExtents;
+import tim.prune.function.srtm.ElevationSampler;
+import tim.prune.function.srtm.LookupSrtmFunction;
 
 /**
- * This abstract class acts as a singleton to store a single
- * terrain model (as a Track) for a given data status and terrain definition.
- * When the data or the definition changes, this track becomes invalid.
+ * This abstract class acts as a singleton to store the most recently
+ * generated terrain grids, so that they can be reused as long as the
+ * extents of the track and the grid size are the same.
+ * Grids with missing tiles, for example when offline, aren't stored.
  */
 public abstract class TerrainCache
 {
-	/** The data status at the time this terrain was generated */
-	private static DataStatus _dataStatus = null;
-	/** The definition (grid size) for this terrain */
-	private static TerrainDefinition _terrainDef = null;
-	/** The generated grid of points with altitudes */
-	private static Track _terrainTrack = null;
+	/** Generated grids, most recently used first */
+	private static final LinkedList<TerrainGrid> _grids = new LinkedList<TerrainGrid>();
+
+	/** Maximum number of grids to keep */
+	private static final int MAX_GRIDS = 4;
 
 
 	/**
-	 * Get the stored terrain track if it's still valid
-	 * @param inCurrStatus current data status
-	 * @param inTerrainDef currently selected terrain definition
-	 * @return stored terrain track if it's valid, null otherwise
+	 * Get a terrain grid covering the given track, reusing a stored one if possible
+	 * or otherwise looking up the heights from the SRTM data with a progress dialog
+	 * @param inDataTrack track from which the extents should be obtained
+	 * @param inGridSize number of nodes on each side of the grid
+	 * @param inLookup lookup function to show the progress and tips
+	 * @return terrain grid with heights
 	 */
-	public static Track getTerrainTrack(DataStatus inCurrStatus, TerrainDefinition inTerrainDef)
+	public static TerrainGrid getTerrainGrid(Track inDataTrack, int inGridSize, LookupSrtmFunction inLookup)
 	{
-		if (_dataStatus == null || _terrainDef == null || _terrainTrack == null)
-		{
-			return null; // nothing stored
+		// Work out the extents of the current track
+		TrackExtents extents = new TrackExtents(inDataTrack);
+		extents.applySquareBorder();
+		final DoubleRange xRange = extents.getXRange(), yRange = extents.getYRange();
+		TerrainGrid grid = findGrid(xRange, yRange, inGridSize);
+		if (grid != null) {
+			return grid;
 		}
-		if (inCurrStatus == null || inTerrainDef == null || !inTerrainDef.getUseTerrain())
-		{
-			return null; // nonsense requested
+		// Tiles are loaded without holding the lock
+		grid = new TerrainGrid(xRange, yRange, inGridSize);
+		ElevationSampler sampler = inLookup.startGridLookup();
+		try {
+			grid.lookupHeights(sampler);
+		}
+		finally {
+			inLookup.finishGridLookup(sampler);
+		}
+		grid.fixVoids();
+		// Store this in the cache if it's complete, maybe we'll need it again
+		if (!sampler.hadMissingTiles()) {
+			storeGrid(grid);
 		}
-		if (inCurrStatus.hasDataChanged(_dataStatus) || !inTerrainDef.equals(_terrainDef))
+		return grid;
+	}
+
+	/**
+	 * Find a stored grid and move it to the front
+	 * @return matching grid, or null if none found
+	 */
+	private static synchronized TerrainGrid findGrid(DoubleRange inXRange, DoubleRange inYRange, int inGridSize)
+	{
+		for (TerrainGrid grid : _grids)
 		{
-			return null; // stored track is out of date
+			if (grid.matches(inXRange, inYRange, inGridSize))
+			{
+				// we have a match
+				_grids.remove(grid);
+				_grids.addFirst(grid);
+				return grid;
+			}
 		}
-		// we have a match
-		return _terrainTrack;
+		return null;
 	}
 
 	/**
-	 * Now that a terrain track has been generated, store it for possible reuse
-	 * @param inTrack terrain track to store
-	 * @param inCurrStatus current data status
-	 * @param inTerrainDef terrain definition
+	 * Store the given grid, removing the oldest one if necessary
+	 * @param inGrid grid to store
 	 */
-	public static void storeTerrainTrack(Track inTrack, DataStatus inCurrStatus, TerrainDefinition inTerrainDef)
+	private static synchronized void storeGrid(TerrainGrid inGrid)
 	{
-		_terrainTrack = inTrack;
-		_dataStatus = inCurrStatus;
-		_terrainDef = inTerrainDef;
+		_grids.addFirst(inGrid);
+		if (_grids.size() > MAX_GRIDS) {
+			_grids.removeLast();
+		}
 	}
 }
@@ -0,0 +1,321 @@
+package tim.prune.threedee;
+
+import java.util.Arrays;
+
+import tim.prune.data.DoubleRange;
+import tim.prune.function.srtm.ElevationSampler;
+import tim.prune.gui.map.MapUtils;
+
+/**
+ * Square grid of terrain heights covering the given x and y ranges,
+ * with nodes indexed by row (y) and then column (x)
+ */
+public class TerrainGrid
+{
+	/** Number of nodes on each side of the square grid */
+	private final int _gridSize;
+	/** Range of x and y values covered */
+	private final DoubleRange _xRange, _yRange;
+	/** Height of each node in metres, NaN if not known */
+	private float[] _heights = null;
+
+
+	/**
+	 * Constructor
+	 * @param inXRange range of x values to cover
+	 * @param inYRange range of y values to cover
+	 * @param inGridSize number of nodes on each side of the grid
+	 */
+	public TerrainGrid(DoubleRange inXRange, DoubleRange inYRange, int inGridSize)
+	{
+		_xRange = inXRange.copy();
+		_yRange = inYRange.copy();
+		_gridSize = inGridSize;
+		_heights = new float[inGridSize * inGridSize];
+		Arrays.fill(_heights, Float.NaN);
+	}
+
+	/**
+	 * @param inXRange range of x values
+	 * @param inYRange range of y values
+	 * @param inGridSize grid size
+	 * @return true if this grid has the same extents and resolution
+	 */
+	public boolean matches(DoubleRange inXRange, DoubleRange inYRange, int inGridSize)
+	{
+		return inGridSize == _gridSize
+			&& inXRange.getMinimum() == _xRange.getMinimum() && inXRange.getMaximum() == _xRange.getMaximum()
+			&& inYRange.getMinimum() == _yRange.getMinimum() && inYRange.getMaximum() == _yRange.getMaximum();
+	}
+
+	/** @return grid size */
+	public int getGridSize() {
+		return _gridSize;
+	}
+
+	/** @return number of nodes in grid */
+	public int getNumNodes() {
+		return _heights.length;
+	}
+
+	/**
+	 * @param inIndex index of node
+	 * @return x value of node
+	 */
+	public double getX(int inIndex)
+	{
+		return _xRange.getMinimum() + (inIndex % _gridSize) * (_xRange.getRange() / (_gridSize - 1));
+	}
+
+	/**
+	 * @param inIndex index of node
+	 * @return y value of node
+	 */
+	public double getY(int inIndex)
+	{
+		return _yRange.getMinimum() + (inIndex / _gridSize) * (_yRange.getRange() / (_gridSize - 1));
+	}
+
+	/**
+	 * @param inIndex index of node
+	 * @return height of node in metres, or 0 if not known
+	 */
+	public double getAltitude(int inIndex)
+	{
+		final float height = _heights[inIndex];
+		return Float.isNaN(height) ? 0.0 : height;
+	}
+
+	/**
+	 * @return range of known heights in metres
+	 */
+	public DoubleRange getAltitudeRange()
+	{
+		DoubleRange range = new DoubleRange();
+		for (float height : _heights)
+		{
+			if (!Float.isNaN(height)) {
+				range.addValue(height);
+			}
+		}
+		return range;
+	}
+
+	/**
+	 * Look up all the heights of the grid
+	 * @param inSampler sampler to get the heights from
+	 */
+	public void lookupHeights(ElevationSampler inSampler)
+	{
+		final double xStep = _xRange.getRange() / (_gridSize - 1);
+		final double yStep = _yRange.getRange() / (_gridSize - 1);
+		double[] latitudes = new double[_gridSize];
+		double[] longitudes = new double[_gridSize];
+		for (int i=0; i<_gridSize; i++)
+		{
+			latitudes[i] = MapUtils.getLatitudeFromY(_yRange.getMinimum() + i * yStep);
+			longitudes[i] = MapUtils.getLongitudeFromX(_xRange.getMinimum() + i * xStep);
+		}
+		_heights = inSampler.sampleGrid(latitudes, longitudes);
+	}
+
+	/**
+	 * Try to fix the voids in the grid by averaging neighbour values where possible
+	 */
+	public void fixVoids()
+	{
+		int numVoids = countVoids();
+		if (numVoids == 0) {return;}
+		// Fix the holes which are surrounded on all four sides by non-holes
+		fixSingleHoles();
+		// Maybe there is something to do in the corners?
+		fixCornersAndEdges();
+		// Now fix the bigger holes, which should fix everything left
+		fixBiggerHoles();
+		final int numHolesLeft = countVoids();
+		if (numHolesLeft > 0) {
+			System.out.println("Fixed bigger holes, now num voids = " + numHolesLeft);
+		}
+	}
+
+	/**
+	 * @return number of voids (nodes without heights)
+	 */
+	private int countVoids()
+	{
+		int numVoids = 0;
+		for (float height : _heights)
+		{
+			if (Float.isNaN(height)) {
+				numVoids++;
+			}
+		}
+		return numVoids;
+	}
+
+	/**
+	 * @param inIndex index of node
+	 * @return true if the index is inside the grid and the node has a height
+	 */
+	private boolean hasHeight(int inIndex)
+	{
+		return inIndex >= 0 && inIndex < _heights.length && !Float.isNaN(_heights[inIndex]);
+	}
+
+	/**
+	 * Just deal with single holes surrounded by at least four direct neighbours
+	 */
+	private void fixSingleHoles()
+	{
+		// Holes with neighbours in all directions
+		final int startIndex = 1, endIndex = _gridSize - 2;
+		final float[] h = _heights;
+		for (int x = startIndex; x <= endIndex; x++)
+		{
+			for (int y = startIndex; y <= endIndex; y++)
+			{
+				final int pIndex = x * _gridSize + y;
+				final int l = pIndex - 1, r = pIndex + 1, u = pIndex + _gridSize, d = pIndex - _gridSize;
+				// Check that all the neighbours have heights
+				if (!hasHeight(pIndex) && hasHeight(l) && hasHeight(r) && hasHeight(u) && hasHeight(d))
+				{
+					final int ll = pIndex - 2, rr = pIndex + 2, uu = pIndex + 2 * _gridSize, dd = pIndex - 2 * _gridSize;
+					if (hasHeight(ll) && hasHeight(rr) && hasHeight(uu) && hasHeight(dd))
+					{
+						// Use the double-neighbours too to take into account the gradients
+						h[pIndex] = (float) ((h[l] * 1.5 - h[ll] * 0.5 + h[r] * 1.5 - h[rr] * 0.5
+							+ h[d] * 1.5 - h[dd] * 0.5 + h[u] * 1.5 - h[uu] * 0.5) / 4.0);
+					}
+					else
+					{
+						// no double-neighbours, just use neighbours
+						h[pIndex] = (float) ((h[l] + h[r] + h[d] + h[u]) / 4.0);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Try to fix the corners and edges, if they're blank
+	 */
+	private void fixCornersAndEdges()
+	{
+		fixCorner(0, 1, 1);
+		fixCorner(_gridSize-1, -1, 1);
+		fixCorner((_gridSize-1)*_gridSize, 1, -1);
+		fixCorner(_gridSize*_gridSize-1, -1, -1);
+		fixEdge(0, 1);
+		fixEdge(_gridSize-1, _gridSize);
+		fixEdge((_gridSize-1)*_gridSize, -_gridSize);
+		fixEdge(_gridSize*_gridSize-1, -1);
+	}
+
+	/**
+	 * Fix a single corner by searching along adjacent edges and averaging the nearest neighbours
+	 * @param inCornerIndex index of corner to fill
+	 * @param inXinc increment in x direction (+1 or -1)
+	 * @param inYinc increment in y direction (+1 or -1)
+	 */
+	private void fixCorner(int inCornerIndex, int inXinc, int inYinc)
+	{
+		if (hasHeight(inCornerIndex)) {return;}
+		// Corner hasn't got a height, we'll have to look for it
+		int sIndex1 = inCornerIndex, sIndex2 = inCornerIndex;
+		float alt1 = Float.NaN, alt2 = Float.NaN;
+		for (int i=1; i<_gridSize && !hasHeight(inCornerIndex); i++)
+		{
+			sIndex1 += inXinc;
+			sIndex2 += (inYinc * _gridSize);
+			if (Float.isNaN(alt1) && hasHeight(sIndex1)) {alt1 = _heights[sIndex1];}
+			if (Float.isNaN(alt2) && hasHeight(sIndex2)) {alt2 = _heights[sIndex2];}
+			// Can we average these?
+			if (!Float.isNaN(alt1) && !Float.isNaN(alt2)) {
+				_heights[inCornerIndex] = (alt1 + alt2) / 2.0f;
+			}
+		}
+	}
+
+	/**
+	 * Fix any holes found in the specified edge
+	 * @param inCornerIndex index of corner to start from
+	 * @param inInc increment along edge
+	 */
+	private void fixEdge(int inCornerIndex, int inInc)
+	{
+		int prevIndexWithAlt = -1;
+		int sIndex = inCornerIndex;
+		if (hasHeight(sIndex)) {prevIndexWithAlt = 0;}
+		for (int i=1; i<_gridSize; i++)
+		{
+			sIndex += inInc;
+			if (hasHeight(sIndex))
+			{
+				if (prevIndexWithAlt >= 0 && prevIndexWithAlt < (i-1))
+				{
+					final int gapLen = i - prevIndexWithAlt;
+					final double alt1 = _heights[inCornerIndex + prevIndexWithAlt * inInc];
+					final double alt2 = _heights[inCornerIndex + i * inInc];
+					for (int j = 1; j < gapLen; j++)
+					{
+						_heights[inCornerIndex + (prevIndexWithAlt + j) * inInc] = (float) (alt1 + (alt2-alt1) * j / gapLen);
+					}
+				}
+				prevIndexWithAlt = i;
+			}
+		}
+	}
+
+	/**
+	 * Try to fix bigger holes by interpolating between neighbours
+	 */
+	private void fixBiggerHoles()
+	{
+		TerrainPatch patch = new TerrainPatch(_gridSize);
+		for (int i=0; i<_gridSize; i++)
+		{
+			int prevHoriz = -1, prevVert = -1;
+			for (int j=0; j<_gridSize; j++)
+			{
+				if (hasHeight(i * _gridSize + j))
+				{
+					if (prevHoriz > -1 && prevHoriz != (j-1))
+					{
+						double startVal = _heights[i * _gridSize + prevHoriz];
+						double endVal   = _heights[i * _gridSize + j];
+						for (int k=prevHoriz + 1; k< j; k++)
+						{
+							double val = startVal + (k-prevHoriz) * (endVal-startVal) / (j-prevHoriz);
+							patch.addAltitude(i * _gridSize + k, val, k-prevHoriz, j-prevHoriz);
+						}
+					}
+					prevHoriz = j;
+				}
+				if (hasHeight(j * _gridSize + i))
+				{
+					if (prevVert > -1 && prevVert != (j-1))
+					{
+						double startVal = _heights[prevVert * _gridSize + i];
+						double endVal   = _heights[j * _gridSize + i];
+						for (int k=prevVert + 1; k< j; k++)
+						{
+							double val = startVal + (k-prevVert) * (endVal-startVal) / (j-prevVert);
+							patch.addAltitude(k * _gridSize + i, val, k-prevVert, j-prevVert);
+						}
+					}
+					prevVert = j;
+				}
+			}
+		}
+		// Smooth the patch to reduce the blocky effect from the voids
+		patch.smooth();
+
+		// Now the doubles have been set and averaged, we can set the values in the grid
+		for (int i=0; i<_heights.length; i++)
+		{
+			if (!hasHeight(i)) {
+				_heights[i] = (float) patch.getAltitude(i);
+			}
+		}
+	}
+}
@@ -59,6 +59,7 @@ public class UndoAddAltitudeOffset implements UndoOperation
 			DataPoint point = inTrackInfo.getTrack().getPoint(i+_startIndex);
 			point.resetAltitude(_altitudes[i]);
 		}
+		inTrackInfo.getTrack().pointValuesChanged(_startIndex, _startIndex + numPoints - 1);
 		_altitudes = null;
 		inTrackInfo.getSelection().markInvalid();
 		UpdateMessageBroker.informSubscribers();
@@ -68,6 +68,7 @@ public class UndoDeleteMarked implements UndoOperation
 		for (int i=0; i<_segmentStarts.length; i++) {
 			track.getPoint(i).setSegmentStart(_segmentStarts[i]);
 		}
+		track.segmentStartsChanged(0);
 		// clear selection
 		inTrackInfo.getSelection().clearAll();
 	}
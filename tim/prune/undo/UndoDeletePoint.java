@@ -87,6 +87,7 @@ public class UndoDeletePoint extends UndoDeleteOperation
 			DataPoint nextTrackPoint = inTrackInfo.getTrack().getNextTrackPoint(_pointIndex + 1);
 			if (nextTrackPoint != null) {
 				nextTrackPoint.setSegmentStart(false);
+				inTrackInfo.getTrack().segmentStartsChanged(_pointIndex + 1);
 			}
 		}
 		// If there's a current point or range selected, maybe need to adjust start and/or end
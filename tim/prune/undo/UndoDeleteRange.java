@@ -187,6 +187,7 @@ public class UndoDeleteRange extends UndoDeleteOperation
 		// Restore segment flag of following track point
 		if (inRangeInfo._nextTrackPoint != null) {
 			inRangeInfo._nextTrackPoint.setSegmentStart(inRangeInfo._segmentStart);
+			inTrackInfo.getTrack().segmentStartsChanged(inRangeInfo._startIndex + inRangeInfo._points.length);
 		}
 	}
 }
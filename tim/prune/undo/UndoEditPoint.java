@@ -12,17 +12,20 @@ import tim.prune.function.edit.FieldEditList;
 public class UndoEditPoint implements UndoOperation
 {
 	private DataPoint _originalPoint = null;
+	private int _pointIndex = -1;
 	private FieldEditList _undoFieldList = null;
 
 
 	/**
 	 * Constructor
 	 * @param inPoint data point
+	 * @param inPointIndex index of point in track
 	 * @param inUndoFieldList FieldEditList for undo operation
 	 */
-	public UndoEditPoint(DataPoint inPoint, FieldEditList inUndoFieldList)
+	public UndoEditPoint(DataPoint inPoint, int inPointIndex, FieldEditList inUndoFieldList)
 	{
 		_originalPoint = inPoint;
+		_pointIndex = inPointIndex;
 		_undoFieldList = inUndoFieldList;
 	}
 
@@ -52,7 +55,8 @@ public class UndoEditPoint implements UndoOperation
 	public void performUndo(TrackInfo inTrackInfo) throws UndoException
 	{
 		// Restore contents of point into track
-		if (!inTrackInfo.getTrack().editPoint(_originalPoint, _undoFieldList, true))
+		if (inTrackInfo.getTrack().getPoint(_pointIndex) != _originalPoint
+			|| !inTrackInfo.getTrack().editPoint(_pointIndex, _undoFieldList, true))
 		{
 			// throw exception if failed
 			throw new UndoException(getDescription());
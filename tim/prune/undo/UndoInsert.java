@@ -74,6 +74,7 @@ public class UndoInsert implements UndoOperation
 		if (_hasSegmentFlag) {
 			DataPoint nextPoint = inTrackInfo.getTrack().getNextTrackPoint(_startPosition);
 			if (nextPoint != null) {nextPoint.setSegmentStart(_segmentFlag);}
+			inTrackInfo.getTrack().segmentStartsChanged(_startPosition);
 		}
 		// reset selection
 		inTrackInfo.getSelection().clearAll();
@@ -72,6 +72,8 @@ public class UndoLookupSrtm implements UndoOperation
 			}
 		}
 		_points = null;
+		inTrackInfo.getTrack().requestRescale();
+		inTrackInfo.getSelection().markInvalid();
 		UpdateMessageBroker.informSubscribers();
 	}
 }
@@ -70,6 +70,7 @@ public class UndoMergeTrackSegments implements UndoOperation
 		if (_nextTrackPoint != null) {
 			_nextTrackPoint.setSegmentStart(_nextSegmentFlag);
 		}
+		inTrackInfo.getTrack().segmentStartsChanged(_startIndex);
 		UpdateMessageBroker.informSubscribers();
 	}
 }
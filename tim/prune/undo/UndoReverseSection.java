@@ -75,5 +75,6 @@ public class UndoReverseSection implements UndoOperation
 		if (_nextTrackPoint != null) {
 			_nextTrackPoint.setSegmentStart(_nextSegmentFlag);
 		}
+		inTrackInfo.getTrack().segmentStartsChanged(_startIndex);
 	}
 }
@@ -40,5 +40,6 @@ public class UndoSewSegments extends UndoReorder
 				point.setSegmentStart(_segmentStartFlags[i]);
 			}
 		}
+		inTrackInfo.getTrack().segmentStartsChanged(0);
 	}
 }